@@ -66,7 +66,7 @@ export const useFacturas = (params?: QueryParams) => {
       facturasApi.enviarASifen(id, request),
     onSuccess: () => {
       queryClient.invalidateQueries({ queryKey: ['facturas'] });
-      message.success('Factura enviada a SIFEN exitosamente');
+      message.success('Factura encolada para envío a SIFEN');
     },
     onError: (error: any) => {
       const errorMsg = error.response?.data?.message || 'Error al enviar factura a SIFEN';
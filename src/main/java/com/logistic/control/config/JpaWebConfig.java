@@ -0,0 +1,43 @@
+package com.logistic.control.config;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.orm.jpa.support.OpenEntityManagerInViewInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Open EntityManager in View, excepto en los endpoints que llaman a SIFEN.
+ * Con la sesión abierta durante toda la solicitud, la conexión que toma la primera consulta queda
+ * retenida hasta la respuesta, incluso entre transacciones; en esos endpoints eso incluiría la
+ * espera HTTP a SIFEN. Reemplaza al interceptor de Spring Boot (spring.jpa.open-in-view: false).
+ */
+@Configuration
+public class JpaWebConfig implements WebMvcConfigurer {
+
+    /** Endpoints que llaman a SIFEN entre transacciones cortas y no cargan nada lazy después */
+    private static final String[] SIN_SESION_EN_VISTA = {
+            "/facturas/lote/enviar-sifen",
+            "/facturas/*/actualizar-estado-sifen"
+    };
+
+    private final EntityManagerFactory entityManagerFactory;
+
+    public JpaWebConfig(EntityManagerFactory entityManagerFactory) {
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    @Bean
+    public OpenEntityManagerInViewInterceptor openEntityManagerInViewInterceptor() {
+        OpenEntityManagerInViewInterceptor interceptor = new OpenEntityManagerInViewInterceptor();
+        interceptor.setEntityManagerFactory(entityManagerFactory);
+        return interceptor;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addWebRequestInterceptor(openEntityManagerInViewInterceptor())
+                .excludePathPatterns(SIN_SESION_EN_VISTA);
+    }
+}
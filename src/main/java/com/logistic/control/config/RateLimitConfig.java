@@ -0,0 +1,75 @@
+package com.logistic.control.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Límites de solicitudes por cliente (usuario autenticado o IP), por ruta y por rol
+ */
+@Configuration
+@ConfigurationProperties(prefix = "rate-limit")
+@Getter
+@Setter
+public class RateLimitConfig {
+
+    private Boolean enabled = true;
+
+    /**
+     * Solicitudes por minuto para rutas sin regla propia y roles sin límite propio
+     */
+    private Integer porMinuto = 60;
+
+    /**
+     * Solicitudes que pueden llegar juntas antes de aplicar el ritmo (null = por-minuto)
+     */
+    private Integer rafaga;
+
+    /**
+     * Solicitudes por minuto según el rol del usuario; con varios roles se usa el mayor
+     */
+    private Map<String, Integer> porRol = new HashMap<>();
+
+    /**
+     * Reglas por ruta; se aplica la primera cuyo patrón coincide
+     */
+    private List<Ruta> rutas = new ArrayList<>();
+
+    /**
+     * Segundos sin solicitudes tras los cuales se descarta el estado de un cliente (mínimo 60)
+     */
+    private Long inactividadSegundos = 300L;
+
+    /**
+     * Tope de claves en memoria, tanto de clientes del limitador como de IPs/usuarios con intentos
+     * de login fallidos; al alcanzarlo se descartan primero las más antiguas (nunca un bloqueo de login vigente)
+     */
+    private Integer maxClaves = 100_000;
+
+    /**
+     * Cada cuántos segundos corre la limpieza programada
+     */
+    private Long limpiezaSegundos = 60L;
+
+    @Getter
+    @Setter
+    public static class Ruta {
+
+        /**
+         * Patrón (PathPattern) sobre la ruta sin context-path, ej. /auth/**
+         */
+        private String patron;
+
+        private Integer porMinuto;
+
+        private Integer rafaga;
+
+        private Map<String, Integer> porRol = new HashMap<>();
+    }
+}
@@ -0,0 +1,64 @@
+package com.logistic.control.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Configuración del renderizado de reportes PDF fuera de los hilos de Tomcat
+ */
+@Configuration
+@ConfigurationProperties(prefix = "jasper.renderizado")
+@Getter
+@Setter
+public class ReportConfig {
+
+    /**
+     * Hilos dedicados a renderizar reportes (0 = mitad de los núcleos disponibles)
+     */
+    private Integer hilos = 0;
+
+    /**
+     * Reportes en espera como máximo; con la cola llena se responde 429
+     */
+    private Integer cola = 16;
+
+    /**
+     * Reportes simultáneos (en cola o en proceso) por rol; el usuario usa el mayor de sus roles
+     */
+    private Map<String, Integer> limitesPorRol = new HashMap<>(Map.of(
+            "ADMIN", 4,
+            "OPERADOR", 2,
+            "FINANZAS", 2,
+            "DEPOSITO", 2,
+            "CLIENTE", 1));
+
+    /**
+     * Límite para roles no listados en limites-por-rol
+     */
+    private Integer limitePorDefecto = 1;
+
+    /**
+     * Segundos que una solicitud síncrona espera el PDF antes de responder 202 con el trabajo
+     */
+    private Long esperaSincronaSegundos = 30L;
+
+    /**
+     * Valor del encabezado Retry-After cuando el servicio está saturado
+     */
+    private Long retryAfterSegundos = 10L;
+
+    /**
+     * Minutos que se conserva el resultado de un trabajo terminado
+     */
+    private Long resultadoTtlMinutos = 15L;
+
+    /**
+     * Directorio de los PDF generados (vacío = directorio temporal del sistema)
+     */
+    private String directorio;
+}
@@ -74,6 +74,11 @@ public class SifenConfig {
      */
     private String certificateType = "P12";
 
+    /**
+     * Cada cuántos segundos, como máximo, se verifica si el .p12 fue reemplazado (rotación)
+     */
+    private Integer certificadoVerificacionSegundos = 10;
+
     /**
      * Timeout para conexión en segundos
      */
@@ -85,15 +90,41 @@ public class SifenConfig {
     private Integer readTimeout = 60;
 
     /**
-     * Habilitar modo contingencia
+     * Solicitudes HTTP simultáneas como máximo por endpoint SIFEN
+     */
+    private Integer maxConcurrenciaPorEndpoint = 8;
+
+    /**
+     * Forzar el modo contingencia: los documentos se emiten con iTipEmi = 2 y quedan en la cola sin enviarse
+     * hasta que se desactive. Con el circuito hacia SIFEN abierto se entra en contingencia automáticamente.
      */
     private Boolean contingenciaEnabled = false;
 
+    /**
+     * Circuit breaker y contingencia ante caídas de SIFEN
+     */
+    private Contingencia contingencia = new Contingencia();
+
     /**
      * Reintentos automáticos en caso de error
      */
     private Integer maxReintentos = 3;
 
+    /**
+     * Hilos para generar y firmar los documentos de un lote en paralelo (0 = núcleos disponibles)
+     */
+    private Integer loteParalelismo = 0;
+
+    /**
+     * Cola de envíos asíncronos a SIFEN (outbox)
+     */
+    private Outbox outbox = new Outbox();
+
+    /**
+     * Consulta periódica del resultado de los lotes enviados
+     */
+    private Poller poller = new Poller();
+
     /**
      * Actividad económica principal
      */
@@ -186,4 +217,108 @@ public class SifenConfig {
     public boolean isTest() {
         return "test".equalsIgnoreCase(ambiente);
     }
+
+    /**
+     * Parámetros de los workers que procesan la cola de envíos
+     */
+    @Getter
+    @Setter
+    public static class Outbox {
+
+        /**
+         * Habilitar el procesamiento de la cola en esta instancia
+         */
+        private Boolean enabled = true;
+
+        /**
+         * Envíos simultáneos como máximo (cada uno en un hilo virtual)
+         */
+        private Integer workers = 4;
+
+        /**
+         * Intervalo de sondeo de la cola en milisegundos
+         */
+        private Long intervaloMs = 2000L;
+
+        /**
+         * Espera base antes del primer reintento en segundos (se duplica en cada intento)
+         */
+        private Long backoffSegundos = 30L;
+
+        /**
+         * Envíos por minuto como máximo; acota el drenaje de la cola cuando SIFEN se recupera de una caída
+         */
+        private Integer maxEnviosPorMinuto = 120;
+    }
+
+    /**
+     * Parámetros del circuit breaker que activa la contingencia
+     */
+    @Getter
+    @Setter
+    public static class Contingencia {
+
+        /**
+         * Timeouts o errores de conexión consecutivos que abren el circuito
+         */
+        private Integer fallosParaAbrir = 5;
+
+        /**
+         * Segundos con el circuito abierto antes de enviar una solicitud de prueba
+         */
+        private Long aperturaSegundos = 30L;
+    }
+
+    /**
+     * Parámetros del poller que consulta el resultado de los lotes asíncronos
+     */
+    @Getter
+    @Setter
+    public static class Poller {
+
+        /**
+         * Habilitar la consulta de lotes en esta instancia
+         */
+        private Boolean enabled = true;
+
+        /**
+         * Intervalo de revisión de lotes vencidos para consulta en milisegundos
+         */
+        private Long intervaloMs = 15000L;
+
+        /**
+         * Consultas simultáneas a SIFEN como máximo
+         */
+        private Integer maxConcurrentes = 2;
+
+        /**
+         * Espera desde el envío del lote hasta la primera consulta en segundos
+         */
+        private Long esperaInicialSegundos = 60L;
+
+        /**
+         * Espera base entre consultas de un lote sin resultado (se duplica en cada consulta)
+         */
+        private Long backoffSegundos = 30L;
+
+        /**
+         * Espera máxima entre consultas de un mismo lote en segundos
+         */
+        private Long backoffMaximoSegundos = 900L;
+
+        /**
+         * Horas tras el envío en que se deja de consultar el lote (SIFEN conserva los lotes 48 h)
+         */
+        private Long vencimientoHoras = 48L;
+
+        /**
+         * Minutos sin resultado tras los que una factura fuera de un lote en consulta se consulta por CDC
+         */
+        private Long consultaIndividualMinutos = 60L;
+
+        /**
+         * Facturas consultadas por CDC como máximo en cada ciclo
+         */
+        private Integer maxConsultasIndividuales = 20;
+    }
 }
@@ -0,0 +1,51 @@
+package com.logistic.control.config;
+
+import org.hibernate.MappingException;
+import org.hibernate.boot.model.naming.Identifier;
+import org.hibernate.boot.model.relational.QualifiedName;
+import org.hibernate.boot.model.relational.QualifiedSequenceName;
+import org.hibernate.engine.jdbc.env.spi.JdbcEnvironment;
+import org.hibernate.id.PersistentIdentifierGenerator;
+import org.hibernate.id.enhanced.ImplicitDatabaseObjectNamingStrategy;
+import org.hibernate.id.enhanced.StandardNamingStrategy;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+import org.hibernate.service.ServiceRegistry;
+
+import java.util.Map;
+
+/**
+ * Nombra la secuencia implícita de cada entidad como "{tabla}_id_seq",
+ * la misma que PostgreSQL crea para las columnas BIGSERIAL.
+ * Así los IDs generados por Hibernate continúan la numeración existente de cada tabla.
+ */
+public class TablaIdSequenceNamingStrategy implements ImplicitDatabaseObjectNamingStrategy {
+
+    private static final String SUFIJO_SECUENCIA = "_id_seq";
+
+    private final StandardNamingStrategy standard = new StandardNamingStrategy();
+
+    @Override
+    public QualifiedName determineSequenceName(Identifier catalogName,
+                                               Identifier schemaName,
+                                               Map<?, ?> configValues,
+                                               ServiceRegistry serviceRegistry) {
+        String tabla = ConfigurationHelper.getString(PersistentIdentifierGenerator.TABLE, configValues);
+        if (tabla == null || tabla.isBlank()) {
+            throw new MappingException("No se pudo determinar la tabla para la secuencia implícita");
+        }
+
+        JdbcEnvironment jdbcEnvironment = serviceRegistry.requireService(JdbcEnvironment.class);
+        return new QualifiedSequenceName(
+                catalogName,
+                schemaName,
+                jdbcEnvironment.getIdentifierHelper().toIdentifier(Identifier.toIdentifier(tabla).getText() + SUFIJO_SECUENCIA));
+    }
+
+    @Override
+    public QualifiedName determineTableName(Identifier catalogName,
+                                            Identifier schemaName,
+                                            Map<?, ?> configValues,
+                                            ServiceRegistry serviceRegistry) {
+        return standard.determineTableName(catalogName, schemaName, configValues, serviceRegistry);
+    }
+}
@@ -7,6 +7,7 @@ import com.logistic.control.entity.Usuario;
 import com.logistic.control.repository.UsuarioRepository;
 import com.logistic.control.security.InputSanitizer;
 import com.logistic.control.security.JwtService;
+import com.logistic.control.security.ParsedToken;
 import com.logistic.control.security.RateLimitService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -215,10 +216,9 @@ public class AuthController {
             throw new RuntimeException("Token de refresh inválido");
         }
 
-        String token = refreshToken.substring(7);
-        String username = jwtService.extractUsername(token);
+        ParsedToken token = jwtService.parse(refreshToken.substring(7));
 
-        Usuario usuario = usuarioRepository.findByUsername(username)
+        Usuario usuario = usuarioRepository.findByUsername(token.getSubject())
                 .orElseThrow(() -> new RuntimeException("Usuario no encontrado"));
 
         if (!jwtService.isTokenValid(token, usuario)) {
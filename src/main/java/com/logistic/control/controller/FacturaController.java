@@ -2,7 +2,6 @@ package com.logistic.control.controller;
 
 import com.logistic.control.dto.request.FacturaRequest;
 import com.logistic.control.dto.request.FacturaParcialRequest;
-import com.logistic.control.dto.request.SifenDocumentoRequest;
 import com.logistic.control.dto.response.*;
 import com.logistic.control.entity.Cliente;
 import com.logistic.control.entity.DetallePedido;
@@ -13,16 +12,19 @@ import com.logistic.control.repository.ClienteRepository;
 import com.logistic.control.repository.FacturaRepository;
 import com.logistic.control.repository.PedidoRepository;
 import com.logistic.control.service.FacturaService;
+import com.logistic.control.service.SifenEnvioService;
 import com.logistic.control.service.SifenService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -41,14 +43,29 @@ public class FacturaController {
     private final PedidoRepository pedidoRepository;
     private final FacturaService facturaService;
     private final SifenService sifenService;
+    private final SifenEnvioService sifenEnvioService;
 
     @GetMapping
-    public ResponseEntity<Page<FacturaResponse>> listarFacturas(Pageable pageable) {
-        Page<Factura> facturas = facturaRepository.findAll(pageable);
-        Page<FacturaResponse> response = facturas.map(this::toResponse);
+    public ResponseEntity<Page<FacturaResponse>> listarFacturas(
+            Pageable pageable,
+            @RequestParam(defaultValue = "false") boolean incluirItems) {
+        Page<FacturaResponse> response = facturaService.listarFacturas(pageable, incluirItems);
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * Listado por cursor para paginación profunda (keyset sobre fechaEmision, id).
+     * Para la página siguiente se envían cursorFechaEmision y cursorId de la respuesta anterior.
+     */
+    @GetMapping("/cursor")
+    public ResponseEntity<FacturaCursorResponse> listarPorCursor(
+            @RequestParam(required = false) Long clienteId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime cursorFechaEmision,
+            @RequestParam(required = false) Long cursorId,
+            @RequestParam(defaultValue = "20") int size) {
+        return ResponseEntity.ok(facturaService.listarPorCursor(clienteId, cursorFechaEmision, cursorId, size));
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<FacturaResponse> obtenerFactura(@PathVariable Long id) {
         return facturaRepository.findById(id)
@@ -74,7 +91,7 @@ public class FacturaController {
     public ResponseEntity<List<FacturaResponse>> listarPorCliente(@PathVariable Long clienteId) {
         List<Factura> facturas = facturaRepository.findByClienteId(clienteId);
         List<FacturaResponse> response = facturas.stream()
-                .map(this::toResponse)
+                .map(this::toResponseListado)
                 .collect(Collectors.toList());
         return ResponseEntity.ok(response);
     }
@@ -83,7 +100,7 @@ public class FacturaController {
     public ResponseEntity<List<FacturaResponse>> listarPorEstado(@PathVariable EstadoFactura estado) {
         List<Factura> facturas = facturaRepository.findByEstado(estado);
         List<FacturaResponse> response = facturas.stream()
-                .map(this::toResponse)
+                .map(this::toResponseListado)
                 .collect(Collectors.toList());
         return ResponseEntity.ok(response);
     }
@@ -92,7 +109,7 @@ public class FacturaController {
     public ResponseEntity<List<FacturaResponse>> listarPendientes() {
         List<Factura> facturas = facturaRepository.findByEstado(EstadoFactura.GENERADA);
         List<FacturaResponse> response = facturas.stream()
-                .map(this::toResponse)
+                .map(this::toResponseListado)
                 .collect(Collectors.toList());
         return ResponseEntity.ok(response);
     }
@@ -101,7 +118,7 @@ public class FacturaController {
     public ResponseEntity<List<FacturaResponse>> listarVencidas() {
         List<Factura> facturas = facturaRepository.findFacturasVencidas(LocalDate.now());
         List<FacturaResponse> response = facturas.stream()
-                .map(this::toResponse)
+                .map(this::toResponseListado)
                 .collect(Collectors.toList());
         return ResponseEntity.ok(response);
     }
@@ -114,7 +131,7 @@ public class FacturaController {
                 desde.atStartOfDay(),
                 hasta.atTime(23, 59, 59));
         List<FacturaResponse> response = facturas.stream()
-                .map(this::toResponse)
+                .map(this::toResponseListado)
                 .collect(Collectors.toList());
         return ResponseEntity.ok(response);
     }
@@ -289,20 +306,21 @@ public class FacturaController {
     // ============= ENDPOINTS SIFEN =============
 
     /**
-     * Envía una factura a SIFEN para su procesamiento
+     * Encola una factura para su envío a SIFEN y responde de inmediato (202).
+     * El resultado se consulta en GET /facturas/{id}/envio-sifen.
      */
     @PostMapping("/{id}/enviar-sifen")
-    public ResponseEntity<SifenResponse> enviarASifen(
-            @PathVariable Long id,
-            @RequestBody(required = false) SifenDocumentoRequest request) {
-        
-        if (request == null) {
-            request = new SifenDocumentoRequest();
-            request.setFacturaId(id);
-        }
-        
-        SifenResponse response = sifenService.enviarFacturaASifen(id, request);
-        return ResponseEntity.ok(response);
+    public ResponseEntity<SifenEnvioResponse> enviarASifen(@PathVariable Long id) {
+        SifenEnvioResponse response = sifenEnvioService.encolarEnvio(id);
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
+    }
+
+    /**
+     * Estado del último envío asíncrono de una factura a SIFEN
+     */
+    @GetMapping("/{id}/envio-sifen")
+    public ResponseEntity<SifenEnvioResponse> obtenerEnvioSifen(@PathVariable Long id) {
+        return ResponseEntity.ok(sifenEnvioService.consultarEnvio(id));
     }
 
     /**
@@ -314,6 +332,14 @@ public class FacturaController {
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * Documentos enviados a SIFEN que aún esperan resultado y antigüedad del más viejo
+     */
+    @GetMapping("/sifen/pendientes")
+    public ResponseEntity<SifenPendientesResponse> obtenerPendientesSifen() {
+        return ResponseEntity.ok(sifenService.obtenerPendientes());
+    }
+
     /**
      * Consulta el estado de una factura en SIFEN por CDC
      */
@@ -414,6 +440,15 @@ public class FacturaController {
     // ============= FIN ENDPOINTS SIFEN =============
 
     private FacturaResponse toResponse(Factura factura) {
+        FacturaResponse response = toResponseListado(factura);
+        response.setQrCode(factura.getQrCode());
+        return response;
+    }
+
+    /**
+     * Respuesta sin el QR, que vive en factura_documentos: los listados no leen esa tabla
+     */
+    private FacturaResponse toResponseListado(Factura factura) {
         return FacturaResponse.builder()
                 .id(factura.getId())
                 .numeroFactura(factura.getNumeroFactura())
@@ -437,7 +472,6 @@ public class FacturaController {
                 .fechaAprobacionSifen(factura.getFechaAprobacionSifen())
                 .codigoEstadoSifen(factura.getCodigoEstadoSifen())
                 .mensajeSifen(factura.getMensajeSifen())
-                .qrCode(factura.getQrCode())
                 .urlKude(factura.getUrlKude())
                 .saldo(factura.getSaldo())
                 .pagado(factura.getPagado())
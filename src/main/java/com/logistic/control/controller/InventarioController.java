@@ -1,8 +1,11 @@
 package com.logistic.control.controller;
 
 import com.logistic.control.dto.request.InventarioRequest;
+import com.logistic.control.dto.response.IngresoMasivoResponse;
 import com.logistic.control.dto.response.InventarioResponse;
+import com.logistic.control.dto.response.InventarioResumenResponse;
 import com.logistic.control.enums.EstadoInventario;
+import com.logistic.control.service.InventarioIngresoMasivoService;
 import com.logistic.control.service.InventarioService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
@@ -11,11 +14,13 @@ import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.InputStream;
 import java.util.List;
 
 /**
@@ -29,6 +34,7 @@ import java.util.List;
 public class InventarioController {
 
     private final InventarioService inventarioService;
+    private final InventarioIngresoMasivoService ingresoMasivoService;
 
     @Operation(summary = "Listar todo el inventario")
     @PreAuthorize("hasAnyRole('ADMIN', 'OPERADOR', 'DEPOSITO')")
@@ -78,6 +84,32 @@ public class InventarioController {
         return ResponseEntity.ok(inventario);
     }
 
+    @Operation(summary = "Listar inventario próximo a vencer")
+    @PreAuthorize("hasAnyRole('ADMIN', 'OPERADOR', 'DEPOSITO')")
+    @GetMapping("/proximo-a-vencer")
+    public ResponseEntity<Page<InventarioResumenResponse>> listarProximoAVencer(
+            @RequestParam(defaultValue = "30") int dias,
+            Pageable pageable) {
+        Page<InventarioResumenResponse> inventario = inventarioService.listarProximoAVencer(dias, pageable);
+        return ResponseEntity.ok(inventario);
+    }
+
+    @Operation(summary = "Listar inventario vencido")
+    @PreAuthorize("hasAnyRole('ADMIN', 'OPERADOR', 'DEPOSITO')")
+    @GetMapping("/vencido")
+    public ResponseEntity<Page<InventarioResumenResponse>> listarVencido(Pageable pageable) {
+        Page<InventarioResumenResponse> inventario = inventarioService.listarVencido(pageable);
+        return ResponseEntity.ok(inventario);
+    }
+
+    @Operation(summary = "Listar inventario con baja rotación")
+    @PreAuthorize("hasAnyRole('ADMIN', 'OPERADOR', 'DEPOSITO')")
+    @GetMapping("/baja-rotacion")
+    public ResponseEntity<Page<InventarioResumenResponse>> listarConBajaRotacion(Pageable pageable) {
+        Page<InventarioResumenResponse> inventario = inventarioService.listarConBajaRotacion(pageable);
+        return ResponseEntity.ok(inventario);
+    }
+
     @Operation(summary = "Buscar inventario por ubicación")
     @PreAuthorize("hasAnyRole('ADMIN', 'OPERADOR', 'DEPOSITO')")
     @GetMapping("/ubicacion/{ubicacion}")
@@ -94,6 +126,20 @@ public class InventarioController {
         return ResponseEntity.status(HttpStatus.CREATED).body(inventario);
     }
 
+    @Operation(summary = "Ingreso masivo de inventario desde CSV o NDJSON",
+               description = "Procesa el archivo en streaming y por bloques; retorna los errores por fila")
+    @PreAuthorize("hasAnyRole('ADMIN', 'OPERADOR', 'DEPOSITO')")
+    @PostMapping(value = "/ingreso-masivo", consumes = {"text/csv", "application/x-ndjson"})
+    public ResponseEntity<IngresoMasivoResponse> ingresoMasivo(
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+            InputStream contenido) {
+        InventarioIngresoMasivoService.Formato formato = contentType.startsWith("text/csv")
+                ? InventarioIngresoMasivoService.Formato.CSV
+                : InventarioIngresoMasivoService.Formato.NDJSON;
+        IngresoMasivoResponse resultado = ingresoMasivoService.procesar(contenido, formato);
+        return ResponseEntity.ok(resultado);
+    }
+
     @Operation(summary = "Actualizar inventario")
     @PreAuthorize("hasAnyRole('ADMIN', 'OPERADOR', 'DEPOSITO')")
     @PutMapping("/{id}")
@@ -4,8 +4,11 @@ import com.logistic.control.dto.DeleteRequest;
 import com.logistic.control.dto.request.PedidoRequest;
 import com.logistic.control.dto.response.PedidoResponse;
 import com.logistic.control.enums.EstadoPedido;
+import com.logistic.control.enums.EstadoTrabajoReporte;
 import com.logistic.control.service.PedidoReportService;
 import com.logistic.control.service.PedidoService;
+import com.logistic.control.service.ReportRenderingService;
+import com.logistic.control.service.ReportRenderingService.TrabajoReporte;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
@@ -13,6 +16,7 @@ import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpHeaders;
@@ -36,6 +40,7 @@ public class PedidoController {
 
     private final PedidoService pedidoService;
     private final PedidoReportService pedidoReportService;
+    private final ReportRenderingService reportRenderingService;
 
     @Operation(summary = "Listar todos los pedidos", description = "Obtiene una lista paginada de todos los pedidos")
     @PreAuthorize("hasAnyRole('ADMIN', 'OPERADOR', 'DEPOSITO')")
@@ -148,20 +153,26 @@ public class PedidoController {
     @Operation(summary = "Generar reporte PDF del pedido")
     @PreAuthorize("hasAnyRole('ADMIN', 'OPERADOR', 'CLIENTE')")
     @GetMapping("/{id}/pdf")
-    public ResponseEntity<byte[]> generarPDF(@PathVariable Long id) {
-        try {
-            byte[] pdfBytes = pedidoReportService.generatePedidoReport(id);
-
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_PDF);
-            headers.setContentDispositionFormData("inline", "pedido_" + id + ".pdf");
-            headers.setContentLength(pdfBytes.length);
-
-            return ResponseEntity.ok()
-                    .headers(headers)
-                    .body(pdfBytes);
-        } catch (Exception e) {
+    public ResponseEntity<?> generarPDF(@PathVariable Long id) {
+        TrabajoReporte trabajo = reportRenderingService.renderizar("pedido", "pedido_" + id + ".pdf",
+                salida -> pedidoReportService.generatePedidoReport(id, salida));
+
+        if (trabajo.getEstado() == EstadoTrabajoReporte.FALLIDO) {
             return ResponseEntity.internalServerError().build();
         }
+        if (trabajo.getEstado() != EstadoTrabajoReporte.COMPLETADO) {
+            return ResponseEntity.status(HttpStatus.ACCEPTED)
+                    .header(HttpHeaders.LOCATION, "/reportes/trabajos/" + trabajo.getId())
+                    .body(reportRenderingService.toResponse(trabajo));
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_PDF);
+        headers.setContentDispositionFormData("inline", trabajo.getNombreArchivo());
+        headers.setContentLength(trabajo.getTamanoBytes());
+
+        return ResponseEntity.ok()
+                .headers(headers)
+                .body(new FileSystemResource(trabajo.getArchivo()));
     }
 }
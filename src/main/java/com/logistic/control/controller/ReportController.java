@@ -1,19 +1,26 @@
 package com.logistic.control.controller;
 
+import com.logistic.control.dto.response.TrabajoReporteResponse;
+import com.logistic.control.enums.EstadoTrabajoReporte;
 import com.logistic.control.service.*;
+import com.logistic.control.service.ReportRenderingService.TrabajoReporte;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
 /**
- * Controller centralizado para generación de reportes PDF
+ * Controller centralizado para generación de reportes PDF.
+ * Los reportes se renderizan en ReportRenderingService: si tardan más que la espera síncrona
+ * se responde 202 con el trabajo, que se consulta en /reportes/trabajos/{id}.
  */
 @Slf4j
 @RestController
@@ -27,69 +34,93 @@ public class ReportController {
     private final FacturaReportService facturaReportService;
     private final ContenedorReportService contenedorReportService;
     private final InventarioReportService inventarioReportService;
+    private final ReportRenderingService reportRenderingService;
 
     @Operation(summary = "Generar reporte PDF de pedido")
     @PreAuthorize("hasAnyRole('ADMIN', 'OPERADOR', 'CLIENTE')")
     @GetMapping("/pedidos/{id}")
-    public ResponseEntity<byte[]> generarReportePedido(@PathVariable Long id) {
-        try {
-            byte[] pdfBytes = pedidoReportService.generatePedidoReport(id);
-            return createPdfResponse(pdfBytes, "pedido_" + id + ".pdf");
-        } catch (Exception e) {
-            log.error("Error generando reporte de pedido: {}", id, e);
-            return ResponseEntity.internalServerError().build();
-        }
+    public ResponseEntity<?> generarReportePedido(@PathVariable Long id) {
+        return responder(reportRenderingService.renderizar("pedido", "pedido_" + id + ".pdf",
+                salida -> pedidoReportService.generatePedidoReport(id, salida)));
     }
 
     @Operation(summary = "Generar reporte PDF de factura")
     @PreAuthorize("hasAnyRole('ADMIN', 'OPERADOR', 'FINANZAS')")
     @GetMapping("/facturas/{id}")
-    public ResponseEntity<byte[]> generarReporteFactura(@PathVariable Long id) {
-        try {
-            byte[] pdfBytes = facturaReportService.generateFacturaReport(id);
-            return createPdfResponse(pdfBytes, "factura_" + id + ".pdf");
-        } catch (Exception e) {
-            log.error("Error generando reporte de factura: {}", id, e);
-            return ResponseEntity.internalServerError().build();
-        }
+    public ResponseEntity<?> generarReporteFactura(@PathVariable Long id) {
+        return responder(reportRenderingService.renderizar("factura", "factura_" + id + ".pdf",
+                salida -> facturaReportService.generateFacturaReport(id, salida)));
     }
 
     @Operation(summary = "Generar reporte PDF de contenedor")
     @PreAuthorize("hasAnyRole('ADMIN', 'OPERADOR', 'DEPOSITO')")
     @GetMapping("/contenedores/{id}")
-    public ResponseEntity<byte[]> generarReporteContenedor(@PathVariable Long id) {
-        try {
-            byte[] pdfBytes = contenedorReportService.generateContenedorReport(id);
-            return createPdfResponse(pdfBytes, "contenedor_" + id + ".pdf");
-        } catch (Exception e) {
-            log.error("Error generando reporte de contenedor: {}", id, e);
-            return ResponseEntity.internalServerError().build();
-        }
+    public ResponseEntity<?> generarReporteContenedor(@PathVariable Long id) {
+        return responder(reportRenderingService.renderizar("contenedor", "contenedor_" + id + ".pdf",
+                salida -> contenedorReportService.generateContenedorReport(id, salida)));
     }
 
     @Operation(summary = "Generar reporte PDF de inventario")
     @PreAuthorize("hasAnyRole('ADMIN', 'OPERADOR', 'DEPOSITO')")
     @GetMapping("/inventario")
-    public ResponseEntity<byte[]> generarReporteInventario(
+    public ResponseEntity<?> generarReporteInventario(
             @RequestParam(required = false) String categoria) {
-        try {
-            byte[] pdfBytes = inventarioReportService.generateInventarioReport(categoria);
-            String filename = categoria != null ? "inventario_" + categoria + ".pdf" : "inventario_completo.pdf";
-            return createPdfResponse(pdfBytes, filename);
-        } catch (Exception e) {
-            log.error("Error generando reporte de inventario", e);
-            return ResponseEntity.internalServerError().build();
+        return responder(reportRenderingService.renderizar("inventario", nombreInventario(categoria),
+                salida -> inventarioReportService.generateInventarioReport(categoria, salida)));
+    }
+
+    @Operation(summary = "Solicitar reporte PDF de inventario en segundo plano")
+    @PreAuthorize("hasAnyRole('ADMIN', 'OPERADOR', 'DEPOSITO')")
+    @PostMapping("/inventario/trabajos")
+    public ResponseEntity<TrabajoReporteResponse> solicitarReporteInventario(
+            @RequestParam(required = false) String categoria) {
+        TrabajoReporte trabajo = reportRenderingService.encolar("inventario", nombreInventario(categoria),
+                salida -> inventarioReportService.generateInventarioReport(categoria, salida));
+        return aceptado(trabajo);
+    }
+
+    @Operation(summary = "Consultar estado de un trabajo de reporte")
+    @PreAuthorize("isAuthenticated()")
+    @GetMapping("/trabajos/{id}")
+    public ResponseEntity<TrabajoReporteResponse> obtenerTrabajo(@PathVariable String id) {
+        return ResponseEntity.ok(reportRenderingService.toResponse(reportRenderingService.obtener(id)));
+    }
+
+    @Operation(summary = "Descargar el PDF de un trabajo de reporte")
+    @PreAuthorize("isAuthenticated()")
+    @GetMapping("/trabajos/{id}/pdf")
+    public ResponseEntity<?> descargarTrabajo(@PathVariable String id) {
+        return responder(reportRenderingService.obtener(id));
+    }
+
+    private ResponseEntity<?> responder(TrabajoReporte trabajo) {
+        if (trabajo.getEstado() == EstadoTrabajoReporte.COMPLETADO) {
+            return createPdfResponse(trabajo);
+        }
+        if (trabajo.getEstado() == EstadoTrabajoReporte.FALLIDO) {
+            return ResponseEntity.internalServerError().body(reportRenderingService.toResponse(trabajo));
         }
+        return aceptado(trabajo);
+    }
+
+    private ResponseEntity<TrabajoReporteResponse> aceptado(TrabajoReporte trabajo) {
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .header(HttpHeaders.LOCATION, "/reportes/trabajos/" + trabajo.getId())
+                .body(reportRenderingService.toResponse(trabajo));
+    }
+
+    private String nombreInventario(String categoria) {
+        return categoria != null ? "inventario_" + categoria + ".pdf" : "inventario_completo.pdf";
     }
 
-    private ResponseEntity<byte[]> createPdfResponse(byte[] pdfBytes, String filename) {
+    private ResponseEntity<FileSystemResource> createPdfResponse(TrabajoReporte trabajo) {
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_PDF);
-        headers.setContentDispositionFormData("inline", filename);
-        headers.setContentLength(pdfBytes.length);
+        headers.setContentDispositionFormData("inline", trabajo.getNombreArchivo());
+        headers.setContentLength(trabajo.getTamanoBytes());
 
         return ResponseEntity.ok()
                 .headers(headers)
-                .body(pdfBytes);
+                .body(new FileSystemResource(trabajo.getArchivo()));
     }
 }
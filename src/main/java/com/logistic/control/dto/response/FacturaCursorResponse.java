@@ -0,0 +1,25 @@
+package com.logistic.control.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Página de facturas paginada por cursor (fechaEmision, id).
+ * Para pedir la página siguiente se envían cursorFechaEmision y cursorId.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FacturaCursorResponse {
+
+    private List<FacturaResponse> facturas;
+    private LocalDateTime cursorFechaEmision;
+    private Long cursorId;
+    private boolean hasNext;
+}
@@ -0,0 +1,37 @@
+package com.logistic.control.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Resultado de un ingreso masivo de inventario
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class IngresoMasivoResponse {
+
+    private int totalFilas;
+    private int filasCreadas;
+    private int filasConError;
+
+    /**
+     * Detalle de errores por fila (limitado; filasConError tiene el total)
+     */
+    @Builder.Default
+    private List<ErrorFila> errores = new ArrayList<>();
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ErrorFila {
+        private long fila;
+        private String mensaje;
+    }
+}
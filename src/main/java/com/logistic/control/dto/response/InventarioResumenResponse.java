@@ -0,0 +1,34 @@
+package com.logistic.control.dto.response;
+
+import com.logistic.control.enums.EstadoInventario;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Vista resumida de inventario para listados de vencimiento y rotación.
+ * Se construye directamente desde la consulta JPQL, sin hidratar entidades.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class InventarioResumenResponse {
+
+    private Long id;
+    private Long clienteId;
+    private String clienteNombre;
+    private Long productoId;
+    private String productoDescripcion;
+    private String ubicacionDeposito;
+    private String zona;
+    private String lote;
+    private Integer cantidad;
+    private Integer cantidadDisponible;
+    private EstadoInventario estado;
+    private LocalDateTime fechaEntrada;
+    private LocalDateTime fechaVencimiento;
+}
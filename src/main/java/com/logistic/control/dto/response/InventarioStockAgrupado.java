@@ -0,0 +1,25 @@
+package com.logistic.control.dto.response;
+
+import com.logistic.control.enums.EstadoInventario;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Stock de inventario agrupado por producto, zona y estado para el reporte de inventario.
+ * Se construye directamente desde la consulta JPQL agregada, sin hidratar lotes ni productos.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class InventarioStockAgrupado {
+
+    private Long productoId;
+    private String productoDescripcion;
+    private String productoCodigo;
+    private String zona;
+    private EstadoInventario estado;
+    private Long cantidad;
+    private Long cantidadReservada;
+    private Double valorUnitario;
+}
@@ -0,0 +1,39 @@
+package com.logistic.control.dto.response;
+
+import com.logistic.control.enums.EstadoEnvioSifen;
+import com.logistic.control.enums.EstadoFactura;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Estado de un envío asíncrono de factura a SIFEN
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SifenEnvioResponse {
+
+    private Long envioId;
+    private Long facturaId;
+    private EstadoEnvioSifen estado;
+    private EstadoFactura estadoFactura;
+
+    /**
+     * La factura se emitió en contingencia y espera en la cola a que SIFEN esté disponible
+     */
+    private Boolean contingencia;
+
+    /**
+     * Intentos realizados y máximo permitido (1 + sifen.max-reintentos)
+     */
+    private Integer intentos;
+    private Integer maxIntentos;
+
+    private LocalDateTime proximoIntento;
+    private String codigoRespuesta;
+    private String ultimoError;
+    private LocalDateTime fechaCreacion;
+    private LocalDateTime fechaFinalizacion;
+}
@@ -0,0 +1,46 @@
+package com.logistic.control.dto.response;
+
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Documentos enviados a SIFEN que aún esperan resultado
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SifenPendientesResponse {
+
+    /**
+     * Facturas en estado ENVIADA_SIFEN
+     */
+    private Long documentosPendientes;
+
+    /**
+     * Lotes que el poller sigue consultando
+     */
+    private Long lotesPendientes;
+
+    /**
+     * Envíos individuales todavía en la cola (pendientes o en proceso)
+     */
+    private Long enviosEnCola;
+
+    /**
+     * Facturas emitidas en contingencia que todavía no se transmitieron
+     */
+    private Long documentosEnContingencia;
+
+    /**
+     * Estado del circuito hacia SIFEN: CERRADO, ABIERTO o SEMIABIERTO
+     */
+    private String circuitoSifen;
+
+    /**
+     * Envío más antiguo sin resultado y su antigüedad en segundos
+     */
+    private LocalDateTime fechaEnvioMasAntigua;
+    private Long antiguedadMaximaSegundos;
+}
@@ -60,6 +60,14 @@ public class SifenResponse {
                (codigo != null && (codigo.equals("0100") || codigo.equals("0200")));
     }
 
+    /**
+     * Indica si no hubo respuesta válida de SIFEN (error de comunicación o de parseo, código 9999).
+     * A diferencia de un rechazo, el envío puede reintentarse.
+     */
+    public boolean isErrorComunicacion() {
+        return "9999".equals(codigo);
+    }
+
     /**
      * Indica si el documento fue rechazado
      */
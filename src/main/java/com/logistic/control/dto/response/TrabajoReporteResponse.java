@@ -0,0 +1,30 @@
+package com.logistic.control.dto.response;
+
+import com.logistic.control.enums.EstadoTrabajoReporte;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Estado de un trabajo de renderizado de reporte PDF
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TrabajoReporteResponse {
+
+    private String id;
+    private String tipo;
+    private EstadoTrabajoReporte estado;
+    private String nombreArchivo;
+    private Long tamanoBytes;
+    private String error;
+    private LocalDateTime fechaCreacion;
+    private LocalDateTime fechaFinalizacion;
+
+    /**
+     * URL de descarga del PDF, disponible al completarse
+     */
+    private String urlResultado;
+}
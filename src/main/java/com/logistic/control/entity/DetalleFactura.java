@@ -19,7 +19,7 @@ import lombok.*;
 public class DetalleFactura {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE)
     private Long id;
 
     @NotNull(message = "Factura es requerida")
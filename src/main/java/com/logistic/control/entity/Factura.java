@@ -5,6 +5,7 @@ import com.logistic.control.enums.TipoFactura;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.NotNull;
 import lombok.*;
+import org.hibernate.annotations.BatchSize;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -21,7 +22,8 @@ import java.util.List;
     @Index(name = "idx_factura_cdc", columnList = "cdc"),
     @Index(name = "idx_factura_cliente", columnList = "cliente_id"),
     @Index(name = "idx_factura_estado", columnList = "estado"),
-    @Index(name = "idx_factura_fecha", columnList = "fecha_emision")
+    @Index(name = "idx_factura_fecha", columnList = "fecha_emision"),
+    @Index(name = "idx_factura_lote_sifen", columnList = "numero_lote_sifen")
 })
 @Getter
 @Setter
@@ -122,14 +124,12 @@ public class Factura extends BaseEntity {
     @Column(name = "fecha_aprobacion_sifen")
     private LocalDateTime fechaAprobacionSifen;
 
-    @Column(name = "xml_de", columnDefinition = "TEXT")
-    private String xmlDe; // XML del DE generado
+    @Column(name = "numero_lote_sifen", length = 50)
+    private String numeroLoteSifen; // Lote asíncrono en el que se envió el DE
 
-    @Column(name = "xml_de_firmado", columnDefinition = "TEXT")
-    private String xmlDeFirmado; // XML firmado con XAdES-BES
-
-    @Column(name = "respuesta_sifen", columnDefinition = "TEXT")
-    private String respuestaSifen;
+    @Column(name = "emitida_contingencia", nullable = false)
+    @Builder.Default
+    private Boolean emitidaContingencia = false; // DE emitido con iTipEmi = 2, pendiente de transmitir
 
     @Column(name = "codigo_estado_sifen", length = 10)
     private String codigoEstadoSifen; // Código de respuesta SIFEN
@@ -137,12 +137,16 @@ public class Factura extends BaseEntity {
     @Column(name = "mensaje_sifen", length = 500)
     private String mensajeSifen;
 
-    @Column(name = "qr_code", columnDefinition = "TEXT")
-    private String qrCode; // Base64 del QR para KuDE
-
     @Column(name = "url_kude", length = 500)
     private String urlKude; // URL para consulta pública
 
+    // XML del DE, XML firmado, respuesta SIFEN y QR: tabla aparte, comprimidos y con carga diferida
+    @OneToOne(fetch = FetchType.LAZY, cascade = CascadeType.ALL, orphanRemoval = true)
+    @JoinColumn(name = "documento_id")
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private FacturaDocumento documento;
+
     // Pagos
     @Column(name = "saldo")
     private Double saldo;
@@ -156,10 +160,12 @@ public class Factura extends BaseEntity {
 
     // Relaciones
     @OneToMany(mappedBy = "factura", cascade = CascadeType.ALL, orphanRemoval = true)
+    @BatchSize(size = 50)
     @Builder.Default
     private List<DetalleFactura> detalles = new ArrayList<>();
 
     @OneToMany(mappedBy = "factura", cascade = CascadeType.ALL)
+    @BatchSize(size = 50)
     @Builder.Default
     private List<Pago> pagos = new ArrayList<>();
 
@@ -211,10 +217,57 @@ public class Factura extends BaseEntity {
         this.cdc = cdc;
         this.estado = EstadoFactura.APROBADA;
         this.fechaAprobacionSifen = LocalDateTime.now();
-        this.respuestaSifen = respuesta;
+        setRespuestaSifen(respuesta);
         this.codigoEstadoSifen = "0100"; // Código de aprobación SIFEN
     }
 
+    public String getXmlDe() {
+        return documento != null ? documento.getXmlDe() : null;
+    }
+
+    public void setXmlDe(String xmlDe) {
+        if (xmlDe != null || documento != null) {
+            documento().setXmlDe(xmlDe);
+        }
+    }
+
+    public String getXmlDeFirmado() {
+        return documento != null ? documento.getXmlDeFirmado() : null;
+    }
+
+    public void setXmlDeFirmado(String xmlDeFirmado) {
+        if (xmlDeFirmado != null || documento != null) {
+            documento().setXmlDeFirmado(xmlDeFirmado);
+        }
+    }
+
+    public String getRespuestaSifen() {
+        return documento != null ? documento.getRespuestaSifen() : null;
+    }
+
+    public void setRespuestaSifen(String respuestaSifen) {
+        if (respuestaSifen != null || documento != null) {
+            documento().setRespuestaSifen(respuestaSifen);
+        }
+    }
+
+    public String getQrCode() {
+        return documento != null ? documento.getQrCode() : null;
+    }
+
+    public void setQrCode(String qrCode) {
+        if (qrCode != null || documento != null) {
+            documento().setQrCode(qrCode);
+        }
+    }
+
+    private FacturaDocumento documento() {
+        if (documento == null) {
+            documento = new FacturaDocumento();
+        }
+        return documento;
+    }
+
     public void rechazarSifen(String codigoError, String mensaje) {
         this.estado = EstadoFactura.RECHAZADA;
         this.codigoEstadoSifen = codigoError;
@@ -0,0 +1,39 @@
+package com.logistic.control.entity;
+
+import com.logistic.control.util.TextoComprimidoConverter;
+import jakarta.persistence.*;
+import lombok.*;
+
+/**
+ * Documentos pesados de una factura (XML del DE, XML firmado, respuesta SIFEN y QR), comprimidos.
+ * Viven fuera de la tabla facturas y se cargan de forma diferida, así los listados no leen XML.
+ */
+@Entity
+@Table(name = "factura_documentos")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class FacturaDocumento {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE)
+    private Long id;
+
+    @Convert(converter = TextoComprimidoConverter.class)
+    @Column(name = "xml_de")
+    private String xmlDe; // XML del DE generado
+
+    @Convert(converter = TextoComprimidoConverter.class)
+    @Column(name = "xml_de_firmado")
+    private String xmlDeFirmado; // XML firmado con XAdES-BES
+
+    @Convert(converter = TextoComprimidoConverter.class)
+    @Column(name = "respuesta_sifen")
+    private String respuestaSifen;
+
+    @Convert(converter = TextoComprimidoConverter.class)
+    @Column(name = "qr_code")
+    private String qrCode; // Base64 del QR para KuDE
+}
@@ -17,7 +17,9 @@ import java.time.LocalDateTime;
     @Index(name = "idx_inventario_cliente", columnList = "cliente_id"),
     @Index(name = "idx_inventario_producto", columnList = "producto_id"),
     @Index(name = "idx_inventario_estado", columnList = "estado"),
-    @Index(name = "idx_inventario_ubicacion", columnList = "ubicacion_deposito")
+    @Index(name = "idx_inventario_ubicacion", columnList = "ubicacion_deposito"),
+    @Index(name = "idx_inventario_estado_vencimiento", columnList = "estado, fecha_vencimiento"),
+    @Index(name = "idx_inventario_estado_entrada", columnList = "estado, fecha_entrada")
 })
 @Getter
 @Setter
@@ -106,6 +108,10 @@ public class Inventario extends BaseEntity {
     @Column(name = "observaciones", length = 1000)
     private String observaciones;
 
+    @Version
+    @Column(name = "version")
+    private Long version;
+
     // Helper methods
     public void entrada() {
         this.fechaEntrada = LocalDateTime.now();
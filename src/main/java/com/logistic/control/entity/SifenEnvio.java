@@ -0,0 +1,77 @@
+package com.logistic.control.entity;
+
+import com.logistic.control.enums.EstadoEnvioSifen;
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Envío pendiente de una factura a SIFEN (outbox).
+ * La solicitud HTTP solo registra la fila; los workers la reclaman con SKIP LOCKED,
+ * realizan el envío fuera de toda transacción y registran el resultado.
+ */
+@Entity
+@Table(name = "sifen_envios", indexes = {
+    @Index(name = "idx_sifen_envio_factura", columnList = "factura_id"),
+    @Index(name = "idx_sifen_envio_estado_proximo", columnList = "estado, proximo_intento")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SifenEnvio {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "factura_id", nullable = false)
+    private Factura factura;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "estado", nullable = false, length = 20)
+    @Builder.Default
+    private EstadoEnvioSifen estado = EstadoEnvioSifen.PENDIENTE;
+
+    @Column(name = "intentos", nullable = false)
+    @Builder.Default
+    private Integer intentos = 0;
+
+    @Column(name = "proximo_intento", nullable = false)
+    private LocalDateTime proximoIntento;
+
+    @Column(name = "bloqueado_hasta")
+    private LocalDateTime bloqueadoHasta; // Vencido = worker caído, la fila se puede reclamar otra vez
+
+    @Column(name = "codigo_respuesta", length = 10)
+    private String codigoRespuesta;
+
+    @Column(name = "ultimo_error", length = 1000)
+    private String ultimoError;
+
+    @Column(name = "fecha_creacion", nullable = false)
+    private LocalDateTime fechaCreacion;
+
+    @Column(name = "fecha_finalizacion")
+    private LocalDateTime fechaFinalizacion;
+
+    @PrePersist
+    protected void onCreate() {
+        if (fechaCreacion == null) {
+            fechaCreacion = LocalDateTime.now();
+        }
+        if (proximoIntento == null) {
+            proximoIntento = fechaCreacion;
+        }
+    }
+
+    /**
+     * Indica si el envío sigue en la cola (pendiente o tomado por un worker)
+     */
+    public boolean isActivo() {
+        return estado == EstadoEnvioSifen.PENDIENTE || estado == EstadoEnvioSifen.EN_PROCESO;
+    }
+}
@@ -0,0 +1,67 @@
+package com.logistic.control.entity;
+
+import com.logistic.control.enums.EstadoLoteSifen;
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Lote asíncrono enviado a SIFEN cuyo resultado todavía se consulta.
+ * SifenLotePoller lo reclama cuando vence proximaConsulta y espaciando las consultas con backoff exponencial.
+ */
+@Entity
+@Table(name = "sifen_lotes", indexes = {
+    @Index(name = "idx_sifen_lote_estado_proxima", columnList = "estado, proxima_consulta")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SifenLote {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE)
+    private Long id;
+
+    @Column(name = "numero_lote", nullable = false, unique = true, length = 50)
+    private String numeroLote;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "estado", nullable = false, length = 20)
+    @Builder.Default
+    private EstadoLoteSifen estado = EstadoLoteSifen.PENDIENTE;
+
+    @Column(name = "cantidad_documentos", nullable = false)
+    private Integer cantidadDocumentos;
+
+    @Column(name = "consultas", nullable = false)
+    @Builder.Default
+    private Integer consultas = 0;
+
+    @Column(name = "proxima_consulta", nullable = false)
+    private LocalDateTime proximaConsulta;
+
+    @Column(name = "codigo_respuesta", length = 10)
+    private String codigoRespuesta;
+
+    @Column(name = "ultimo_mensaje", length = 1000)
+    private String ultimoMensaje;
+
+    @Column(name = "fecha_envio", nullable = false)
+    private LocalDateTime fechaEnvio;
+
+    @Column(name = "fecha_conclusion")
+    private LocalDateTime fechaConclusion;
+
+    @PrePersist
+    protected void onCreate() {
+        if (fechaEnvio == null) {
+            fechaEnvio = LocalDateTime.now();
+        }
+        if (proximaConsulta == null) {
+            proximaConsulta = fechaEnvio;
+        }
+    }
+}
@@ -87,6 +87,13 @@ public class Usuario extends BaseEntity implements UserDetails {
     @Builder.Default
     private Integer failedLoginAttempts = 0;
 
+    /**
+     * Versión incluida en los JWT; al incrementarla los tokens emitidos antes dejan de ser válidos
+     */
+    @Column(name = "token_version", nullable = false)
+    @Builder.Default
+    private Long tokenVersion = 0L;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "cliente_id")
     private Cliente cliente; // Si es usuario cliente
@@ -142,6 +149,13 @@ public class Usuario extends BaseEntity implements UserDetails {
         return this.roles.contains(role);
     }
 
+    /**
+     * Invalidar los tokens emitidos hasta ahora (cambio de roles, contraseña, desactivación o bloqueo)
+     */
+    public void invalidarTokens() {
+        this.tokenVersion = (tokenVersion != null ? tokenVersion : 0L) + 1;
+    }
+
     public void recordSuccessfulLogin() {
         this.lastLogin = LocalDateTime.now();
         this.failedLoginAttempts = 0;
@@ -151,6 +165,7 @@ public class Usuario extends BaseEntity implements UserDetails {
         this.failedLoginAttempts++;
         if (this.failedLoginAttempts >= 5) {
             this.accountNonLocked = false;
+            invalidarTokens();
         }
     }
 
@@ -0,0 +1,21 @@
+package com.logistic.control.enums;
+
+/**
+ * Estados de un envío en la cola (outbox) de documentos hacia SIFEN
+ */
+public enum EstadoEnvioSifen {
+    PENDIENTE("Pendiente de envío"),
+    EN_PROCESO("En proceso"),
+    COMPLETADO("Completado"),
+    FALLIDO("Fallido");
+
+    private final String descripcion;
+
+    EstadoEnvioSifen(String descripcion) {
+        this.descripcion = descripcion;
+    }
+
+    public String getDescripcion() {
+        return descripcion;
+    }
+}
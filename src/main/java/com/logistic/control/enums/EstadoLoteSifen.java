@@ -0,0 +1,20 @@
+package com.logistic.control.enums;
+
+/**
+ * Estados de un lote enviado a SIFEN mientras se consulta su resultado
+ */
+public enum EstadoLoteSifen {
+    PENDIENTE("Pendiente de resultado"),
+    CONCLUIDO("Concluido"),
+    VENCIDO("Vencido sin resultado");
+
+    private final String descripcion;
+
+    EstadoLoteSifen(String descripcion) {
+        this.descripcion = descripcion;
+    }
+
+    public String getDescripcion() {
+        return descripcion;
+    }
+}
@@ -0,0 +1,21 @@
+package com.logistic.control.enums;
+
+/**
+ * Estados de un trabajo de renderizado de reporte PDF
+ */
+public enum EstadoTrabajoReporte {
+    EN_COLA("En cola"),
+    EN_PROCESO("En proceso"),
+    COMPLETADO("Completado"),
+    FALLIDO("Fallido");
+
+    private final String descripcion;
+
+    EstadoTrabajoReporte(String descripcion) {
+        this.descripcion = descripcion;
+    }
+
+    public String getDescripcion() {
+        return descripcion;
+    }
+}
@@ -1,6 +1,7 @@
 package com.logistic.control.exception;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.AccessDeniedException;
@@ -202,6 +203,31 @@ public class GlobalExceptionHandler {
         return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
     }
 
+    /**
+     * Maneja la saturación del servicio de reportes: 429 con Retry-After
+     */
+    @ExceptionHandler(ReportesSaturadosException.class)
+    public ResponseEntity<ErrorResponse> handleReportesSaturados(
+            ReportesSaturadosException ex,
+            HttpServletRequest request) {
+
+        String errorId = UUID.randomUUID().toString();
+        log.warn("Report rendering saturated [{}]: {}", errorId, ex.getMessage());
+
+        ErrorResponse response = ErrorResponse.builder()
+                .errorId(errorId)
+                .timestamp(LocalDateTime.now())
+                .status(HttpStatus.TOO_MANY_REQUESTS.value())
+                .error("Too Many Requests")
+                .message(ex.getMessage())
+                .path(request.getRequestURI())
+                .build();
+
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSegundos()))
+                .body(response);
+    }
+
     /**
      * Maneja IllegalArgumentException
      */
@@ -0,0 +1,19 @@
+package com.logistic.control.exception;
+
+/**
+ * Excepción lanzada cuando el servicio de reportes no admite más trabajos (cola llena o límite del rol).
+ * Se responde 429 con Retry-After.
+ */
+public class ReportesSaturadosException extends RuntimeException {
+
+    private final long retryAfterSegundos;
+
+    public ReportesSaturadosException(String message, long retryAfterSegundos) {
+        super(message);
+        this.retryAfterSegundos = retryAfterSegundos;
+    }
+
+    public long getRetryAfterSegundos() {
+        return retryAfterSegundos;
+    }
+}
@@ -8,6 +8,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -26,6 +27,12 @@ public interface DetalleFacturaRepository extends JpaRepository<DetalleFactura,
      */
     List<DetalleFactura> findByFacturaId(Long facturaId);
 
+    /**
+     * Busca los detalles de varias facturas en una sola consulta (evita N+1 en listados)
+     */
+    @Query("SELECT d FROM DetalleFactura d WHERE d.factura.id IN :facturaIds ORDER BY d.factura.id, d.id")
+    List<DetalleFactura> findByFacturaIdIn(@Param("facturaIds") Collection<Long> facturaIds);
+
     /**
      * Busca todos los detalles que contienen un producto específico
      */
@@ -1,15 +1,18 @@
 package com.logistic.control.repository;
 
+import com.logistic.control.dto.response.FacturaResumen;
 import com.logistic.control.entity.Factura;
 import com.logistic.control.enums.EstadoFactura;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -26,9 +29,63 @@ public interface FacturaRepository extends JpaRepository<Factura, Long> {
            countQuery = "SELECT COUNT(DISTINCT f) FROM Factura f WHERE f.isActive = true")
     Page<Factura> findAllWithCliente(Pageable pageable);
 
+    /**
+     * Página del listado sin ítems, proyectada desde las columnas de factura y cliente
+     */
+    @Query(value = "SELECT new com.logistic.control.dto.response.FacturaResumen(" +
+                   "f.id, f.numeroFactura, f.tipo, f.fechaEmision, f.fechaVencimiento, f.condicionPago, " +
+                   "c.id, c.razonSocial, c.ruc, f.subtotal, f.iva5, f.iva10, f.totalIva, f.total, f.descuento, " +
+                   "f.moneda, f.estado, f.cdc, f.timbrado, f.establecimiento, f.puntoExpedicion, " +
+                   "f.fechaAprobacionSifen, f.codigoEstadoSifen, f.mensajeSifen, f.urlKude, f.saldo, f.pagado, " +
+                   "f.observaciones, f.createdAt, f.updatedAt) " +
+                   "FROM Factura f LEFT JOIN f.cliente c WHERE f.isActive = true",
+           countQuery = "SELECT COUNT(f) FROM Factura f WHERE f.isActive = true")
+    Page<FacturaResumen> findResumenes(Pageable pageable);
+
     @Query("SELECT f FROM Factura f LEFT JOIN FETCH f.cliente LEFT JOIN FETCH f.detalles WHERE f.id = :id")
     Optional<Factura> findByIdWithCliente(@Param("id") Long id);
 
+    /**
+     * Facturas de un lote con cliente, detalles y documentos ya inicializados (todo lo que usan el generador XML
+     * y los hilos que firman en paralelo, que no pueden inicializar proxies sobre la sesión compartida)
+     */
+    @Query("SELECT DISTINCT f FROM Factura f LEFT JOIN FETCH f.cliente LEFT JOIN FETCH f.detalles " +
+           "LEFT JOIN FETCH f.documento WHERE f.id IN :ids")
+    List<Factura> findAllByIdWithClienteAndDetalles(@Param("ids") Collection<Long> ids);
+
+    @Query(value = "SELECT f FROM Factura f JOIN FETCH f.cliente WHERE f.cliente.id = :clienteId AND f.isActive = true",
+           countQuery = "SELECT COUNT(f) FROM Factura f WHERE f.cliente.id = :clienteId AND f.isActive = true")
+    Page<Factura> findPageByClienteId(@Param("clienteId") Long clienteId, Pageable pageable);
+
+    @Query(value = "SELECT f FROM Factura f JOIN FETCH f.cliente WHERE f.estado = :estado",
+           countQuery = "SELECT COUNT(f) FROM Factura f WHERE f.estado = :estado")
+    Page<Factura> findPageByEstado(@Param("estado") EstadoFactura estado, Pageable pageable);
+
+    @Query(value = "SELECT f FROM Factura f JOIN FETCH f.cliente WHERE f.fechaEmision BETWEEN :fechaInicio AND :fechaFin",
+           countQuery = "SELECT COUNT(f) FROM Factura f WHERE f.fechaEmision BETWEEN :fechaInicio AND :fechaFin")
+    Page<Factura> findPageByFechaEmisionBetween(@Param("fechaInicio") LocalDateTime fechaInicio,
+                                                @Param("fechaFin") LocalDateTime fechaFin,
+                                                Pageable pageable);
+
+    /**
+     * Paginación por keyset (seek) sobre (fecha_emision, id) en orden descendente.
+     * No usa OFFSET: el costo de una página profunda es el mismo que el de la primera.
+     */
+    @Query("SELECT f FROM Factura f JOIN FETCH f.cliente WHERE f.isActive = true AND " +
+           "(f.fechaEmision < :fechaEmision OR (f.fechaEmision = :fechaEmision AND f.id < :id)) " +
+           "ORDER BY f.fechaEmision DESC, f.id DESC")
+    Slice<Factura> findSiguientes(@Param("fechaEmision") LocalDateTime fechaEmision,
+                                  @Param("id") Long id,
+                                  Pageable pageable);
+
+    @Query("SELECT f FROM Factura f JOIN FETCH f.cliente WHERE f.cliente.id = :clienteId AND f.isActive = true AND " +
+           "(f.fechaEmision < :fechaEmision OR (f.fechaEmision = :fechaEmision AND f.id < :id)) " +
+           "ORDER BY f.fechaEmision DESC, f.id DESC")
+    Slice<Factura> findSiguientesByClienteId(@Param("clienteId") Long clienteId,
+                                             @Param("fechaEmision") LocalDateTime fechaEmision,
+                                             @Param("id") Long id,
+                                             Pageable pageable);
+
     Optional<Factura> findByNumeroFactura(String numeroFactura);
 
     Optional<Factura> findByCdc(String cdc);
@@ -69,9 +126,27 @@ public interface FacturaRepository extends JpaRepository<Factura, Long> {
     @Query("SELECT f FROM Factura f WHERE f.cdc IS NOT NULL AND f.estado = 'APROBADA'")
     List<Factura> findFacturasAprobadas();
 
+    /**
+     * Facturas enviadas sin resultado cuyo lote ya no se consulta (o que no pertenecen a un lote),
+     * recorridas por ID a partir de desdeId para que las que no se resuelven no bloqueen al resto
+     */
     @Query("SELECT f FROM Factura f WHERE f.estado = 'ENVIADA_SIFEN' AND " +
-           "f.fechaEnvioSifen < :fechaLimite")
-    List<Factura> findFacturasPendientesRespuesta(@Param("fechaLimite") LocalDateTime fechaLimite);
+           "f.fechaEnvioSifen < :fechaLimite AND f.id > :desdeId AND f.cdc IS NOT NULL AND " +
+           "(f.numeroLoteSifen IS NULL OR NOT EXISTS (SELECT 1 FROM SifenLote l " +
+           "WHERE l.numeroLote = f.numeroLoteSifen AND l.estado = 'PENDIENTE')) " +
+           "ORDER BY f.id")
+    List<Factura> findFacturasPendientesRespuesta(@Param("fechaLimite") LocalDateTime fechaLimite,
+                                                  @Param("desdeId") Long desdeId,
+                                                  Pageable pageable);
+
+    List<Factura> findByNumeroLoteSifen(String numeroLoteSifen);
+
+    long countByNumeroLoteSifenAndEstado(String numeroLoteSifen, EstadoFactura estado);
+
+    long countByEmitidaContingenciaAndEstado(Boolean emitidaContingencia, EstadoFactura estado);
+
+    @Query("SELECT MIN(f.fechaEnvioSifen) FROM Factura f WHERE f.estado = :estado")
+    LocalDateTime findFechaEnvioSifenMasAntigua(@Param("estado") EstadoFactura estado);
 
     @Query("SELECT COUNT(f) FROM Factura f WHERE f.estado = :estado")
     Long countByEstado(@Param("estado") EstadoFactura estado);
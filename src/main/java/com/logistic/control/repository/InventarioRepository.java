@@ -1,13 +1,25 @@
 package com.logistic.control.repository;
 
+import com.logistic.control.dto.response.InventarioResumenResponse;
+import com.logistic.control.dto.response.InventarioStockAgrupado;
 import com.logistic.control.entity.Inventario;
 import com.logistic.control.enums.EstadoInventario;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.AvailableHints;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * Repositorio para Inventario
@@ -61,4 +73,78 @@ public interface InventarioRepository extends JpaRepository<Inventario, Long> {
 
     @Query("SELECT SUM(i.cantidadDisponible) FROM Inventario i WHERE i.estado = 'DISPONIBLE'")
     Long countTotalDisponible();
+
+    @Query(value = "SELECT new com.logistic.control.dto.response.InventarioResumenResponse(" +
+                   "i.id, c.id, c.razonSocial, p.id, p.descripcion, i.ubicacionDeposito, i.zona, i.lote, " +
+                   "i.cantidad, i.cantidadDisponible, i.estado, i.fechaEntrada, i.fechaVencimiento) " +
+                   "FROM Inventario i LEFT JOIN i.cliente c JOIN i.producto p " +
+                   "WHERE i.estado IN :estados AND i.fechaVencimiento > :desde AND i.fechaVencimiento < :hasta",
+           countQuery = "SELECT COUNT(i) FROM Inventario i " +
+                        "WHERE i.estado IN :estados AND i.fechaVencimiento > :desde AND i.fechaVencimiento < :hasta")
+    Page<InventarioResumenResponse> findResumenByEstadoAndVencimientoBetween(
+            @Param("estados") Collection<EstadoInventario> estados,
+            @Param("desde") LocalDateTime desde,
+            @Param("hasta") LocalDateTime hasta,
+            Pageable pageable);
+
+    @Query(value = "SELECT new com.logistic.control.dto.response.InventarioResumenResponse(" +
+                   "i.id, c.id, c.razonSocial, p.id, p.descripcion, i.ubicacionDeposito, i.zona, i.lote, " +
+                   "i.cantidad, i.cantidadDisponible, i.estado, i.fechaEntrada, i.fechaVencimiento) " +
+                   "FROM Inventario i LEFT JOIN i.cliente c JOIN i.producto p " +
+                   "WHERE i.estado IN :estados AND i.fechaVencimiento < :fecha",
+           countQuery = "SELECT COUNT(i) FROM Inventario i " +
+                        "WHERE i.estado IN :estados AND i.fechaVencimiento < :fecha")
+    Page<InventarioResumenResponse> findResumenByEstadoAndVencimientoAntesDe(
+            @Param("estados") Collection<EstadoInventario> estados,
+            @Param("fecha") LocalDateTime fecha,
+            Pageable pageable);
+
+    @Query(value = "SELECT new com.logistic.control.dto.response.InventarioResumenResponse(" +
+                   "i.id, c.id, c.razonSocial, p.id, p.descripcion, i.ubicacionDeposito, i.zona, i.lote, " +
+                   "i.cantidad, i.cantidadDisponible, i.estado, i.fechaEntrada, i.fechaVencimiento) " +
+                   "FROM Inventario i LEFT JOIN i.cliente c JOIN i.producto p " +
+                   "WHERE i.estado = :estado AND i.fechaEntrada < :limite AND i.fechaSalida IS NULL",
+           countQuery = "SELECT COUNT(i) FROM Inventario i " +
+                        "WHERE i.estado = :estado AND i.fechaEntrada < :limite AND i.fechaSalida IS NULL")
+    Page<InventarioResumenResponse> findResumenByEstadoAndEntradaAntesDe(
+            @Param("estado") EstadoInventario estado,
+            @Param("limite") LocalDateTime limite,
+            Pageable pageable);
+
+    /**
+     * Stock activo agrupado por producto, zona y estado (sin lotes despachados), para el reporte de inventario.
+     * Se recorre con un cursor: debe consumirse dentro de una transacción y cerrarse al terminar.
+     */
+    @QueryHints(@QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("SELECT new com.logistic.control.dto.response.InventarioStockAgrupado(" +
+           "p.id, p.descripcion, p.codigo, i.zona, i.estado, SUM(i.cantidad), " +
+           "SUM(COALESCE(i.cantidadReservada, 0)), p.valorUnitario) " +
+           "FROM Inventario i JOIN i.producto p " +
+           "WHERE i.isActive = true AND i.estado <> com.logistic.control.enums.EstadoInventario.DESPACHADO " +
+           "GROUP BY p.id, p.descripcion, p.codigo, p.valorUnitario, i.zona, i.estado " +
+           "ORDER BY p.descripcion, p.id, i.zona, i.estado")
+    Stream<InventarioStockAgrupado> streamStockAgrupado();
+
+    @Query("SELECT i.id, i.fechaEntrada, i.cantidadDisponible, i.estado FROM Inventario i " +
+           "WHERE i.producto.id = :productoId ORDER BY i.fechaEntrada ASC NULLS LAST, i.id ASC")
+    List<Object[]> findLotesByProductoId(@Param("productoId") Long productoId);
+
+    @Query("SELECT i FROM Inventario i LEFT JOIN FETCH i.cliente JOIN FETCH i.producto WHERE i.id = :id")
+    Optional<Inventario> findByIdWithClienteAndProducto(@Param("id") Long id);
+
+    /**
+     * Reserva atómica: solo actualiza si el estado lo permite y hay cantidad disponible suficiente.
+     * Retorna 0 si la condición no se cumple, sin leer ni bloquear la fila previamente.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Inventario i SET " +
+           "i.cantidadReservada = COALESCE(i.cantidadReservada, 0) + :cantidad, " +
+           "i.cantidadDisponible = i.cantidadDisponible - :cantidad, " +
+           "i.estado = :reservado, i.version = i.version + 1, i.updatedAt = :ahora " +
+           "WHERE i.id = :id AND i.estado IN :estados AND i.cantidadDisponible >= :cantidad")
+    int reservarSiDisponible(@Param("id") Long id,
+                             @Param("cantidad") Integer cantidad,
+                             @Param("estados") Collection<EstadoInventario> estados,
+                             @Param("reservado") EstadoInventario reservado,
+                             @Param("ahora") LocalDateTime ahora);
 }
@@ -0,0 +1,62 @@
+package com.logistic.control.repository;
+
+import com.logistic.control.entity.SifenEnvio;
+import com.logistic.control.enums.EstadoEnvioSifen;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Repositorio de la cola (outbox) de envíos a SIFEN
+ */
+@Repository
+public interface SifenEnvioRepository extends JpaRepository<SifenEnvio, Long> {
+
+    /**
+     * Último envío registrado para una factura
+     */
+    Optional<SifenEnvio> findFirstByFacturaIdOrderByIdDesc(Long facturaId);
+
+    /**
+     * Envío activo (pendiente o en proceso) de una factura
+     */
+    Optional<SifenEnvio> findFirstByFacturaIdAndEstadoIn(Long facturaId, Collection<EstadoEnvioSifen> estados);
+
+    /**
+     * Bloquea filas listas para enviar sin esperar a las tomadas por otras instancias.
+     * Incluye envíos EN_PROCESO cuyo bloqueo venció (worker caído a mitad de un envío).
+     * Debe ejecutarse dentro de una transacción.
+     */
+    @Query(value = "SELECT id FROM sifen_envios " +
+            "WHERE (estado = 'PENDIENTE' AND proximo_intento <= :ahora) " +
+            "   OR (estado = 'EN_PROCESO' AND bloqueado_hasta < :ahora) " +
+            "ORDER BY proximo_intento, id " +
+            "LIMIT :limite " +
+            "FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<Long> bloquearListos(@Param("ahora") LocalDateTime ahora, @Param("limite") int limite);
+
+    /**
+     * Marca como tomados por un worker los envíos bloqueados con bloquearListos
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE SifenEnvio e SET e.estado = :estado, e.intentos = e.intentos + 1, e.bloqueadoHasta = :bloqueadoHasta " +
+            "WHERE e.id IN :ids")
+    int marcarTomados(@Param("ids") Collection<Long> ids,
+                      @Param("estado") EstadoEnvioSifen estado,
+                      @Param("bloqueadoHasta") LocalDateTime bloqueadoHasta);
+
+    /**
+     * Envíos con la factura cargada (evita una consulta extra por envío en el worker)
+     */
+    @Query("SELECT e FROM SifenEnvio e JOIN FETCH e.factura WHERE e.id = :id")
+    Optional<SifenEnvio> findByIdWithFactura(@Param("id") Long id);
+
+    long countByEstado(EstadoEnvioSifen estado);
+}
@@ -0,0 +1,43 @@
+package com.logistic.control.repository;
+
+import com.logistic.control.entity.SifenLote;
+import com.logistic.control.enums.EstadoLoteSifen;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Repositorio de lotes enviados a SIFEN pendientes de resultado
+ */
+@Repository
+public interface SifenLoteRepository extends JpaRepository<SifenLote, Long> {
+
+    Optional<SifenLote> findByNumeroLote(String numeroLote);
+
+    /**
+     * Bloquea los lotes cuya próxima consulta venció, sin esperar a los tomados por otras instancias.
+     * Debe ejecutarse dentro de una transacción.
+     */
+    @Query(value = "SELECT id FROM sifen_lotes " +
+            "WHERE estado = 'PENDIENTE' AND proxima_consulta <= :ahora " +
+            "ORDER BY proxima_consulta, id " +
+            "LIMIT :limite " +
+            "FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<Long> bloquearListos(@Param("ahora") LocalDateTime ahora, @Param("limite") int limite);
+
+    /**
+     * Posterga la próxima consulta de los lotes tomados; si la instancia cae, se vuelven a consultar al vencer
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE SifenLote l SET l.proximaConsulta = :hasta WHERE l.id IN :ids")
+    int posponer(@Param("ids") Collection<Long> ids, @Param("hasta") LocalDateTime hasta);
+
+    long countByEstado(EstadoLoteSifen estado);
+}
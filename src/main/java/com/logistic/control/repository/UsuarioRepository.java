@@ -28,6 +28,12 @@ public interface UsuarioRepository extends JpaRepository<Usuario, Long> {
     @Query("SELECT u FROM Usuario u WHERE u.cliente.id = :clienteId")
     List<Usuario> findByClienteId(@Param("clienteId") Long clienteId);
 
+    /**
+     * Versión de tokens y estado de la cuenta, sin cargar la entidad ni sus roles
+     */
+    @Query("SELECT u.tokenVersion, u.enabled, u.accountNonLocked FROM Usuario u WHERE u.username = :username")
+    List<Object[]> findEstadoTokenByUsername(@Param("username") String username);
+
     boolean existsByUsername(String username);
 
     boolean existsByEmail(String email);
@@ -1,11 +1,14 @@
 package com.logistic.control.security;
 
+import io.jsonwebtoken.JwtException;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.lang.NonNull;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
@@ -14,19 +17,31 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.util.List;
 
 /**
- * Filtro para autenticación JWT
+ * Filtro para autenticación JWT.
+ * El token se verifica una sola vez (JwtService.parse) y la autenticación se arma desde sus claims
+ * (roles, id y versión), sin cargar el usuario;
+ * TokenVersionCache descarta los tokens de usuarios desactivados o con roles cambiados.
+ * Los tokens emitidos antes de incluir la versión se validan todavía contra la base de datos.
+ * JwtPrincipalCache guarda el resultado por token, así un token repetido no se vuelve a verificar ni parsear.
  */
+@Slf4j
 @Component
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private final JwtService jwtService;
     private final UserDetailsService userDetailsService;
+    private final TokenVersionCache tokenVersionCache;
+    private final JwtPrincipalCache principalCache;
     
-    public JwtAuthenticationFilter(JwtService jwtService, UserDetailsService userDetailsService) {
+    public JwtAuthenticationFilter(JwtService jwtService, UserDetailsService userDetailsService,
+                                   TokenVersionCache tokenVersionCache, JwtPrincipalCache principalCache) {
         this.jwtService = jwtService;
         this.userDetailsService = userDetailsService;
+        this.tokenVersionCache = tokenVersionCache;
+        this.principalCache = principalCache;
     }
 
     @Override
@@ -36,32 +51,84 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             @NonNull FilterChain filterChain
     ) throws ServletException, IOException {
         final String authHeader = request.getHeader("Authorization");
-        final String jwt;
-        final String username;
 
-        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+        if (authHeader == null || !authHeader.startsWith("Bearer ")
+                || SecurityContextHolder.getContext().getAuthentication() != null) {
             filterChain.doFilter(request, response);
             return;
         }
 
-        jwt = authHeader.substring(7);
-        username = jwtService.extractUsername(jwt);
-
-        if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-            UserDetails userDetails = this.userDetailsService.loadUserByUsername(username);
-
-            if (jwtService.isTokenValid(jwt, userDetails)) {
-                UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
-                        userDetails,
-                        null,
-                        userDetails.getAuthorities()
-                );
-                authToken.setDetails(
-                        new WebAuthenticationDetailsSource().buildDetails(request)
-                );
-                SecurityContextHolder.getContext().setAuthentication(authToken);
+        final String jwt = authHeader.substring(7);
+
+        // Token ya verificado: sin HMAC, sin parseo y sin base; solo se revisa la revocación
+        JwtPrincipalCache.Entrada cacheada = principalCache.obtener(jwt);
+        if (cacheada != null) {
+            if (sigueVigente(cacheada)) {
+                autenticar(request, new UsernamePasswordAuthenticationToken(
+                        cacheada.getPrincipal(), null, cacheada.getAuthorities()));
+            }
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        final ParsedToken token;
+        try {
+            token = jwtService.parse(jwt);
+        } catch (JwtException | IllegalArgumentException e) {
+            log.debug("JWT rechazado: {}", e.getMessage());
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        if (token.getSubject() != null) {
+            UsernamePasswordAuthenticationToken authToken = token.getVersion() != null
+                    ? autenticacionDesdeClaims(token)
+                    : autenticacionDesdeBase(token);
+
+            if (authToken != null) {
+                principalCache.guardar(jwt, token, authToken.getPrincipal(), authToken.getAuthorities());
+                autenticar(request, authToken);
             }
         }
         filterChain.doFilter(request, response);
     }
+
+    private void autenticar(HttpServletRequest request, UsernamePasswordAuthenticationToken authToken) {
+        authToken.setDetails(
+                new WebAuthenticationDetailsSource().buildDetails(request)
+        );
+        SecurityContextHolder.getContext().setAuthentication(authToken);
+    }
+
+    /**
+     * Los tokens con versión se contrastan con TokenVersionCache (cambios hechos en otra instancia);
+     * los anteriores dependen de la invalidación por usuario de JwtPrincipalCache
+     */
+    private boolean sigueVigente(JwtPrincipalCache.Entrada entrada) {
+        Long version = entrada.getToken().getVersion();
+        return version == null || tokenVersionCache.esVigente(entrada.getUsername(), version);
+    }
+
+    private UsernamePasswordAuthenticationToken autenticacionDesdeClaims(ParsedToken token) {
+        String username = token.getSubject();
+        long version = token.getVersion();
+        if (!tokenVersionCache.esVigente(username, version)) {
+            log.debug("JWT de {} con versión {} revocado", username, version);
+            return null;
+        }
+
+        UsuarioAutenticado principal = new UsuarioAutenticado(token.getUsuarioId(), username, token.getRoles(), version);
+        List<SimpleGrantedAuthority> authorities = token.getRoles().stream()
+                .map(role -> new SimpleGrantedAuthority("ROLE_" + role.name()))
+                .toList();
+        return new UsernamePasswordAuthenticationToken(principal, null, authorities);
+    }
+
+    private UsernamePasswordAuthenticationToken autenticacionDesdeBase(ParsedToken token) {
+        UserDetails userDetails = this.userDetailsService.loadUserByUsername(token.getSubject());
+        if (!jwtService.isTokenValid(token, userDetails)) {
+            return null;
+        }
+        return new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
+    }
 }
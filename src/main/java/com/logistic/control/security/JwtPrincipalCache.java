@@ -0,0 +1,177 @@
+package com.logistic.control.security;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caché acotada (tamaño y tiempo) de autenticaciones JWT, indexada por el hash SHA-256 del token.
+ * Un token repetido no vuelve a verificar la firma HMAC, parsear los claims ni consultar la base.
+ * Cada entrada vence con el token o a los jwt.principal-cache.ttl-segundos, lo que ocurra primero;
+ * con la caché llena se descartan las vencidas y luego las de acceso más antiguo.
+ * UsuarioService la invalida por usuario al activar, desactivar, bloquear o cambiar roles.
+ * Aciertos, fallos, desalojos y tasa de aciertos se publican en /actuator/metrics/jwt.principal.cache.*.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class JwtPrincipalCache {
+
+    private final MeterRegistry meterRegistry;
+
+    private final ConcurrentHashMap<String, Entrada> entradas = new ConcurrentHashMap<>();
+    private final LongAdder aciertos = new LongAdder();
+    private final LongAdder fallos = new LongAdder();
+    private final LongAdder desalojos = new LongAdder();
+
+    @Value("${jwt.principal-cache.max-entradas:10000}")
+    private int maxEntradas;
+
+    @Value("${jwt.principal-cache.ttl-segundos:300}")
+    private long ttlSegundos;
+
+    /**
+     * Autenticación cacheada: token verificado, principal y authorities
+     */
+    @Getter
+    public static final class Entrada {
+        private final String username;
+        private final ParsedToken token;
+        private final Object principal;
+        private final Collection<? extends GrantedAuthority> authorities;
+        private final long venceNanos;
+        private volatile long ultimoAcceso;
+
+        private Entrada(String username, ParsedToken token, Object principal,
+                        Collection<? extends GrantedAuthority> authorities, long venceNanos, long ultimoAcceso) {
+            this.username = username;
+            this.token = token;
+            this.principal = principal;
+            this.authorities = authorities;
+            this.venceNanos = venceNanos;
+            this.ultimoAcceso = ultimoAcceso;
+        }
+    }
+
+    @PostConstruct
+    void registrarMetricas() {
+        FunctionCounter.builder("jwt.principal.cache.aciertos", aciertos, LongAdder::doubleValue)
+                .description("Solicitudes autenticadas desde la caché de tokens")
+                .register(meterRegistry);
+        FunctionCounter.builder("jwt.principal.cache.fallos", fallos, LongAdder::doubleValue)
+                .description("Solicitudes que debieron verificar y parsear el token")
+                .register(meterRegistry);
+        FunctionCounter.builder("jwt.principal.cache.desalojos", desalojos, LongAdder::doubleValue)
+                .description("Entradas descartadas por tamaño de la caché de tokens")
+                .register(meterRegistry);
+        Gauge.builder("jwt.principal.cache.tamano", entradas, Map::size)
+                .description("Tokens en la caché de autenticación")
+                .register(meterRegistry);
+        Gauge.builder("jwt.principal.cache.tasa.aciertos", this, JwtPrincipalCache::tasaAciertos)
+                .description("Proporción de solicitudes JWT resueltas desde la caché")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Autenticación cacheada del token, o null si no está o venció
+     */
+    public Entrada obtener(String jwt) {
+        String clave = hash(jwt);
+        Entrada entrada = entradas.get(clave);
+        long ahora = System.nanoTime();
+        if (entrada == null || ahora - entrada.getVenceNanos() > 0) {
+            if (entrada != null) {
+                entradas.remove(clave, entrada);
+            }
+            fallos.increment();
+            return null;
+        }
+        entrada.ultimoAcceso = ahora;
+        aciertos.increment();
+        return entrada;
+    }
+
+    /**
+     * Guardar la autenticación de un token recién verificado
+     */
+    public void guardar(String jwt, ParsedToken token, Object principal,
+                        Collection<? extends GrantedAuthority> authorities) {
+        long ahora = System.nanoTime();
+        long vence = ahora + TimeUnit.SECONDS.toNanos(ttlSegundos);
+        if (token.getExpiration() != null) {
+            long restanteMs = token.getExpiration().getTime() - System.currentTimeMillis();
+            if (restanteMs <= 0) {
+                return;
+            }
+            vence = Math.min(vence, ahora + TimeUnit.MILLISECONDS.toNanos(restanteMs));
+        }
+
+        if (entradas.size() >= maxEntradas) {
+            liberarEspacio(ahora);
+        }
+        entradas.put(hash(jwt), new Entrada(token.getSubject(), token, principal, authorities, vence, ahora));
+    }
+
+    /**
+     * Descartar todas las entradas de un usuario
+     */
+    public void invalidar(String username) {
+        entradas.values().removeIf(entrada -> entrada.getUsername().equals(username));
+    }
+
+    public double tasaAciertos() {
+        double total = aciertos.doubleValue() + fallos.doubleValue();
+        return total == 0 ? 0 : aciertos.doubleValue() / total;
+    }
+
+    /**
+     * Quitar las vencidas y, si no alcanza, la décima parte de menor uso reciente
+     */
+    private synchronized void liberarEspacio(long ahora) {
+        if (entradas.size() < maxEntradas) {
+            return;
+        }
+        entradas.values().removeIf(entrada -> ahora - entrada.getVenceNanos() > 0);
+        int exceso = entradas.size() - maxEntradas + Math.max(1, maxEntradas / 10);
+        if (exceso <= 0) {
+            return;
+        }
+        entradas.entrySet().stream()
+                .sorted(Comparator.comparingLong(e -> e.getValue().getUltimoAcceso()))
+                .limit(exceso)
+                .map(Map.Entry::getKey)
+                .toList()
+                .forEach(clave -> {
+                    entradas.remove(clave);
+                    desalojos.increment();
+                });
+        log.debug("Caché de tokens llena: {} entradas desalojadas", exceso);
+    }
+
+    private static String hash(String jwt) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(jwt.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+}
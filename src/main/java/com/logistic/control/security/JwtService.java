@@ -1,9 +1,13 @@
 package com.logistic.control.security;
 
+import com.logistic.control.entity.Usuario;
+import com.logistic.control.enums.Role;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
@@ -15,11 +19,17 @@ import java.util.Map;
 import java.util.function.Function;
 
 /**
- * Servicio para gestión de tokens JWT
+ * Servicio para gestión de tokens JWT.
+ * Los tokens de un Usuario llevan id, roles y versión de tokens como claims para que el filtro
+ * arme la autenticación sin consultar la base de datos.
  */
 @Service
 public class JwtService {
 
+    public static final String CLAIM_ROLES = "roles";
+    public static final String CLAIM_VERSION = "ver";
+    public static final String CLAIM_USUARIO_ID = "uid";
+
     @Value("${jwt.secret}")
     private String secretKey;
 
@@ -29,13 +39,31 @@ public class JwtService {
     @Value("${jwt.refresh-expiration}")
     private long refreshExpiration;
 
+    private SecretKey signInKey;
+    private JwtParser parser;
+
+    /**
+     * La clave se decodifica una sola vez y el parser (inmutable, seguro entre hilos) se reutiliza
+     */
+    @PostConstruct
+    void inicializarClave() {
+        signInKey = Keys.hmacShaKeyFor(Decoders.BASE64.decode(secretKey));
+        parser = Jwts.parser().verifyWith(signInKey).build();
+    }
+
+    /**
+     * Verificar el token una vez (firma y expiración); lanza JwtException si no es válido
+     */
+    public ParsedToken parse(String token) {
+        return new ParsedToken(parser.parseSignedClaims(token).getPayload());
+    }
+
     public String extractUsername(String token) {
-        return extractClaim(token, Claims::getSubject);
+        return parse(token).getSubject();
     }
 
     public <T> T extractClaim(String token, Function<Claims, T> claimsResolver) {
-        final Claims claims = extractAllClaims(token);
-        return claimsResolver.apply(claims);
+        return claimsResolver.apply(parse(token).getClaims());
     }
 
     public String generateToken(UserDetails userDetails) {
@@ -43,11 +71,23 @@ public class JwtService {
     }
 
     public String generateToken(Map<String, Object> extraClaims, UserDetails userDetails) {
-        return buildToken(extraClaims, userDetails, jwtExpiration);
+        Map<String, Object> claims = new HashMap<>(extraClaims);
+        claims.putAll(claimsDeUsuario(userDetails));
+        return buildToken(claims, userDetails, jwtExpiration);
     }
 
     public String generateRefreshToken(UserDetails userDetails) {
-        return buildToken(new HashMap<>(), userDetails, refreshExpiration);
+        return buildToken(claimsDeUsuario(userDetails), userDetails, refreshExpiration);
+    }
+
+    private Map<String, Object> claimsDeUsuario(UserDetails userDetails) {
+        Map<String, Object> claims = new HashMap<>();
+        if (userDetails instanceof Usuario usuario) {
+            claims.put(CLAIM_USUARIO_ID, usuario.getId());
+            claims.put(CLAIM_ROLES, usuario.getRoles().stream().map(Role::name).sorted().toList());
+            claims.put(CLAIM_VERSION, usuario.getTokenVersion());
+        }
+        return claims;
     }
 
     private String buildToken(
@@ -61,34 +101,22 @@ public class JwtService {
                 .subject(userDetails.getUsername())
                 .issuedAt(new Date(System.currentTimeMillis()))
                 .expiration(new Date(System.currentTimeMillis() + expiration))
-                .signWith(getSignInKey())
+                .signWith(signInKey)
                 .compact();
     }
 
     public boolean isTokenValid(String token, UserDetails userDetails) {
-        final String username = extractUsername(token);
-        return (username.equals(userDetails.getUsername())) && !isTokenExpired(token);
-    }
-
-    private boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
-    }
-
-    private Date extractExpiration(String token) {
-        return extractClaim(token, Claims::getExpiration);
-    }
-
-    private Claims extractAllClaims(String token) {
-        return Jwts
-                .parser()
-                .verifyWith(getSignInKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
+        return isTokenValid(parse(token), userDetails);
     }
 
-    private SecretKey getSignInKey() {
-        byte[] keyBytes = Decoders.BASE64.decode(secretKey);
-        return Keys.hmacShaKeyFor(keyBytes);
+    public boolean isTokenValid(ParsedToken token, UserDetails userDetails) {
+        if (!userDetails.getUsername().equals(token.getSubject()) || token.isExpired()) {
+            return false;
+        }
+        // Tokens con versión: dejan de valer cuando el usuario cambia de roles, contraseña o estado
+        Long version = token.getVersion();
+        return version == null
+                || !(userDetails instanceof Usuario usuario)
+                || version.equals(usuario.getTokenVersion());
     }
 }
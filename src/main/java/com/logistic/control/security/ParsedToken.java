@@ -0,0 +1,73 @@
+package com.logistic.control.security;
+
+import com.logistic.control.enums.Role;
+import io.jsonwebtoken.Claims;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * JWT ya verificado (firma y expiración) por JwtService.parse.
+ * Expone los datos del token desde un único objeto Claims, así cada solicitud verifica la firma una sola vez.
+ */
+public final class ParsedToken {
+
+    private final Claims claims;
+    private Set<Role> roles;
+
+    ParsedToken(Claims claims) {
+        this.claims = claims;
+    }
+
+    public String getSubject() {
+        return claims.getSubject();
+    }
+
+    public Date getExpiration() {
+        return claims.getExpiration();
+    }
+
+    public boolean isExpired() {
+        return claims.getExpiration() != null && claims.getExpiration().before(new Date());
+    }
+
+    /**
+     * Versión de tokens del usuario, o null en tokens emitidos antes de incluirla
+     */
+    public Long getVersion() {
+        Number version = claims.get(JwtService.CLAIM_VERSION, Number.class);
+        return version != null ? version.longValue() : null;
+    }
+
+    public Long getUsuarioId() {
+        Number id = claims.get(JwtService.CLAIM_USUARIO_ID, Number.class);
+        return id != null ? id.longValue() : null;
+    }
+
+    /**
+     * Roles del claim; los nombres que ya no existen en Role se ignoran
+     */
+    public Set<Role> getRoles() {
+        if (roles == null) {
+            Set<Role> resultado = EnumSet.noneOf(Role.class);
+            if (claims.get(JwtService.CLAIM_ROLES) instanceof Collection<?> nombres) {
+                for (Object nombre : nombres) {
+                    try {
+                        resultado.add(Role.valueOf(nombre.toString()));
+                    } catch (IllegalArgumentException e) {
+                        // Rol eliminado del enum: no otorga permisos
+                    }
+                }
+            }
+            roles = Collections.unmodifiableSet(resultado);
+        }
+        return roles;
+    }
+
+    public Claims getClaims() {
+        return claims;
+    }
+}
@@ -1,37 +1,45 @@
 package com.logistic.control.security;
 
-import jakarta.servlet.*;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Filtro para aplicar rate limiting en requests HTTP
+ * Filtro para aplicar rate limiting en requests HTTP.
+ * Corre dentro de la cadena de seguridad después de JwtAuthenticationFilter, así el límite se aplica
+ * por usuario y rol cuando hay token y por IP cuando no. Al ser OncePerRequestFilter, el registro
+ * automático del contenedor no vuelve a contar la misma solicitud.
  */
 @Component
 @RequiredArgsConstructor
-public class RateLimitFilter implements Filter {
+public class RateLimitFilter extends OncePerRequestFilter {
 
     private final RateLimitService rateLimitService;
 
     @Override
-    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
-            throws IOException, ServletException {
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
 
-        HttpServletRequest httpRequest = (HttpServletRequest) request;
-        HttpServletResponse httpResponse = (HttpServletResponse) response;
-
-        String ipAddress = getClientIp(httpRequest);
+        String ruta = request.getRequestURI().substring(request.getContextPath().length());
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
 
         // Verificar rate limit
-        if (!rateLimitService.allowRequest(ipAddress)) {
-            httpResponse.setStatus(429); // Too Many Requests
-            httpResponse.setHeader("Retry-After", "60");
-            httpResponse.getWriter().write("{\"error\":\"Too many requests. Please try again later.\"}");
-            httpResponse.setContentType("application/json");
+        long esperaNanos = rateLimitService.intentarSolicitud(ruta, auth, getClientIp(request));
+        if (esperaNanos > 0) {
+            long retryAfter = Math.max(1, (esperaNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+            response.setStatus(429); // Too Many Requests
+            response.setHeader("Retry-After", String.valueOf(retryAfter));
+            response.setContentType("application/json");
+            response.getWriter().write("{\"error\":\"Too many requests. Please try again later.\"}");
             return;
         }
 
@@ -1,41 +1,108 @@
 package com.logistic.control.security;
 
+import com.logistic.control.config.RateLimitConfig;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.server.PathContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.stereotype.Service;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
 
 import java.time.Duration;
-import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
- * Servicio de Rate Limiting para prevenir brute force y DoS
+ * Servicio de Rate Limiting para prevenir brute force y DoS.
+ * El límite general no usa locks: cada cliente es un AtomicLong actualizado por CAS con System.nanoTime
+ * (ver Limite), con límites por ruta y por rol configurados en rate-limit.*.
+ * Ninguna estructura crece sin límite: los clientes inactivos y los bloqueos vencidos se descartan
+ * con trabajo proporcional a lo que vence, y ambas tienen un tope de rate-limit.max-claves.
+ * Un bloqueo vigente nunca se desaloja antes de vencer: si el tope se llena de bloqueos, las claves
+ * nuevas dejan de registrarse hasta que venza el primero.
+ * Tamaños y desalojos se publican en /actuator/metrics/rate.limit.*.
  */
+@Slf4j
 @Service
+@RequiredArgsConstructor
 public class RateLimitService {
 
     private static final int MAX_ATTEMPTS = 5;
     private static final Duration LOCKOUT_DURATION = Duration.ofMinutes(15);
-    private static final int MAX_REQUESTS_PER_MINUTE = 60;
+    private static final String PREFIJO_ROL = "ROLE_";
+
+    private final RateLimitConfig rateLimitConfig;
+    private final MeterRegistry meterRegistry;
 
     // Almacena intentos de login fallidos por IP/username
-    private final Map<String, LoginAttempt> loginAttempts = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LoginAttempt> loginAttempts = new ConcurrentHashMap<>();
+
+    // Vencimientos de loginAttempts en orden de vencimiento (todos usan LOCKOUT_DURATION)
+    private final ConcurrentLinkedQueue<Vencimiento> vencimientos = new ConcurrentLinkedQueue<>();
+
+    private final LongAdder desalojos = new LongAdder();
+
+    private final LongAdder sinRegistrar = new LongAdder();
 
-    // Almacena requests por IP para rate limiting general
-    private final Map<String, RequestCounter> requestCounters = new ConcurrentHashMap<>();
+    // Con loginAttempts lleno de bloqueos vigentes: hasta cuándo no tiene sentido buscar lugar
+    private volatile long saturadoHasta = System.nanoTime();
+
+    // Estado del limitador general por regla y cliente
+    private final AtomicReference<Generaciones> generaciones = new AtomicReference<>();
+
+    private long periodoNanos;
+    private Regla reglaGlobal;
+    private List<Regla> reglasPorRuta = List.of();
 
     /**
-     * Registra un intento de login fallido
+     * Registra un intento de login fallido.
+     * Los intentos se olvidan LOCKOUT_DURATION después del último fallo; al llegar a MAX_ATTEMPTS
+     * la clave queda bloqueada ese mismo tiempo. Si no hay lugar para una clave nueva sin desalojar
+     * bloqueos vigentes, el fallo no se registra.
      */
     public void recordFailedLogin(String key) {
-        LoginAttempt attempt = loginAttempts.computeIfAbsent(
-            key, 
-            k -> new LoginAttempt()
-        );
-
-        attempt.incrementAttempts();
-
-        if (attempt.getAttempts() >= MAX_ATTEMPTS) {
-            attempt.lockUntil(LocalDateTime.now().plus(LOCKOUT_DURATION));
+        while (true) {
+            LoginAttempt attempt = loginAttempts.get(key);
+            if (attempt == null) {
+                if (loginAttempts.size() >= rateLimitConfig.getMaxClaves() && !liberarIntentos()) {
+                    sinRegistrar.increment();
+                    return;
+                }
+                attempt = loginAttempts.computeIfAbsent(key, k -> new LoginAttempt());
+            }
+
+            long ahora = System.nanoTime();
+            synchronized (attempt) {
+                if (attempt.descartado) {
+                    // Lo quitó la limpieza mientras tanto: registrar sobre uno nuevo
+                    continue;
+                }
+                if (attempt.vencido(ahora)) {
+                    attempt.attempts = 0;
+                }
+                attempt.attempts++;
+                attempt.venceNanos = ahora + LOCKOUT_DURATION.toNanos();
+                vencimientos.add(new Vencimiento(key, attempt, attempt.venceNanos));
+            }
+            return;
         }
     }
 
@@ -43,7 +110,12 @@ public class RateLimitService {
      * Registra un login exitoso y limpia intentos
      */
     public void recordSuccessfulLogin(String key) {
-        loginAttempts.remove(key);
+        LoginAttempt attempt = loginAttempts.remove(key);
+        if (attempt != null) {
+            synchronized (attempt) {
+                attempt.descartado = true;
+            }
+        }
     }
 
     /**
@@ -51,18 +123,7 @@ public class RateLimitService {
      */
     public boolean isBlocked(String key) {
         LoginAttempt attempt = loginAttempts.get(key);
-        
-        if (attempt == null) {
-            return false;
-        }
-
-        // Si el bloqueo expiró, limpiar
-        if (attempt.isLocked() && attempt.getLockUntil().isBefore(LocalDateTime.now())) {
-            loginAttempts.remove(key);
-            return false;
-        }
-
-        return attempt.isLocked();
+        return attempt != null && attempt.bloqueado(System.nanoTime());
     }
 
     /**
@@ -70,99 +131,300 @@ public class RateLimitService {
      */
     public Duration getTimeUntilUnlock(String key) {
         LoginAttempt attempt = loginAttempts.get(key);
-        
-        if (attempt == null || !attempt.isLocked()) {
+        long ahora = System.nanoTime();
+
+        if (attempt == null || !attempt.bloqueado(ahora)) {
             return Duration.ZERO;
         }
 
-        return Duration.between(LocalDateTime.now(), attempt.getLockUntil());
+        return Duration.ofNanos(attempt.restante(ahora));
     }
 
     /**
-     * Verifica rate limiting general por IP
+     * Intenta consumir una solicitud del cliente en la ruta.
+     * El cliente es el usuario autenticado o, si no hay, la IP; el límite sale de la primera regla
+     * de ruta que coincide y del rol con mayor límite.
+     * @return 0 si se permite; si no, los nanosegundos hasta que vuelva a haber lugar
      */
-    public boolean allowRequest(String ipAddress) {
-        RequestCounter counter = requestCounters.computeIfAbsent(
-            ipAddress,
-            k -> new RequestCounter()
-        );
+    public long intentarSolicitud(String ruta, Authentication auth, String ipAddress) {
+        if (!rateLimitConfig.getEnabled()) {
+            return 0;
+        }
 
-        // Resetear contador si pasó un minuto
-        if (counter.getLastReset().plusMinutes(1).isBefore(LocalDateTime.now())) {
-            counter.reset();
+        Regla regla = reglaGlobal;
+        PathContainer path = reglasPorRuta.isEmpty() ? null : PathContainer.parsePath(ruta);
+        for (Regla candidata : reglasPorRuta) {
+            if (candidata.patron().matches(path)) {
+                regla = candidata;
+                break;
+            }
         }
 
-        counter.increment();
+        boolean autenticado = auth != null && auth.isAuthenticated() && !(auth instanceof AnonymousAuthenticationToken);
+        Limite limite = autenticado ? regla.limitePara(auth.getAuthorities()) : regla.porDefecto();
+        String cliente = autenticado ? "u:" + auth.getName() : "ip:" + ipAddress;
 
-        return counter.getCount() <= MAX_REQUESTS_PER_MINUTE;
+        return limite.consumir(estado(regla.id() + "|" + cliente));
     }
 
     /**
-     * Limpia cachés periódicamente (llamar desde scheduled task)
+     * Estado (TAT) de una clave. Las claves viven en dos generaciones: cada inactividad-segundos la actual
+     * pasa a anterior y la anterior se descarta entera, así una clave sin uso durante una generación
+     * completa desaparece sin recorrer el mapa. Una clave usada se copia a la generación actual.
      */
-    public void cleanupExpiredEntries() {
-        LocalDateTime now = LocalDateTime.now();
+    private AtomicLong estado(String clave) {
+        long ahora = System.nanoTime();
+        Generaciones g = rotarSiCorresponde(ahora, false);
+
+        AtomicLong estado = g.actual().get(clave);
+        if (estado == null) {
+            AtomicLong previo = g.anterior().get(clave);
+            if (previo == null && g.actual().size() >= Math.max(1, rateLimitConfig.getMaxClaves() / 2)) {
+                // Generación llena (ej. un barrido desde muchas IPs): rotar antes de tiempo.
+                // Los clientes de la generación descartada vuelven a empezar con la ráfaga completa.
+                g = rotarSiCorresponde(ahora, true);
+            }
+            estado = g.actual().computeIfAbsent(clave, k -> previo != null ? previo : new AtomicLong(ahora));
+        }
+        return estado;
+    }
 
-        loginAttempts.entrySet().removeIf(entry -> {
-            LoginAttempt attempt = entry.getValue();
-            return attempt.isLocked() && attempt.getLockUntil().isBefore(now);
-        });
+    /**
+     * Pasar la generación actual a anterior si venció su periodo (o si se fuerza),
+     * descartando entera la anterior
+     */
+    private Generaciones rotarSiCorresponde(long ahora, boolean forzar) {
+        Generaciones g = generaciones.get();
+        if (!forzar && ahora - g.rotarEn() < 0) {
+            return g;
+        }
+        Generaciones rotada = new Generaciones(new ConcurrentHashMap<>(), g.actual(), ahora + periodoNanos);
+        if (generaciones.compareAndSet(g, rotada)) {
+            desalojos.add(g.anterior().size());
+            if (forzar) {
+                log.warn("Rate limiting: generación llena ({} clientes), rotada antes de tiempo", g.actual().size());
+            }
+            return rotada;
+        }
+        return generaciones.get();
+    }
 
-        requestCounters.entrySet().removeIf(entry -> 
-            entry.getValue().getLastReset().plusMinutes(5).isBefore(now)
-        );
+    /**
+     * Claves de rate limiting en memoria (ambas generaciones)
+     */
+    public int getClavesActivas() {
+        Generaciones g = generaciones.get();
+        return g.actual().size() + g.anterior().size();
     }
 
     /**
-     * Clase interna para tracking de intentos de login
+     * Claves con intentos de login fallidos o bloqueadas
      */
-    private static class LoginAttempt {
-        private int attempts = 0;
-        private LocalDateTime lockUntil;
+    public int getClavesLogin() {
+        return loginAttempts.size();
+    }
+
+    /**
+     * Limpieza periódica: rota las generaciones del limitador aunque no haya tráfico y descarta
+     * los intentos de login vencidos. Solo recorre lo que venció: la cola está ordenada por vencimiento.
+     */
+    @Scheduled(fixedDelayString = "${rate-limit.limpieza-segundos:60}", timeUnit = TimeUnit.SECONDS)
+    public synchronized void cleanupExpiredEntries() {
+        long ahora = System.nanoTime();
+        rotarSiCorresponde(ahora, false);
+
+        Vencimiento vencimiento;
+        while ((vencimiento = vencimientos.peek()) != null && ahora - vencimiento.venceNanos() >= 0) {
+            vencimientos.poll();
+            descartarSiVencido(vencimiento, ahora);
+        }
+    }
 
-        public void incrementAttempts() {
-            attempts++;
+    /**
+     * Con loginAttempts lleno: descartar vencidos y, si no alcanza, las claves de fallo más antiguo
+     * que todavía no están bloqueadas. Los bloqueos vigentes se saltean (y conservan su vencimiento en la cola).
+     * @return si quedó lugar para una clave nueva
+     */
+    private synchronized boolean liberarIntentos() {
+        int maxClaves = rateLimitConfig.getMaxClaves();
+        long ahora = System.nanoTime();
+        if (ahora - saturadoHasta < 0) {
+            return loginAttempts.size() < maxClaves;
         }
 
-        public int getAttempts() {
-            return attempts;
+        cleanupExpiredEntries();
+        Long primerBloqueo = null;
+        Iterator<Vencimiento> it = vencimientos.iterator();
+        while (loginAttempts.size() >= maxClaves && it.hasNext()) {
+            Vencimiento vencimiento = it.next();
+            LoginAttempt attempt = vencimiento.intento();
+            synchronized (attempt) {
+                if (attempt.descartado || attempt.venceNanos != vencimiento.venceNanos()) {
+                    // Vencimiento reemplazado por un fallo posterior
+                    it.remove();
+                } else if (attempt.attempts >= MAX_ATTEMPTS) {
+                    if (primerBloqueo == null) {
+                        primerBloqueo = vencimiento.venceNanos();
+                    }
+                } else {
+                    attempt.descartado = true;
+                    it.remove();
+                    if (loginAttempts.remove(vencimiento.clave(), attempt)) {
+                        desalojos.increment();
+                    }
+                }
+            }
         }
 
-        public void lockUntil(LocalDateTime until) {
-            this.lockUntil = until;
+        if (loginAttempts.size() < maxClaves) {
+            return true;
         }
+        if (primerBloqueo != null) {
+            saturadoHasta = primerBloqueo;
+            log.warn("Rate limiting: {} claves de login bloqueadas, las nuevas no se registran por {} s",
+                    loginAttempts.size(), TimeUnit.NANOSECONDS.toSeconds(Math.max(0, primerBloqueo - ahora)));
+        }
+        return false;
+    }
 
-        public boolean isLocked() {
-            return lockUntil != null && lockUntil.isAfter(LocalDateTime.now());
+    /**
+     * Quitar la clave si el vencimiento sigue siendo el vigente (un fallo posterior encola otro)
+     */
+    private boolean descartarSiVencido(Vencimiento vencimiento, long ahora) {
+        LoginAttempt attempt = vencimiento.intento();
+        synchronized (attempt) {
+            if (attempt.descartado || attempt.venceNanos != vencimiento.venceNanos() || !attempt.vencido(ahora)) {
+                return false;
+            }
+            attempt.descartado = true;
+            return loginAttempts.remove(vencimiento.clave(), attempt);
         }
+    }
+
+    @PostConstruct
+    void iniciar() {
+        compilarReglas();
+        registrarMetricas();
+    }
 
-        public LocalDateTime getLockUntil() {
-            return lockUntil;
+    private void registrarMetricas() {
+        Gauge.builder("rate.limit.claves", this, RateLimitService::getClavesActivas)
+                .description("Clientes con estado en el limitador de solicitudes")
+                .register(meterRegistry);
+        Gauge.builder("rate.limit.login.claves", this, RateLimitService::getClavesLogin)
+                .description("IPs y usuarios con intentos de login fallidos o bloqueados")
+                .register(meterRegistry);
+        FunctionCounter.builder("rate.limit.desalojos", desalojos, LongAdder::doubleValue)
+                .description("Claves descartadas por inactividad o por tope de tamaño")
+                .register(meterRegistry);
+        FunctionCounter.builder("rate.limit.login.sin.registrar", sinRegistrar, LongAdder::doubleValue)
+                .description("Fallos de login no registrados por tope lleno de bloqueos vigentes")
+                .register(meterRegistry);
+    }
+
+    private void compilarReglas() {
+        periodoNanos = TimeUnit.SECONDS.toNanos(Math.max(60, rateLimitConfig.getInactividadSegundos()));
+        generaciones.set(new Generaciones(new ConcurrentHashMap<>(), new ConcurrentHashMap<>(),
+                System.nanoTime() + periodoNanos));
+
+        reglaGlobal = new Regla("*", null,
+                Limite.de(rateLimitConfig.getPorMinuto(), rateLimitConfig.getRafaga()),
+                limitesPorRol(rateLimitConfig.getPorRol(), rateLimitConfig.getRafaga()));
+
+        List<Regla> reglas = new ArrayList<>();
+        for (int i = 0; i < rateLimitConfig.getRutas().size(); i++) {
+            RateLimitConfig.Ruta ruta = rateLimitConfig.getRutas().get(i);
+            // Si la ruta fija por-minuto, vale para los roles sin límite propio en la ruta;
+            // si no, esos roles conservan su límite global
+            Map<String, Limite> porRol = new HashMap<>();
+            Limite porDefecto = reglaGlobal.porDefecto();
+            if (ruta.getPorMinuto() != null) {
+                porDefecto = Limite.de(ruta.getPorMinuto(), ruta.getRafaga());
+            } else {
+                porRol.putAll(reglaGlobal.porRol());
+            }
+            porRol.putAll(limitesPorRol(ruta.getPorRol(), ruta.getRafaga()));
+            reglas.add(new Regla("r" + i, PathPatternParser.defaultInstance.parse(ruta.getPatron()), porDefecto, porRol));
         }
+        reglasPorRuta = List.copyOf(reglas);
+    }
+
+    private static Map<String, Limite> limitesPorRol(Map<String, Integer> porMinuto, Integer rafaga) {
+        Map<String, Limite> limites = new HashMap<>();
+        porMinuto.forEach((rol, valor) -> limites.put(PREFIJO_ROL + rol, Limite.de(valor, rafaga)));
+        return limites;
     }
 
     /**
-     * Clase interna para contador de requests
+     * Límite GCRA (equivalente a un token bucket) sobre un único AtomicLong por cliente:
+     * el valor es el instante teórico (nanoTime) en que el cliente vuelve a estar al día.
+     * Cada solicitud lo adelanta un intervalo; se rechaza si quedaría más de una ráfaga por delante.
      */
-    private static class RequestCounter {
-        private int count = 0;
-        private LocalDateTime lastReset = LocalDateTime.now();
+    record Limite(int porMinuto, long intervaloNanos, long toleranciaNanos) {
 
-        public void increment() {
-            count++;
+        static Limite de(int porMinuto, Integer rafaga) {
+            long intervalo = TimeUnit.MINUTES.toNanos(1) / Math.max(1, porMinuto);
+            int tamanoRafaga = rafaga != null ? rafaga : porMinuto;
+            return new Limite(porMinuto, intervalo, intervalo * Math.max(1, tamanoRafaga));
         }
 
-        public int getCount() {
-            return count;
+        long consumir(AtomicLong estado) {
+            while (true) {
+                long ahora = System.nanoTime();
+                long tat = estado.get();
+                long base = tat - ahora > 0 ? tat : ahora;
+                long nuevo = base + intervaloNanos;
+                long adelanto = nuevo - ahora;
+                if (adelanto > toleranciaNanos) {
+                    return adelanto - toleranciaNanos;
+                }
+                if (estado.compareAndSet(tat, nuevo)) {
+                    return 0;
+                }
+            }
+        }
+    }
+
+    private record Regla(String id, PathPattern patron, Limite porDefecto, Map<String, Limite> porRol) {
+
+        Limite limitePara(Collection<? extends GrantedAuthority> authorities) {
+            Limite mayor = null;
+            for (GrantedAuthority authority : authorities) {
+                Limite limite = porRol.get(authority.getAuthority());
+                if (limite != null && (mayor == null || limite.porMinuto() > mayor.porMinuto())) {
+                    mayor = limite;
+                }
+            }
+            return mayor != null ? mayor : porDefecto;
+        }
+    }
+
+    private record Generaciones(ConcurrentHashMap<String, AtomicLong> actual,
+                                ConcurrentHashMap<String, AtomicLong> anterior,
+                                long rotarEn) {
+    }
+
+    private record Vencimiento(String clave, LoginAttempt intento, long venceNanos) {
+    }
+
+    /**
+     * Clase interna para tracking de intentos de login (campos protegidos por el propio objeto)
+     */
+    private static class LoginAttempt {
+        private int attempts = 0;
+        private long venceNanos;
+        private boolean descartado;
+
+        synchronized boolean bloqueado(long ahora) {
+            return attempts >= MAX_ATTEMPTS && !vencido(ahora);
         }
 
-        public LocalDateTime getLastReset() {
-            return lastReset;
+        synchronized boolean vencido(long ahora) {
+            return ahora - venceNanos >= 0;
         }
 
-        public void reset() {
-            count = 0;
-            lastReset = LocalDateTime.now();
+        synchronized long restante(long ahora) {
+            return Math.max(0, venceNanos - ahora);
         }
     }
 }
@@ -0,0 +1,79 @@
+package com.logistic.control.security;
+
+import com.logistic.control.repository.UsuarioRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caché de la versión de tokens y el estado de cada usuario para validar JWT sin leer usuarios en cada solicitud.
+ * Un token es vigente si su claim de versión coincide con la del usuario y la cuenta está activa y sin bloqueo.
+ * UsuarioService invalida la entrada al confirmar un cambio; el TTL acota cuánto tarda en verse un cambio
+ * hecho por otra instancia.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TokenVersionCache {
+
+    private final UsuarioRepository usuarioRepository;
+
+    private final ConcurrentHashMap<String, EstadoToken> estados = new ConcurrentHashMap<>();
+
+    @Value("${jwt.version-cache.ttl-segundos:60}")
+    private long ttlSegundos;
+
+    @Value("${jwt.version-cache.max-entradas:10000}")
+    private int maxEntradas;
+
+    /**
+     * Indica si un token con esta versión sigue siendo válido para el usuario
+     */
+    public boolean esVigente(String username, long versionToken) {
+        long ahora = System.nanoTime();
+        EstadoToken estado = estados.get(username);
+        if (estado == null || ahora - estado.venceNanos() > 0) {
+            estado = cargar(username, ahora);
+        }
+        return estado.activo() && estado.version() == versionToken;
+    }
+
+    /**
+     * Descartar la entrada del usuario; se llama después de confirmar el cambio para no recargar el estado viejo
+     */
+    public void invalidar(String username) {
+        estados.remove(username);
+    }
+
+    private EstadoToken cargar(String username, long ahora) {
+        long vence = ahora + TimeUnit.SECONDS.toNanos(ttlSegundos);
+        List<Object[]> filas = usuarioRepository.findEstadoTokenByUsername(username);
+
+        EstadoToken estado;
+        if (filas.isEmpty()) {
+            estado = new EstadoToken(-1, false, vence);
+        } else {
+            Object[] fila = filas.get(0);
+            estado = new EstadoToken(
+                    fila[0] != null ? (Long) fila[0] : 0L,
+                    !Boolean.FALSE.equals(fila[1]) && !Boolean.FALSE.equals(fila[2]),
+                    vence);
+        }
+
+        if (estados.size() >= maxEntradas) {
+            estados.values().removeIf(e -> ahora - e.venceNanos() > 0);
+        }
+        if (estados.size() < maxEntradas) {
+            estados.put(username, estado);
+        }
+        return estado;
+    }
+
+    private record EstadoToken(long version, boolean activo, long venceNanos) {
+    }
+}
@@ -0,0 +1,19 @@
+package com.logistic.control.security;
+
+import com.logistic.control.enums.Role;
+import org.springframework.security.core.AuthenticatedPrincipal;
+
+import java.util.Set;
+
+/**
+ * Principal de las solicitudes autenticadas con JWT, armado desde los claims del token verificado
+ * (sin consultar la base de datos)
+ */
+public record UsuarioAutenticado(Long id, String username, Set<Role> roles, long tokenVersion)
+        implements AuthenticatedPrincipal {
+
+    @Override
+    public String getName() {
+        return username;
+    }
+}
@@ -10,6 +10,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -23,7 +24,7 @@ public class ContenedorReportService {
     private final ContainerRepository containerRepository;
 
     @Transactional(readOnly = true)
-    public byte[] generateContenedorReport(Long contenedorId) throws JRException, IOException, WriterException {
+    public void generateContenedorReport(Long contenedorId, OutputStream salida) throws JRException, IOException, WriterException {
         Container container = containerRepository.findById(contenedorId)
                 .orElseThrow(() -> new RuntimeException("Contenedor no encontrado"));
 
@@ -44,6 +45,6 @@ public class ContenedorReportService {
                 Map.of("producto", "Carga general", "cantidad", 1, "pesoKg", container.getPesoKg() != null ? container.getPesoKg() : 0.0, "volumenM3", container.getVolumenM3() != null ? container.getVolumenM3() : 0.0)
         );
 
-        return reportService.generatePdfReportWithQR("contenedor", parameters, productos, "CONTENEDOR", contenedorId);
+        reportService.generatePdfReportWithQR("contenedor", parameters, productos, "CONTENEDOR", contenedorId, salida);
     }
 }
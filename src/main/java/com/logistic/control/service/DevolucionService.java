@@ -41,6 +41,7 @@ public class DevolucionService {
     private final DetalleFacturaRepository detalleFacturaRepository;
     private final DetallePedidoRepository detallePedidoRepository;
     private final InventarioRepository inventarioRepository;
+    private final InventarioLoteIndex inventarioLoteIndex;
     private final UsuarioRepository usuarioRepository;
 
     private static final AtomicInteger devolucionCounter = new AtomicInteger(1);
@@ -315,6 +316,7 @@ public class DevolucionService {
                     .build();
 
             entrada = inventarioRepository.save(entrada);
+            inventarioLoteIndex.registrar(entrada);
             detalle.setInventarioEntrada(entrada);
 
             log.debug("Entrada de inventario creada: {} unidades de producto {}",
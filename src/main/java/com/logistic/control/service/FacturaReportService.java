@@ -11,6 +11,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -25,7 +26,7 @@ public class FacturaReportService {
     private final FacturaRepository facturaRepository;
 
     @Transactional(readOnly = true)
-    public byte[] generateFacturaReport(Long facturaId) throws JRException, IOException, WriterException {
+    public void generateFacturaReport(Long facturaId, OutputStream salida) throws JRException, IOException, WriterException {
         Factura factura = facturaRepository.findById(facturaId)
                 .orElseThrow(() -> new RuntimeException("Factura no encontrada"));
 
@@ -64,6 +65,6 @@ public class FacturaReportService {
                     return data;
                 }).collect(Collectors.toList());
 
-        return reportService.generatePdfReportWithQR("factura", parameters, detalles, "FACTURA", facturaId);
+        reportService.generatePdfReportWithQR("factura", parameters, detalles, "FACTURA", facturaId, salida);
     }
 }
@@ -2,7 +2,9 @@ package com.logistic.control.service;
 
 import com.logistic.control.dto.request.FacturaRequest;
 import com.logistic.control.dto.request.FacturaParcialRequest;
+import com.logistic.control.dto.response.FacturaCursorResponse;
 import com.logistic.control.dto.response.FacturaResponse;
+import com.logistic.control.dto.response.FacturaResumen;
 import com.logistic.control.dto.response.ItemFacturaResponse;
 import com.logistic.control.entity.*;
 import com.logistic.control.enums.EstadoFactura;
@@ -14,16 +16,22 @@ import com.logistic.control.repository.FacturaRepository;
 import com.logistic.control.repository.ClienteRepository;
 import com.logistic.control.repository.PedidoRepository;
 import com.logistic.control.repository.DetallePedidoRepository;
+import com.logistic.control.repository.DetalleFacturaRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
  * Servicio para gestión de Facturas
@@ -38,16 +46,20 @@ public class FacturaService {
     private final ClienteRepository clienteRepository;
     private final PedidoRepository pedidoRepository;
     private final DetallePedidoRepository detallePedidoRepository;
+    private final DetalleFacturaRepository detalleFacturaRepository;
     private final ClienteService clienteService;
     private final SifenService sifenService;
 
     /**
      * Listar todas las facturas con paginación
      */
-    public Page<FacturaResponse> listarFacturas(Pageable pageable) {
-        log.debug("Listando facturas - página: {}", pageable.getPageNumber());
-        return facturaRepository.findAllWithCliente(pageable)
-                .map(this::toResponse);
+    public Page<FacturaResponse> listarFacturas(Pageable pageable, boolean incluirItems) {
+        log.debug("Listando facturas - página: {}, ítems: {}", pageable.getPageNumber(), incluirItems);
+        if (!incluirItems) {
+            // Vista de listado: proyección de columnas, sin entidades ni ítems
+            return facturaRepository.findResumenes(pageable).map(this::toResponse);
+        }
+        return toResponsePage(facturaRepository.findAllWithCliente(pageable));
     }
 
     /**
@@ -65,12 +77,7 @@ public class FacturaService {
      */
     public Page<FacturaResponse> buscarPorCliente(Long clienteId, Pageable pageable) {
         log.debug("Buscando facturas del cliente: {}", clienteId);
-        var facturas = facturaRepository.findByClienteId(clienteId);
-        return new org.springframework.data.domain.PageImpl<>(
-            facturas.stream().map(this::toResponse).toList(),
-            pageable,
-            facturas.size()
-        );
+        return toResponsePage(facturaRepository.findPageByClienteId(clienteId, pageable));
     }
 
     /**
@@ -78,12 +85,7 @@ public class FacturaService {
      */
     public Page<FacturaResponse> buscarPorEstado(EstadoFactura estado, Pageable pageable) {
         log.debug("Buscando facturas con estado: {}", estado);
-        var facturas = facturaRepository.findByEstado(estado);
-        return new org.springframework.data.domain.PageImpl<>(
-            facturas.stream().map(this::toResponse).toList(),
-            pageable,
-            facturas.size()
-        );
+        return toResponsePage(facturaRepository.findPageByEstado(estado, pageable));
     }
 
     /**
@@ -91,15 +93,39 @@ public class FacturaService {
      */
     public Page<FacturaResponse> buscarPorRangoFechas(LocalDate inicio, LocalDate fin, Pageable pageable) {
         log.debug("Buscando facturas entre {} y {}", inicio, fin);
-        var facturas = facturaRepository.findByFechaEmisionBetween(
-                inicio.atStartOfDay(), 
-                fin.atTime(23, 59, 59)
-        );
-        return new org.springframework.data.domain.PageImpl<>(
-            facturas.stream().map(this::toResponse).toList(),
-            pageable,
-            facturas.size()
-        );
+        return toResponsePage(facturaRepository.findPageByFechaEmisionBetween(
+                inicio.atStartOfDay(),
+                fin.atTime(23, 59, 59),
+                pageable
+        ));
+    }
+
+    /**
+     * Listar facturas por cursor (keyset sobre fechaEmision, id), de la más reciente a la más antigua.
+     * Sin cursor se retorna la primera página. Opcionalmente filtra por cliente.
+     */
+    public FacturaCursorResponse listarPorCursor(Long clienteId, LocalDateTime cursorFechaEmision,
+                                                 Long cursorId, int size) {
+        log.debug("Listando facturas por cursor - cliente: {}, cursor: ({}, {})", clienteId, cursorFechaEmision, cursorId);
+
+        LocalDateTime fecha = cursorFechaEmision != null ? cursorFechaEmision : LocalDateTime.of(9999, 12, 31, 23, 59, 59);
+        Long id = cursorId != null ? cursorId : Long.MAX_VALUE;
+        Pageable limite = PageRequest.of(0, Math.max(1, Math.min(size, 200)));
+
+        Slice<Factura> facturas = clienteId != null
+                ? facturaRepository.findSiguientesByClienteId(clienteId, fecha, id, limite)
+                : facturaRepository.findSiguientes(fecha, id, limite);
+
+        Factura ultima = facturas.hasContent() ? facturas.getContent().get(facturas.getNumberOfElements() - 1) : null;
+        Map<Long, List<ItemFacturaResponse>> items = cargarItems(facturas.getContent());
+
+        return FacturaCursorResponse.builder()
+                .facturas(facturas.map(factura -> toResponse(factura, items.getOrDefault(factura.getId(), List.of())))
+                        .getContent())
+                .cursorFechaEmision(ultima != null ? ultima.getFechaEmision() : null)
+                .cursorId(ultima != null ? ultima.getId() : null)
+                .hasNext(facturas.hasNext())
+                .build();
     }
 
     /**
@@ -498,6 +524,29 @@ public class FacturaService {
         log.info("Pago registrado exitosamente para factura: {}", facturaId);
     }
 
+    /**
+     * Convertir una página de facturas cargando los ítems de todas en una sola consulta
+     * (fase 1: página de facturas con cliente; fase 2: detalles con IN sobre los IDs de la página)
+     */
+    private Page<FacturaResponse> toResponsePage(Page<Factura> facturas) {
+        Map<Long, List<ItemFacturaResponse>> items = cargarItems(facturas.getContent());
+        return facturas.map(factura -> toResponse(factura, items.getOrDefault(factura.getId(), List.of())));
+    }
+
+    /**
+     * Cargar los ítems de varias facturas agrupados por ID de factura
+     */
+    private Map<Long, List<ItemFacturaResponse>> cargarItems(List<Factura> facturas) {
+        if (facturas.isEmpty()) {
+            return Map.of();
+        }
+        List<Long> ids = facturas.stream().map(Factura::getId).toList();
+        return detalleFacturaRepository.findByFacturaIdIn(ids).stream()
+                .collect(Collectors.groupingBy(
+                        detalle -> detalle.getFactura().getId(),
+                        Collectors.mapping(this::toItemResponse, Collectors.toList())));
+    }
+
     /**
      * Convertir entidad a DTO de respuesta
      */
@@ -509,6 +558,16 @@ public class FacturaService {
                         .toList()
                 : new ArrayList<>();
 
+        FacturaResponse response = toResponse(factura, itemsResponse);
+        // El QR vive en factura_documentos: solo se lee en la vista individual, no en los listados
+        response.setQrCode(factura.getQrCode());
+        return response;
+    }
+
+    /**
+     * Convertir entidad a DTO de respuesta con ítems ya cargados (null = sin ítems)
+     */
+    private FacturaResponse toResponse(Factura factura, List<ItemFacturaResponse> itemsResponse) {
         // Calcular estado de pago
         String estadoPago = calcularEstadoPago(factura);
 
@@ -547,7 +606,6 @@ public class FacturaService {
                 .fechaAprobacionSifen(factura.getFechaAprobacionSifen())
                 .codigoEstadoSifen(factura.getCodigoEstadoSifen())
                 .mensajeSifen(factura.getMensajeSifen())
-                .qrCode(factura.getQrCode())
                 .urlKude(factura.getUrlKude())
                 .saldo(factura.getSaldo())
                 .saldoPendiente(factura.getSaldo()) // Alias for frontend compatibility
@@ -559,21 +617,71 @@ public class FacturaService {
                 .build();
     }
 
+    /**
+     * Convertir una fila del listado a DTO de respuesta, sin ítems
+     */
+    private FacturaResponse toResponse(FacturaResumen factura) {
+        return FacturaResponse.builder()
+                .id(factura.getId())
+                .numeroFactura(factura.getNumeroFactura())
+                .numeroDocumento(factura.getNumeroFactura()) // Same as numeroFactura
+                .tipo(factura.getTipo() != null ? factura.getTipo() : "CONTADO")
+                .clienteId(factura.getClienteId())
+                .clienteNombre(factura.getClienteRazonSocial())
+                .clienteRazonSocial(factura.getClienteRazonSocial())
+                .clienteRuc(factura.getClienteRuc())
+                .fechaEmision(factura.getFechaEmision())
+                .fechaVencimiento(factura.getFechaVencimiento())
+                .condicionPago(factura.getCondicionPago())
+                .subtotal(factura.getSubtotal())
+                .iva5(factura.getIva5())
+                .iva10(factura.getIva10())
+                .totalIva(factura.getTotalIva())
+                .ivaTotal(factura.getTotalIva()) // Alias for frontend compatibility
+                .total(factura.getTotal())
+                .descuento(factura.getDescuento())
+                .estado(factura.getEstado())
+                .estadoPago(calcularEstadoPago(factura.getEstado(), factura.getTotal(), factura.getPagado(),
+                        factura.getSaldo(), factura.getFechaVencimiento(), factura.getTipo()))
+                .moneda(factura.getMoneda())
+                .cdc(factura.getCdc())
+                .timbrado(factura.getTimbrado())
+                .establecimiento(factura.getEstablecimiento())
+                .puntoExpedicion(factura.getPuntoExpedicion())
+                .fechaAprobacionSifen(factura.getFechaAprobacionSifen())
+                .codigoEstadoSifen(factura.getCodigoEstadoSifen())
+                .mensajeSifen(factura.getMensajeSifen())
+                .urlKude(factura.getUrlKude())
+                .saldo(factura.getSaldo())
+                .saldoPendiente(factura.getSaldo()) // Alias for frontend compatibility
+                .pagado(factura.getPagado())
+                .observaciones(factura.getObservaciones())
+                .createdAt(factura.getCreatedAt())
+                .updatedAt(factura.getUpdatedAt())
+                .build();
+    }
+
     /**
      * Calcular estado de pago de una factura
      */
     private String calcularEstadoPago(Factura factura) {
-        if (factura.getEstado() == EstadoFactura.ANULADA || factura.getEstado() == EstadoFactura.RECHAZADA) {
+        return calcularEstadoPago(factura.getEstado(), factura.getTotal(), factura.getPagado(),
+                factura.getSaldo(), factura.getFechaVencimiento(), factura.getTipo());
+    }
+
+    private String calcularEstadoPago(EstadoFactura estado, Double totalFactura, Double pagadoFactura,
+                                      Double saldoFactura, LocalDate fechaVencimiento, String tipo) {
+        if (estado == EstadoFactura.ANULADA || estado == EstadoFactura.RECHAZADA) {
             return "ANULADO";
         }
 
-        if (factura.getEstado() == EstadoFactura.PAGADA) {
+        if (estado == EstadoFactura.PAGADA) {
             return "PAGADO";
         }
 
-        Double total = factura.getTotal() != null ? factura.getTotal() : 0.0;
-        Double pagado = factura.getPagado() != null ? factura.getPagado() : 0.0;
-        Double saldo = factura.getSaldo() != null ? factura.getSaldo() : total;
+        Double total = totalFactura != null ? totalFactura : 0.0;
+        Double pagado = pagadoFactura != null ? pagadoFactura : 0.0;
+        Double saldo = saldoFactura != null ? saldoFactura : total;
 
         // Si está completamente pagado
         if (pagado >= total || saldo <= 0.01) {
@@ -586,9 +694,9 @@ public class FacturaService {
         }
 
         // Si está vencido
-        if (factura.getFechaVencimiento() != null &&
-            factura.getFechaVencimiento().isBefore(LocalDate.now()) &&
-            factura.getTipo() != null && factura.getTipo().equals("CREDITO")) {
+        if (fechaVencimiento != null &&
+            fechaVencimiento.isBefore(LocalDate.now()) &&
+            tipo != null && tipo.equals("CREDITO")) {
             return "VENCIDO";
         }
 
@@ -0,0 +1,140 @@
+package com.logistic.control.service;
+
+import com.logistic.control.config.SifenConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transporte SIFEN sobre el HttpClient del JDK.
+ * Un único cliente por SSLContext mantiene el pool de conexiones keep-alive y, al compartir el
+ * SSLContext, reanuda las sesiones TLS en lugar de repetir el handshake mTLS completo.
+ * Limita las solicitudes simultáneas por endpoint y registra la latencia en sifen.http.solicitudes.
+ * Cada solicitud pasa por SifenCircuitBreaker, que corta el tráfico mientras SIFEN no responde.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class HttpClientSifenTransport implements SifenTransport {
+
+    private final SifenConfig sifenConfig;
+    private final MeterRegistry meterRegistry;
+    private final SifenCircuitBreaker circuitBreaker;
+
+    private final ConcurrentHashMap<String, Semaphore> limitesPorEndpoint = new ConcurrentHashMap<>();
+
+    private volatile Cliente cliente;
+
+    @Override
+    public String enviar(SSLContext sslContext, String urlEndpoint, String soapEnvelope, String soapAction)
+            throws Exception {
+        HttpClient httpClient = obtenerCliente(sslContext);
+
+        HttpRequest request = HttpRequest.newBuilder(URI.create(urlEndpoint))
+                .timeout(Duration.ofSeconds(sifenConfig.getReadTimeout()))
+                .header("Content-Type", "application/soap+xml; charset=utf-8")
+                .header("SOAPAction", soapAction)
+                .POST(HttpRequest.BodyPublishers.ofString(soapEnvelope, StandardCharsets.UTF_8))
+                .build();
+
+        if (!circuitBreaker.permitirSolicitud()) {
+            registrar(soapAction, "CIRCUITO_ABIERTO", 0);
+            throw new IllegalStateException("SIFEN no disponible: circuito abierto por fallas recientes");
+        }
+
+        Semaphore limite = limitesPorEndpoint.computeIfAbsent(soapAction,
+                endpoint -> new Semaphore(sifenConfig.getMaxConcurrenciaPorEndpoint()));
+        if (!limite.tryAcquire(sifenConfig.getConnectTimeout(), TimeUnit.SECONDS)) {
+            circuitBreaker.liberar();
+            registrar(soapAction, "LIMITE", 0);
+            throw new IllegalStateException("Límite de solicitudes simultáneas a SIFEN alcanzado para " + soapAction);
+        }
+
+        long inicio = System.nanoTime();
+        String resultado = "ERROR";
+        try {
+            // El cuerpo se lee completo, lo que devuelve la conexión al pool
+            HttpResponse<String> response;
+            try {
+                response = httpClient.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                // Timeouts (HttpTimeoutException) y errores de conexión abren el circuito
+                circuitBreaker.registrarFallo();
+                throw e;
+            } catch (InterruptedException | RuntimeException e) {
+                circuitBreaker.liberar();
+                throw e;
+            }
+            resultado = String.valueOf(response.statusCode());
+            log.debug("SIFEN Response Code: {}", response.statusCode());
+
+            if (response.statusCode() >= 500) {
+                circuitBreaker.registrarFallo();
+            } else {
+                circuitBreaker.registrarExito();
+            }
+
+            if (response.statusCode() != 200) {
+                log.error("SIFEN Error Response: {}", response.body());
+                throw new RuntimeException("Error en respuesta SIFEN: HTTP " + response.statusCode());
+            }
+            return response.body();
+        } finally {
+            limite.release();
+            registrar(soapAction, resultado, System.nanoTime() - inicio);
+        }
+    }
+
+    /**
+     * Cliente HTTP asociado al SSLContext; se reconstruye solo si el SSLContext cambia
+     */
+    private HttpClient obtenerCliente(SSLContext sslContext) {
+        Cliente actual = cliente;
+        if (actual != null && actual.sslContext() == sslContext) {
+            return actual.httpClient();
+        }
+
+        synchronized (this) {
+            actual = cliente;
+            if (actual == null || actual.sslContext() != sslContext) {
+                HttpClient httpClient = HttpClient.newBuilder()
+                        .sslContext(sslContext)
+                        .version(HttpClient.Version.HTTP_1_1)
+                        .connectTimeout(Duration.ofSeconds(sifenConfig.getConnectTimeout()))
+                        .followRedirects(HttpClient.Redirect.NEVER)
+                        .build();
+                actual = new Cliente(sslContext, httpClient);
+                cliente = actual;
+                log.info("Cliente HTTP para SIFEN inicializado (keep-alive, máx. {} solicitudes simultáneas por endpoint)",
+                        sifenConfig.getMaxConcurrenciaPorEndpoint());
+            }
+            return actual.httpClient();
+        }
+    }
+
+    private void registrar(String endpoint, String resultado, long duracionNanos) {
+        Timer.builder("sifen.http.solicitudes")
+                .description("Latencia de las solicitudes HTTP a SIFEN")
+                .tag("endpoint", endpoint)
+                .tag("resultado", resultado)
+                .register(meterRegistry)
+                .record(duracionNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private record Cliente(SSLContext sslContext, HttpClient httpClient) {
+    }
+}
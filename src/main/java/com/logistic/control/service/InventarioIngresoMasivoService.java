@@ -0,0 +1,352 @@
+package com.logistic.control.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.logistic.control.dto.request.InventarioRequest;
+import com.logistic.control.dto.response.IngresoMasivoResponse;
+import com.logistic.control.entity.Cliente;
+import com.logistic.control.entity.Inventario;
+import com.logistic.control.entity.Producto;
+import com.logistic.control.exception.BusinessException;
+import com.logistic.control.repository.ClienteRepository;
+import com.logistic.control.repository.InventarioRepository;
+import com.logistic.control.repository.ProductoRepository;
+import com.logistic.control.security.InputSanitizer;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Ingreso masivo de inventario desde CSV o NDJSON.
+ * El archivo se lee registro por registro (en CSV un campo entre comillas puede abarcar varias líneas)
+ * y se procesa en bloques: por cada bloque se resuelven clientes y productos con una sola consulta IN
+ * y se insertan los lotes en una transacción propia.
+ * Nunca se mantiene el archivo completo en memoria.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class InventarioIngresoMasivoService {
+
+    private static final int TAMANO_BLOQUE = 500;
+    private static final int MAX_ERRORES_REPORTADOS = 1000;
+    private static final int MAX_LARGO_REGISTRO = 64 * 1024;
+
+    private final InventarioService inventarioService;
+    private final InventarioRepository inventarioRepository;
+    private final ClienteRepository clienteRepository;
+    private final ProductoRepository productoRepository;
+    private final InventarioLoteIndex loteIndex;
+    private final InputSanitizer inputSanitizer;
+    private final ObjectMapper objectMapper;
+    private final EntityManager entityManager;
+    private final PlatformTransactionManager transactionManager;
+
+    /**
+     * Formatos de entrada soportados
+     */
+    public enum Formato {
+        CSV,
+        NDJSON
+    }
+
+    /**
+     * Procesar un archivo de ingreso masivo
+     */
+    public IngresoMasivoResponse procesar(InputStream contenido, Formato formato) {
+        log.info("Iniciando ingreso masivo de inventario en formato {}", formato);
+
+        IngresoMasivoResponse resultado = IngresoMasivoResponse.builder().build();
+        List<FilaIngreso> bloque = new ArrayList<>(TAMANO_BLOQUE);
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(contenido, StandardCharsets.UTF_8))) {
+            Map<String, Integer> columnas = formato == Formato.CSV ? leerEncabezado(reader) : null;
+            long numeroFila = formato == Formato.CSV ? 1 : 0;
+
+            String linea;
+            while ((linea = reader.readLine()) != null) {
+                numeroFila++;
+                if (linea.isBlank()) {
+                    continue;
+                }
+                resultado.setTotalFilas(resultado.getTotalFilas() + 1);
+                long filaInicio = numeroFila;
+
+                try {
+                    InventarioRequest request;
+                    if (formato == Formato.CSV) {
+                        // Un campo entre comillas puede contener saltos de línea: el registro sigue en la próxima
+                        StringBuilder registro = new StringBuilder(linea);
+                        while (comillasAbiertas(registro)) {
+                            String continuacion = reader.readLine();
+                            if (continuacion == null) {
+                                throw new BusinessException("Comillas sin cerrar al final del archivo");
+                            }
+                            numeroFila++;
+                            if (registro.length() + continuacion.length() > MAX_LARGO_REGISTRO) {
+                                throw new BusinessException("Registro CSV demasiado largo o con comillas sin cerrar");
+                            }
+                            registro.append('\n').append(continuacion);
+                        }
+                        request = parsearCsv(registro.toString(), columnas);
+                    } else {
+                        request = objectMapper.readValue(linea, InventarioRequest.class);
+                    }
+                    bloque.add(new FilaIngreso(filaInicio, request));
+                } catch (Exception e) {
+                    registrarError(resultado, filaInicio, "Formato inválido: " + e.getMessage());
+                }
+
+                if (bloque.size() >= TAMANO_BLOQUE) {
+                    procesarBloque(bloque, resultado);
+                    bloque.clear();
+                }
+            }
+
+            if (!bloque.isEmpty()) {
+                procesarBloque(bloque, resultado);
+            }
+        } catch (IOException e) {
+            log.error("Error leyendo archivo de ingreso masivo", e);
+            throw new BusinessException("Error leyendo el archivo de ingreso masivo", e);
+        }
+
+        log.info("Ingreso masivo finalizado. Filas: {}, Creadas: {}, Con error: {}",
+                resultado.getTotalFilas(), resultado.getFilasCreadas(), resultado.getFilasConError());
+
+        return resultado;
+    }
+
+    /**
+     * Validar, resolver referencias e insertar un bloque de filas en una sola transacción
+     */
+    private void procesarBloque(List<FilaIngreso> bloque, IngresoMasivoResponse resultado) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        List<Long> filasValidas = new ArrayList<>(bloque.size());
+        Integer creadas;
+
+        try {
+            creadas = transactionTemplate.execute(status -> {
+                Set<Long> clienteIds = new HashSet<>();
+                Set<Long> productoIds = new HashSet<>();
+                for (FilaIngreso fila : bloque) {
+                    if (fila.request().getClienteId() != null) {
+                        clienteIds.add(fila.request().getClienteId());
+                    }
+                    if (fila.request().getProductoId() != null) {
+                        productoIds.add(fila.request().getProductoId());
+                    }
+                }
+
+                Map<Long, Cliente> clientes = clienteRepository.findAllById(clienteIds).stream()
+                        .collect(Collectors.toMap(Cliente::getId, Function.identity()));
+                Map<Long, Producto> productos = productoRepository.findAllById(productoIds).stream()
+                        .collect(Collectors.toMap(Producto::getId, Function.identity()));
+
+                List<Inventario> nuevos = new ArrayList<>(bloque.size());
+                for (FilaIngreso fila : bloque) {
+                    InventarioRequest request = fila.request();
+                    try {
+                        if (request.getClienteId() == null || request.getProductoId() == null) {
+                            throw new BusinessException("Cliente y producto son requeridos");
+                        }
+                        Cliente cliente = clientes.get(request.getClienteId());
+                        if (cliente == null) {
+                            throw new BusinessException("Cliente no encontrado con id: " + request.getClienteId());
+                        }
+                        Producto producto = productos.get(request.getProductoId());
+                        if (producto == null) {
+                            throw new BusinessException("Producto no encontrado con id: " + request.getProductoId());
+                        }
+
+                        inventarioService.validarDatosInventario(request);
+                        nuevos.add(construirInventario(request, cliente, producto));
+                        filasValidas.add(fila.numero());
+                    } catch (BusinessException e) {
+                        registrarError(resultado, fila.numero(), e.getMessage());
+                    }
+                }
+
+                List<Inventario> guardados = inventarioRepository.saveAll(nuevos);
+                inventarioRepository.flush();
+                guardados.forEach(loteIndex::registrar);
+                return guardados.size();
+            });
+        } catch (DataAccessException e) {
+            log.error("Error guardando bloque de ingreso masivo", e);
+            filasValidas.forEach(fila -> registrarError(resultado, fila, "Error al guardar el bloque en base de datos"));
+            creadas = 0;
+        }
+
+        // Con open-in-view el contexto de persistencia sobrevive a la transacción: liberarlo por bloque
+        entityManager.clear();
+
+        resultado.setFilasCreadas(resultado.getFilasCreadas() + (creadas != null ? creadas : 0));
+    }
+
+    private Inventario construirInventario(InventarioRequest request, Cliente cliente, Producto producto) {
+        Inventario inventario = Inventario.builder()
+                .cliente(cliente)
+                .producto(producto)
+                .cantidad(request.getCantidad())
+                .ubicacionDeposito(inputSanitizer.sanitize(request.getUbicacionDeposito()))
+                .zona(request.getZona())
+                .pasillo(request.getPasillo())
+                .rack(request.getRack())
+                .nivel(request.getNivel())
+                .lote(inputSanitizer.sanitize(request.getLote()))
+                .fechaVencimiento(request.getFechaVencimiento())
+                .costoAlmacenajeDiario(request.getCostoAlmacenajeDiario())
+                .observaciones(inputSanitizer.sanitize(request.getObservaciones()))
+                .build();
+
+        // Igual que registrarIngreso: fecha de entrada y estado EN_DEPOSITO
+        inventario.entrada();
+        return inventario;
+    }
+
+    private Map<String, Integer> leerEncabezado(BufferedReader reader) throws IOException {
+        String encabezado = reader.readLine();
+        if (encabezado == null || encabezado.isBlank()) {
+            throw new BusinessException("El archivo CSV no tiene encabezado");
+        }
+        if (encabezado.charAt(0) == '\uFEFF') {
+            encabezado = encabezado.substring(1);
+        }
+
+        Map<String, Integer> columnas = new HashMap<>();
+        List<String> nombres = separarCsv(encabezado);
+        for (int i = 0; i < nombres.size(); i++) {
+            columnas.put(nombres.get(i).trim().toLowerCase(Locale.ROOT), i);
+        }
+
+        if (!columnas.containsKey("clienteid") || !columnas.containsKey("productoid") || !columnas.containsKey("cantidad")) {
+            throw new BusinessException("El encabezado CSV debe incluir clienteId, productoId y cantidad");
+        }
+        return columnas;
+    }
+
+    private InventarioRequest parsearCsv(String linea, Map<String, Integer> columnas) {
+        List<String> valores = separarCsv(linea);
+
+        return InventarioRequest.builder()
+                .clienteId(toLong(valor(valores, columnas, "clienteid")))
+                .productoId(toLong(valor(valores, columnas, "productoid")))
+                .cantidad(toInteger(valor(valores, columnas, "cantidad")))
+                .ubicacionDeposito(valor(valores, columnas, "ubicaciondeposito"))
+                .zona(valor(valores, columnas, "zona"))
+                .pasillo(valor(valores, columnas, "pasillo"))
+                .rack(valor(valores, columnas, "rack"))
+                .nivel(valor(valores, columnas, "nivel"))
+                .lote(valor(valores, columnas, "lote"))
+                .fechaVencimiento(toFecha(valor(valores, columnas, "fechavencimiento")))
+                .costoAlmacenajeDiario(toDouble(valor(valores, columnas, "costoalmacenajediario")))
+                .observaciones(valor(valores, columnas, "observaciones"))
+                .build();
+    }
+
+    /**
+     * Separar una línea CSV respetando comillas dobles ("" escapa una comilla)
+     */
+    private List<String> separarCsv(String linea) {
+        List<String> campos = new ArrayList<>();
+        StringBuilder actual = new StringBuilder();
+        boolean entreComillas = false;
+
+        for (int i = 0; i < linea.length(); i++) {
+            char c = linea.charAt(i);
+            if (entreComillas) {
+                if (c == '"') {
+                    if (i + 1 < linea.length() && linea.charAt(i + 1) == '"') {
+                        actual.append('"');
+                        i++;
+                    } else {
+                        entreComillas = false;
+                    }
+                } else {
+                    actual.append(c);
+                }
+            } else if (c == '"') {
+                entreComillas = true;
+            } else if (c == ',') {
+                campos.add(actual.toString());
+                actual.setLength(0);
+            } else {
+                actual.append(c);
+            }
+        }
+        campos.add(actual.toString());
+        return campos;
+    }
+
+    /**
+     * Si la línea termina dentro de un campo entre comillas ("" escapado suma dos, así que basta la paridad)
+     */
+    private boolean comillasAbiertas(CharSequence registro) {
+        boolean abiertas = false;
+        for (int i = 0; i < registro.length(); i++) {
+            if (registro.charAt(i) == '"') {
+                abiertas = !abiertas;
+            }
+        }
+        return abiertas;
+    }
+
+    private String valor(List<String> valores, Map<String, Integer> columnas, String columna) {
+        Integer indice = columnas.get(columna);
+        if (indice == null || indice >= valores.size()) {
+            return null;
+        }
+        String valor = valores.get(indice).trim();
+        return valor.isEmpty() ? null : valor;
+    }
+
+    private Long toLong(String valor) {
+        return valor != null ? Long.valueOf(valor) : null;
+    }
+
+    private Integer toInteger(String valor) {
+        return valor != null ? Integer.valueOf(valor) : null;
+    }
+
+    private Double toDouble(String valor) {
+        return valor != null ? Double.valueOf(valor) : null;
+    }
+
+    private LocalDateTime toFecha(String valor) {
+        if (valor == null) {
+            return null;
+        }
+        // Acepta fecha simple (yyyy-MM-dd) o fecha-hora ISO
+        return valor.length() == 10 ? LocalDateTime.parse(valor + "T00:00:00") : LocalDateTime.parse(valor);
+    }
+
+    private void registrarError(IngresoMasivoResponse resultado, long fila, String mensaje) {
+        resultado.setFilasConError(resultado.getFilasConError() + 1);
+        if (resultado.getErrores().size() < MAX_ERRORES_REPORTADOS) {
+            resultado.getErrores().add(new IngresoMasivoResponse.ErrorFila(fila, mensaje));
+        }
+    }
+
+    private record FilaIngreso(long numero, InventarioRequest request) {
+    }
+}
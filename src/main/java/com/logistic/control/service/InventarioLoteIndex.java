@@ -0,0 +1,226 @@
+package com.logistic.control.service;
+
+import com.logistic.control.entity.Inventario;
+import com.logistic.control.enums.EstadoInventario;
+import com.logistic.control.repository.InventarioRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Índice en memoria de lotes de inventario por producto.
+ * Mantiene el stock total y los lotes con stock ordenados por fecha de entrada (FIFO),
+ * de modo que el lote FIFO y el stock total se leen sin consultar ni hidratar entidades.
+ * Los cambios se aplican recién cuando la transacción que los produjo hace commit.
+ * Solo ve los commits de esta instancia: los lotes de cada producto se recargan de la base
+ * a los app.inventario.lote-index.ttl-segundos, así lo escrito por otras instancias (o por SQL directo)
+ * aparece en el índice con ese retraso máximo. La reserva y la salida validan stock contra la base,
+ * por lo que un índice desactualizado puede sugerir un lote sin stock pero nunca provocar sobreventa.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class InventarioLoteIndex {
+
+    /** Valor usado para lotes sin fecha de entrada: quedan al final del orden FIFO */
+    private static final long SIN_FECHA = Long.MAX_VALUE;
+
+    private final InventarioRepository inventarioRepository;
+
+    private final ConcurrentHashMap<Long, LotesProducto> lotesPorProducto = new ConcurrentHashMap<>();
+
+    /** Cambios confirmados aplicados al índice; detecta commits ocurridos durante una carga */
+    private final AtomicLong cambios = new AtomicLong();
+
+    @Value("${app.inventario.lote-index.ttl-segundos:30}")
+    private long ttlSegundos;
+
+    /**
+     * ID del lote FIFO disponible del producto, o null si no hay stock disponible
+     */
+    public Long obtenerLoteFIFO(Long productoId) {
+        return lotes(productoId).loteFIFO();
+    }
+
+    /**
+     * Stock disponible del producto (estados DISPONIBLE y EN_DEPOSITO)
+     */
+    public long obtenerStockTotal(Long productoId) {
+        return lotes(productoId).stockTotal();
+    }
+
+    /**
+     * Registrar el estado actual de un lote; se aplica al confirmar la transacción en curso
+     */
+    public void registrar(Inventario inventario) {
+        Long productoId = inventario.getProducto().getId();
+        long id = inventario.getId();
+        long fechaEntrada = toEpoch(inventario.getFechaEntrada());
+        int disponible = inventario.getCantidadDisponible() != null ? inventario.getCantidadDisponible() : 0;
+        EstadoInventario estado = inventario.getEstado();
+
+        // computeIfPresent espera a una carga en curso del mismo producto, así no se pierde la actualización
+        alConfirmar(() -> {
+            cambios.incrementAndGet();
+            lotesPorProducto.computeIfPresent(productoId, (key, lotes) -> {
+                lotes.upsert(id, fechaEntrada, disponible, estado);
+                return lotes;
+            });
+        });
+    }
+
+    /**
+     * Quitar un lote del índice; se aplica al confirmar la transacción en curso
+     */
+    public void eliminar(Inventario inventario) {
+        Long productoId = inventario.getProducto().getId();
+        long id = inventario.getId();
+
+        alConfirmar(() -> {
+            cambios.incrementAndGet();
+            lotesPorProducto.computeIfPresent(productoId, (key, lotes) -> {
+                lotes.remove(id);
+                return lotes;
+            });
+        });
+    }
+
+    /**
+     * Descartar los lotes de un producto; se recargan en la próxima lectura
+     */
+    public void invalidar(Long productoId) {
+        alConfirmar(() -> {
+            cambios.incrementAndGet();
+            lotesPorProducto.remove(productoId);
+        });
+    }
+
+    /**
+     * Lotes vigentes del producto. La consulta corre fuera del mapa para no retener el lock
+     * del bin de ConcurrentHashMap (y a los demás productos del bin) durante el viaje a la base.
+     */
+    private LotesProducto lotes(Long productoId) {
+        long ahora = System.nanoTime();
+        LotesProducto actual = lotesPorProducto.get(productoId);
+        if (actual != null && ahora - actual.venceNanos < 0) {
+            return actual;
+        }
+
+        long cambiosAntes = cambios.get();
+        LotesProducto cargado = cargar(productoId);
+        cargado.venceNanos = ahora + TimeUnit.SECONDS.toNanos(ttlSegundos);
+
+        // Solo se publica si ningún commit local se aplicó durante la consulta (lo cargado podría no verlo);
+        // si no, se usa para esta lectura y la próxima vuelve a cargar
+        LotesProducto vigente = lotesPorProducto.compute(productoId, (key, previo) ->
+                cambios.get() != cambiosAntes || (previo != null && previo != actual) ? previo : cargado);
+        return vigente != null ? vigente : cargado;
+    }
+
+    private LotesProducto cargar(Long productoId) {
+        List<Object[]> filas = inventarioRepository.findLotesByProductoId(productoId);
+        LotesProducto lotes = new LotesProducto(Math.max(filas.size(), 4));
+        for (Object[] fila : filas) {
+            lotes.upsert((Long) fila[0],
+                    toEpoch((LocalDateTime) fila[1]),
+                    fila[2] != null ? (Integer) fila[2] : 0,
+                    (EstadoInventario) fila[3]);
+        }
+        log.debug("Índice de lotes cargado para producto {}: {} lotes", productoId, filas.size());
+        return lotes;
+    }
+
+    private void alConfirmar(Runnable accion) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            accion.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                accion.run();
+            }
+        });
+    }
+
+    private static long toEpoch(LocalDateTime fecha) {
+        return fecha != null ? fecha.toEpochSecond(ZoneOffset.UTC) : SIN_FECHA;
+    }
+
+    /**
+     * Lotes de un producto. Cada escritura es O(log n): el lote previo se ubica por id, el stock total
+     * se ajusta con la diferencia y solo los lotes elegibles para FIFO (DISPONIBLE con cantidad)
+     * se mantienen ordenados por (fechaEntrada, id). Las lecturas son O(1) y O(log n).
+     */
+    static final class LotesProducto {
+
+        private static final Comparator<Lote> ORDEN_FIFO =
+                Comparator.comparingLong(Lote::fecha).thenComparingLong(Lote::id);
+
+        private final HashMap<Long, Lote> porId;
+        private final TreeSet<Lote> elegiblesFIFO = new TreeSet<>(ORDEN_FIFO);
+        private long stockTotal;
+
+        /** Momento (nanoTime) a partir del cual se recarga de la base; lo fija lotes() antes de publicarlo */
+        private volatile long venceNanos;
+
+        LotesProducto(int capacidad) {
+            porId = HashMap.newHashMap(capacidad);
+        }
+
+        synchronized Long loteFIFO() {
+            return elegiblesFIFO.isEmpty() ? null : elegiblesFIFO.first().id();
+        }
+
+        synchronized long stockTotal() {
+            return stockTotal;
+        }
+
+        synchronized void upsert(long id, long fecha, int disponible, EstadoInventario estado) {
+            Lote nuevo = new Lote(id, fecha, disponible, estado);
+            quitar(porId.put(id, nuevo));
+            stockTotal += nuevo.aporteStock();
+            if (nuevo.elegibleFIFO()) {
+                elegiblesFIFO.add(nuevo);
+            }
+        }
+
+        synchronized void remove(long id) {
+            quitar(porId.remove(id));
+        }
+
+        private void quitar(Lote previo) {
+            if (previo == null) {
+                return;
+            }
+            stockTotal -= previo.aporteStock();
+            if (previo.elegibleFIFO()) {
+                elegiblesFIFO.remove(previo);
+            }
+        }
+
+        private record Lote(long id, long fecha, int disponible, EstadoInventario estado) {
+
+            long aporteStock() {
+                return estado == EstadoInventario.DISPONIBLE || estado == EstadoInventario.EN_DEPOSITO ? disponible : 0;
+            }
+
+            boolean elegibleFIFO() {
+                return estado == EstadoInventario.DISPONIBLE && disponible > 0;
+            }
+        }
+    }
+}
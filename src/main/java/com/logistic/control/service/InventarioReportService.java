@@ -1,8 +1,9 @@
 package com.logistic.control.service;
 
 import com.google.zxing.WriterException;
-import com.logistic.control.entity.Producto;
-import com.logistic.control.repository.ProductoRepository;
+import com.logistic.control.dto.response.InventarioStockAgrupado;
+import com.logistic.control.repository.InventarioRepository;
+import com.logistic.control.util.IteratorJRDataSource;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import net.sf.jasperreports.engine.JRException;
@@ -10,59 +11,54 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+/**
+ * Reporte de inventario: stock por producto, zona y estado valorizado a valorUnitario.
+ * Las filas salen de una consulta agregada en streaming y Jasper las consume a medida que llena
+ * el reporte (virtualizado), así un depósito con cientos de miles de lotes se renderiza con memoria acotada.
+ * Los totales los calcula la propia plantilla durante el llenado.
+ */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class InventarioReportService {
 
     private final ReportService reportService;
-    private final ProductoRepository productoRepository;
+    private final InventarioRepository inventarioRepository;
 
     @Transactional(readOnly = true)
-    public byte[] generateInventarioReport(String categoria) throws JRException, IOException, WriterException {
-        List<Producto> productos = productoRepository.findAll();
-
-        // Filtrar por categoría si se especifica
-        if (categoria != null && !categoria.isEmpty()) {
-            productos = productos.stream()
-                    .filter(p -> categoria.equalsIgnoreCase("TODOS") || true) // Sin filtro real por ahora
-                    .collect(Collectors.toList());
-        }
-
+    public void generateInventarioReport(String categoria, OutputStream salida) throws JRException, IOException, WriterException {
         Map<String, Object> parameters = reportService.createBaseParameters();
         parameters.put("FECHA_REPORTE", new Date());
         parameters.put("TITULO", categoria != null ? "Inventario - " + categoria : "Inventario Completo");
-        parameters.put("TOTAL_ITEMS", productos.size());
+        reportService.agregarVerificacionQR(parameters, "INVENTARIO", System.currentTimeMillis());
 
-        // Calcular valor total (usando precio de venta como estimado)
-        BigDecimal valorTotal = BigDecimal.ZERO;
-        for (Producto p : productos) {
-            // Como no hay campo precio directo, usar 0
-            valorTotal = valorTotal.add(BigDecimal.ZERO);
+        try (Stream<InventarioStockAgrupado> filas = inventarioRepository.streamStockAgrupado()) {
+            reportService.exportarPdf("inventario", parameters,
+                    new IteratorJRDataSource<>(filas.iterator(), this::valorCampo), true, salida);
         }
-        parameters.put("VALOR_TOTAL", valorTotal);
+    }
 
-        List<Map<String, Object>> datos = productos.stream()
-                .map(p -> {
-                    Map<String, Object> data = new HashMap<>();
-                    data.put("producto", p.getDescripcion());
-                    data.put("sku", p.getCodigo());
-                    data.put("categoria", "GENERAL"); // Categoría por defecto
-                    data.put("stockDisponible", 0); // No hay campo stock
-                    data.put("stockMinimo", 0);
-                    data.put("precioUnitario", 0.0);
-                    data.put("valorTotal", 0.0);
-                    data.put("ubicacion", "DEPOSITO"); // Ubicación por defecto
-                    return data;
-                }).collect(Collectors.toList());
+    private Object valorCampo(InventarioStockAgrupado fila, String campo) {
+        return switch (campo) {
+            case "producto" -> fila.getProductoDescripcion();
+            case "sku" -> fila.getProductoCodigo();
+            case "zona" -> fila.getZona() != null ? fila.getZona() : "Sin zona";
+            case "estado" -> fila.getEstado().getDescripcion();
+            case "stock" -> fila.getCantidad();
+            case "reservado" -> fila.getCantidadReservada();
+            case "precioUnitario" -> precioUnitario(fila);
+            case "valorTotal" -> precioUnitario(fila).multiply(BigDecimal.valueOf(fila.getCantidad()));
+            default -> null;
+        };
+    }
 
-        return reportService.generatePdfReportWithQR("inventario", parameters, datos, "INVENTARIO", System.currentTimeMillis());
+    private BigDecimal precioUnitario(InventarioStockAgrupado fila) {
+        return fila.getValorUnitario() != null ? BigDecimal.valueOf(fila.getValorUnitario()) : BigDecimal.ZERO;
     }
 }
@@ -0,0 +1,160 @@
+package com.logistic.control.service;
+
+import com.logistic.control.entity.Inventario;
+import com.logistic.control.enums.EstadoInventario;
+import com.logistic.control.exception.BusinessException;
+import com.logistic.control.exception.ResourceNotFoundException;
+import com.logistic.control.exception.StockInsuficienteException;
+import com.logistic.control.repository.InventarioRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Motor de reservas y salidas de inventario seguro ante concurrencia.
+ * Las reservas usan un UPDATE condicional atómico; las salidas y liberaciones
+ * usan bloqueo optimista (@Version) con reintentos acotados.
+ * Cada intento corre en su propia transacción para poder reintentar tras un conflicto.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class InventarioReservaService {
+
+    private static final Set<EstadoInventario> ESTADOS_RESERVABLES =
+            EnumSet.of(EstadoInventario.DISPONIBLE, EstadoInventario.RESERVADO);
+
+    private final InventarioRepository inventarioRepository;
+    private final InventarioLoteIndex loteIndex;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${app.inventario.max-reintentos:3}")
+    private int maxReintentos;
+
+    @Value("${app.inventario.backoff-ms:25}")
+    private long backoffMs;
+
+    /**
+     * Reservar cantidad de un lote (fast path atómico, sin read-modify-write)
+     */
+    public Inventario reservar(Long inventarioId, Integer cantidad) {
+        validarCantidad(cantidad);
+
+        return ejecutarConReintentos(inventarioId, status -> {
+            int actualizados = inventarioRepository.reservarSiDisponible(
+                    inventarioId, cantidad, ESTADOS_RESERVABLES, EstadoInventario.RESERVADO, LocalDateTime.now());
+
+            Inventario inventario = inventarioRepository.findByIdWithClienteAndProducto(inventarioId)
+                    .orElseThrow(() -> new ResourceNotFoundException("Inventario", "id", inventarioId));
+
+            if (actualizados == 0) {
+                if (!ESTADOS_RESERVABLES.contains(inventario.getEstado())) {
+                    throw new BusinessException("El inventario no está disponible para reservar");
+                }
+                throw new StockInsuficienteException(inventario.getProducto().getDescripcion(),
+                        inventario.getCantidadDisponible(), cantidad);
+            }
+
+            loteIndex.registrar(inventario);
+            return inventario;
+        });
+    }
+
+    /**
+     * Liberar cantidad reservada de un lote
+     */
+    public Inventario liberarReserva(Long inventarioId, Integer cantidad) {
+        validarCantidad(cantidad);
+
+        return ejecutarConReintentos(inventarioId, status -> {
+            Inventario inventario = inventarioRepository.findByIdWithClienteAndProducto(inventarioId)
+                    .orElseThrow(() -> new ResourceNotFoundException("Inventario", "id", inventarioId));
+
+            if (inventario.getEstado() != EstadoInventario.RESERVADO) {
+                throw new BusinessException("El inventario no está reservado");
+            }
+
+            try {
+                inventario.liberarReserva(cantidad);
+            } catch (IllegalArgumentException e) {
+                throw new BusinessException(e.getMessage());
+            }
+
+            Inventario updated = inventarioRepository.saveAndFlush(inventario);
+            loteIndex.registrar(updated);
+            return updated;
+        });
+    }
+
+    /**
+     * Registrar salida de un lote
+     */
+    public Inventario registrarSalida(Long inventarioId, Integer cantidad) {
+        validarCantidad(cantidad);
+
+        return ejecutarConReintentos(inventarioId, status -> {
+            Inventario inventario = inventarioRepository.findByIdWithClienteAndProducto(inventarioId)
+                    .orElseThrow(() -> new ResourceNotFoundException("Inventario", "id", inventarioId));
+
+            if (inventario.getEstado() != EstadoInventario.DISPONIBLE &&
+                inventario.getEstado() != EstadoInventario.EN_DEPOSITO) {
+                throw new BusinessException("El inventario no está disponible para salida");
+            }
+
+            try {
+                inventario.salida(cantidad);
+            } catch (IllegalArgumentException e) {
+                throw new BusinessException(e.getMessage());
+            }
+
+            Inventario updated = inventarioRepository.saveAndFlush(inventario);
+            loteIndex.registrar(updated);
+            return updated;
+        });
+    }
+
+    private Inventario ejecutarConReintentos(Long inventarioId, TransactionCallback<Inventario> accion) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+        for (int intento = 1; ; intento++) {
+            try {
+                return transactionTemplate.execute(accion);
+            } catch (OptimisticLockingFailureException e) {
+                if (intento >= maxReintentos) {
+                    log.warn("Conflicto de concurrencia persistente en inventario ID: {} tras {} intentos",
+                            inventarioId, intento);
+                    throw new BusinessException(
+                            "El inventario fue modificado por otra operación, intente nuevamente",
+                            "CONFLICTO_CONCURRENCIA");
+                }
+                log.debug("Conflicto de versión en inventario ID: {}, reintento {}/{}",
+                        inventarioId, intento, maxReintentos);
+                esperar(intento);
+            }
+        }
+    }
+
+    private void esperar(int intento) {
+        try {
+            Thread.sleep(backoffMs * intento);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BusinessException("Operación de inventario interrumpida", e);
+        }
+    }
+
+    private void validarCantidad(Integer cantidad) {
+        if (cantidad == null || cantidad <= 0) {
+            throw new BusinessException("La cantidad debe ser mayor a cero");
+        }
+    }
+}
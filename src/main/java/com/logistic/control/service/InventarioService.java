@@ -2,6 +2,7 @@ package com.logistic.control.service;
 
 import com.logistic.control.dto.request.InventarioRequest;
 import com.logistic.control.dto.response.InventarioResponse;
+import com.logistic.control.dto.response.InventarioResumenResponse;
 import com.logistic.control.entity.Cliente;
 import com.logistic.control.entity.Inventario;
 import com.logistic.control.entity.Producto;
@@ -17,9 +18,11 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.EnumSet;
 import java.util.List;
 
 /**
@@ -35,6 +38,8 @@ public class InventarioService {
     private final ClienteRepository clienteRepository;
     private final ProductoRepository productoRepository;
     private final InputSanitizer inputSanitizer;
+    private final InventarioLoteIndex loteIndex;
+    private final InventarioReservaService reservaService;
 
     /**
      * Listar todo el inventario con paginación
@@ -130,6 +135,7 @@ public class InventarioService {
                 .build();
 
         Inventario saved = inventarioRepository.save(inventario);
+        loteIndex.registrar(saved);
 
         log.info("Inventario creado exitosamente con ID: {}", saved.getId());
         return toResponse(saved);
@@ -153,6 +159,8 @@ public class InventarioService {
 
         validarDatosInventario(request);
 
+        Long productoAnteriorId = inventario.getProducto().getId();
+
         // Actualizar campos
         inventario.setCliente(cliente);
         inventario.setProducto(producto);
@@ -168,6 +176,10 @@ public class InventarioService {
         inventario.setObservaciones(inputSanitizer.sanitize(request.getObservaciones()));
 
         Inventario updated = inventarioRepository.save(inventario);
+        if (!productoAnteriorId.equals(producto.getId())) {
+            loteIndex.invalidar(productoAnteriorId);
+        }
+        loteIndex.registrar(updated);
         log.info("Inventario actualizado exitosamente: {}", updated.getId());
 
         return toResponse(updated);
@@ -201,6 +213,7 @@ public class InventarioService {
         inventario.entrada();
 
         Inventario saved = inventarioRepository.save(inventario);
+        loteIndex.registrar(saved);
 
         log.info("Ingreso de inventario registrado exitosamente con ID: {}", saved.getId());
         return toResponse(saved);
@@ -218,6 +231,7 @@ public class InventarioService {
 
         inventario.entrada();
         Inventario updated = inventarioRepository.save(inventario);
+        loteIndex.registrar(updated);
 
         log.info("Entrada registrada exitosamente");
         return toResponse(updated);
@@ -225,28 +239,13 @@ public class InventarioService {
 
     /**
      * Registrar salida de mercadería
+     * Sin transacción propia: cada intento con bloqueo optimista corre en su propia transacción
      */
-    @Transactional
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public InventarioResponse registrarSalida(Long inventarioId, Integer cantidad) {
         log.info("Registrando salida de inventario ID: {}, Cantidad: {}", inventarioId, cantidad);
 
-        Inventario inventario = inventarioRepository.findById(inventarioId)
-                .orElseThrow(() -> new ResourceNotFoundException("Inventario", "id", inventarioId));
-
-        // Validar estado
-        if (inventario.getEstado() != EstadoInventario.DISPONIBLE &&
-            inventario.getEstado() != EstadoInventario.EN_DEPOSITO) {
-            throw new BusinessException("El inventario no está disponible para salida");
-        }
-
-        // Usar el método salida() de la entidad
-        try {
-            inventario.salida(cantidad);
-        } catch (IllegalArgumentException e) {
-            throw new BusinessException(e.getMessage());
-        }
-
-        Inventario updated = inventarioRepository.save(inventario);
+        Inventario updated = reservaService.registrarSalida(inventarioId, cantidad);
 
         log.info("Salida de inventario registrada exitosamente");
         return toResponse(updated);
@@ -255,24 +254,11 @@ public class InventarioService {
     /**
      * Marcar inventario como reservado
      */
-    @Transactional
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public InventarioResponse reservar(Long inventarioId, Integer cantidad) {
         log.info("Reservando inventario ID: {}, Cantidad: {}", inventarioId, cantidad);
 
-        Inventario inventario = inventarioRepository.findById(inventarioId)
-                .orElseThrow(() -> new ResourceNotFoundException("Inventario", "id", inventarioId));
-
-        if (inventario.getEstado() != EstadoInventario.DISPONIBLE) {
-            throw new BusinessException("El inventario no está disponible para reservar");
-        }
-
-        try {
-            inventario.reservar(cantidad);
-        } catch (IllegalArgumentException e) {
-            throw new BusinessException(e.getMessage());
-        }
-
-        Inventario updated = inventarioRepository.save(inventario);
+        Inventario updated = reservaService.reservar(inventarioId, cantidad);
 
         log.info("Inventario reservado exitosamente");
         return toResponse(updated);
@@ -281,24 +267,11 @@ public class InventarioService {
     /**
      * Liberar reserva de inventario
      */
-    @Transactional
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public InventarioResponse liberarReserva(Long inventarioId, Integer cantidad) {
         log.info("Liberando reserva de inventario ID: {}, Cantidad: {}", inventarioId, cantidad);
 
-        Inventario inventario = inventarioRepository.findById(inventarioId)
-                .orElseThrow(() -> new ResourceNotFoundException("Inventario", "id", inventarioId));
-
-        if (inventario.getEstado() != EstadoInventario.RESERVADO) {
-            throw new BusinessException("El inventario no está reservado");
-        }
-
-        try {
-            inventario.liberarReserva(cantidad);
-        } catch (IllegalArgumentException e) {
-            throw new BusinessException(e.getMessage());
-        }
-
-        Inventario updated = inventarioRepository.save(inventario);
+        Inventario updated = reservaService.liberarReserva(inventarioId, cantidad);
 
         log.info("Reserva de inventario liberada exitosamente");
         return toResponse(updated);
@@ -315,6 +288,7 @@ public class InventarioService {
                 .orElseThrow(() -> new ResourceNotFoundException("Inventario", "id", id));
 
         inventarioRepository.delete(inventario);
+        loteIndex.eliminar(inventario);
 
         log.info("Inventario eliminado exitosamente: {}", id);
     }
@@ -335,6 +309,7 @@ public class InventarioService {
         inventario.setObservaciones(obs + "DAÑADO: " + motivo);
         
         inventarioRepository.save(inventario);
+        loteIndex.registrar(inventario);
         
         log.info("Inventario marcado como dañado");
     }
@@ -342,7 +317,7 @@ public class InventarioService {
     /**
      * Validar datos de inventario (MEJORADO)
      */
-    private void validarDatosInventario(InventarioRequest request) {
+    void validarDatosInventario(InventarioRequest request) {
         if (request.getCantidad() == null || request.getCantidad() <= 0) {
             throw new BusinessException("La cantidad debe ser mayor a cero");
         }
@@ -369,37 +344,27 @@ public class InventarioService {
     }
 
     /**
-     * Listar inventario próximo a vencer (en los próximos 30 días)
+     * Listar inventario próximo a vencer (en los próximos N días)
      */
-    public List<InventarioResponse> listarProximoAVencer(int dias) {
+    public Page<InventarioResumenResponse> listarProximoAVencer(int dias, Pageable pageable) {
         log.debug("Listando inventario que vence en los próximos {} días", dias);
 
         LocalDateTime ahora = LocalDateTime.now();
         LocalDateTime limite = ahora.plusDays(dias);
 
-        return inventarioRepository.findAll().stream()
-                .filter(inventario -> inventario.getFechaVencimiento() != null)
-                .filter(inventario -> inventario.getFechaVencimiento().isAfter(ahora))
-                .filter(inventario -> inventario.getFechaVencimiento().isBefore(limite))
-                .filter(inventario -> inventario.getEstado() == EstadoInventario.DISPONIBLE)
-                .map(this::toResponse)
-                .toList();
+        return inventarioRepository.findResumenByEstadoAndVencimientoBetween(
+                EnumSet.of(EstadoInventario.DISPONIBLE), ahora, limite, pageable);
     }
 
     /**
      * Listar inventario vencido
      */
-    public List<InventarioResponse> listarVencido() {
+    public Page<InventarioResumenResponse> listarVencido(Pageable pageable) {
         log.debug("Listando inventario vencido");
 
-        LocalDateTime ahora = LocalDateTime.now();
-
-        return inventarioRepository.findAll().stream()
-                .filter(inventario -> inventario.getFechaVencimiento() != null)
-                .filter(inventario -> inventario.getFechaVencimiento().isBefore(ahora))
-                .filter(inventario -> inventario.getEstado() != EstadoInventario.DANIADO)
-                .map(this::toResponse)
-                .toList();
+        // Se enumeran los estados en lugar de usar "<> DANIADO" para aprovechar el índice (estado, fecha_vencimiento)
+        return inventarioRepository.findResumenByEstadoAndVencimientoAntesDe(
+                EnumSet.complementOf(EnumSet.of(EstadoInventario.DANIADO)), LocalDateTime.now(), pageable);
     }
 
     /**
@@ -481,18 +446,13 @@ public class InventarioService {
     /**
      * Alertar sobre inventario con rotación baja (más de 90 días sin movimiento)
      */
-    public List<InventarioResponse> listarConBajaRotacion() {
+    public Page<InventarioResumenResponse> listarConBajaRotacion(Pageable pageable) {
         log.debug("Listando inventario con baja rotación (>90 días sin movimiento)");
 
         LocalDateTime limite = LocalDateTime.now().minusDays(90);
 
-        return inventarioRepository.findAll().stream()
-                .filter(inventario -> inventario.getFechaEntrada() != null)
-                .filter(inventario -> inventario.getFechaEntrada().isBefore(limite))
-                .filter(inventario -> inventario.getFechaSalida() == null)
-                .filter(inventario -> inventario.getEstado() == EstadoInventario.EN_DEPOSITO)
-                .map(this::toResponse)
-                .toList();
+        return inventarioRepository.findResumenByEstadoAndEntradaAntesDe(
+                EstadoInventario.EN_DEPOSITO, limite, pageable);
     }
 
     /**
@@ -501,18 +461,13 @@ public class InventarioService {
     public InventarioResponse obtenerLoteFIFO(Long productoId) {
         log.debug("Obteniendo lote FIFO para producto: {}", productoId);
 
-        List<Inventario> inventarios = inventarioRepository.findByProductoId(productoId);
+        Long loteId = loteIndex.obtenerLoteFIFO(productoId);
+        if (loteId == null) {
+            throw new ResourceNotFoundException("No hay inventario disponible para producto", "productoId", productoId);
+        }
 
-        Inventario masAntiguo = inventarios.stream()
-                .filter(inv -> inv.getEstado() == EstadoInventario.DISPONIBLE)
-                .filter(inv -> inv.getCantidadDisponible() > 0)
-                .min((inv1, inv2) -> {
-                    if (inv1.getFechaEntrada() == null) return 1;
-                    if (inv2.getFechaEntrada() == null) return -1;
-                    return inv1.getFechaEntrada().compareTo(inv2.getFechaEntrada());
-                })
-                .orElseThrow(() -> new ResourceNotFoundException(
-                    "No hay inventario disponible para producto", "productoId", productoId));
+        Inventario masAntiguo = inventarioRepository.findById(loteId)
+                .orElseThrow(() -> new ResourceNotFoundException("Inventario", "id", loteId));
 
         log.info("Lote FIFO encontrado: ID={}, FechaEntrada={}, Cantidad={}",
             masAntiguo.getId(), masAntiguo.getFechaEntrada(), masAntiguo.getCantidadDisponible());
@@ -526,13 +481,7 @@ public class InventarioService {
     public boolean verificarStockBajo(Long productoId, Integer umbralMinimo) {
         log.debug("Verificando stock bajo para producto: {}, umbral: {}", productoId, umbralMinimo);
 
-        List<Inventario> inventarios = inventarioRepository.findByProductoId(productoId);
-
-        Integer stockTotal = inventarios.stream()
-                .filter(inv -> inv.getEstado() == EstadoInventario.DISPONIBLE ||
-                              inv.getEstado() == EstadoInventario.EN_DEPOSITO)
-                .mapToInt(Inventario::getCantidadDisponible)
-                .sum();
+        long stockTotal = loteIndex.obtenerStockTotal(productoId);
 
         boolean stockBajo = stockTotal < umbralMinimo;
 
@@ -586,6 +535,7 @@ public class InventarioService {
             Inventario inv = inventarios.get(i);
             cantidadTotal += inv.getCantidad();
             inventarioRepository.delete(inv);
+            loteIndex.eliminar(inv);
         }
 
         principal.setCantidad(cantidadTotal);
@@ -593,6 +543,7 @@ public class InventarioService {
         principal.setObservaciones(obs + String.format(" [CONSOLIDADO: %d inventarios]", inventarios.size()));
 
         Inventario updated = inventarioRepository.save(principal);
+        loteIndex.registrar(updated);
         log.info("Inventarios consolidados exitosamente. Cantidad total: {}", cantidadTotal);
 
         return toResponse(updated);
@@ -11,6 +11,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.util.HashMap;
 import java.util.List;
@@ -29,7 +30,7 @@ public class PedidoReportService {
     private final PedidoRepository pedidoRepository;
 
     @Transactional(readOnly = true)
-    public byte[] generatePedidoReport(Long pedidoId) throws JRException, IOException, WriterException {
+    public void generatePedidoReport(Long pedidoId, OutputStream salida) throws JRException, IOException, WriterException {
         log.info("Generando reporte de pedido ID: {}", pedidoId);
 
         Pedido pedido = pedidoRepository.findById(pedidoId)
@@ -50,12 +51,13 @@ public class PedidoReportService {
                 .collect(Collectors.toList());
 
         // Generar reporte con QR
-        return reportService.generatePdfReportWithQR(
+        reportService.generatePdfReportWithQR(
                 "pedido",
                 parameters,
                 detalles,
                 "PEDIDO",
-                pedidoId
+                pedidoId,
+                salida
         );
     }
 
@@ -0,0 +1,302 @@
+package com.logistic.control.service;
+
+import com.logistic.control.config.ReportConfig;
+import com.logistic.control.dto.response.TrabajoReporteResponse;
+import com.logistic.control.enums.EstadoTrabajoReporte;
+import com.logistic.control.exception.ReportesSaturadosException;
+import com.logistic.control.exception.ResourceNotFoundException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renderizado de reportes PDF en un pool dedicado, fuera de los hilos de Tomcat.
+ * La cola es acotada (jasper.renderizado.cola) y cada rol tiene un máximo de reportes simultáneos;
+ * si no hay lugar se rechaza con ReportesSaturadosException (429 + Retry-After) en vez de encolar sin límite.
+ * Cada reporte es un trabajo cuyo PDF se escribe a disco: las solicitudes síncronas esperan hasta
+ * espera-sincrona-segundos y, si el reporte tarda más, reciben el ID para consultarlo después.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ReportRenderingService {
+
+    private static final String PREFIJO_ROL = "ROLE_";
+    private static final int TAMANO_BUFFER = 64 * 1024;
+
+    private final ReportConfig reportConfig;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, Semaphore> limitesPorRol = new ConcurrentHashMap<>();
+    private final Map<String, TrabajoReporte> trabajos = new ConcurrentHashMap<>();
+
+    private ThreadPoolExecutor executor;
+    private ScheduledExecutorService limpieza;
+    private Path directorio;
+
+    /**
+     * Escribe el PDF de un reporte en la salida
+     */
+    @FunctionalInterface
+    public interface GeneradorReporte {
+        void generar(OutputStream salida) throws Exception;
+    }
+
+    @PostConstruct
+    void iniciar() throws IOException {
+        int hilos = reportConfig.getHilos() > 0
+                ? reportConfig.getHilos()
+                : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        AtomicInteger contador = new AtomicInteger();
+        executor = new ThreadPoolExecutor(hilos, hilos, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(reportConfig.getCola()),
+                tarea -> {
+                    Thread hilo = new Thread(tarea, "reporte-" + contador.incrementAndGet());
+                    hilo.setDaemon(true);
+                    return hilo;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+
+        directorio = reportConfig.getDirectorio() != null && !reportConfig.getDirectorio().isBlank()
+                ? Path.of(reportConfig.getDirectorio())
+                : Path.of(System.getProperty("java.io.tmpdir"), "logistic-reportes");
+        Files.createDirectories(directorio);
+
+        limpieza = Executors.newSingleThreadScheduledExecutor(tarea -> {
+            Thread hilo = new Thread(tarea, "reporte-limpieza");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        limpieza.scheduleWithFixedDelay(this::eliminarVencidos, 1, 1, TimeUnit.MINUTES);
+
+        Gauge.builder("reportes.cola", executor, pool -> pool.getQueue().size())
+                .description("Reportes esperando un hilo de renderizado")
+                .register(meterRegistry);
+        Gauge.builder("reportes.activos", executor, ThreadPoolExecutor::getActiveCount)
+                .description("Reportes renderizándose en este momento")
+                .register(meterRegistry);
+
+        log.info("Renderizado de reportes: {} hilos, cola de {}, resultados en {}",
+                hilos, reportConfig.getCola(), directorio);
+    }
+
+    @PreDestroy
+    void detener() {
+        limpieza.shutdownNow();
+        executor.shutdownNow();
+        trabajos.values().forEach(trabajo -> eliminarArchivo(trabajo.archivo));
+        trabajos.clear();
+    }
+
+    /**
+     * Renderizar esperando el resultado hasta espera-sincrona-segundos.
+     * Si el reporte no termina a tiempo sigue en segundo plano y el trabajo se devuelve EN_COLA o EN_PROCESO.
+     */
+    public TrabajoReporte renderizar(String tipo, String nombreArchivo, GeneradorReporte generador) {
+        TrabajoReporte trabajo = encolar(tipo, nombreArchivo, generador);
+        try {
+            trabajo.futuro.get(reportConfig.getEsperaSincronaSegundos(), TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            log.info("Reporte {} ({}) sigue en proceso; se responde con el trabajo", trabajo.getId(), tipo);
+        } catch (ExecutionException e) {
+            // El error ya quedó registrado en el trabajo
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return trabajo;
+    }
+
+    /**
+     * Encolar un reporte y devolver el trabajo sin esperar
+     */
+    public TrabajoReporte encolar(String tipo, String nombreArchivo, GeneradorReporte generador) {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        String rol = rolConMayorLimite(auth);
+        Semaphore limite = limitesPorRol.computeIfAbsent(rol, r -> new Semaphore(limitePara(r)));
+
+        if (!limite.tryAcquire()) {
+            rechazar("rol");
+            throw new ReportesSaturadosException(
+                    "Se alcanzó el máximo de reportes simultáneos para el rol " + rol,
+                    reportConfig.getRetryAfterSegundos());
+        }
+
+        TrabajoReporte trabajo = new TrabajoReporte(UUID.randomUUID().toString(), tipo, nombreArchivo,
+                auth != null ? auth.getName() : null);
+        try {
+            trabajo.futuro = executor.submit(() -> ejecutar(trabajo, generador, limite));
+        } catch (RejectedExecutionException e) {
+            limite.release();
+            rechazar("cola");
+            throw new ReportesSaturadosException(
+                    "El servicio de reportes está saturado, intente nuevamente en unos segundos",
+                    reportConfig.getRetryAfterSegundos());
+        }
+
+        trabajos.put(trabajo.getId(), trabajo);
+        return trabajo;
+    }
+
+    /**
+     * Obtener un trabajo del usuario actual (ADMIN puede ver cualquiera)
+     */
+    public TrabajoReporte obtener(String id) {
+        TrabajoReporte trabajo = trabajos.get(id);
+        if (trabajo == null) {
+            throw new ResourceNotFoundException("Trabajo de reporte", "id", id);
+        }
+
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        boolean admin = auth != null && auth.getAuthorities().stream()
+                .anyMatch(a -> (PREFIJO_ROL + "ADMIN").equals(a.getAuthority()));
+        if (!admin && (auth == null || !auth.getName().equals(trabajo.getUsuario()))) {
+            throw new AccessDeniedException("El trabajo de reporte pertenece a otro usuario");
+        }
+        return trabajo;
+    }
+
+    public TrabajoReporteResponse toResponse(TrabajoReporte trabajo) {
+        return TrabajoReporteResponse.builder()
+                .id(trabajo.getId())
+                .tipo(trabajo.getTipo())
+                .estado(trabajo.getEstado())
+                .nombreArchivo(trabajo.getNombreArchivo())
+                .tamanoBytes(trabajo.getTamanoBytes())
+                .error(trabajo.getError())
+                .fechaCreacion(trabajo.getFechaCreacion())
+                .fechaFinalizacion(trabajo.getFechaFinalizacion())
+                .urlResultado(trabajo.getEstado() == EstadoTrabajoReporte.COMPLETADO
+                        ? "/reportes/trabajos/" + trabajo.getId() + "/pdf"
+                        : null)
+                .build();
+    }
+
+    private void ejecutar(TrabajoReporte trabajo, GeneradorReporte generador, Semaphore limite) {
+        trabajo.estado = EstadoTrabajoReporte.EN_PROCESO;
+        Path archivo = null;
+        try {
+            // El exportador escribe el PDF directo al archivo, sin armarlo en memoria
+            archivo = Files.createTempFile(directorio, "reporte-", ".pdf");
+            try (OutputStream salida = new BufferedOutputStream(Files.newOutputStream(archivo), TAMANO_BUFFER)) {
+                generador.generar(salida);
+            }
+            trabajo.tamanoBytes = Files.size(archivo);
+            trabajo.archivo = archivo;
+            trabajo.estado = EstadoTrabajoReporte.COMPLETADO;
+        } catch (Exception e) {
+            log.error("Error generando reporte {} ({})", trabajo.getId(), trabajo.getTipo(), e);
+            eliminarArchivo(archivo);
+            trabajo.error = "No se pudo generar el reporte";
+            trabajo.estado = EstadoTrabajoReporte.FALLIDO;
+        } finally {
+            trabajo.fechaFinalizacion = LocalDateTime.now();
+            limite.release();
+        }
+    }
+
+    /**
+     * Descartar trabajos terminados cuyo resultado superó resultado-ttl-minutos
+     */
+    private void eliminarVencidos() {
+        LocalDateTime limite = LocalDateTime.now().minusMinutes(reportConfig.getResultadoTtlMinutos());
+        trabajos.values().removeIf(trabajo -> {
+            LocalDateTime fin = trabajo.getFechaFinalizacion();
+            if (fin == null || fin.isAfter(limite)) {
+                return false;
+            }
+            eliminarArchivo(trabajo.archivo);
+            return true;
+        });
+    }
+
+    private void eliminarArchivo(Path archivo) {
+        if (archivo == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(archivo);
+        } catch (IOException e) {
+            log.warn("No se pudo eliminar el reporte {}: {}", archivo, e.getMessage());
+        }
+    }
+
+    private String rolConMayorLimite(Authentication auth) {
+        String rol = "ANONIMO";
+        if (auth == null) {
+            return rol;
+        }
+        int mayor = -1;
+        for (GrantedAuthority authority : auth.getAuthorities()) {
+            String nombre = authority.getAuthority();
+            if (nombre == null || !nombre.startsWith(PREFIJO_ROL)) {
+                continue;
+            }
+            nombre = nombre.substring(PREFIJO_ROL.length());
+            int limite = limitePara(nombre);
+            if (limite > mayor) {
+                mayor = limite;
+                rol = nombre;
+            }
+        }
+        return rol;
+    }
+
+    private int limitePara(String rol) {
+        return reportConfig.getLimitesPorRol().getOrDefault(rol, reportConfig.getLimitePorDefecto());
+    }
+
+    private void rechazar(String motivo) {
+        Counter.builder("reportes.rechazados")
+                .description("Reportes rechazados por saturación")
+                .tag("motivo", motivo)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * Trabajo de renderizado; el PDF queda en disco hasta que vence
+     */
+    @Getter
+    public static class TrabajoReporte {
+        private final String id;
+        private final String tipo;
+        private final String nombreArchivo;
+        private final String usuario;
+        private final LocalDateTime fechaCreacion = LocalDateTime.now();
+        private volatile EstadoTrabajoReporte estado = EstadoTrabajoReporte.EN_COLA;
+        private volatile Path archivo;
+        private volatile Long tamanoBytes;
+        private volatile String error;
+        private volatile LocalDateTime fechaFinalizacion;
+        @Getter(lombok.AccessLevel.NONE)
+        private Future<?> futuro;
+
+        TrabajoReporte(String id, String tipo, String nombreArchivo, String usuario) {
+            this.id = id;
+            this.tipo = tipo;
+            this.nombreArchivo = nombreArchivo;
+            this.usuario = usuario;
+        }
+    }
+}
@@ -1,23 +1,39 @@
 package com.logistic.control.service;
 
 import com.google.zxing.WriterException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import net.sf.jasperreports.engine.*;
 import net.sf.jasperreports.engine.data.JRBeanCollectionDataSource;
+import net.sf.jasperreports.engine.export.JRPdfExporter;
+import net.sf.jasperreports.engine.fill.JRSwapFileVirtualizer;
+import net.sf.jasperreports.engine.util.JRSwapFile;
+import net.sf.jasperreports.engine.util.JRLoader;
+import net.sf.jasperreports.export.SimpleExporterInput;
+import net.sf.jasperreports.export.SimpleOutputStreamExporterOutput;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.stereotype.Service;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Servicio base para generación de reportes PDF con JasperReports
+ * Servicio base para generación de reportes PDF con JasperReports.
+ * El PDF se exporta directo al OutputStream recibido; los reportes grandes se llenan con un virtualizador.
+ * Las plantillas se compilan una sola vez y se guardan en caché; las más usadas se precompilan al arrancar.
+ * La latencia por reporte queda en reportes.generacion y el costo de compilación en reportes.compilacion.
  */
 @Slf4j
 @Service
@@ -25,6 +41,21 @@ import java.util.Map;
 public class ReportService {
 
     private final QRCodeService qrCodeService;
+    private final MeterRegistry meterRegistry;
+
+    private final ConcurrentHashMap<String, JasperReport> plantillas = new ConcurrentHashMap<>();
+
+    @Value("${jasper.precarga:factura,pedido,contenedor,inventario}")
+    private List<String> plantillasPrecarga;
+
+    @Value("${jasper.virtualizador.umbral-filas:500}")
+    private int umbralVirtualizador;
+
+    @Value("${jasper.virtualizador.paginas-en-memoria:20}")
+    private int paginasEnMemoria;
+
+    @Value("${jasper.virtualizador.directorio:}")
+    private String directorioVirtualizador;
 
     @Value("${jasper.reports-path:classpath:templates/reports/}")
     private String reportsPath;
@@ -33,41 +64,162 @@ public class ReportService {
     private String imagesPath;
 
     /**
-     * Genera un reporte PDF
+     * Precompilar las plantillas configuradas al terminar el arranque, en segundo plano,
+     * para que la primera solicitud de cada reporte no pague la compilación
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void precargarPlantillas() {
+        Thread.ofPlatform().name("jasper-precarga").daemon(true).start(() -> {
+            for (String reportName : plantillasPrecarga) {
+                try {
+                    obtenerPlantilla(reportName.trim());
+                } catch (Exception e) {
+                    log.error("No se pudo precompilar la plantilla {}", reportName, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Genera un reporte PDF y lo escribe en la salida a medida que se exporta
      * @param reportName Nombre del archivo jrxml (sin extensión)
      * @param parameters Parámetros del reporte
      * @param dataSource Fuente de datos (lista de objetos)
-     * @return Array de bytes del PDF generado
+     * @param salida Destino del PDF; no se cierra
+     */
+    public void generatePdfReport(String reportName, Map<String, Object> parameters, List<?> dataSource,
+                                  OutputStream salida) throws JRException, IOException {
+        exportarPdf(reportName, parameters, new JRBeanCollectionDataSource(dataSource),
+                dataSource.size() >= umbralVirtualizador, salida);
+    }
+
+    /**
+     * Llenar y exportar un reporte con JRPdfExporter directo a la salida, sin armar el PDF en memoria.
+     * Con virtualizar las páginas llenadas pasan a un archivo de intercambio y en memoria quedan
+     * solo jasper.virtualizador.paginas-en-memoria, así el consumo no crece con el tamaño del reporte.
      */
-    public byte[] generatePdfReport(String reportName, Map<String, Object> parameters, List<?> dataSource)
-            throws JRException, IOException {
+    public void exportarPdf(String reportName, Map<String, Object> parameters, JRDataSource dataSource,
+                            boolean virtualizar, OutputStream salida) throws JRException, IOException {
 
-        log.info("Generando reporte: {}", reportName);
+        log.info("Generando reporte: {}{}", reportName, virtualizar ? " (virtualizado)" : "");
+        long inicio = System.nanoTime();
+
+        // Plantilla compilada (una sola vez por proceso)
+        JasperReport jasperReport = obtenerPlantilla(reportName);
+
+        Map<String, Object> parametros = parameters != null ? parameters : new HashMap<>();
+        JRSwapFileVirtualizer virtualizer = null;
+        try {
+            if (virtualizar) {
+                virtualizer = new JRSwapFileVirtualizer(paginasEnMemoria,
+                        new JRSwapFile(directorioIntercambio(), 4096, 64), true);
+                parametros.put(JRParameter.REPORT_VIRTUALIZER, virtualizer);
+            }
+
+            // Llenar reporte
+            JasperPrint jasperPrint = JasperFillManager.fillReport(jasperReport, parametros, dataSource);
+            if (virtualizer != null) {
+                virtualizer.setReadOnly(true);
+            }
+
+            // Exportar a PDF
+            JRPdfExporter exporter = new JRPdfExporter();
+            exporter.setExporterInput(new SimpleExporterInput(jasperPrint));
+            exporter.setExporterOutput(new SimpleOutputStreamExporterOutput(salida));
+            exporter.exportReport();
+        } finally {
+            if (virtualizer != null) {
+                virtualizer.cleanup();
+            }
+        }
+
+        registrarDuracion("reportes.generacion", reportName, System.nanoTime() - inicio);
+    }
+
+    private String directorioIntercambio() {
+        return directorioVirtualizador != null && !directorioVirtualizador.isBlank()
+                ? directorioVirtualizador
+                : System.getProperty("java.io.tmpdir");
+    }
+
+    /**
+     * Plantilla compilada desde la caché. Si existe un .jasper precompilado en el classpath se carga ese;
+     * si no, se compila el .jrxml. JasperReport es inmutable, por lo que se comparte entre hilos.
+     */
+    private JasperReport obtenerPlantilla(String reportName) throws JRException, IOException {
+        JasperReport plantilla = plantillas.get(reportName);
+        if (plantilla != null) {
+            return plantilla;
+        }
 
-        // Cargar template
-        String templatePath = String.format("templates/reports/%s.jrxml", reportName);
-        InputStream templateStream = new ClassPathResource(templatePath).getInputStream();
+        try {
+            return plantillas.computeIfAbsent(reportName, nombre -> {
+                try {
+                    return cargarPlantilla(nombre);
+                } catch (JRException | IOException e) {
+                    throw new PlantillaException(e);
+                }
+            });
+        } catch (PlantillaException e) {
+            if (e.getCause() instanceof JRException jrException) {
+                throw jrException;
+            }
+            throw (IOException) e.getCause();
+        }
+    }
 
-        // Compilar template
-        JasperReport jasperReport = JasperCompileManager.compileReport(templateStream);
+    private JasperReport cargarPlantilla(String reportName) throws JRException, IOException {
+        long inicio = System.nanoTime();
 
-        // Crear data source
-        JRBeanCollectionDataSource jrDataSource = new JRBeanCollectionDataSource(dataSource);
+        ClassPathResource compilada = new ClassPathResource(String.format("templates/reports/%s.jasper", reportName));
+        boolean precompilada = compilada.exists();
+        JasperReport plantilla;
+        if (precompilada) {
+            try (InputStream stream = compilada.getInputStream()) {
+                plantilla = (JasperReport) JRLoader.loadObject(stream);
+            }
+        } else {
+            try (InputStream stream = new ClassPathResource(
+                    String.format("templates/reports/%s.jrxml", reportName)).getInputStream()) {
+                plantilla = JasperCompileManager.compileReport(stream);
+            }
+        }
 
-        // Llenar reporte
-        JasperPrint jasperPrint = JasperFillManager.fillReport(jasperReport, parameters, jrDataSource);
+        long duracion = System.nanoTime() - inicio;
+        registrarDuracion("reportes.compilacion", reportName, duracion);
+        log.info("Plantilla {} {} en {} ms", reportName, precompilada ? "cargada" : "compilada",
+                TimeUnit.NANOSECONDS.toMillis(duracion));
+        return plantilla;
+    }
 
-        // Exportar a PDF
-        return JasperExportManager.exportReportToPdf(jasperPrint);
+    private void registrarDuracion(String metrica, String reportName, long duracionNanos) {
+        Timer.builder(metrica)
+                .tag("reporte", reportName)
+                .register(meterRegistry)
+                .record(duracionNanos, TimeUnit.NANOSECONDS);
     }
 
     /**
      * Genera un reporte con QR code de verificación
      */
-    public byte[] generatePdfReportWithQR(String reportName, Map<String, Object> parameters, List<?> dataSource,
-                                          String documentType, Long documentId)
+    public void generatePdfReportWithQR(String reportName, Map<String, Object> parameters, List<?> dataSource,
+                                        String documentType, Long documentId, OutputStream salida)
             throws JRException, IOException, WriterException {
 
+        if (parameters == null) {
+            parameters = new HashMap<>();
+        }
+        agregarVerificacionQR(parameters, documentType, documentId);
+
+        generatePdfReport(reportName, parameters, dataSource, salida);
+    }
+
+    /**
+     * Agrega a los parámetros el QR, el código y la URL de verificación del documento
+     */
+    public void agregarVerificacionQR(Map<String, Object> parameters, String documentType, Long documentId)
+            throws IOException, WriterException {
+
         // Generar código de verificación
         String verificationCode = qrCodeService.generateVerificationCode(documentType, documentId);
         String verificationUrl = qrCodeService.generateVerificationUrl(documentType, documentId, verificationCode);
@@ -76,14 +228,9 @@ public class ReportService {
         byte[] qrCodeBytes = qrCodeService.generateQRCode(verificationUrl, 150, 150);
 
         // Agregar QR code a parámetros
-        if (parameters == null) {
-            parameters = new HashMap<>();
-        }
         parameters.put("QR_CODE", new ByteArrayInputStream(qrCodeBytes));
         parameters.put("VERIFICATION_CODE", verificationCode);
         parameters.put("VERIFICATION_URL", verificationUrl);
-
-        return generatePdfReport(reportName, parameters, dataSource);
     }
 
     /**
@@ -110,4 +257,13 @@ public class ReportService {
 
         return parameters;
     }
+
+    /**
+     * Transporta las excepciones verificadas fuera de computeIfAbsent
+     */
+    private static final class PlantillaException extends RuntimeException {
+        PlantillaException(Exception cause) {
+            super(cause);
+        }
+    }
 }
@@ -0,0 +1,90 @@
+package com.logistic.control.service;
+
+import com.logistic.control.config.SifenConfig;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Certificado .p12 del emisor, compartido por la firma de documentos (SifenXmlSigner) y el mTLS (SifenClient).
+ * Se carga una sola vez y se recarga solo si el archivo cambia (fecha de modificación y tamaño,
+ * verificados como máximo cada sifen.certificado-verificacion-segundos). Cada carga devuelve un Material
+ * nuevo, así quien deriva algo del certificado (KeyInfo, SSLContext) detecta la rotación por identidad.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SifenCertificado {
+
+    private final SifenConfig sifenConfig;
+
+    private final Object cargaLock = new Object();
+
+    private volatile Material material;
+    private volatile long proximaVerificacion;
+
+    /**
+     * Keystore, clave y certificado vigentes; recarga el .p12 si el archivo fue reemplazado
+     */
+    public Material obtener() throws GeneralSecurityException, IOException {
+        Material actual = material;
+        if (actual != null && System.currentTimeMillis() < proximaVerificacion) {
+            return actual;
+        }
+
+        synchronized (cargaLock) {
+            actual = material;
+            if (actual != null && System.currentTimeMillis() < proximaVerificacion) {
+                return actual;
+            }
+
+            Path ruta = Path.of(sifenConfig.getCertificatePath());
+            BasicFileAttributes atributos = Files.readAttributes(ruta, BasicFileAttributes.class);
+            long modificado = atributos.lastModifiedTime().toMillis();
+
+            if (actual == null || !actual.ruta().equals(ruta)
+                    || actual.modificado() != modificado || actual.tamano() != atributos.size()) {
+                actual = cargar(ruta, modificado, atributos.size());
+                material = actual;
+            }
+            proximaVerificacion = System.currentTimeMillis()
+                    + TimeUnit.SECONDS.toMillis(sifenConfig.getCertificadoVerificacionSegundos());
+            return actual;
+        }
+    }
+
+    private Material cargar(Path ruta, long modificado, long tamano) throws GeneralSecurityException, IOException {
+        char[] password = sifenConfig.getCertificatePassword().toCharArray();
+
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream is = Files.newInputStream(ruta)) {
+            keyStore.load(is, password);
+        }
+
+        String alias = keyStore.aliases().nextElement();
+        PrivateKey privateKey = (PrivateKey) keyStore.getKey(alias, password);
+        X509Certificate certificate = (X509Certificate) keyStore.getCertificate(alias);
+
+        log.info("Certificado SIFEN cargado desde {} (sujeto: {}, vence: {})",
+                ruta, certificate.getSubjectX500Principal().getName(), certificate.getNotAfter());
+        return new Material(ruta, modificado, tamano, keyStore, privateKey, certificate);
+    }
+
+    /**
+     * Contenido del .p12 junto con los datos del archivo usados para detectar rotaciones
+     */
+    public record Material(Path ruta, long modificado, long tamano, KeyStore keyStore,
+                           PrivateKey privateKey, X509Certificate certificate) {
+    }
+}
@@ -0,0 +1,127 @@
+package com.logistic.control.service;
+
+import com.logistic.control.config.SifenConfig;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+/**
+ * Circuit breaker de las llamadas HTTP a SIFEN.
+ * Tras sifen.contingencia.fallos-para-abrir timeouts o errores de conexión consecutivos se abre y las
+ * solicitudes fallan de inmediato en lugar de esperar el read-timeout. Pasados apertura-segundos deja pasar
+ * una única solicitud de prueba: si responde se cierra, si falla vuelve a abrirse.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SifenCircuitBreaker {
+
+    public enum Estado {
+        CERRADO,
+        ABIERTO,
+        SEMIABIERTO
+    }
+
+    private final SifenConfig sifenConfig;
+    private final MeterRegistry meterRegistry;
+
+    private Estado estado = Estado.CERRADO;
+    private int fallosConsecutivos;
+    private long abiertoDesde;
+    private boolean pruebaEnCurso;
+
+    @PostConstruct
+    void registrarMetricas() {
+        Gauge.builder("sifen.circuito.abierto", this, breaker -> breaker.getEstado() == Estado.CERRADO ? 0 : 1)
+                .description("1 si el circuito hacia SIFEN está abierto o en prueba")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Reservar el paso de una solicitud. Devuelve false si el circuito está abierto
+     * o si ya hay una solicitud de prueba en curso.
+     */
+    public synchronized boolean permitirSolicitud() {
+        if (estado == Estado.CERRADO) {
+            return true;
+        }
+        if (estado == Estado.ABIERTO) {
+            if (System.nanoTime() - abiertoDesde < aperturaNanos()) {
+                return false;
+            }
+            estado = Estado.SEMIABIERTO;
+            log.info("Circuito SIFEN semiabierto: se envía una solicitud de prueba");
+        }
+        if (pruebaEnCurso) {
+            return false;
+        }
+        pruebaEnCurso = true;
+        return true;
+    }
+
+    /**
+     * SIFEN respondió (aunque sea con un error de negocio)
+     */
+    public synchronized void registrarExito() {
+        if (estado != Estado.CERRADO) {
+            log.info("Circuito SIFEN cerrado: el servicio volvió a responder");
+        }
+        estado = Estado.CERRADO;
+        fallosConsecutivos = 0;
+        pruebaEnCurso = false;
+    }
+
+    /**
+     * Timeout, error de conexión o error 5xx de SIFEN
+     */
+    public synchronized void registrarFallo() {
+        fallosConsecutivos++;
+        if (estado == Estado.SEMIABIERTO
+                || fallosConsecutivos >= sifenConfig.getContingencia().getFallosParaAbrir()) {
+            if (estado != Estado.ABIERTO) {
+                log.warn("Circuito SIFEN abierto tras {} fallos consecutivos; reintento en {} s",
+                        fallosConsecutivos, sifenConfig.getContingencia().getAperturaSegundos());
+            }
+            estado = Estado.ABIERTO;
+            abiertoDesde = System.nanoTime();
+        }
+        pruebaEnCurso = false;
+    }
+
+    /**
+     * Liberar una reserva sin resultado (la solicitud no llegó a enviarse)
+     */
+    public synchronized void liberar() {
+        pruebaEnCurso = false;
+    }
+
+    /**
+     * Indica si la próxima solicitud pasaría como prueba (abierto y vencido, o semiabierto sin prueba en curso).
+     * No reserva el paso: los despachadores lo usan para decidir si tomar trabajo.
+     */
+    public synchronized boolean admitePrueba() {
+        return switch (estado) {
+            case CERRADO -> false;
+            case ABIERTO -> System.nanoTime() - abiertoDesde >= aperturaNanos();
+            case SEMIABIERTO -> !pruebaEnCurso;
+        };
+    }
+
+    public synchronized Estado getEstado() {
+        return estado;
+    }
+
+    /**
+     * Indica si SIFEN se considera disponible (circuito cerrado)
+     */
+    public boolean isCerrado() {
+        return getEstado() == Estado.CERRADO;
+    }
+
+    private long aperturaNanos() {
+        return sifenConfig.getContingencia().getAperturaSegundos() * 1_000_000_000L;
+    }
+}
@@ -7,22 +7,10 @@ import com.logistic.control.dto.response.SifenResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-import org.w3c.dom.Document;
-import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
 
 import javax.net.ssl.*;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import java.io.FileInputStream;
-import java.io.StringReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
 import java.security.KeyStore;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
 import java.util.Base64;
 import java.util.List;
 import java.util.UUID;
@@ -36,7 +24,9 @@ import java.util.UUID;
 public class SifenClient {
 
     private final SifenConfig sifenConfig;
-    private SSLSocketFactory sslSocketFactory;
+    private final SifenTransport transport;
+    private final SifenCertificado sifenCertificado;
+    private volatile Mtls mtls;
 
     /**
      * Envía un documento electrónico a SIFEN
@@ -67,12 +57,27 @@ public class SifenClient {
      */
     public SifenLoteResponse enviarLote(List<String> xmlDocumentos) {
         try {
-            log.info("Enviando lote de {} documentos a SIFEN...", xmlDocumentos.size());
+            return enviarLoteComprimido(crearZipLote(xmlDocumentos), xmlDocumentos.size());
+        } catch (Exception e) {
+            log.error("Error comprimiendo lote para SIFEN", e);
+            return SifenLoteResponse.builder()
+                    .success(false)
+                    .codigo("9999")
+                    .mensaje("Error de comunicación: " + e.getMessage())
+                    .build();
+        }
+    }
+
+    /**
+     * Envía a SIFEN un lote ya comprimido en ZIP
+     */
+    public SifenLoteResponse enviarLoteComprimido(byte[] zipBytes, int cantidadDocumentos) {
+        try {
+            log.info("Enviando lote de {} documentos a SIFEN...", cantidadDocumentos);
             
             configurarCertificado();
             
-            // Crear ZIP con los documentos y codificar en base64
-            byte[] zipBytes = crearZipLote(xmlDocumentos);
+            // Codificar el ZIP en base64
             String zipBase64 = Base64.getEncoder().encodeToString(zipBytes);
             
             String dId = UUID.randomUUID().toString().replace("-", "");
@@ -166,30 +171,36 @@ public class SifenClient {
     }
 
     /**
-     * Configura el certificado digital para HTTPS mutual
+     * Configura el certificado digital para HTTPS mutual.
+     * El SSLContext se reconstruye cuando SifenCertificado detecta un .p12 nuevo (rotación); al cambiar
+     * el SSLContext, el transporte arma un cliente HTTP nuevo y deja de presentar el certificado anterior.
      */
     private void configurarCertificado() throws Exception {
-        if (sslSocketFactory != null) {
-            return; // Ya configurado
+        SifenCertificado.Material certificado = sifenCertificado.obtener();
+        Mtls actual = mtls;
+        if (actual != null && actual.certificado() == certificado) {
+            return;
         }
 
-        log.debug("Configurando certificado: {}", sifenConfig.getCertificatePath());
+        synchronized (this) {
+            actual = mtls;
+            if (actual != null && actual.certificado() == certificado) {
+                return;
+            }
 
-        KeyStore keyStore = KeyStore.getInstance("PKCS12");
-        try (FileInputStream fis = new FileInputStream(sifenConfig.getCertificatePath())) {
-            keyStore.load(fis, sifenConfig.getCertificatePassword().toCharArray());
-        }
+            log.debug("Configurando certificado: {}", certificado.ruta());
 
-        KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
-        kmf.init(keyStore, sifenConfig.getCertificatePassword().toCharArray());
+            KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            kmf.init(certificado.keyStore(), sifenConfig.getCertificatePassword().toCharArray());
 
-        TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
-        tmf.init((KeyStore) null);
+            TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            tmf.init((KeyStore) null);
 
-        SSLContext sslContext = SSLContext.getInstance("TLS");
-        sslContext.init(kmf.getKeyManagers(), tmf.getTrustManagers(), null);
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(kmf.getKeyManagers(), tmf.getTrustManagers(), null);
 
-        sslSocketFactory = sslContext.getSocketFactory();
+            mtls = new Mtls(certificado, context);
+        }
     }
 
     /**
@@ -212,32 +223,7 @@ public class SifenClient {
      * Envía el request HTTP al servicio SIFEN
      */
     private String enviarRequest(String urlEndpoint, String soapEnvelope, String soapAction) throws Exception {
-        URL url = new URL(urlEndpoint);
-        HttpsURLConnection connection = (HttpsURLConnection) url.openConnection();
-        
-        connection.setSSLSocketFactory(sslSocketFactory);
-        connection.setRequestMethod("POST");
-        connection.setRequestProperty("Content-Type", "application/soap+xml; charset=utf-8");
-        connection.setRequestProperty("SOAPAction", soapAction);
-        connection.setConnectTimeout(sifenConfig.getConnectTimeout() * 1000);
-        connection.setReadTimeout(sifenConfig.getReadTimeout() * 1000);
-        connection.setDoOutput(true);
-
-        // Enviar request
-        byte[] requestBytes = soapEnvelope.getBytes(StandardCharsets.UTF_8);
-        connection.getOutputStream().write(requestBytes);
-
-        // Leer respuesta
-        int responseCode = connection.getResponseCode();
-        log.debug("SIFEN Response Code: {}", responseCode);
-
-        if (responseCode == HttpURLConnection.HTTP_OK) {
-            return new String(connection.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
-        } else {
-            String errorResponse = new String(connection.getErrorStream().readAllBytes(), StandardCharsets.UTF_8);
-            log.error("SIFEN Error Response: {}", errorResponse);
-            throw new RuntimeException("Error en respuesta SIFEN: HTTP " + responseCode);
-        }
+        return transport.enviar(mtls.sslContext(), urlEndpoint, soapEnvelope, soapAction);
     }
 
     /**
@@ -245,25 +231,19 @@ public class SifenClient {
      */
     private SifenResponse parsearRespuestaSifen(String xmlResponse) {
         try {
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            factory.setNamespaceAware(true);
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            Document doc = builder.parse(new InputSource(new StringReader(xmlResponse)));
-
-            String codigo = obtenerValorXml(doc, "dCodRes");
-            String mensaje = obtenerValorXml(doc, "dMsgRes");
-            String cdc = obtenerValorXml(doc, "dCDC");
-            String protocolo = obtenerValorXml(doc, "dProtAut");
+            SifenRespuestaParser.Resultado respuesta = SifenRespuestaParser.parsear(xmlResponse);
 
+            String codigo = respuesta.valor("dCodRes");
             boolean success = "0100".equals(codigo) || "0200".equals(codigo);
+            LocalDateTime fechaProcesamiento = respuesta.fechaProcesamiento();
 
             return SifenResponse.builder()
                     .success(success)
                     .codigo(codigo)
-                    .mensaje(mensaje)
-                    .cdc(cdc)
-                    .protocoloAutorizacion(protocolo)
-                    .fechaProcesamiento(LocalDateTime.now())
+                    .mensaje(respuesta.valor("dMsgRes"))
+                    .cdc(respuesta.valor("dCDC"))
+                    .protocoloAutorizacion(respuesta.valor("dProtAut"))
+                    .fechaProcesamiento(fechaProcesamiento != null ? fechaProcesamiento : LocalDateTime.now())
                     .xmlRespuesta(xmlResponse)
                     .build();
 
@@ -283,21 +263,18 @@ public class SifenClient {
      */
     private SifenConsultaResponse parsearRespuestaConsulta(String xmlResponse) {
         try {
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            factory.setNamespaceAware(true);
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            Document doc = builder.parse(new InputSource(new StringReader(xmlResponse)));
+            SifenRespuestaParser.Resultado respuesta = SifenRespuestaParser.parsear(xmlResponse);
 
             return SifenConsultaResponse.builder()
                     .success(true)
-                    .cdc(obtenerValorXml(doc, "dCDC"))
-                    .estado(obtenerValorXml(doc, "dEstRes"))
-                    .codigoEstado(obtenerValorXml(doc, "dCodRes"))
-                    .rucEmisor(obtenerValorXml(doc, "dRucEm"))
-                    .razonSocialEmisor(obtenerValorXml(doc, "dNomEmi"))
-                    .rucReceptor(obtenerValorXml(doc, "dRucRec"))
-                    .razonSocialReceptor(obtenerValorXml(doc, "dNomRec"))
-                    .mensaje(obtenerValorXml(doc, "dMsgRes"))
+                    .cdc(respuesta.valor("dCDC"))
+                    .estado(respuesta.valor("dEstRes"))
+                    .codigoEstado(respuesta.valor("dCodRes"))
+                    .rucEmisor(respuesta.valor("dRucEm"))
+                    .razonSocialEmisor(respuesta.valor("dNomEmi"))
+                    .rucReceptor(respuesta.valor("dRucRec"))
+                    .razonSocialReceptor(respuesta.valor("dNomRec"))
+                    .mensaje(respuesta.valor("dMsgRes"))
                     .xmlRespuesta(xmlResponse)
                     .build();
 
@@ -312,25 +289,26 @@ public class SifenClient {
     }
 
     /**
-     * Parsea la respuesta XML de lote
+     * Parsea la respuesta XML de lote (envío o consulta).
+     * En la consulta, cada gResProcLote se informa en documentos.
      */
     private SifenLoteResponse parsearRespuestaLote(String xmlResponse) {
         try {
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            factory.setNamespaceAware(true);
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            Document doc = builder.parse(new InputSource(new StringReader(xmlResponse)));
+            SifenRespuestaParser.Resultado respuesta = SifenRespuestaParser.parsear(xmlResponse);
 
-            String codigo = obtenerValorXml(doc, "dCodRes");
+            String codigo = respuesta.valor("dCodRes", "dCodResLot");
             boolean success = "0100".equals(codigo) || "0200".equals(codigo);
+            List<SifenLoteResponse.DocumentoLoteResult> documentos = respuesta.documentos();
 
             return SifenLoteResponse.builder()
                     .success(success)
                     .codigo(codigo)
-                    .mensaje(obtenerValorXml(doc, "dMsgRes"))
-                    .numeroLote(obtenerValorXml(doc, "dNumLote"))
-                    .estado(obtenerValorXml(doc, "dEstRes"))
-                    .documentos(new ArrayList<>())
+                    .mensaje(respuesta.valor("dMsgRes", "dMsgResLot"))
+                    .numeroLote(respuesta.valor("dNumLote", "dProtConsLote"))
+                    .estado(respuesta.valor("dEstRes"))
+                    .fechaRecepcion(respuesta.fechaProcesamiento())
+                    .cantidadDocumentos(documentos.isEmpty() ? null : documentos.size())
+                    .documentos(documentos)
                     .build();
 
         } catch (Exception e) {
@@ -343,33 +321,20 @@ public class SifenClient {
         }
     }
 
-    /**
-     * Obtiene un valor del documento XML
-     */
-    private String obtenerValorXml(Document doc, String tagName) {
-        NodeList nodeList = doc.getElementsByTagName(tagName);
-        if (nodeList.getLength() > 0) {
-            return nodeList.item(0).getTextContent();
-        }
-        return null;
-    }
-
     /**
      * Crea un archivo ZIP con los documentos XML
      */
     private byte[] crearZipLote(List<String> xmlDocumentos) throws Exception {
-        java.io.ByteArrayOutputStream baos = new java.io.ByteArrayOutputStream();
-        java.util.zip.ZipOutputStream zos = new java.util.zip.ZipOutputStream(baos);
-
+        SifenLoteZip zip = new SifenLoteZip();
         for (int i = 0; i < xmlDocumentos.size(); i++) {
-            String filename = String.format("documento_%d.xml", i + 1);
-            java.util.zip.ZipEntry entry = new java.util.zip.ZipEntry(filename);
-            zos.putNextEntry(entry);
-            zos.write(xmlDocumentos.get(i).getBytes(StandardCharsets.UTF_8));
-            zos.closeEntry();
+            zip.agregar(i, xmlDocumentos.get(i));
         }
+        return zip.cerrar();
+    }
 
-        zos.close();
-        return baos.toByteArray();
+    /**
+     * SSLContext armado con un certificado dado
+     */
+    private record Mtls(SifenCertificado.Material certificado, SSLContext sslContext) {
     }
 }
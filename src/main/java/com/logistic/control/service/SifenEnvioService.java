@@ -0,0 +1,138 @@
+package com.logistic.control.service;
+
+import com.logistic.control.config.SifenConfig;
+import com.logistic.control.dto.response.SifenEnvioResponse;
+import com.logistic.control.entity.Factura;
+import com.logistic.control.entity.SifenEnvio;
+import com.logistic.control.enums.EstadoEnvioSifen;
+import com.logistic.control.enums.EstadoFactura;
+import com.logistic.control.exception.BusinessException;
+import com.logistic.control.exception.ResourceNotFoundException;
+import com.logistic.control.repository.FacturaRepository;
+import com.logistic.control.repository.SifenEnvioRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Registro y consulta de envíos asíncronos de facturas a SIFEN.
+ * La solicitud solo inserta la fila en la cola y responde; el envío lo hace SifenOutboxWorker.
+ * En contingencia la factura se emite con iTipEmi = 2 al encolarla y la fila espera a que SIFEN se recupere.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SifenEnvioService {
+
+    private static final Set<EstadoEnvioSifen> ESTADOS_ACTIVOS =
+            EnumSet.of(EstadoEnvioSifen.PENDIENTE, EstadoEnvioSifen.EN_PROCESO);
+
+    private final SifenEnvioRepository sifenEnvioRepository;
+    private final FacturaRepository facturaRepository;
+    private final SifenOutboxWorker sifenOutboxWorker;
+    private final SifenConfig sifenConfig;
+    private final SifenService sifenService;
+    private final SifenCircuitBreaker circuitBreaker;
+
+    /**
+     * Encolar el envío de una factura a SIFEN.
+     * Si la factura ya tiene un envío en curso se devuelve ese mismo envío.
+     */
+    @Transactional
+    public SifenEnvioResponse encolarEnvio(Long facturaId) {
+        Factura factura = facturaRepository.findById(facturaId)
+                .orElseThrow(() -> new ResourceNotFoundException("Factura", "id", facturaId));
+
+        if (factura.getEstado() == EstadoFactura.APROBADA) {
+            throw new BusinessException("La factura ya fue aprobada en SIFEN");
+        }
+
+        SifenEnvio activo = sifenEnvioRepository.findFirstByFacturaIdAndEstadoIn(facturaId, ESTADOS_ACTIVOS)
+                .orElse(null);
+        if (activo != null) {
+            log.debug("Factura {} ya tiene el envío {} en curso", facturaId, activo.getId());
+            return toResponse(activo, factura);
+        }
+
+        SifenEnvio envio;
+        try {
+            envio = sifenEnvioRepository.saveAndFlush(SifenEnvio.builder()
+                    .factura(factura)
+                    .build());
+        } catch (DataIntegrityViolationException e) {
+            // Índice único parcial: otra solicitud encoló la misma factura al mismo tiempo
+            throw new BusinessException("La factura ya tiene un envío a SIFEN en curso", "ENVIO_EN_CURSO");
+        }
+
+        if (!Boolean.TRUE.equals(factura.getEmitidaContingencia()) && enContingencia()) {
+            // SIFEN no disponible: el documento se emite y entrega ya; la cola lo transmite al recuperarse
+            try {
+                sifenService.emitirEnContingencia(factura);
+            } catch (Exception e) {
+                log.error("Error emitiendo en contingencia la factura {}", facturaId, e);
+                throw new BusinessException("Error emitiendo la factura en contingencia: " + e.getMessage(), e);
+            }
+        } else {
+            factura.setEstado(EstadoFactura.EN_PROCESO);
+            facturaRepository.save(factura);
+        }
+
+        despertarWorkerAlConfirmar();
+        log.info("Factura {} encolada para envío a SIFEN (envío {})", facturaId, envio.getId());
+        return toResponse(envio, factura);
+    }
+
+    /**
+     * Estado del último envío a SIFEN de una factura
+     */
+    @Transactional(readOnly = true)
+    public SifenEnvioResponse consultarEnvio(Long facturaId) {
+        SifenEnvio envio = sifenEnvioRepository.findFirstByFacturaIdOrderByIdDesc(facturaId)
+                .orElseThrow(() -> new ResourceNotFoundException("Envío SIFEN", "facturaId", facturaId));
+        return toResponse(envio, envio.getFactura());
+    }
+
+    /**
+     * Contingencia forzada por configuración o circuito hacia SIFEN abierto
+     */
+    private boolean enContingencia() {
+        return Boolean.TRUE.equals(sifenConfig.getContingenciaEnabled()) || !circuitBreaker.isCerrado();
+    }
+
+    private void despertarWorkerAlConfirmar() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            sifenOutboxWorker.despertar();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                sifenOutboxWorker.despertar();
+            }
+        });
+    }
+
+    private SifenEnvioResponse toResponse(SifenEnvio envio, Factura factura) {
+        return SifenEnvioResponse.builder()
+                .envioId(envio.getId())
+                .facturaId(factura.getId())
+                .estado(envio.getEstado())
+                .estadoFactura(factura.getEstado())
+                .contingencia(factura.getEmitidaContingencia())
+                .intentos(envio.getIntentos())
+                .maxIntentos(1 + sifenConfig.getMaxReintentos())
+                .proximoIntento(envio.isActivo() ? envio.getProximoIntento() : null)
+                .codigoRespuesta(envio.getCodigoRespuesta())
+                .ultimoError(envio.getUltimoError())
+                .fechaCreacion(envio.getFechaCreacion())
+                .fechaFinalizacion(envio.getFechaFinalizacion())
+                .build();
+    }
+}
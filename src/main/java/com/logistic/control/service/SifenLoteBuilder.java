@@ -0,0 +1,116 @@
+package com.logistic.control.service;
+
+import com.logistic.control.config.SifenConfig;
+import com.logistic.control.entity.Factura;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Arma el ZIP de un lote SIFEN generando y firmando los documentos en paralelo.
+ * Es trabajo de CPU (armado del XML y firma RSA), por eso usa un pool fijo de hilos de plataforma
+ * con cola acotada; si la cola se llena, el hilo que arma el lote ejecuta la tarea (backpressure).
+ * Cada documento se agrega al ZIP apenas está firmado, sin esperar al resto del lote.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SifenLoteBuilder {
+
+    /** Tareas en espera por hilo antes de aplicar backpressure */
+    private static final int TAREAS_POR_HILO = 16;
+
+    private final SifenXmlGenerator xmlGenerator;
+    private final SifenXmlSigner xmlSigner;
+    private final SifenConfig sifenConfig;
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    void iniciar() {
+        int hilos = sifenConfig.getLoteParalelismo() != null && sifenConfig.getLoteParalelismo() > 0
+                ? sifenConfig.getLoteParalelismo()
+                : Runtime.getRuntime().availableProcessors();
+
+        AtomicInteger contador = new AtomicInteger();
+        executor = new ThreadPoolExecutor(hilos, hilos, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(hilos * TAREAS_POR_HILO),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "sifen-lote-" + contador.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+
+        log.info("Armado de lotes SIFEN con {} hilos", hilos);
+    }
+
+    @PreDestroy
+    void detener() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Generar y firmar los documentos de las facturas y devolver el ZIP del lote.
+     * Las entidades no son thread-safe: sus datos se copian en este hilo (el dueño de la sesión) y los hilos
+     * del pool solo trabajan sobre esas copias inmutables. Los resultados se vuelcan en las facturas también
+     * desde este hilo, que deja xmlDe, xmlDeFirmado y cdc asignados en cada una.
+     */
+    public byte[] construirZip(List<Factura> facturas) throws Exception {
+        long inicio = System.nanoTime();
+        CompletionService<DocumentoLote> completionService = new ExecutorCompletionService<>(executor);
+        List<Future<DocumentoLote>> tareas = new ArrayList<>(facturas.size());
+
+        for (int i = 0; i < facturas.size(); i++) {
+            int indice = i;
+            SifenXmlGenerator.DatosFactura datos = SifenXmlGenerator.DatosFactura.de(facturas.get(i));
+            tareas.add(completionService.submit(() -> {
+                SifenXmlGenerator.DocumentoGenerado generado = xmlGenerator.generarDocumento(datos);
+                SifenXmlSigner.DocumentoFirmado documento = xmlSigner.firmarDocumento(generado.documento());
+                return new DocumentoLote(indice, generado.cdc(), documento.xmlSinFirmar(), documento.xmlFirmado());
+            }));
+        }
+
+        SifenLoteZip zip = new SifenLoteZip();
+        try {
+            for (int i = 0; i < tareas.size(); i++) {
+                DocumentoLote documento = completionService.take().get();
+
+                Factura factura = facturas.get(documento.indice());
+                factura.setCdc(documento.cdc());
+                factura.setXmlDe(documento.xmlSinFirmar());
+                factura.setXmlDeFirmado(documento.xmlFirmado());
+                zip.agregar(documento.indice(), documento.xmlFirmado());
+            }
+        } catch (ExecutionException e) {
+            tareas.forEach(tarea -> tarea.cancel(true));
+            Throwable causa = e.getCause();
+            throw causa instanceof Exception excepcion ? excepcion : e;
+        } catch (InterruptedException e) {
+            tareas.forEach(tarea -> tarea.cancel(true));
+            Thread.currentThread().interrupt();
+            throw e;
+        }
+
+        byte[] contenido = zip.cerrar();
+        log.info("Lote de {} documentos generado y firmado en {} ms ({} bytes comprimidos)",
+                facturas.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio), contenido.length);
+        return contenido;
+    }
+
+    private record DocumentoLote(int indice, String cdc, String xmlSinFirmar, String xmlFirmado) {
+    }
+}
@@ -0,0 +1,305 @@
+package com.logistic.control.service;
+
+import com.logistic.control.config.SifenConfig;
+import com.logistic.control.dto.response.SifenConsultaResponse;
+import com.logistic.control.dto.response.SifenLoteResponse;
+import com.logistic.control.dto.response.SifenPendientesResponse;
+import com.logistic.control.entity.Factura;
+import com.logistic.control.entity.SifenLote;
+import com.logistic.control.enums.EstadoFactura;
+import com.logistic.control.enums.EstadoLoteSifen;
+import com.logistic.control.repository.FacturaRepository;
+import com.logistic.control.repository.SifenLoteRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Conciliación del resultado de los lotes asíncronos enviados a SIFEN.
+ * Cada lote guarda su próxima consulta: la primera tras sifen.poller.espera-inicial-segundos y las siguientes
+ * con backoff exponencial mientras SIFEN lo siga procesando. Una sola respuesta de consulta actualiza
+ * todas las facturas del lote. Las facturas cuyo lote venció, o que quedaron ENVIADA_SIFEN sin lote,
+ * se consultan por CDC en tandas acotadas.
+ * Las consultas corren en hilos virtuales sin transacción abierta, limitadas por sifen.poller.max-concurrentes.
+ * El ciclo tiene su propio hilo en lugar de @Scheduled porque se bloquea esperando permisos de consulta:
+ * en el planificador compartido de Spring (un solo hilo) demoraría las demás tareas, como la limpieza
+ * de RateLimitService.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SifenLotePoller {
+
+    /** Códigos de respuesta de la consulta de lote (dCodResLot) */
+    private static final String LOTE_EN_PROCESAMIENTO = "0361";
+    private static final String LOTE_INEXISTENTE = "0364";
+
+    /** Margen sobre los timeouts HTTP antes de volver a consultar un lote tomado por una instancia caída */
+    private static final long MARGEN_BLOQUEO_SEGUNDOS = 60;
+
+    private static final int MAX_LONGITUD_MENSAJE = 1000;
+
+    private final SifenLoteRepository sifenLoteRepository;
+    private final FacturaRepository facturaRepository;
+    private final SifenService sifenService;
+    private final SifenClient sifenClient;
+    private final SifenConfig sifenConfig;
+    private final SifenCircuitBreaker circuitBreaker;
+    private final PlatformTransactionManager transactionManager;
+    private final MeterRegistry meterRegistry;
+
+    private final AtomicLong documentosPendientes = new AtomicLong();
+    private final AtomicLong lotesPendientes = new AtomicLong();
+    private final AtomicLong antiguedadMaximaSegundos = new AtomicLong();
+
+    private TransactionTemplate transactionTemplate;
+    private ScheduledExecutorService despachador;
+    private ExecutorService consultas;
+    private Semaphore permisos;
+
+    // Solo se usan desde el hilo despachador
+    private long ultimaFacturaConsultada;
+    private LocalDateTime proximaPasadaIndividual = LocalDateTime.MIN;
+
+    @PostConstruct
+    void iniciar() {
+        SifenConfig.Poller poller = sifenConfig.getPoller();
+        if (!Boolean.TRUE.equals(poller.getEnabled())) {
+            log.info("Consulta de lotes SIFEN deshabilitada en esta instancia");
+            return;
+        }
+
+        Gauge.builder("sifen.documentos.pendientes", documentosPendientes, AtomicLong::get)
+                .description("Facturas enviadas a SIFEN que aún no tienen resultado")
+                .register(meterRegistry);
+        Gauge.builder("sifen.documentos.pendientes.antiguedad", antiguedadMaximaSegundos, AtomicLong::get)
+                .description("Antigüedad del envío más viejo sin resultado")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        Gauge.builder("sifen.lotes.pendientes", lotesPendientes, AtomicLong::get)
+                .description("Lotes SIFEN que se siguen consultando")
+                .register(meterRegistry);
+
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        permisos = new Semaphore(poller.getMaxConcurrentes());
+        consultas = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("sifen-consulta-", 0).factory());
+        despachador = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sifen-lote-poller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        despachador.scheduleWithFixedDelay(this::ciclo,
+                poller.getIntervaloMs(), poller.getIntervaloMs(), TimeUnit.MILLISECONDS);
+
+        log.info("Consulta de lotes SIFEN iniciada con {} consultas simultáneas", poller.getMaxConcurrentes());
+    }
+
+    @PreDestroy
+    void detener() {
+        if (despachador == null) {
+            return;
+        }
+        despachador.shutdownNow();
+        consultas.shutdown();
+        try {
+            // Los lotes sin registrar se vuelven a consultar al vencer su bloqueo
+            if (!consultas.awaitTermination(sifenConfig.getReadTimeout() + 5L, TimeUnit.SECONDS)) {
+                consultas.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            consultas.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void ciclo() {
+        try {
+            // Con el circuito abierto las consultas fallarían de inmediato: se posponen hasta que admita una prueba
+            if (circuitBreaker.isCerrado() || circuitBreaker.admitePrueba()) {
+                consultarLotes();
+                consultarIndividuales();
+            }
+            actualizarMetricas();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // Nunca dejar morir la tarea programada
+            log.error("Error en el ciclo de consulta de lotes SIFEN", e);
+        }
+    }
+
+    /**
+     * Reclamar tantos lotes con consulta vencida como consultas libres haya y lanzarlas
+     */
+    private void consultarLotes() {
+        int libres = permisos.availablePermits();
+        if (libres == 0) {
+            return;
+        }
+
+        LocalDateTime ahora = LocalDateTime.now();
+        LocalDateTime bloqueadoHasta = ahora.plusSeconds(
+                sifenConfig.getConnectTimeout() + sifenConfig.getReadTimeout() + MARGEN_BLOQUEO_SEGUNDOS);
+
+        List<Long> ids = transactionTemplate.execute(status -> {
+            List<Long> listos = sifenLoteRepository.bloquearListos(ahora, libres);
+            if (!listos.isEmpty()) {
+                sifenLoteRepository.posponer(listos, bloqueadoHasta);
+            }
+            return listos;
+        });
+
+        for (Long loteId : ids) {
+            permisos.acquireUninterruptibly();
+            consultas.execute(() -> {
+                try {
+                    consultarLote(loteId);
+                } finally {
+                    permisos.release();
+                }
+            });
+        }
+    }
+
+    private void consultarLote(Long loteId) {
+        try {
+            SifenLote lote = sifenLoteRepository.findById(loteId).orElse(null);
+            if (lote == null || lote.getEstado() != EstadoLoteSifen.PENDIENTE) {
+                return;
+            }
+
+            // Sin transacción: puede tardar hasta connect-timeout + read-timeout
+            SifenLoteResponse response = sifenClient.consultarLote(lote.getNumeroLote());
+
+            transactionTemplate.executeWithoutResult(status -> registrarConsulta(loteId, response));
+        } catch (Exception e) {
+            // El lote se vuelve a consultar al vencer el bloqueo
+            log.error("Error consultando el lote SIFEN {}", loteId, e);
+        }
+    }
+
+    private void registrarConsulta(Long loteId, SifenLoteResponse response) {
+        SifenLote lote = sifenLoteRepository.findById(loteId).orElse(null);
+        if (lote == null || lote.getEstado() != EstadoLoteSifen.PENDIENTE) {
+            return;
+        }
+
+        LocalDateTime ahora = LocalDateTime.now();
+        SifenConfig.Poller poller = sifenConfig.getPoller();
+        lote.setConsultas(lote.getConsultas() + 1);
+        lote.setCodigoRespuesta(response.getCodigo());
+        lote.setUltimoMensaje(truncar(response.getMensaje()));
+
+        long restantes = response.getDocumentos() != null && !response.getDocumentos().isEmpty()
+                ? sifenService.aplicarResultadoLote(lote.getNumeroLote(), response.getDocumentos())
+                : facturaRepository.countByNumeroLoteSifenAndEstado(lote.getNumeroLote(), EstadoFactura.ENVIADA_SIFEN);
+
+        if (restantes == 0) {
+            finalizar(lote, EstadoLoteSifen.CONCLUIDO, ahora);
+            log.info("Lote SIFEN {} concluido tras {} consultas", lote.getNumeroLote(), lote.getConsultas());
+            return;
+        }
+
+        if (LOTE_INEXISTENTE.equals(response.getCodigo())
+                || lote.getFechaEnvio().plusHours(poller.getVencimientoHoras()).isBefore(ahora)) {
+            // Las facturas restantes se concilian consultando cada CDC
+            finalizar(lote, EstadoLoteSifen.VENCIDO, ahora);
+            log.warn("Lote SIFEN {} vencido con {} facturas sin resultado: {}",
+                    lote.getNumeroLote(), restantes, response.getMensaje());
+            return;
+        }
+
+        // Backoff exponencial acotado: base, 2x base, 4x base... hasta backoff-maximo-segundos
+        long espera = Math.min(poller.getBackoffSegundos() << Math.min(lote.getConsultas() - 1, 20),
+                poller.getBackoffMaximoSegundos());
+        lote.setProximaConsulta(ahora.plusSeconds(espera));
+        sifenLoteRepository.save(lote);
+
+        if (LOTE_EN_PROCESAMIENTO.equals(response.getCodigo())) {
+            log.debug("Lote SIFEN {} en procesamiento, próxima consulta en {} s", lote.getNumeroLote(), espera);
+        } else {
+            log.warn("Lote SIFEN {} sin resultado completo ({} facturas), próxima consulta en {} s: {} {}",
+                    lote.getNumeroLote(), restantes, espera, response.getCodigo(), response.getMensaje());
+        }
+    }
+
+    /**
+     * Consultar por CDC una tanda de facturas sin resultado fuera de los lotes en consulta.
+     * Recorre las facturas por ID; al completar una pasada espera backoff-maximo-segundos antes de la siguiente.
+     */
+    private void consultarIndividuales() throws InterruptedException {
+        LocalDateTime ahora = LocalDateTime.now();
+        if (ahora.isBefore(proximaPasadaIndividual)) {
+            return;
+        }
+
+        SifenConfig.Poller poller = sifenConfig.getPoller();
+        List<Factura> facturas = facturaRepository.findFacturasPendientesRespuesta(
+                ahora.minusMinutes(poller.getConsultaIndividualMinutos()),
+                ultimaFacturaConsultada,
+                PageRequest.of(0, poller.getMaxConsultasIndividuales()));
+
+        if (facturas.size() < poller.getMaxConsultasIndividuales()) {
+            ultimaFacturaConsultada = 0;
+            proximaPasadaIndividual = ahora.plusSeconds(poller.getBackoffMaximoSegundos());
+        } else {
+            ultimaFacturaConsultada = facturas.get(facturas.size() - 1).getId();
+        }
+
+        for (Factura factura : facturas) {
+            Long facturaId = factura.getId();
+            String cdc = factura.getCdc();
+            permisos.acquire();
+            consultas.execute(() -> {
+                try {
+                    // Sin transacción: puede tardar hasta connect-timeout + read-timeout
+                    SifenConsultaResponse consulta = sifenClient.consultarDocumento(cdc);
+
+                    Factura actualizada = transactionTemplate.execute(status ->
+                            sifenService.aplicarConsulta(facturaId, consulta));
+                    log.debug("Factura {} consultada por CDC: {}", facturaId, actualizada.getEstado());
+                } catch (Exception e) {
+                    log.warn("No se pudo consultar por CDC la factura {}: {}", facturaId, e.getMessage());
+                } finally {
+                    permisos.release();
+                }
+            });
+        }
+    }
+
+    private void actualizarMetricas() {
+        SifenPendientesResponse pendientes = sifenService.obtenerPendientes();
+        documentosPendientes.set(pendientes.getDocumentosPendientes());
+        lotesPendientes.set(pendientes.getLotesPendientes());
+        antiguedadMaximaSegundos.set(pendientes.getAntiguedadMaximaSegundos());
+    }
+
+    private void finalizar(SifenLote lote, EstadoLoteSifen estado, LocalDateTime ahora) {
+        lote.setEstado(estado);
+        lote.setFechaConclusion(ahora);
+        sifenLoteRepository.save(lote);
+    }
+
+    private String truncar(String mensaje) {
+        if (mensaje == null || mensaje.length() <= MAX_LONGITUD_MENSAJE) {
+            return mensaje;
+        }
+        return mensaje.substring(0, MAX_LONGITUD_MENSAJE);
+    }
+}
@@ -0,0 +1,41 @@
+package com.logistic.control.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * ZIP de un lote de documentos electrónicos para SIFEN.
+ * Los documentos se agregan a medida que están listos; el nombre de cada entrada
+ * depende de su posición en el lote, no del orden en que se agregan.
+ */
+final class SifenLoteZip {
+
+    private final ByteArrayOutputStream salida = new ByteArrayOutputStream();
+    private final ZipOutputStream zip = new ZipOutputStream(salida);
+    private int cantidad;
+
+    /**
+     * Agregar el documento de la posición indicada (base 0)
+     */
+    void agregar(int indice, String xmlDocumento) throws IOException {
+        zip.putNextEntry(new ZipEntry(String.format("documento_%d.xml", indice + 1)));
+        zip.write(xmlDocumento.getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+        cantidad++;
+    }
+
+    int getCantidad() {
+        return cantidad;
+    }
+
+    /**
+     * Cerrar el ZIP y obtener su contenido
+     */
+    byte[] cerrar() throws IOException {
+        zip.close();
+        return salida.toByteArray();
+    }
+}
@@ -0,0 +1,311 @@
+package com.logistic.control.service;
+
+import com.logistic.control.config.SifenConfig;
+import com.logistic.control.dto.response.SifenResponse;
+import com.logistic.control.entity.Factura;
+import com.logistic.control.entity.SifenEnvio;
+import com.logistic.control.enums.EstadoEnvioSifen;
+import com.logistic.control.enums.EstadoFactura;
+import com.logistic.control.repository.SifenEnvioRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Workers de la cola de envíos a SIFEN.
+ * Un hilo despachador reclama filas listas con FOR UPDATE SKIP LOCKED (seguro con varias instancias)
+ * y las reparte en hilos virtuales, acotados por sifen.outbox.workers.
+ * Cada envío usa dos transacciones cortas (preparar y registrar resultado); la llamada a SIFEN
+ * se hace sin transacción, así no retiene una conexión del pool durante el round trip.
+ * Mientras el circuito hacia SIFEN está abierto o la contingencia está forzada no se reclama nada:
+ * los envíos esperan en la tabla y se drenan al ritmo de sifen.outbox.max-envios-por-minuto.
+ * El despachador es un hilo propio y no un @Scheduled: despertar() encola ciclos extra en ese mismo hilo
+ * (el token bucket y los permisos libres dependen de que nunca corran dos ciclos a la vez), solo existe
+ * con sifen.outbox.enabled, y el @PreDestroy lo detiene antes de esperar a los workers.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SifenOutboxWorker {
+
+    /** Margen sobre los timeouts HTTP para generar y firmar el documento antes de dar por caído un worker */
+    private static final long MARGEN_BLOQUEO_SEGUNDOS = 60;
+
+    private static final int MAX_LONGITUD_ERROR = 1000;
+
+    private final SifenEnvioRepository sifenEnvioRepository;
+    private final SifenService sifenService;
+    private final SifenClient sifenClient;
+    private final SifenConfig sifenConfig;
+    private final SifenCircuitBreaker circuitBreaker;
+    private final PlatformTransactionManager transactionManager;
+
+    private final AtomicBoolean hayPendientes = new AtomicBoolean();
+
+    private TransactionTemplate transactionTemplate;
+    private ScheduledExecutorService despachador;
+    private ExecutorService workers;
+    private Semaphore permisos;
+
+    // Token bucket del ritmo de envíos; solo se usa desde el hilo despachador
+    private double tokens;
+    private long ultimaRecarga = System.nanoTime();
+
+    @PostConstruct
+    void iniciar() {
+        SifenConfig.Outbox outbox = sifenConfig.getOutbox();
+        if (!Boolean.TRUE.equals(outbox.getEnabled())) {
+            log.info("Cola de envíos SIFEN deshabilitada en esta instancia");
+            return;
+        }
+
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        permisos = new Semaphore(outbox.getWorkers());
+        workers = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("sifen-envio-", 0).factory());
+        despachador = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sifen-outbox");
+            thread.setDaemon(true);
+            return thread;
+        });
+        despachador.scheduleWithFixedDelay(this::despachar,
+                outbox.getIntervaloMs(), outbox.getIntervaloMs(), TimeUnit.MILLISECONDS);
+
+        log.info("Cola de envíos SIFEN iniciada con {} workers", outbox.getWorkers());
+    }
+
+    @PreDestroy
+    void detener() {
+        if (despachador == null) {
+            return;
+        }
+        despachador.shutdownNow();
+        workers.shutdown();
+        try {
+            // Los envíos que no terminen quedan EN_PROCESO y se reclaman al vencer su bloqueo
+            if (!workers.awaitTermination(sifenConfig.getReadTimeout() + 5L, TimeUnit.SECONDS)) {
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Solicitar un ciclo de despacho inmediato (por ejemplo, tras encolar un envío)
+     */
+    public void despertar() {
+        if (despachador != null && !despachador.isShutdown()) {
+            despachador.execute(this::despachar);
+        }
+    }
+
+    /**
+     * Reclamar tantos envíos como workers libres haya y lanzarlos.
+     * Solo corre en el hilo despachador, por lo que los permisos libres no pueden disminuir mientras tanto.
+     */
+    private void despachar() {
+        try {
+            if (Boolean.TRUE.equals(sifenConfig.getContingenciaEnabled())) {
+                // Contingencia forzada: la cola se conserva hasta que se desactive
+                return;
+            }
+
+            int libres = permisos.availablePermits();
+            if (!circuitBreaker.isCerrado()) {
+                // Circuito abierto: nada se reclama (no se consumen intentos); al vencer, un único envío de prueba
+                if (!circuitBreaker.admitePrueba()) {
+                    return;
+                }
+                libres = Math.min(libres, 1);
+            }
+            libres = Math.min(libres, tokensDisponibles());
+            if (libres == 0) {
+                hayPendientes.set(true);
+                return;
+            }
+
+            List<Long> ids = reclamar(libres);
+            tokens -= ids.size();
+            hayPendientes.set(ids.size() == libres);
+
+            for (Long envioId : ids) {
+                permisos.acquireUninterruptibly();
+                workers.execute(() -> {
+                    try {
+                        procesar(envioId);
+                    } finally {
+                        permisos.release();
+                        if (hayPendientes.get()) {
+                            despertar();
+                        }
+                    }
+                });
+            }
+        } catch (Exception e) {
+            // Nunca dejar morir la tarea programada
+            log.error("Error despachando la cola de envíos SIFEN", e);
+        }
+    }
+
+    /**
+     * Token bucket de sifen.outbox.max-envios-por-minuto, con ráfaga de hasta un worker por token.
+     * Acota el ritmo al drenar la cola acumulada durante una caída de SIFEN.
+     */
+    private int tokensDisponibles() {
+        long ahora = System.nanoTime();
+        double porNano = sifenConfig.getOutbox().getMaxEnviosPorMinuto() / 60_000_000_000d;
+        tokens = Math.min(sifenConfig.getOutbox().getWorkers(), tokens + (ahora - ultimaRecarga) * porNano);
+        ultimaRecarga = ahora;
+        return (int) tokens;
+    }
+
+    private List<Long> reclamar(int limite) {
+        LocalDateTime ahora = LocalDateTime.now();
+        LocalDateTime bloqueadoHasta = ahora.plusSeconds(
+                sifenConfig.getConnectTimeout() + sifenConfig.getReadTimeout() + MARGEN_BLOQUEO_SEGUNDOS);
+
+        return transactionTemplate.execute(status -> {
+            List<Long> ids = sifenEnvioRepository.bloquearListos(ahora, limite);
+            if (!ids.isEmpty()) {
+                sifenEnvioRepository.marcarTomados(ids, EstadoEnvioSifen.EN_PROCESO, bloqueadoHasta);
+            }
+            return ids;
+        });
+    }
+
+    /**
+     * Procesar un envío: preparar el documento, enviarlo y registrar el resultado
+     */
+    private void procesar(Long envioId) {
+        SifenResponse response;
+        try {
+            String xmlFirmado = transactionTemplate.execute(status -> prepararDocumento(envioId));
+            if (xmlFirmado == null) {
+                return;
+            }
+
+            // Sin transacción: puede tardar hasta connect-timeout + read-timeout
+            response = sifenClient.enviarDocumento(xmlFirmado);
+        } catch (Exception e) {
+            log.error("Error preparando el envío SIFEN {}", envioId, e);
+            response = SifenResponse.builder()
+                    .success(false)
+                    .codigo("9999")
+                    .mensaje("Error preparando documento: " + e.getMessage())
+                    .build();
+        }
+
+        SifenResponse resultado = response;
+        try {
+            transactionTemplate.executeWithoutResult(status -> registrarResultado(envioId, resultado));
+        } catch (Exception e) {
+            // El envío queda EN_PROCESO y se reintenta al vencer el bloqueo
+            log.error("Error registrando el resultado del envío SIFEN {}", envioId, e);
+        }
+    }
+
+    private String prepararDocumento(Long envioId) {
+        SifenEnvio envio = sifenEnvioRepository.findByIdWithFactura(envioId).orElse(null);
+        if (envio == null || envio.getEstado() != EstadoEnvioSifen.EN_PROCESO) {
+            return null;
+        }
+
+        Factura factura = envio.getFactura();
+        if (factura.getEstado() == EstadoFactura.APROBADA) {
+            log.info("Factura {} ya aprobada, se completa el envío {} sin reenviar", factura.getId(), envioId);
+            finalizar(envio, EstadoEnvioSifen.COMPLETADO);
+            return null;
+        }
+
+        // Los reintentos reenvían el mismo documento firmado en el primer intento;
+        // uno emitido en contingencia nunca se regenera (su CDC ya figura en el KuDE entregado)
+        boolean contingencia = Boolean.TRUE.equals(factura.getEmitidaContingencia());
+        if (factura.getXmlDeFirmado() == null || (!contingencia && envio.getIntentos() <= 1)) {
+            try {
+                sifenService.prepararDocumento(factura);
+            } catch (Exception e) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+        }
+        return factura.getXmlDeFirmado();
+    }
+
+    private void registrarResultado(Long envioId, SifenResponse response) {
+        SifenEnvio envio = sifenEnvioRepository.findByIdWithFactura(envioId).orElse(null);
+        if (envio == null || envio.getEstado() != EstadoEnvioSifen.EN_PROCESO) {
+            return;
+        }
+
+        Factura factura = envio.getFactura();
+        envio.setCodigoRespuesta(response.getCodigo());
+
+        if (!response.isErrorComunicacion()) {
+            // Respuesta definitiva de SIFEN (aprobada o rechazada)
+            sifenService.procesarRespuestaSifen(factura, response);
+            envio.setUltimoError(response.isAprobado() ? null : truncar(response.getMensaje()));
+            finalizar(envio, EstadoEnvioSifen.COMPLETADO);
+            log.info("Envío SIFEN {} completado. Factura {}: {}", envioId, factura.getId(), factura.getEstado());
+            return;
+        }
+
+        envio.setUltimoError(truncar(response.getMensaje()));
+
+        if (!circuitBreaker.isCerrado()) {
+            // SIFEN caído: el intento no cuenta y el envío espera en la cola a que el circuito se cierre
+            envio.setIntentos(envio.getIntentos() - 1);
+            envio.setEstado(EstadoEnvioSifen.PENDIENTE);
+            envio.setBloqueadoHasta(null);
+            envio.setProximoIntento(LocalDateTime.now());
+            sifenEnvioRepository.save(envio);
+            log.info("SIFEN no disponible, el envío {} queda en cola: {}", envioId, response.getMensaje());
+            return;
+        }
+
+        int maxIntentos = 1 + sifenConfig.getMaxReintentos();
+
+        if (envio.getIntentos() >= maxIntentos) {
+            sifenService.procesarRespuestaSifen(factura, response);
+            finalizar(envio, EstadoEnvioSifen.FALLIDO);
+            log.warn("Envío SIFEN {} fallido tras {} intentos. Factura {}: {}",
+                    envioId, envio.getIntentos(), factura.getId(), response.getMensaje());
+            return;
+        }
+
+        // Backoff exponencial: base, 2x base, 4x base...
+        long espera = sifenConfig.getOutbox().getBackoffSegundos() << (envio.getIntentos() - 1);
+        envio.setEstado(EstadoEnvioSifen.PENDIENTE);
+        envio.setBloqueadoHasta(null);
+        envio.setProximoIntento(LocalDateTime.now().plusSeconds(espera));
+        sifenEnvioRepository.save(envio);
+        log.warn("Envío SIFEN {} sin respuesta (intento {}/{}), reintento en {} s: {}",
+                envioId, envio.getIntentos(), maxIntentos, espera, response.getMensaje());
+    }
+
+    private void finalizar(SifenEnvio envio, EstadoEnvioSifen estado) {
+        envio.setEstado(estado);
+        envio.setBloqueadoHasta(null);
+        envio.setFechaFinalizacion(LocalDateTime.now());
+        sifenEnvioRepository.save(envio);
+    }
+
+    private String truncar(String mensaje) {
+        if (mensaje == null || mensaje.length() <= MAX_LONGITUD_ERROR) {
+            return mensaje;
+        }
+        return mensaje.substring(0, MAX_LONGITUD_ERROR);
+    }
+}
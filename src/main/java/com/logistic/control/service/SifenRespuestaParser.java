@@ -0,0 +1,143 @@
+package com.logistic.control.service;
+
+import com.logistic.control.dto.response.SifenLoteResponse;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.StringReader;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Parser de una sola pasada (StAX) para las respuestas SOAP de SIFEN.
+ * No arma el DOM: solo guarda el primer valor de los campos conocidos y, en respuestas de lote,
+ * el resultado de cada documento (gResProcLote). Los elementos se comparan por nombre local,
+ * así que el prefijo de namespace que use SIFEN no importa.
+ */
+final class SifenRespuestaParser {
+
+    private static final String ELEMENTO_DOCUMENTO_LOTE = "gResProcLote";
+
+    private static final Set<String> CAMPOS = Set.of(
+            "dCodRes", "dMsgRes", "dCDC", "dProtAut", "dEstRes", "dFecProc",
+            "dNumLote", "dProtConsLote", "dCodResLot", "dMsgResLot",
+            "dRucEm", "dNomEmi", "dRucRec", "dNomRec");
+
+    /** Configurada una sola vez; crear readers desde la fábrica es thread-safe */
+    private static final XMLInputFactory FACTORY = crearFactory();
+
+    private SifenRespuestaParser() {
+    }
+
+    /**
+     * Recorrer la respuesta una vez y extraer campos y documentos del lote
+     */
+    static Resultado parsear(String xml) throws XMLStreamException {
+        Map<String, String> valores = new HashMap<>();
+        List<SifenLoteResponse.DocumentoLoteResult> documentos = new ArrayList<>();
+        SifenLoteResponse.DocumentoLoteResult documento = null;
+
+        XMLStreamReader reader = FACTORY.createXMLStreamReader(new StringReader(xml));
+        try {
+            while (reader.hasNext()) {
+                int evento = reader.next();
+
+                if (evento == XMLStreamConstants.START_ELEMENT) {
+                    String nombre = reader.getLocalName();
+
+                    if (ELEMENTO_DOCUMENTO_LOTE.equals(nombre)) {
+                        documento = new SifenLoteResponse.DocumentoLoteResult();
+                    } else if (documento != null) {
+                        leerCampoDocumento(reader, nombre, documento);
+                    } else if (CAMPOS.contains(nombre) && !valores.containsKey(nombre)) {
+                        valores.put(nombre, reader.getElementText().trim());
+                    }
+                } else if (evento == XMLStreamConstants.END_ELEMENT
+                        && documento != null && ELEMENTO_DOCUMENTO_LOTE.equals(reader.getLocalName())) {
+                    documento.setAprobado(documento.getEstado() != null
+                            && documento.getEstado().toLowerCase().startsWith("aprob"));
+                    documentos.add(documento);
+                    documento = null;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        return new Resultado(valores, documentos);
+    }
+
+    private static void leerCampoDocumento(XMLStreamReader reader, String nombre,
+                                           SifenLoteResponse.DocumentoLoteResult documento) throws XMLStreamException {
+        switch (nombre) {
+            case "id", "dCDC" -> documento.setCdc(reader.getElementText().trim());
+            case "dEstRes" -> documento.setEstado(reader.getElementText().trim());
+            case "dCodRes" -> {
+                String codigo = reader.getElementText().trim();
+                if (documento.getCodigoEstado() == null) {
+                    documento.setCodigoEstado(codigo);
+                }
+            }
+            case "dMsgRes" -> {
+                // Un documento rechazado puede traer varios gResProc: se conservan todos los mensajes
+                String mensaje = reader.getElementText().trim();
+                documento.setMensajeError(documento.getMensajeError() == null
+                        ? mensaje
+                        : documento.getMensajeError() + "; " + mensaje);
+            }
+            default -> {
+                // Campo no usado
+            }
+        }
+    }
+
+    private static XMLInputFactory crearFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        // Respuestas de un servicio externo: sin DTD ni entidades externas (XXE)
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    /**
+     * Campos extraídos de una respuesta
+     */
+    record Resultado(Map<String, String> valores, List<SifenLoteResponse.DocumentoLoteResult> documentos) {
+
+        /**
+         * Primer valor presente entre los campos indicados (en orden de preferencia)
+         */
+        String valor(String... nombres) {
+            for (String nombre : nombres) {
+                String valor = valores.get(nombre);
+                if (valor != null && !valor.isEmpty()) {
+                    return valor;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Fecha de procesamiento informada por SIFEN (dFecProc), sin zona horaria
+         */
+        LocalDateTime fechaProcesamiento() {
+            String fecha = valor("dFecProc");
+            if (fecha == null || fecha.length() < 19) {
+                return null;
+            }
+            try {
+                return LocalDateTime.parse(fecha.substring(0, 19));
+            } catch (RuntimeException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -1,20 +1,33 @@
 package com.logistic.control.service;
 
-import com.logistic.control.dto.request.SifenDocumentoRequest;
+import com.logistic.control.config.SifenConfig;
 import com.logistic.control.dto.response.SifenConsultaResponse;
 import com.logistic.control.dto.response.SifenLoteResponse;
+import com.logistic.control.dto.response.SifenPendientesResponse;
 import com.logistic.control.dto.response.SifenResponse;
 import com.logistic.control.entity.Factura;
+import com.logistic.control.entity.SifenLote;
+import com.logistic.control.enums.EstadoEnvioSifen;
 import com.logistic.control.enums.EstadoFactura;
+import com.logistic.control.enums.EstadoLoteSifen;
 import com.logistic.control.repository.FacturaRepository;
+import com.logistic.control.repository.SifenEnvioRepository;
+import com.logistic.control.repository.SifenLoteRepository;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * Servicio principal para gestión de facturación electrónica SIFEN
@@ -29,115 +42,198 @@ public class SifenService {
     private final SifenXmlSigner xmlSigner;
     private final SifenClient sifenClient;
     private final QrCodeService qrCodeService;
+    private final SifenLoteBuilder loteBuilder;
+    private final SifenLoteRepository sifenLoteRepository;
+    private final SifenEnvioRepository sifenEnvioRepository;
+    private final SifenConfig sifenConfig;
+    private final SifenCircuitBreaker circuitBreaker;
+    private final PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    void iniciar() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
 
     /**
-     * Genera y envía una factura electrónica a SIFEN
+     * Genera y firma el documento electrónico de una factura y la marca EN_PROCESO.
+     * Lo invoca el worker de la cola de envíos dentro de su propia transacción.
      */
-    @Transactional
-    public SifenResponse enviarFacturaASifen(Long facturaId, SifenDocumentoRequest request) {
-        try {
-            log.info("Procesando envío de factura {} a SIFEN", facturaId);
-
-            // Obtener la factura
-            Factura factura = facturaRepository.findById(facturaId)
-                    .orElseThrow(() -> new RuntimeException("Factura no encontrada: " + facturaId));
-
-            // Validar estado
-            if (factura.getEstado() == EstadoFactura.APROBADA) {
-                throw new RuntimeException("La factura ya fue aprobada en SIFEN");
-            }
+    public void prepararDocumento(Factura factura) throws Exception {
+        // Generar el documento electrónico y firmarlo con XAdES-BES
+        SifenXmlSigner.DocumentoFirmado documento = xmlSigner.firmarDocumento(xmlGenerator.generarDocumentoFactura(factura));
+        factura.setXmlDe(documento.xmlSinFirmar());
+        factura.setXmlDeFirmado(documento.xmlFirmado());
+
+        // Actualizar estado a "EN PROCESO"
+        factura.setEstado(EstadoFactura.EN_PROCESO);
+        factura.setFechaEnvioSifen(LocalDateTime.now());
+        facturaRepository.save(factura);
+    }
 
-            // Generar XML del documento electrónico
-            String xmlSinFirmar = xmlGenerator.generarXmlFactura(factura);
-            factura.setXmlDe(xmlSinFirmar);
+    /**
+     * Emite el documento en contingencia (iTipEmi = 2): se firma y se generan QR y KuDE para entregarlo
+     * de inmediato. La transmisión queda en la cola hasta que SIFEN vuelva a estar disponible.
+     */
+    public void emitirEnContingencia(Factura factura) throws Exception {
+        factura.setEmitidaContingencia(true);
+        prepararDocumento(factura);
+        generarQrYKude(factura);
+        log.warn("Factura {} emitida en contingencia. CDC: {}", factura.getId(), factura.getCdc());
+    }
 
-            // Firmar el XML con XAdES-BES
-            String xmlFirmado = xmlSigner.firmarXml(xmlSinFirmar);
-            factura.setXmlDeFirmado(xmlFirmado);
+    /**
+     * Envía múltiples facturas en lote a SIFEN sin retener una conexión del pool durante el envío:
+     * (1) en una transacción corta se leen las facturas, se generan y firman sus documentos en paralelo
+     * y se marcan EN_PROCESO; (2) el lote se envía sin transacción; (3) en otra transacción corta se
+     * registra la respuesta.
+     */
+    public SifenLoteResponse enviarLoteASifen(List<Long> facturasIds) {
+        try {
+            log.info("Procesando envío de lote con {} facturas a SIFEN", facturasIds.size());
 
-            // Actualizar estado a "EN PROCESO"
-            factura.setEstado(EstadoFactura.EN_PROCESO);
-            factura.setFechaEnvioSifen(LocalDateTime.now());
-            facturaRepository.save(factura);
+            LotePreparado lote = transactionTemplate.execute(status -> prepararLote(facturasIds));
 
-            // Enviar a SIFEN
-            SifenResponse response = sifenClient.enviarDocumento(xmlFirmado);
+            // Sin transacción: puede tardar hasta connect-timeout + read-timeout
+            SifenLoteResponse response = sifenClient.enviarLoteComprimido(lote.zip(), lote.facturasIds().size());
 
-            // Procesar respuesta
-            procesarRespuestaSifen(factura, response);
+            // Procesar respuesta del lote
+            if (response.getSuccess()) {
+                log.info("Lote enviado exitosamente. Número de lote: {}", response.getNumeroLote());
+                transactionTemplate.executeWithoutResult(status ->
+                        registrarLoteEnviado(lote, response.getNumeroLote()));
+            }
 
-            log.info("Factura {} procesada con éxito. Estado: {}", facturaId, factura.getEstado());
             return response;
 
         } catch (Exception e) {
-            log.error("Error enviando factura a SIFEN", e);
-            throw new RuntimeException("Error enviando factura: " + e.getMessage(), e);
+            log.error("Error enviando lote a SIFEN", e);
+            throw new RuntimeException("Error enviando lote: " + e.getMessage(), e);
         }
     }
 
     /**
-     * Envía múltiples facturas en lote a SIFEN
+     * Paso 1 del envío de lote: leer las facturas en una sola consulta, generar y firmar sus documentos
+     * y marcarlas EN_PROCESO. Corre dentro de la transacción de quien llama.
      */
-    @Transactional
-    public SifenLoteResponse enviarLoteASifen(List<Long> facturasIds) {
-        try {
-            log.info("Procesando envío de lote con {} facturas a SIFEN", facturasIds.size());
-
-            List<String> xmlDocumentos = new ArrayList<>();
-            List<Factura> facturas = new ArrayList<>();
+    private LotePreparado prepararLote(List<Long> facturasIds) {
+        List<Long> ids = facturasIds.stream().distinct().toList();
+        Map<Long, Factura> facturasPorId = facturaRepository.findAllByIdWithClienteAndDetalles(ids).stream()
+                .collect(Collectors.toMap(Factura::getId, Function.identity()));
+
+        List<Factura> facturas = new ArrayList<>(ids.size());
+        for (Long facturaId : ids) {
+            Factura factura = facturasPorId.get(facturaId);
+            if (factura == null) {
+                throw new RuntimeException("Factura no encontrada: " + facturaId);
+            }
 
-            for (Long facturaId : facturasIds) {
-                Factura factura = facturaRepository.findById(facturaId)
-                        .orElseThrow(() -> new RuntimeException("Factura no encontrada: " + facturaId));
+            if (factura.getEstado() == EstadoFactura.APROBADA) {
+                log.warn("Factura {} ya está aprobada, se omite del lote", facturaId);
+                continue;
+            }
+            facturas.add(factura);
+        }
 
-                if (factura.getEstado() == EstadoFactura.APROBADA) {
-                    log.warn("Factura {} ya está aprobada, se omite del lote", facturaId);
-                    continue;
-                }
+        if (facturas.isEmpty()) {
+            throw new RuntimeException("No hay facturas válidas para enviar en el lote");
+        }
 
-                // Generar y firmar XML
-                String xmlSinFirmar = xmlGenerator.generarXmlFactura(factura);
-                String xmlFirmado = xmlSigner.firmarXml(xmlSinFirmar);
+        // Generar y firmar XML en paralelo, comprimiendo a medida que cada documento está listo
+        byte[] zipLote;
+        try {
+            zipLote = loteBuilder.construirZip(facturas);
+        } catch (Exception e) {
+            throw new IllegalStateException("Error generando documentos del lote: " + e.getMessage(), e);
+        }
 
-                factura.setXmlDe(xmlSinFirmar);
-                factura.setXmlDeFirmado(xmlFirmado);
-                factura.setEstado(EstadoFactura.EN_PROCESO);
-                factura.setFechaEnvioSifen(LocalDateTime.now());
+        LocalDateTime fechaEnvio = LocalDateTime.now();
+        for (Factura factura : facturas) {
+            factura.setEstado(EstadoFactura.EN_PROCESO);
+            factura.setFechaEnvioSifen(fechaEnvio);
+        }
 
-                xmlDocumentos.add(xmlFirmado);
-                facturas.add(factura);
-            }
+        // Guardar cambios antes de enviar
+        facturaRepository.saveAll(facturas);
 
-            if (xmlDocumentos.isEmpty()) {
-                throw new RuntimeException("No hay facturas válidas para enviar en el lote");
-            }
+        return new LotePreparado(facturas.stream().map(Factura::getId).toList(), zipLote, fechaEnvio);
+    }
 
-            // Guardar cambios antes de enviar
-            facturaRepository.saveAll(facturas);
+    /**
+     * Paso 3 del envío de lote: las facturas quedan ENVIADA_SIFEN a la espera del resultado,
+     * que consulta SifenLotePoller
+     */
+    private void registrarLoteEnviado(LotePreparado lote, String numeroLote) {
+        List<Factura> facturas = facturaRepository.findAllById(lote.facturasIds());
+        for (Factura factura : facturas) {
+            factura.setEstado(EstadoFactura.ENVIADA_SIFEN);
+            factura.setNumeroLoteSifen(numeroLote);
+        }
+        facturaRepository.saveAll(facturas);
+
+        sifenLoteRepository.save(SifenLote.builder()
+                .numeroLote(numeroLote)
+                .cantidadDocumentos(lote.facturasIds().size())
+                .fechaEnvio(lote.fechaEnvio())
+                .proximaConsulta(lote.fechaEnvio().plusSeconds(sifenConfig.getPoller().getEsperaInicialSegundos()))
+                .build());
+    }
 
-            // Enviar lote a SIFEN
-            SifenLoteResponse response = sifenClient.enviarLote(xmlDocumentos);
+    /**
+     * Aplica el resultado por documento de una consulta de lote a sus facturas, que se leen en una sola consulta.
+     * Solo se actualizan las que siguen ENVIADA_SIFEN. Devuelve cuántas del lote quedan sin resultado.
+     */
+    public long aplicarResultadoLote(String numeroLote, List<SifenLoteResponse.DocumentoLoteResult> documentos) {
+        Map<String, Factura> facturasPorCdc = facturaRepository.findByNumeroLoteSifen(numeroLote).stream()
+                .filter(factura -> factura.getCdc() != null)
+                .collect(Collectors.toMap(Factura::getCdc, Function.identity()));
+
+        List<Factura> actualizadas = new ArrayList<>();
+        for (SifenLoteResponse.DocumentoLoteResult documento : documentos) {
+            Factura factura = facturasPorCdc.get(documento.getCdc());
+            if (factura == null || factura.getEstado() != EstadoFactura.ENVIADA_SIFEN) {
+                continue;
+            }
 
-            // Procesar respuesta del lote
-            if (response.getSuccess()) {
-                log.info("Lote enviado exitosamente. Número de lote: {}", response.getNumeroLote());
-                
-                // Actualizar facturas con el número de lote
-                for (Factura factura : facturas) {
-                    factura.setObservaciones(
-                        (factura.getObservaciones() != null ? factura.getObservaciones() + " | " : "") +
-                        "Lote: " + response.getNumeroLote()
-                    );
-                }
-                facturaRepository.saveAll(facturas);
+            if (Boolean.TRUE.equals(documento.getAprobado())) {
+                factura.aprobarSifen(factura.getCdc(), null);
+                factura.setCodigoEstadoSifen(documento.getCodigoEstado());
+                factura.setMensajeSifen(documento.getMensajeError());
+                generarQrYKude(factura);
+            } else {
+                factura.rechazarSifen(documento.getCodigoEstado(), documento.getMensajeError());
             }
+            actualizadas.add(factura);
+        }
 
-            return response;
+        facturaRepository.saveAll(actualizadas);
+        log.info("Lote {}: {} facturas actualizadas desde la consulta", numeroLote, actualizadas.size());
 
-        } catch (Exception e) {
-            log.error("Error enviando lote a SIFEN", e);
-            throw new RuntimeException("Error enviando lote: " + e.getMessage(), e);
-        }
+        return facturasPorCdc.values().stream()
+                .filter(factura -> factura.getEstado() == EstadoFactura.ENVIADA_SIFEN)
+                .count();
+    }
+
+    /**
+     * Documentos enviados a SIFEN que siguen sin resultado y antigüedad del más viejo
+     */
+    @Transactional(readOnly = true)
+    public SifenPendientesResponse obtenerPendientes() {
+        LocalDateTime masAntigua = facturaRepository.findFechaEnvioSifenMasAntigua(EstadoFactura.ENVIADA_SIFEN);
+
+        return SifenPendientesResponse.builder()
+                .documentosPendientes(facturaRepository.countByEstado(EstadoFactura.ENVIADA_SIFEN))
+                .lotesPendientes(sifenLoteRepository.countByEstado(EstadoLoteSifen.PENDIENTE))
+                .enviosEnCola(sifenEnvioRepository.countByEstado(EstadoEnvioSifen.PENDIENTE)
+                        + sifenEnvioRepository.countByEstado(EstadoEnvioSifen.EN_PROCESO))
+                .documentosEnContingencia(facturaRepository.countByEmitidaContingenciaAndEstado(
+                        true, EstadoFactura.EN_PROCESO))
+                .circuitoSifen(circuitBreaker.getEstado().name())
+                .fechaEnvioMasAntigua(masAntigua)
+                .antiguedadMaximaSegundos(masAntigua != null
+                        ? Duration.between(masAntigua, LocalDateTime.now()).getSeconds() : 0L)
+                .build();
     }
 
     /**
@@ -167,9 +263,9 @@ public class SifenService {
     }
 
     /**
-     * Actualiza el estado de una factura basado en consulta a SIFEN
+     * Actualiza el estado de una factura basado en consulta a SIFEN.
+     * La consulta corre sin transacción; el resultado se aplica después en una transacción corta.
      */
-    @Transactional
     public Factura actualizarEstadoDesdeConsulta(Long facturaId) {
         try {
             Factura factura = facturaRepository.findById(facturaId)
@@ -179,20 +275,10 @@ public class SifenService {
                 throw new RuntimeException("La factura no tiene CDC asignado");
             }
 
+            // Sin transacción: puede tardar hasta connect-timeout + read-timeout
             SifenConsultaResponse consulta = sifenClient.consultarDocumento(factura.getCdc());
 
-            if (consulta.getSuccess()) {
-                if ("Aprobado".equalsIgnoreCase(consulta.getEstado())) {
-                    factura.aprobarSifen(factura.getCdc(), consulta.getXmlRespuesta());
-                    generarQrYKude(factura);
-                } else if ("Rechazado".equalsIgnoreCase(consulta.getEstado())) {
-                    factura.rechazarSifen(consulta.getCodigoEstado(), consulta.getMensaje());
-                }
-
-                facturaRepository.save(factura);
-            }
-
-            return factura;
+            return transactionTemplate.execute(status -> aplicarConsulta(facturaId, consulta));
 
         } catch (Exception e) {
             log.error("Error actualizando estado desde consulta", e);
@@ -200,10 +286,33 @@ public class SifenService {
         }
     }
 
+    /**
+     * Aplica a la factura el resultado de una consulta por CDC. Corre dentro de la transacción de quien llama;
+     * la factura se devuelve con cliente y documento inicializados, lista para armar la respuesta.
+     */
+    public Factura aplicarConsulta(Long facturaId, SifenConsultaResponse consulta) {
+        Factura factura = facturaRepository.findAllByIdWithClienteAndDetalles(List.of(facturaId)).stream()
+                .findFirst()
+                .orElseThrow(() -> new RuntimeException("Factura no encontrada: " + facturaId));
+
+        if (consulta.getSuccess()) {
+            if ("Aprobado".equalsIgnoreCase(consulta.getEstado())) {
+                factura.aprobarSifen(factura.getCdc(), consulta.getXmlRespuesta());
+                generarQrYKude(factura);
+            } else if ("Rechazado".equalsIgnoreCase(consulta.getEstado())) {
+                factura.rechazarSifen(consulta.getCodigoEstado(), consulta.getMensaje());
+            }
+
+            facturaRepository.save(factura);
+        }
+
+        return factura;
+    }
+
     /**
      * Procesa la respuesta de SIFEN y actualiza la factura
      */
-    private void procesarRespuestaSifen(Factura factura, SifenResponse response) {
+    public void procesarRespuestaSifen(Factura factura, SifenResponse response) {
         factura.setRespuestaSifen(response.getXmlRespuesta());
         factura.setCodigoEstadoSifen(response.getCodigo());
         factura.setMensajeSifen(response.getMensaje());
@@ -263,12 +372,15 @@ public class SifenService {
             if (factura.getEstado() == EstadoFactura.APROBADA) {
                 throw new RuntimeException("No se puede regenerar XML de una factura aprobada");
             }
+            if (Boolean.TRUE.equals(factura.getEmitidaContingencia())) {
+                // El KuDE ya se entregó con este CDC: el documento debe transmitirse tal cual
+                throw new RuntimeException("No se puede regenerar XML de una factura emitida en contingencia");
+            }
 
-            String xmlSinFirmar = xmlGenerator.generarXmlFactura(factura);
-            factura.setXmlDe(xmlSinFirmar);
-
-            String xmlFirmado = xmlSigner.firmarXml(xmlSinFirmar);
-            factura.setXmlDeFirmado(xmlFirmado);
+            SifenXmlSigner.DocumentoFirmado documento =
+                    xmlSigner.firmarDocumento(xmlGenerator.generarDocumentoFactura(factura));
+            factura.setXmlDe(documento.xmlSinFirmar());
+            factura.setXmlDeFirmado(documento.xmlFirmado());
 
             return facturaRepository.save(factura);
 
@@ -298,4 +410,10 @@ public class SifenService {
             return false;
         }
     }
+
+    /**
+     * Lote firmado y listo para enviar, sin referencias a entidades de la transacción que lo armó
+     */
+    private record LotePreparado(List<Long> facturasIds, byte[] zip, LocalDateTime fechaEnvio) {
+    }
 }
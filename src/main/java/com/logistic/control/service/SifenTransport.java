@@ -0,0 +1,18 @@
+package com.logistic.control.service;
+
+import javax.net.ssl.SSLContext;
+
+/**
+ * Transporte HTTP de los sobres SOAP hacia SIFEN.
+ * SifenClient arma el sobre y el SSLContext (mTLS con el certificado del emisor);
+ * la implementación decide cómo reutilizar conexiones y sesiones TLS.
+ */
+public interface SifenTransport {
+
+    /**
+     * Enviar un sobre SOAP y devolver el cuerpo de la respuesta (HTTP 200)
+     *
+     * @throws Exception si no hay respuesta o el servidor responde con un estado distinto de 200
+     */
+    String enviar(SSLContext sslContext, String urlEndpoint, String soapEnvelope, String soapAction) throws Exception;
+}
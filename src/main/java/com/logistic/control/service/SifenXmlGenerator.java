@@ -2,68 +2,92 @@ package com.logistic.control.service;
 
 import com.logistic.control.config.SifenConfig;
 import com.logistic.control.entity.Cliente;
-import com.logistic.control.entity.DetalleFactura;
 import com.logistic.control.entity.Factura;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.w3c.dom.DOMImplementation;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 
-import java.security.MessageDigest;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.List;
 import java.util.Random;
 
 /**
- * Servicio para generación de documentos electrónicos SIFEN en formato XML
+ * Servicio para generación de documentos electrónicos SIFEN en formato XML.
+ * El DE se arma directamente como DOM: SifenXmlSigner lo firma sin serializar y volver a parsear,
+ * y el escape de caracteres queda a cargo del serializador XML.
  */
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class SifenXmlGenerator {
 
+    private static final String NAMESPACE_SIFEN = "http://ekuatia.set.gov.py/sifen/xsd";
+    private static final String NAMESPACE_XSI = "http://www.w3.org/2001/XMLSchema-instance";
+
     private final SifenConfig sifenConfig;
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
     private static final DateTimeFormatter DATETIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
 
+    /** Sin estado: crear documentos desde la implementación DOM es seguro entre hilos */
+    private static final DOMImplementation DOM = crearDomImplementation();
+
     /**
-     * Genera el XML del documento electrónico (DE) según especificaciones SIFEN
+     * Genera el documento electrónico (DE) de una factura y le asigna el CDC.
+     * Lee la entidad, así que debe llamarse desde el hilo dueño de la sesión.
      */
-    public String generarXmlFactura(Factura factura) {
+    public Document generarDocumentoFactura(Factura factura) {
+        DocumentoGenerado generado = generarDocumento(DatosFactura.de(factura));
+        factura.setCdc(generado.cdc());
+        return generado.documento();
+    }
+
+    /**
+     * Genera el documento electrónico (DE) según especificaciones SIFEN a partir de una copia
+     * inmutable de la factura. No toca entidades, por lo que puede correr en cualquier hilo;
+     * quien llama asigna el CDC devuelto a la factura.
+     */
+    public DocumentoGenerado generarDocumento(DatosFactura factura) {
         try {
-            log.info("Generando XML para factura ID: {}", factura.getId());
+            log.info("Generando XML para factura ID: {}", factura.id());
 
-            String cdc = generarCDC(factura);
-            factura.setCdc(cdc);
+            String cdc = obtenerCDC(factura);
 
-            StringBuilder xml = new StringBuilder();
-            xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
-            xml.append("<rDE xmlns=\"http://ekuatia.set.gov.py/sifen/xsd\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\">\n");
+            Document documento = DOM.createDocument(NAMESPACE_SIFEN, "rDE", null);
+            documento.setXmlStandalone(true);
+            Element rDE = documento.getDocumentElement();
+            rDE.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, "xmlns", NAMESPACE_SIFEN);
+            rDE.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, "xmlns:xsi", NAMESPACE_XSI);
 
             // A. Campos firmados del DE
-            xml.append("  <DE Id=\"").append(cdc).append("\">\n");
+            Element de = elemento(rDE, "DE");
+            de.setAttribute("Id", cdc);
             
             // A1. Campos inherentes al DE
-            generarCamposInherentes(xml, factura, cdc);
+            generarCamposInherentes(de, factura, cdc);
             
             // B. Datos del emisor
-            generarDatosEmisor(xml);
+            generarDatosEmisor(de);
             
             // C. Datos del receptor
-            generarDatosReceptor(xml, factura.getCliente());
+            generarDatosReceptor(de, factura.receptor());
             
             // D. Campos que componen el Documento Electrónico
-            generarCamposDocumento(xml, factura);
+            generarCamposDocumento(de, factura);
             
             // E. Items del documento
-            generarItems(xml, factura);
+            generarItems(de, factura);
             
             // F. Campos de subtotales y totales
-            generarTotales(xml, factura);
-            
-            xml.append("  </DE>\n");
-            xml.append("</rDE>");
+            generarTotales(de, factura);
 
-            return xml.toString();
+            return new DocumentoGenerado(cdc, documento);
 
         } catch (Exception e) {
             log.error("Error generando XML de factura", e);
@@ -72,10 +96,23 @@ public class SifenXmlGenerator {
     }
 
     /**
-     * Genera el CDC (Código de Control del Documento)
-     * Formato: 44 dígitos = RUC(8) + DV(1) + Establecimiento(3) + Punto(3) + Tipo(2) + Número(7) + Fecha(8) + Tipo Emisión(1) + Código Seguridad(9) + DV(1)
+     * CDC del documento: se conserva el ya asignado mientras los datos que codifica (emisor, numeración,
+     * fecha y tipo de emisión) no cambien, así los reintentos no generan un código de seguridad nuevo
      */
-    private String generarCDC(Factura factura) {
+    private String obtenerCDC(DatosFactura factura) {
+        String prefijo = prefijoCDC(factura);
+        String actual = factura.cdc();
+        if (actual != null && actual.length() == prefijo.length() + 10 && actual.startsWith(prefijo)) {
+            return actual;
+        }
+        return generarCDC(prefijo);
+    }
+
+    /**
+     * Parte del CDC que depende de la factura:
+     * RUC(8) + DV(1) + Establecimiento(3) + Punto(3) + Tipo(2) + Número(7) + Fecha(8) + Tipo Emisión(1)
+     */
+    private String prefijoCDC(DatosFactura factura) {
         try {
             StringBuilder cdc = new StringBuilder();
 
@@ -85,33 +122,24 @@ public class SifenXmlGenerator {
             cdc.append(calcularDV(ruc));
 
             // Establecimiento (3 dígitos)
-            cdc.append(String.format("%03d", Integer.parseInt(factura.getEstablecimiento())));
+            cdc.append(String.format("%03d", Integer.parseInt(factura.establecimiento())));
 
             // Punto de expedición (3 dígitos)
-            cdc.append(String.format("%03d", Integer.parseInt(factura.getPuntoExpedicion())));
+            cdc.append(String.format("%03d", Integer.parseInt(factura.puntoExpedicion())));
 
             // Tipo de documento (2 dígitos) - 01 = Factura Electrónica
-            cdc.append(String.format("%02d", Integer.parseInt(factura.getTipoDocumento())));
+            cdc.append(String.format("%02d", Integer.parseInt(factura.tipoDocumento())));
 
             // Número de documento (7 dígitos)
-            String[] partes = factura.getNumeroFactura().split("-");
+            String[] partes = factura.numeroFactura().split("-");
             String numero = partes.length == 3 ? partes[2] : "0000001";
             cdc.append(String.format("%07d", Integer.parseInt(numero)));
 
             // Fecha (8 dígitos YYYYMMDD)
-            cdc.append(factura.getFechaEmision().format(DateTimeFormatter.ofPattern("yyyyMMdd")));
-
-            // Tipo de emisión (1 dígito) - 1 = Normal
-            cdc.append("1");
+            cdc.append(factura.fechaEmision().format(DateTimeFormatter.ofPattern("yyyyMMdd")));
 
-            // Código de seguridad (9 dígitos aleatorios)
-            Random random = new Random();
-            for (int i = 0; i < 9; i++) {
-                cdc.append(random.nextInt(10));
-            }
-
-            // Dígito verificador del CDC
-            cdc.append(calcularDV(cdc.toString()));
+            // Tipo de emisión (1 dígito) - 1 = Normal, 2 = Contingencia
+            cdc.append(tipoEmision(factura));
 
             return cdc.toString();
 
@@ -121,6 +149,25 @@ public class SifenXmlGenerator {
         }
     }
 
+    /**
+     * Genera el CDC (Código de Control del Documento)
+     * Formato: prefijo de la factura + Código Seguridad(9) + DV(1)
+     */
+    private String generarCDC(String prefijo) {
+        StringBuilder cdc = new StringBuilder(prefijo);
+
+        // Código de seguridad (9 dígitos aleatorios)
+        Random random = new Random();
+        for (int i = 0; i < 9; i++) {
+            cdc.append(random.nextInt(10));
+        }
+
+        // Dígito verificador del CDC
+        cdc.append(calcularDV(cdc.toString()));
+
+        return cdc.toString();
+    }
+
     /**
      * Calcula el dígito verificador usando algoritmo módulo 11
      */
@@ -142,219 +189,266 @@ public class SifenXmlGenerator {
         return dv;
     }
 
+    private static String tipoEmision(DatosFactura factura) {
+        return factura.emitidaContingencia() ? "2" : "1";
+    }
+
     /**
      * Genera la sección A1: Campos inherentes al DE
      */
-    private void generarCamposInherentes(StringBuilder xml, Factura factura, String cdc) {
-        xml.append("    <gOpeDE>\n");
-        xml.append("      <iTipEmi>1</iTipEmi>\n"); // 1 = Normal
-        xml.append("      <dDesTipEmi>Normal</dDesTipEmi>\n");
-        xml.append("      <dCodSeg>").append(cdc.substring(34, 43)).append("</dCodSeg>\n");
-        xml.append("      <dInfoEmi>Información adicional</dInfoEmi>\n");
-        xml.append("      <dInfoFisc>Información fiscal</dInfoFisc>\n");
-        xml.append("    </gOpeDE>\n");
-
-        xml.append("    <gTimb>\n");
-        xml.append("      <iTiDE>1</iTiDE>\n"); // 1 = Factura Electrónica
-        xml.append("      <dDesTiDE>Factura Electrónica</dDesTiDE>\n");
-        xml.append("      <dNumTim>").append(factura.getTimbrado()).append("</dNumTim>\n");
-        xml.append("      <dEst>").append(factura.getEstablecimiento()).append("</dEst>\n");
-        xml.append("      <dPunExp>").append(factura.getPuntoExpedicion()).append("</dPunExp>\n");
-        xml.append("      <dNumDoc>").append(obtenerNumeroDocumento(factura)).append("</dNumDoc>\n");
-        xml.append("      <dFeIniT>").append(LocalDateTime.now().format(DATE_FORMATTER)).append("</dFeIniT>\n");
-        xml.append("    </gTimb>\n");
-
-        xml.append("    <gDatGralOpe>\n");
-        xml.append("      <dFeEmiDE>").append(factura.getFechaEmision().format(DATETIME_FORMATTER)).append("</dFeEmiDE>\n");
-        xml.append("    </gDatGralOpe>\n");
+    private void generarCamposInherentes(Element de, DatosFactura factura, String cdc) {
+        Element gOpeDE = elemento(de, "gOpeDE");
+        String tipoEmision = tipoEmision(factura);
+        elemento(gOpeDE, "iTipEmi", tipoEmision); // 1 = Normal, 2 = Contingencia
+        elemento(gOpeDE, "dDesTipEmi", "2".equals(tipoEmision) ? "Contingencia" : "Normal");
+        elemento(gOpeDE, "dCodSeg", cdc.substring(34, 43));
+        elemento(gOpeDE, "dInfoEmi", "Información adicional");
+        elemento(gOpeDE, "dInfoFisc", "Información fiscal");
+
+        Element gTimb = elemento(de, "gTimb");
+        elemento(gTimb, "iTiDE", "1"); // 1 = Factura Electrónica
+        elemento(gTimb, "dDesTiDE", "Factura Electrónica");
+        elemento(gTimb, "dNumTim", factura.timbrado());
+        elemento(gTimb, "dEst", factura.establecimiento());
+        elemento(gTimb, "dPunExp", factura.puntoExpedicion());
+        elemento(gTimb, "dNumDoc", obtenerNumeroDocumento(factura));
+        elemento(gTimb, "dFeIniT", LocalDateTime.now().format(DATE_FORMATTER));
+
+        Element gDatGralOpe = elemento(de, "gDatGralOpe");
+        elemento(gDatGralOpe, "dFeEmiDE", factura.fechaEmision().format(DATETIME_FORMATTER));
     }
 
     /**
      * Genera la sección B: Datos del emisor
      */
-    private void generarDatosEmisor(StringBuilder xml) {
-        xml.append("    <gEmis>\n");
-        xml.append("      <dRucEm>").append(sifenConfig.getRucEmisor()).append("</dRucEm>\n");
-        xml.append("      <dDVEmi>").append(calcularDV(sifenConfig.getRucEmisor())).append("</dDVEmi>\n");
-        xml.append("      <iTipCont>1</iTipCont>\n"); // 1 = Persona Física
-        xml.append("      <cTipReg>8</cTipReg>\n"); // 8 = Varios
-        xml.append("      <dNomEmi>").append(escaparXml(sifenConfig.getRazonSocialEmisor())).append("</dNomEmi>\n");
+    private void generarDatosEmisor(Element de) {
+        Element gEmis = elemento(de, "gEmis");
+        elemento(gEmis, "dRucEm", sifenConfig.getRucEmisor());
+        elemento(gEmis, "dDVEmi", calcularDV(sifenConfig.getRucEmisor()));
+        elemento(gEmis, "iTipCont", "1"); // 1 = Persona Física
+        elemento(gEmis, "cTipReg", "8"); // 8 = Varios
+        elemento(gEmis, "dNomEmi", sifenConfig.getRazonSocialEmisor());
         
         if (sifenConfig.getNombreFantasia() != null) {
-            xml.append("      <dNomFanEmi>").append(escaparXml(sifenConfig.getNombreFantasia())).append("</dNomFanEmi>\n");
+            elemento(gEmis, "dNomFanEmi", sifenConfig.getNombreFantasia());
         }
         
-        xml.append("      <dDirEmi>").append(escaparXml(sifenConfig.getDireccion())).append("</dDirEmi>\n");
-        xml.append("      <dNumCas>0</dNumCas>\n");
-        xml.append("      <dCompDir1>Barrio</dCompDir1>\n");
-        xml.append("      <dCompDir2>Complemento</dCompDir2>\n");
-        xml.append("      <cDepEmi>").append(sifenConfig.getDepartamento()).append("</cDepEmi>\n");
-        xml.append("      <dDesDepEmi>").append(sifenConfig.getCiudad()).append("</dDesDepEmi>\n");
-        xml.append("      <cCiuEmi>1</cCiuEmi>\n");
-        xml.append("      <dDesCiuEmi>").append(sifenConfig.getCiudad()).append("</dDesCiuEmi>\n");
-        xml.append("      <dTelEmi>").append(sifenConfig.getTelefono()).append("</dTelEmi>\n");
-        xml.append("      <dEmailE>").append(sifenConfig.getEmail()).append("</dEmailE>\n");
-        xml.append("    </gEmis>\n");
+        elemento(gEmis, "dDirEmi", sifenConfig.getDireccion());
+        elemento(gEmis, "dNumCas", "0");
+        elemento(gEmis, "dCompDir1", "Barrio");
+        elemento(gEmis, "dCompDir2", "Complemento");
+        elemento(gEmis, "cDepEmi", sifenConfig.getDepartamento());
+        elemento(gEmis, "dDesDepEmi", sifenConfig.getCiudad());
+        elemento(gEmis, "cCiuEmi", "1");
+        elemento(gEmis, "dDesCiuEmi", sifenConfig.getCiudad());
+        elemento(gEmis, "dTelEmi", sifenConfig.getTelefono());
+        elemento(gEmis, "dEmailE", sifenConfig.getEmail());
     }
 
     /**
      * Genera la sección C: Datos del receptor
      */
-    private void generarDatosReceptor(StringBuilder xml, Cliente cliente) {
-        xml.append("    <gDatRec>\n");
-        xml.append("      <iNatRec>1</iNatRec>\n"); // 1 = No contribuyente
-        xml.append("      <iTiOpe>1</iTiOpe>\n"); // 1 = B2C
-        xml.append("      <cPaisRec>PRY</cPaisRec>\n");
-        xml.append("      <dDesPaisRe>Paraguay</dDesPaisRe>\n");
-        xml.append("      <iTiContRec>1</iTiContRec>\n");
+    private void generarDatosReceptor(Element de, DatosReceptor cliente) {
+        Element gDatRec = elemento(de, "gDatRec");
+        elemento(gDatRec, "iNatRec", "1"); // 1 = No contribuyente
+        elemento(gDatRec, "iTiOpe", "1"); // 1 = B2C
+        elemento(gDatRec, "cPaisRec", "PRY");
+        elemento(gDatRec, "dDesPaisRe", "Paraguay");
+        elemento(gDatRec, "iTiContRec", "1");
         
-        if (cliente.getRuc() != null && !cliente.getRuc().isEmpty()) {
-            xml.append("      <dRucRec>").append(cliente.getRuc()).append("</dRucRec>\n");
-            xml.append("      <dDVRec>").append(calcularDV(cliente.getRuc())).append("</dDVRec>\n");
+        if (cliente.ruc() != null && !cliente.ruc().isEmpty()) {
+            elemento(gDatRec, "dRucRec", cliente.ruc());
+            elemento(gDatRec, "dDVRec", calcularDV(cliente.ruc()));
         }
         
-        xml.append("      <dNomRec>").append(escaparXml(cliente.getRazonSocial())).append("</dNomRec>\n");
+        elemento(gDatRec, "dNomRec", cliente.razonSocial());
         
-        if (cliente.getDireccion() != null) {
-            xml.append("      <dDirRec>").append(escaparXml(cliente.getDireccion())).append("</dDirRec>\n");
+        if (cliente.direccion() != null) {
+            elemento(gDatRec, "dDirRec", cliente.direccion());
         }
         
-        if (cliente.getTelefono() != null) {
-            xml.append("      <dTelRec>").append(cliente.getTelefono()).append("</dTelRec>\n");
+        if (cliente.telefono() != null) {
+            elemento(gDatRec, "dTelRec", cliente.telefono());
         }
         
-        if (cliente.getEmail() != null) {
-            xml.append("      <dEmailRec>").append(cliente.getEmail()).append("</dEmailRec>\n");
+        if (cliente.email() != null) {
+            elemento(gDatRec, "dEmailRec", cliente.email());
         }
-        
-        xml.append("    </gDatRec>\n");
     }
 
     /**
      * Genera la sección D: Campos que componen el documento
      */
-    private void generarCamposDocumento(StringBuilder xml, Factura factura) {
-        xml.append("    <gDtipDE>\n");
-        xml.append("      <gCamFE>\n");
-        xml.append("        <iIndPres>1</iIndPres>\n"); // 1 = Operación presencial
-        xml.append("        <dDesIndPres>Presencial</dDesIndPres>\n");
-        xml.append("        <dFecEmNR></dFecEmNR>\n");
+    private void generarCamposDocumento(Element de, DatosFactura factura) {
+        Element gDtipDE = elemento(de, "gDtipDE");
+        Element gCamFE = elemento(gDtipDE, "gCamFE");
+        elemento(gCamFE, "iIndPres", "1"); // 1 = Operación presencial
+        elemento(gCamFE, "dDesIndPres", "Presencial");
+        elemento(gCamFE, "dFecEmNR", "");
         
         // Condición de la operación
-        xml.append("        <gCompPub>\n");
-        xml.append("          <dModCont>1</dModCont>\n"); // 1 = Contratación pública
-        xml.append("          <dEntCont></dEntCont>\n");
-        xml.append("          <dAnoCont></dAnoCont>\n");
-        xml.append("          <dSecCont></dSecCont>\n");
-        xml.append("          <dFeCodCont></dFeCodCont>\n");
-        xml.append("        </gCompPub>\n");
-        
-        xml.append("      </gCamFE>\n");
-        xml.append("    </gDtipDE>\n");
+        Element gCompPub = elemento(gCamFE, "gCompPub");
+        elemento(gCompPub, "dModCont", "1"); // 1 = Contratación pública
+        elemento(gCompPub, "dEntCont", "");
+        elemento(gCompPub, "dAnoCont", "");
+        elemento(gCompPub, "dSecCont", "");
+        elemento(gCompPub, "dFeCodCont", "");
 
         // Condición de la operación y pagos
-        xml.append("    <gTotSub>\n");
-        xml.append("      <dSubExe>0</dSubExe>\n"); // Subtotal exento
-        xml.append("      <dSubExo>0</dSubExo>\n"); // Subtotal exonerado
-        xml.append("      <dSub5>").append(calcularBase5(factura)).append("</dSub5>\n");
-        xml.append("      <dSub10>").append(calcularBase10(factura)).append("</dSub10>\n");
-        xml.append("      <dTotOpe>").append(factura.getSubtotal()).append("</dTotOpe>\n");
-        xml.append("      <dTotDesc>").append(factura.getDescuento()).append("</dTotDesc>\n");
-        xml.append("      <dTotDescGlotem>0</dTotDescGlotem>\n");
-        xml.append("      <dTotAntItem>0</dTotAntItem>\n");
-        xml.append("      <dTotAnt>0</dTotAnt>\n");
-        xml.append("      <dPorcDescTotal>0</dPorcDescTotal>\n");
-        xml.append("      <dDescTotal>0</dDescTotal>\n");
-        xml.append("      <dAnticipo>0</dAnticipo>\n");
-        xml.append("      <dRedon>0</dRedon>\n");
-        xml.append("      <dComi>0</dComi>\n");
-        xml.append("      <dTotGralOpe>").append(factura.getTotal()).append("</dTotGralOpe>\n");
-        xml.append("      <dIVA5>").append(factura.getIva5()).append("</dIVA5>\n");
-        xml.append("      <dIVA10>").append(factura.getIva10()).append("</dIVA10>\n");
-        xml.append("      <dLiqTotIVA5>").append(factura.getIva5()).append("</dLiqTotIVA5>\n");
-        xml.append("      <dLiqTotIVA10>").append(factura.getIva10()).append("</dLiqTotIVA10>\n");
-        xml.append("      <dTotIVA>").append(factura.getTotalIva()).append("</dTotIVA>\n");
-        xml.append("      <dBaseGrav5>").append(calcularBase5(factura)).append("</dBaseGrav5>\n");
-        xml.append("      <dBaseGrav10>").append(calcularBase10(factura)).append("</dBaseGrav10>\n");
-        xml.append("      <dTBasGraIVA>").append(factura.getSubtotal()).append("</dTBasGraIVA>\n");
-        xml.append("    </gTotSub>\n");
+        Element gTotSub = elemento(de, "gTotSub");
+        elemento(gTotSub, "dSubExe", "0"); // Subtotal exento
+        elemento(gTotSub, "dSubExo", "0"); // Subtotal exonerado
+        elemento(gTotSub, "dSub5", calcularBase5(factura));
+        elemento(gTotSub, "dSub10", calcularBase10(factura));
+        elemento(gTotSub, "dTotOpe", factura.subtotal());
+        elemento(gTotSub, "dTotDesc", factura.descuento());
+        elemento(gTotSub, "dTotDescGlotem", "0");
+        elemento(gTotSub, "dTotAntItem", "0");
+        elemento(gTotSub, "dTotAnt", "0");
+        elemento(gTotSub, "dPorcDescTotal", "0");
+        elemento(gTotSub, "dDescTotal", "0");
+        elemento(gTotSub, "dAnticipo", "0");
+        elemento(gTotSub, "dRedon", "0");
+        elemento(gTotSub, "dComi", "0");
+        elemento(gTotSub, "dTotGralOpe", factura.total());
+        elemento(gTotSub, "dIVA5", factura.iva5());
+        elemento(gTotSub, "dIVA10", factura.iva10());
+        elemento(gTotSub, "dLiqTotIVA5", factura.iva5());
+        elemento(gTotSub, "dLiqTotIVA10", factura.iva10());
+        elemento(gTotSub, "dTotIVA", factura.totalIva());
+        elemento(gTotSub, "dBaseGrav5", calcularBase5(factura));
+        elemento(gTotSub, "dBaseGrav10", calcularBase10(factura));
+        elemento(gTotSub, "dTBasGraIVA", factura.subtotal());
     }
 
     /**
      * Genera la sección E: Items del documento
      */
-    private void generarItems(StringBuilder xml, Factura factura) {
+    private void generarItems(Element de, DatosFactura factura) {
         int itemNum = 1;
-        for (DetalleFactura detalle : factura.getDetalles()) {
-            xml.append("    <gCamItem>\n");
-            xml.append("      <dNroItem>").append(itemNum++).append("</dNroItem>\n");
-            xml.append("      <dDesProSer>").append(escaparXml(detalle.getDescripcion())).append("</dDesProSer>\n");
-            xml.append("      <dCantProSer>").append(detalle.getCantidad()).append("</dCantProSer>\n");
-            xml.append("      <cUniMed>77</cUniMed>\n"); // 77 = Unidad
-            xml.append("      <dDesUniMed>Unidad</dDesUniMed>\n");
-            xml.append("      <dPUniProSer>").append(detalle.getPrecioUnitario()).append("</dPUniProSer>\n");
-            xml.append("      <dTiCamIt>1</dTiCamIt>\n");
-            xml.append("      <dTotBruOpeItem>").append(detalle.getTotal()).append("</dTotBruOpeItem>\n");
+        for (DatosItem detalle : factura.items()) {
+            Element gCamItem = elemento(de, "gCamItem");
+            elemento(gCamItem, "dNroItem", itemNum++);
+            elemento(gCamItem, "dDesProSer", detalle.descripcion());
+            elemento(gCamItem, "dCantProSer", detalle.cantidad());
+            elemento(gCamItem, "cUniMed", "77"); // 77 = Unidad
+            elemento(gCamItem, "dDesUniMed", "Unidad");
+            elemento(gCamItem, "dPUniProSer", detalle.precioUnitario());
+            elemento(gCamItem, "dTiCamIt", "1");
+            elemento(gCamItem, "dTotBruOpeItem", detalle.total());
             
             // IVA del item
-            int tasaIva = detalle.getPorcentajeIva() != null ? detalle.getPorcentajeIva() : 10;
-            xml.append("      <gValorItem>\n");
-            xml.append("        <dTotOpeItem>").append(detalle.getTotal()).append("</dTotOpeItem>\n");
-            xml.append("      </gValorItem>\n");
-            
-            xml.append("      <gCamIVA>\n");
-            xml.append("        <iAfecIVA>1</iAfecIVA>\n"); // 1 = Gravado IVA
-            xml.append("        <dDesAfecIVA>Gravado IVA</dDesAfecIVA>\n");
-            xml.append("        <dPropIVA>100</dPropIVA>\n");
-            xml.append("        <dTasaIVA>").append(tasaIva).append("</dTasaIVA>\n");
-            xml.append("        <dBasGravIVA>").append(detalle.getTotal()).append("</dBasGravIVA>\n");
-            xml.append("        <dLiqIVAItem>").append(detalle.getTotal() * tasaIva / 100).append("</dLiqIVAItem>\n");
-            xml.append("      </gCamIVA>\n");
+            int tasaIva = detalle.porcentajeIva() != null ? detalle.porcentajeIva() : 10;
+            Element gValorItem = elemento(gCamItem, "gValorItem");
+            elemento(gValorItem, "dTotOpeItem", detalle.total());
             
-            xml.append("    </gCamItem>\n");
+            Element gCamIVA = elemento(gCamItem, "gCamIVA");
+            elemento(gCamIVA, "iAfecIVA", "1"); // 1 = Gravado IVA
+            elemento(gCamIVA, "dDesAfecIVA", "Gravado IVA");
+            elemento(gCamIVA, "dPropIVA", "100");
+            elemento(gCamIVA, "dTasaIVA", tasaIva);
+            elemento(gCamIVA, "dBasGravIVA", detalle.total());
+            elemento(gCamIVA, "dLiqIVAItem", detalle.total() * tasaIva / 100);
         }
     }
 
     /**
      * Genera la sección F: Totales
      */
-    private void generarTotales(StringBuilder xml, Factura factura) {
-        xml.append("    <gPago>\n");
-        xml.append("      <iPagCont>1</iPagCont>\n"); // 1 = Contado
-        xml.append("      <dDesPagCont>Contado</dDesPagCont>\n");
-        xml.append("      <gPagCont>\n");
-        xml.append("        <gPagCheq>\n");
-        xml.append("          <dMonEnt>").append(factura.getTotal()).append("</dMonEnt>\n");
-        xml.append("        </gPagCheq>\n");
-        xml.append("      </gPagCont>\n");
-        xml.append("    </gPago>\n");
+    private void generarTotales(Element de, DatosFactura factura) {
+        Element gPago = elemento(de, "gPago");
+        elemento(gPago, "iPagCont", "1"); // 1 = Contado
+        elemento(gPago, "dDesPagCont", "Contado");
+        Element gPagCont = elemento(gPago, "gPagCont");
+        Element gPagCheq = elemento(gPagCont, "gPagCheq");
+        elemento(gPagCheq, "dMonEnt", factura.total());
     }
 
-    private String obtenerNumeroDocumento(Factura factura) {
-        String[] partes = factura.getNumeroFactura().split("-");
+    private String obtenerNumeroDocumento(DatosFactura factura) {
+        String[] partes = factura.numeroFactura().split("-");
         return partes.length == 3 ? partes[2] : "0000001";
     }
 
-    private double calcularBase5(Factura factura) {
-        return factura.getDetalles().stream()
-                .filter(d -> d.getPorcentajeIva() != null && d.getPorcentajeIva() == 5)
-                .mapToDouble(DetalleFactura::getTotal)
+    private double calcularBase5(DatosFactura factura) {
+        return factura.items().stream()
+                .filter(d -> d.porcentajeIva() != null && d.porcentajeIva() == 5)
+                .mapToDouble(DatosItem::total)
                 .sum();
     }
 
-    private double calcularBase10(Factura factura) {
-        return factura.getDetalles().stream()
-                .filter(d -> d.getPorcentajeIva() != null && d.getPorcentajeIva() == 10)
-                .mapToDouble(DetalleFactura::getTotal)
+    private double calcularBase10(DatosFactura factura) {
+        return factura.items().stream()
+                .filter(d -> d.porcentajeIva() != null && d.porcentajeIva() == 10)
+                .mapToDouble(DatosItem::total)
                 .sum();
     }
 
-    private String escaparXml(String texto) {
-        if (texto == null) return "";
-        return texto.replace("&", "&amp;")
-                   .replace("<", "&lt;")
-                   .replace(">", "&gt;")
-                   .replace("\"", "&quot;")
-                   .replace("'", "&apos;");
+    /**
+     * Agrega un elemento hijo vacío en el namespace SIFEN
+     */
+    private Element elemento(Element padre, String nombre) {
+        Element hijo = padre.getOwnerDocument().createElementNS(NAMESPACE_SIFEN, nombre);
+        padre.appendChild(hijo);
+        return hijo;
+    }
+
+    /**
+     * Agrega un elemento hijo con texto; el serializador se encarga del escape
+     */
+    private Element elemento(Element padre, String nombre, Object valor) {
+        Element hijo = elemento(padre, nombre);
+        if (valor != null) {
+            hijo.setTextContent(String.valueOf(valor));
+        }
+        return hijo;
+    }
+
+    /**
+     * Copia inmutable de los datos de la factura que usa el DE, tomada en el hilo dueño de la entidad
+     */
+    public record DatosFactura(Long id, String cdc, boolean emitidaContingencia, String timbrado,
+                               String establecimiento, String puntoExpedicion, String tipoDocumento,
+                               String numeroFactura, LocalDateTime fechaEmision, Double subtotal,
+                               Double descuento, Double total, Double iva5, Double iva10, Double totalIva,
+                               DatosReceptor receptor, List<DatosItem> items) {
+
+        public static DatosFactura de(Factura factura) {
+            Cliente cliente = factura.getCliente();
+            return new DatosFactura(factura.getId(), factura.getCdc(),
+                    Boolean.TRUE.equals(factura.getEmitidaContingencia()), factura.getTimbrado(),
+                    factura.getEstablecimiento(), factura.getPuntoExpedicion(), factura.getTipoDocumento(),
+                    factura.getNumeroFactura(), factura.getFechaEmision(), factura.getSubtotal(),
+                    factura.getDescuento(), factura.getTotal(), factura.getIva5(), factura.getIva10(),
+                    factura.getTotalIva(),
+                    new DatosReceptor(cliente.getRuc(), cliente.getRazonSocial(), cliente.getDireccion(),
+                            cliente.getTelefono(), cliente.getEmail()),
+                    factura.getDetalles().stream()
+                            .map(detalle -> new DatosItem(detalle.getDescripcion(), detalle.getCantidad(),
+                                    detalle.getPrecioUnitario(), detalle.getTotal(), detalle.getPorcentajeIva()))
+                            .toList());
+        }
+    }
+
+    public record DatosReceptor(String ruc, String razonSocial, String direccion, String telefono, String email) {
+    }
+
+    public record DatosItem(String descripcion, Integer cantidad, Double precioUnitario, Double total,
+                            Integer porcentajeIva) {
+    }
+
+    /**
+     * DE generado junto con el CDC que lleva como Id
+     */
+    public record DocumentoGenerado(String cdc, Document documento) {
+    }
+
+    private static DOMImplementation crearDomImplementation() {
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            return factory.newDocumentBuilder().getDOMImplementation();
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException("No se pudo inicializar la implementación DOM", e);
+        }
     }
 }
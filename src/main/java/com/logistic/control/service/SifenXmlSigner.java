@@ -1,6 +1,5 @@
 package com.logistic.control.service;
 
-import com.logistic.control.config.SifenConfig;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -22,103 +21,46 @@ import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 import java.io.ByteArrayInputStream;
-import java.io.FileInputStream;
 import java.io.StringWriter;
-import java.security.KeyStore;
+import java.nio.charset.StandardCharsets;
 import java.security.PrivateKey;
 import java.security.cert.X509Certificate;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
- * Servicio para firma digital de documentos XML según XAdES-BES
+ * Servicio para firma digital de documentos XML según XAdES-BES.
+ * La clave y el certificado vienen de SifenCertificado, que recarga el .p12 solo si el archivo cambia;
+ * el KeyInfo se arma una vez por certificado.
+ * Las fábricas XML no son thread-safe: se reutilizan desde un pool, sin depender del hilo
+ * (los envíos corren en hilos virtuales, donde un ThreadLocal no se reutilizaría).
  */
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class SifenXmlSigner {
 
-    private final SifenConfig sifenConfig;
+    private final SifenCertificado sifenCertificado;
+
+    private final ConcurrentLinkedQueue<Herramientas> pool = new ConcurrentLinkedQueue<>();
+
+    private volatile MaterialFirma material;
 
     /**
      * Firma digitalmente el XML del documento electrónico con XAdES-BES
      */
     public String firmarXml(String xmlSinFirmar) {
+        Herramientas herramientas = null;
         try {
-            log.info("Firmando XML del documento electrónico...");
-
-            // Cargar el certificado
-            KeyStore keyStore = KeyStore.getInstance("PKCS12");
-            try (FileInputStream fis = new FileInputStream(sifenConfig.getCertificatePath())) {
-                keyStore.load(fis, sifenConfig.getCertificatePassword().toCharArray());
-            }
-
-            String alias = keyStore.aliases().nextElement();
-            PrivateKey privateKey = (PrivateKey) keyStore.getKey(alias, 
-                    sifenConfig.getCertificatePassword().toCharArray());
-            X509Certificate certificate = (X509Certificate) keyStore.getCertificate(alias);
+            MaterialFirma firma = obtenerMaterial();
+            herramientas = tomarHerramientas();
 
             // Parsear el XML
-            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-            dbf.setNamespaceAware(true);
-            DocumentBuilder builder = dbf.newDocumentBuilder();
-            Document doc = builder.parse(new ByteArrayInputStream(xmlSinFirmar.getBytes("UTF-8")));
-
-            // Obtener el elemento DE (que tiene el atributo Id)
-            Element deElement = (Element) doc.getElementsByTagName("DE").item(0);
-            String id = deElement.getAttribute("Id");
-            
-            if (id == null || id.isEmpty()) {
-                throw new RuntimeException("El elemento DE no tiene atributo Id");
-            }
+            Document doc = herramientas.documentBuilder.parse(
+                    new ByteArrayInputStream(xmlSinFirmar.getBytes(StandardCharsets.UTF_8)));
 
-            // Crear la firma XML
-            XMLSignatureFactory fac = XMLSignatureFactory.getInstance("DOM");
-
-            // Crear la referencia al elemento a firmar
-            Reference ref = fac.newReference(
-                    "#" + id,
-                    fac.newDigestMethod(DigestMethod.SHA256, null),
-                    Collections.singletonList(
-                            fac.newTransform(Transform.ENVELOPED, (TransformParameterSpec) null)
-                    ),
-                    null,
-                    null
-            );
-
-            // Crear la información de firma
-            SignedInfo si = fac.newSignedInfo(
-                    fac.newCanonicalizationMethod(
-                            CanonicalizationMethod.INCLUSIVE,
-                            (C14NMethodParameterSpec) null
-                    ),
-                    fac.newSignatureMethod(SignatureMethod.RSA_SHA256, null),
-                    Collections.singletonList(ref)
-            );
-
-            // Crear KeyInfo con el certificado
-            KeyInfoFactory kif = fac.getKeyInfoFactory();
-            List<Object> x509Content = List.of(certificate.getSubjectX500Principal().getName(), certificate);
-            X509Data xd = kif.newX509Data(x509Content);
-            KeyInfo ki = kif.newKeyInfo(Collections.singletonList(xd));
-
-            // Crear el elemento Signature
-            DOMSignContext dsc = new DOMSignContext(privateKey, deElement);
-            XMLSignature signature = fac.newXMLSignature(si, ki);
-            
-            // Firmar el documento
-            signature.sign(dsc);
-
-            // Convertir el documento firmado a String
-            TransformerFactory tf = TransformerFactory.newInstance();
-            Transformer trans = tf.newTransformer();
-            StringWriter sw = new StringWriter();
-            trans.transform(new DOMSource(doc), new StreamResult(sw));
-
-            String xmlFirmado = sw.toString();
-            log.info("XML firmado exitosamente");
-            
-            return xmlFirmado;
+            return firmar(doc, firma, herramientas);
 
         } catch (java.security.GeneralSecurityException | java.io.IOException | 
                  javax.xml.parsers.ParserConfigurationException | org.xml.sax.SAXException |
@@ -126,20 +68,104 @@ public class SifenXmlSigner {
                  javax.xml.transform.TransformerException e) {
             log.error("Error firmando XML", e);
             throw new RuntimeException("Error firmando XML: " + e.getMessage(), e);
+        } finally {
+            devolverHerramientas(herramientas);
         }
     }
 
+    /**
+     * Firma un DE generado como DOM, sin pasar por String y volver a parsear.
+     * Devuelve también el XML sin firmar (serializado antes de firmar, ya que la firma modifica el documento).
+     */
+    public DocumentoFirmado firmarDocumento(Document doc) {
+        Herramientas herramientas = null;
+        try {
+            MaterialFirma firma = obtenerMaterial();
+            herramientas = tomarHerramientas();
+
+            StringWriter sinFirmar = new StringWriter();
+            herramientas.transformer.transform(new DOMSource(doc), new StreamResult(sinFirmar));
+            herramientas.transformer.reset();
+
+            return new DocumentoFirmado(sinFirmar.toString(), firmar(doc, firma, herramientas));
+
+        } catch (java.security.GeneralSecurityException | java.io.IOException |
+                 javax.xml.parsers.ParserConfigurationException |
+                 javax.xml.crypto.MarshalException | javax.xml.crypto.dsig.XMLSignatureException |
+                 javax.xml.transform.TransformerException e) {
+            log.error("Error firmando XML", e);
+            throw new RuntimeException("Error firmando XML: " + e.getMessage(), e);
+        } finally {
+            devolverHerramientas(herramientas);
+        }
+    }
+
+    /**
+     * Firma el documento (agrega Signature dentro de DE) y lo serializa
+     */
+    private String firmar(Document doc, MaterialFirma firma, Herramientas herramientas)
+            throws java.security.GeneralSecurityException, javax.xml.crypto.MarshalException,
+            javax.xml.crypto.dsig.XMLSignatureException, javax.xml.transform.TransformerException {
+        log.debug("Firmando XML del documento electrónico...");
+        XMLSignatureFactory fac = herramientas.signatureFactory;
+
+        // Obtener el elemento DE (que tiene el atributo Id)
+        Element deElement = (Element) doc.getElementsByTagName("DE").item(0);
+        String id = deElement.getAttribute("Id");
+        
+        if (id == null || id.isEmpty()) {
+            throw new RuntimeException("El elemento DE no tiene atributo Id");
+        }
+        // Registrar Id como atributo ID para que la referencia "#Id" sea resoluble
+        deElement.setIdAttribute("Id", true);
+
+        // Crear la referencia al elemento a firmar
+        Reference ref = fac.newReference(
+                "#" + id,
+                fac.newDigestMethod(DigestMethod.SHA256, null),
+                Collections.singletonList(
+                        fac.newTransform(Transform.ENVELOPED, (TransformParameterSpec) null)
+                ),
+                null,
+                null
+        );
+
+        // Crear la información de firma
+        SignedInfo si = fac.newSignedInfo(
+                fac.newCanonicalizationMethod(
+                        CanonicalizationMethod.INCLUSIVE,
+                        (C14NMethodParameterSpec) null
+                ),
+                fac.newSignatureMethod(SignatureMethod.RSA_SHA256, null),
+                Collections.singletonList(ref)
+        );
+
+        // Crear el elemento Signature (KeyInfo con el certificado, armado al cargar el .p12)
+        DOMSignContext dsc = new DOMSignContext(firma.privateKey(), deElement);
+        XMLSignature signature = fac.newXMLSignature(si, firma.keyInfo());
+        
+        // Firmar el documento
+        signature.sign(dsc);
+
+        // Convertir el documento firmado a String
+        StringWriter sw = new StringWriter();
+        herramientas.transformer.transform(new DOMSource(doc), new StreamResult(sw));
+
+        log.debug("XML firmado exitosamente");
+        return sw.toString();
+    }
+
     /**
      * Valida la firma digital de un XML
      */
     public boolean validarFirma(String xmlFirmado) {
+        Herramientas herramientas = null;
         try {
             log.info("Validando firma del XML...");
 
-            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-            dbf.setNamespaceAware(true);
-            DocumentBuilder builder = dbf.newDocumentBuilder();
-            Document doc = builder.parse(new ByteArrayInputStream(xmlFirmado.getBytes("UTF-8")));
+            herramientas = tomarHerramientas();
+            Document doc = herramientas.documentBuilder.parse(
+                    new ByteArrayInputStream(xmlFirmado.getBytes(StandardCharsets.UTF_8)));
 
             // Buscar el elemento Signature
             Element signatureElement = (Element) doc.getElementsByTagNameNS(
@@ -151,13 +177,16 @@ public class SifenXmlSigner {
             }
 
             // Crear el contexto de validación
-            XMLSignatureFactory fac = XMLSignatureFactory.getInstance("DOM");
             DOMValidateContext valContext = 
                     new DOMValidateContext(
                             new X509KeySelector(), signatureElement);
+            Element deElement = (Element) doc.getElementsByTagName("DE").item(0);
+            if (deElement != null && deElement.hasAttribute("Id")) {
+                valContext.setIdAttributeNS(deElement, null, "Id");
+            }
 
             // Validar la firma
-            XMLSignature signature = fac.unmarshalXMLSignature(valContext);
+            XMLSignature signature = herramientas.signatureFactory.unmarshalXMLSignature(valContext);
             boolean isValid = signature.validate(valContext);
 
             if (isValid) {
@@ -170,9 +199,85 @@ public class SifenXmlSigner {
 
         } catch (javax.xml.parsers.ParserConfigurationException | org.xml.sax.SAXException |
                  java.io.IOException | javax.xml.crypto.MarshalException |
-                 javax.xml.crypto.dsig.XMLSignatureException e) {
+                 javax.xml.crypto.dsig.XMLSignatureException |
+                 java.security.GeneralSecurityException | javax.xml.transform.TransformerException e) {
             log.error("Error validando firma XML", e);
             return false;
+        } finally {
+            devolverHerramientas(herramientas);
+        }
+    }
+
+    /**
+     * Clave y KeyInfo del certificado vigente; el KeyInfo se rearma solo si el certificado rotó
+     */
+    private MaterialFirma obtenerMaterial() throws java.security.GeneralSecurityException, java.io.IOException {
+        SifenCertificado.Material certificado = sifenCertificado.obtener();
+        MaterialFirma actual = material;
+        if (actual != null && actual.certificado() == certificado) {
+            return actual;
+        }
+
+        // KeyInfo es inmutable: se arma una vez por certificado y se comparte entre firmas
+        X509Certificate certificate = certificado.certificate();
+        KeyInfoFactory kif = XMLSignatureFactory.getInstance("DOM").getKeyInfoFactory();
+        List<Object> x509Content = List.of(certificate.getSubjectX500Principal().getName(), certificate);
+        X509Data xd = kif.newX509Data(x509Content);
+        KeyInfo ki = kif.newKeyInfo(Collections.singletonList(xd));
+
+        actual = new MaterialFirma(certificado, ki);
+        material = actual;
+        return actual;
+    }
+
+    private Herramientas tomarHerramientas() throws java.security.GeneralSecurityException,
+            javax.xml.parsers.ParserConfigurationException, javax.xml.transform.TransformerException {
+        Herramientas herramientas = pool.poll();
+        return herramientas != null ? herramientas : new Herramientas();
+    }
+
+    private void devolverHerramientas(Herramientas herramientas) {
+        if (herramientas != null) {
+            herramientas.documentBuilder.reset();
+            herramientas.transformer.reset();
+            pool.offer(herramientas);
+        }
+    }
+
+    /**
+     * XML del DE antes y después de firmar
+     */
+    public record DocumentoFirmado(String xmlSinFirmar, String xmlFirmado) {
+    }
+
+    /**
+     * Certificado cargado y el KeyInfo armado a partir de él
+     */
+    private record MaterialFirma(SifenCertificado.Material certificado, KeyInfo keyInfo) {
+
+        PrivateKey privateKey() {
+            return certificado.privateKey();
+        }
+    }
+
+    /**
+     * Fábricas no thread-safe; cada instancia la usa un solo hilo a la vez.
+     * Los objetos de algoritmo (digest, transform, c14n) guardan estado del documento y se crean por firma.
+     */
+    private static final class Herramientas {
+
+        private final XMLSignatureFactory signatureFactory;
+        private final DocumentBuilder documentBuilder;
+        private final Transformer transformer;
+
+        Herramientas() throws java.security.GeneralSecurityException,
+                javax.xml.parsers.ParserConfigurationException, javax.xml.transform.TransformerException {
+            signatureFactory = XMLSignatureFactory.getInstance("DOM");
+
+            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+            dbf.setNamespaceAware(true);
+            documentBuilder = dbf.newDocumentBuilder();
+            transformer = TransformerFactory.newInstance().newTransformer();
         }
     }
 
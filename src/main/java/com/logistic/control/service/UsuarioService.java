@@ -9,6 +9,8 @@ import com.logistic.control.exception.DuplicateResourceException;
 import com.logistic.control.exception.BusinessException;
 import com.logistic.control.repository.UsuarioRepository;
 import com.logistic.control.security.InputSanitizer;
+import com.logistic.control.security.JwtPrincipalCache;
+import com.logistic.control.security.TokenVersionCache;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
@@ -16,8 +18,11 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.List;
+import java.util.Set;
 
 /**
  * Servicio para gestión de Usuarios
@@ -31,6 +36,8 @@ public class UsuarioService {
     private final UsuarioRepository usuarioRepository;
     private final PasswordEncoder passwordEncoder;
     private final InputSanitizer inputSanitizer;
+    private final TokenVersionCache tokenVersionCache;
+    private final JwtPrincipalCache jwtPrincipalCache;
 
     /**
      * Listar todos los usuarios con paginación
@@ -141,6 +148,9 @@ public class UsuarioService {
         // Validar duplicados (excepto el mismo usuario)
         validarDuplicadosExcepto(id, request.getUsername(), request.getEmail());
         validarDatosUsuario(request);
+
+        String usernameAnterior = usuario.getUsername();
+        Set<Role> rolesAnteriores = Set.copyOf(usuario.getRoles());
         
         // Actualizar campos
         usuario.setUsername(inputSanitizer.sanitize(request.getUsername()));
@@ -156,9 +166,17 @@ public class UsuarioService {
         }
         
         // Solo actualizar password si se proporciona uno nuevo
-        if (request.getPassword() != null && !request.getPassword().isEmpty()) {
+        boolean cambioPassword = request.getPassword() != null && !request.getPassword().isEmpty();
+        if (cambioPassword) {
             usuario.setPassword(passwordEncoder.encode(request.getPassword()));
         }
+
+        // Los tokens llevan username y roles: si cambian, invalidar los emitidos
+        if (cambioPassword || !usuario.getUsername().equals(usernameAnterior)
+                || !usuario.getRoles().equals(rolesAnteriores)) {
+            invalidarTokens(usuario);
+            invalidarCaches(usernameAnterior);
+        }
         
         Usuario updated = usuarioRepository.save(usuario);
         log.info("Usuario actualizado exitosamente: {}", updated.getId());
@@ -177,6 +195,7 @@ public class UsuarioService {
                 .orElseThrow(() -> new ResourceNotFoundException("Usuario", "id", id));
 
         usuario.setEnabled(false);
+        invalidarTokens(usuario);
         Usuario updated = usuarioRepository.save(usuario);
 
         log.info("Usuario desactivado exitosamente: {}", id);
@@ -194,6 +213,7 @@ public class UsuarioService {
                 .orElseThrow(() -> new ResourceNotFoundException("Usuario", "id", id));
 
         usuario.setEnabled(true);
+        invalidarCaches(usuario.getUsername());
         Usuario updated = usuarioRepository.save(usuario);
 
         log.info("Usuario activado exitosamente: {}", id);
@@ -211,6 +231,7 @@ public class UsuarioService {
                 .orElseThrow(() -> new ResourceNotFoundException("Usuario", "id", id));
 
         usuario.setAccountNonLocked(false);
+        invalidarTokens(usuario);
         Usuario updated = usuarioRepository.save(usuario);
 
         log.info("Usuario bloqueado exitosamente: {}", id);
@@ -228,6 +249,7 @@ public class UsuarioService {
                 .orElseThrow(() -> new ResourceNotFoundException("Usuario", "id", id));
 
         usuario.unlock();
+        invalidarCaches(usuario.getUsername());
         Usuario updated = usuarioRepository.save(usuario);
 
         log.info("Usuario desbloqueado exitosamente: {}", id);
@@ -245,6 +267,7 @@ public class UsuarioService {
                 .orElseThrow(() -> new ResourceNotFoundException("Usuario", "id", id));
 
         usuario.addRole(role);
+        invalidarTokens(usuario);
         Usuario updated = usuarioRepository.save(usuario);
 
         log.info("Rol agregado exitosamente");
@@ -262,6 +285,7 @@ public class UsuarioService {
                 .orElseThrow(() -> new ResourceNotFoundException("Usuario", "id", id));
 
         usuario.removeRole(role);
+        invalidarTokens(usuario);
         Usuario updated = usuarioRepository.save(usuario);
 
         log.info("Rol removido exitosamente");
@@ -289,11 +313,40 @@ public class UsuarioService {
         }
         
         usuario.setPassword(passwordEncoder.encode(passwordNuevo));
+        invalidarTokens(usuario);
         usuarioRepository.save(usuario);
         
         log.info("Contraseña cambiada exitosamente para usuario: {}", id);
     }
 
+    /**
+     * Incrementar la versión de tokens del usuario y descartar las cachés al confirmar
+     */
+    private void invalidarTokens(Usuario usuario) {
+        usuario.invalidarTokens();
+        invalidarCaches(usuario.getUsername());
+    }
+
+    /**
+     * Descartar la versión de tokens y las autenticaciones cacheadas del usuario cuando confirme la transacción
+     */
+    private void invalidarCaches(String username) {
+        Runnable invalidar = () -> {
+            tokenVersionCache.invalidar(username);
+            jwtPrincipalCache.invalidar(username);
+        };
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            invalidar.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                invalidar.run();
+            }
+        });
+    }
+
     /**
      * Validar duplicados excepto el mismo usuario
      */
@@ -343,6 +396,7 @@ public class UsuarioService {
                 .orElseThrow(() -> new ResourceNotFoundException("Usuario", "id", id));
 
         usuario.setPassword(passwordEncoder.encode(newPassword));
+        invalidarTokens(usuario);
         usuario = usuarioRepository.save(usuario);
 
         log.info("Contraseña restablecida exitosamente para usuario: {}", usuario.getUsername());
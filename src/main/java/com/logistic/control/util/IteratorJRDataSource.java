@@ -0,0 +1,39 @@
+package com.logistic.control.util;
+
+import net.sf.jasperreports.engine.JRDataSource;
+import net.sf.jasperreports.engine.JRField;
+
+import java.util.Iterator;
+import java.util.function.BiFunction;
+
+/**
+ * JRDataSource sobre un Iterator: Jasper consume las filas a medida que llena el reporte,
+ * así una consulta en streaming no se materializa en una lista.
+ * El extractor resuelve el valor de cada campo declarado en la plantilla a partir de la fila actual.
+ */
+public class IteratorJRDataSource<T> implements JRDataSource {
+
+    private final Iterator<T> filas;
+    private final BiFunction<T, String, Object> extractor;
+    private T actual;
+
+    public IteratorJRDataSource(Iterator<T> filas, BiFunction<T, String, Object> extractor) {
+        this.filas = filas;
+        this.extractor = extractor;
+    }
+
+    @Override
+    public boolean next() {
+        if (!filas.hasNext()) {
+            actual = null;
+            return false;
+        }
+        actual = filas.next();
+        return true;
+    }
+
+    @Override
+    public Object getFieldValue(JRField field) {
+        return extractor.apply(actual, field.getName());
+    }
+}
@@ -0,0 +1,76 @@
+package com.logistic.control.util;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Guarda texto largo (XML, respuestas SIFEN, QR en Base64) comprimido con deflate en columnas BYTEA.
+ * Los XML del DE se reducen a una fracción de su tamaño.
+ */
+@Converter
+public class TextoComprimidoConverter implements AttributeConverter<String, byte[]> {
+
+    private static final int TAMANO_BUFFER = 8192;
+
+    @Override
+    public byte[] convertToDatabaseColumn(String attribute) {
+        return comprimir(attribute);
+    }
+
+    @Override
+    public String convertToEntityAttribute(byte[] dbData) {
+        return descomprimir(dbData);
+    }
+
+    public static byte[] comprimir(String texto) {
+        if (texto == null) {
+            return null;
+        }
+        byte[] entrada = texto.getBytes(StandardCharsets.UTF_8);
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            deflater.setInput(entrada);
+            deflater.finish();
+            ByteArrayOutputStream salida = new ByteArrayOutputStream(Math.max(64, entrada.length / 4));
+            byte[] buffer = new byte[TAMANO_BUFFER];
+            while (!deflater.finished()) {
+                salida.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return salida.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    public static String descomprimir(byte[] datos) {
+        if (datos == null) {
+            return null;
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(datos);
+            ByteArrayOutputStream salida = new ByteArrayOutputStream(datos.length * 4);
+            byte[] buffer = new byte[TAMANO_BUFFER];
+            while (!inflater.finished()) {
+                int leidos = inflater.inflate(buffer);
+                if (leidos == 0 && !inflater.finished() && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new UncheckedIOException(new IOException("Contenido comprimido truncado o inválido"));
+                }
+                salida.write(buffer, 0, leidos);
+            }
+            return salida.toString(StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new UncheckedIOException(new IOException("Contenido comprimido inválido", e));
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package db.migration;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.zip.Deflater;
+
+/**
+ * Migración V21: XML del DE, XML firmado, respuesta SIFEN y QR pasan de columnas TEXT en facturas
+ * a la tabla factura_documentos, comprimidos con deflate en el formato que lee TextoComprimidoConverter.
+ * Es una migración Java porque la compresión no puede hacerse en SQL. La codificación está copiada aquí
+ * en lugar de usar el converter, así la migración no cambia si el código de la aplicación cambia.
+ * Las facturas se recorren por ID en bloques para no cargar todos los XML en memoria.
+ * El espacio de las columnas eliminadas se libera con VACUUM FULL facturas en una ventana de mantenimiento.
+ */
+public class V21__Move_Factura_Documentos extends BaseJavaMigration {
+
+    private static final int TAMANO_BLOQUE = 200;
+
+    @Override
+    public void migrate(Context context) throws Exception {
+        Connection connection = context.getConnection();
+
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE factura_documentos (" +
+                    "id BIGSERIAL PRIMARY KEY, " +
+                    "xml_de BYTEA, " +
+                    "xml_de_firmado BYTEA, " +
+                    "respuesta_sifen BYTEA, " +
+                    "qr_code BYTEA)");
+            // Misma estrategia de IDs que el resto de las tablas (optimizador pooled, ver V16)
+            statement.execute("ALTER SEQUENCE factura_documentos_id_seq INCREMENT BY 50");
+            statement.execute("ALTER TABLE facturas ADD COLUMN documento_id BIGINT");
+        }
+
+        try (PreparedStatement select = connection.prepareStatement(
+                     "SELECT id, xml_de, xml_de_firmado, respuesta_sifen, qr_code FROM facturas " +
+                     "WHERE id > ? AND (xml_de IS NOT NULL OR xml_de_firmado IS NOT NULL " +
+                     "OR respuesta_sifen IS NOT NULL OR qr_code IS NOT NULL) " +
+                     "ORDER BY id LIMIT " + TAMANO_BLOQUE);
+             PreparedStatement insert = connection.prepareStatement(
+                     "INSERT INTO factura_documentos (xml_de, xml_de_firmado, respuesta_sifen, qr_code) " +
+                     "VALUES (?, ?, ?, ?) RETURNING id");
+             PreparedStatement update = connection.prepareStatement(
+                     "UPDATE facturas SET documento_id = ? WHERE id = ?")) {
+
+            long ultimoId = 0;
+            int migradas;
+            do {
+                migradas = 0;
+                select.setLong(1, ultimoId);
+                try (ResultSet filas = select.executeQuery()) {
+                    while (filas.next()) {
+                        ultimoId = filas.getLong(1);
+                        for (int columna = 2; columna <= 5; columna++) {
+                            insert.setBytes(columna - 1, comprimir(filas.getString(columna)));
+                        }
+                        try (ResultSet generado = insert.executeQuery()) {
+                            generado.next();
+                            update.setLong(1, generado.getLong(1));
+                        }
+                        update.setLong(2, ultimoId);
+                        update.addBatch();
+                        migradas++;
+                    }
+                }
+                update.executeBatch();
+            } while (migradas == TAMANO_BLOQUE);
+        }
+
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("ALTER TABLE facturas ADD CONSTRAINT fk_factura_documento " +
+                    "FOREIGN KEY (documento_id) REFERENCES factura_documentos(id)");
+            statement.execute("CREATE UNIQUE INDEX uk_factura_documento ON facturas(documento_id)");
+            statement.execute("ALTER TABLE facturas " +
+                    "DROP COLUMN xml_de, " +
+                    "DROP COLUMN xml_de_firmado, " +
+                    "DROP COLUMN respuesta_sifen, " +
+                    "DROP COLUMN qr_code");
+        }
+    }
+
+    /**
+     * Texto UTF-8 comprimido con deflate (formato zlib), tal como lo guardaba la aplicación al escribir esta migración
+     */
+    private static byte[] comprimir(String texto) {
+        if (texto == null) {
+            return null;
+        }
+        byte[] entrada = texto.getBytes(StandardCharsets.UTF_8);
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            deflater.setInput(entrada);
+            deflater.finish();
+            ByteArrayOutputStream salida = new ByteArrayOutputStream(Math.max(64, entrada.length / 4));
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                salida.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return salida.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+}
@@ -0,0 +1,16 @@
+-- Migración V14: Índices compuestos para consultas de vencimiento y rotación de inventario
+-- Las consultas de próximo a vencer, vencido y baja rotación filtran por estado y un rango de fechas
+
+-- 1. Índice para vencimientos (estado + fecha_vencimiento)
+CREATE INDEX IF NOT EXISTS idx_inventario_estado_vencimiento
+ON inventario(estado, fecha_vencimiento)
+WHERE fecha_vencimiento IS NOT NULL;
+
+-- 2. Índice para baja rotación (estado + fecha_entrada)
+CREATE INDEX IF NOT EXISTS idx_inventario_estado_entrada
+ON inventario(estado, fecha_entrada)
+WHERE fecha_salida IS NULL;
+
+-- 3. Comentarios para documentación
+COMMENT ON INDEX idx_inventario_estado_vencimiento IS 'Soporta listados de inventario próximo a vencer y vencido';
+COMMENT ON INDEX idx_inventario_estado_entrada IS 'Soporta el listado de inventario con baja rotación';
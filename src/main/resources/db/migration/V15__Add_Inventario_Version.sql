@@ -0,0 +1,18 @@
+-- Migración V15: Control de concurrencia optimista para inventario
+-- Evita reservas perdidas y sobreventa cuando varios operadores mueven el mismo lote
+
+-- 1. Columna de versión usada por @Version (bloqueo optimista)
+ALTER TABLE inventario
+ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
+
+-- 2. Normalizar reservas nulas de registros anteriores
+UPDATE inventario SET cantidad_reservada = 0 WHERE cantidad_reservada IS NULL;
+
+-- 3. Garantía en base de datos: nunca reservar más de lo que hay en stock
+-- NOT VALID: se aplica a nuevas escrituras sin bloquear la tabla validando filas históricas
+ALTER TABLE inventario
+ADD CONSTRAINT chk_inventario_cantidad_reservada
+CHECK (cantidad_reservada >= 0 AND cantidad_reservada <= cantidad) NOT VALID;
+
+-- 4. Comentarios para documentación
+COMMENT ON COLUMN inventario.version IS 'Versión para bloqueo optimista. Se incrementa en cada actualización.';
@@ -0,0 +1,38 @@
+-- Migración V16: Secuencias con incremento 50 para el optimizador pooled de Hibernate
+-- Con GenerationType.IDENTITY Hibernate no puede agrupar INSERTs (hibernate.jdbc.batch_size).
+-- Las entidades ahora usan GenerationType.SEQUENCE sobre las mismas secuencias BIGSERIAL "{tabla}_id_seq",
+-- por lo que los IDs existentes se conservan y la numeración continúa desde el último valor.
+-- Cada nextval reserva un bloque de 50 IDs que Hibernate asigna en memoria.
+
+ALTER SEQUENCE usuarios_id_seq INCREMENT BY 50;
+ALTER SEQUENCE clientes_id_seq INCREMENT BY 50;
+ALTER SEQUENCE productos_id_seq INCREMENT BY 50;
+ALTER SEQUENCE containers_id_seq INCREMENT BY 50;
+ALTER SEQUENCE pedidos_id_seq INCREMENT BY 50;
+ALTER SEQUENCE historial_estados_id_seq INCREMENT BY 50;
+ALTER SEQUENCE inventario_id_seq INCREMENT BY 50;
+ALTER SEQUENCE facturas_id_seq INCREMENT BY 50;
+ALTER SEQUENCE detalle_factura_id_seq INCREMENT BY 50;
+ALTER SEQUENCE pagos_id_seq INCREMENT BY 50;
+ALTER SEQUENCE proveedores_id_seq INCREMENT BY 50;
+ALTER SEQUENCE facturas_proveedor_id_seq INCREMENT BY 50;
+ALTER SEQUENCE detalle_pedido_id_seq INCREMENT BY 50;
+ALTER SEQUENCE devoluciones_venta_id_seq INCREMENT BY 50;
+ALTER SEQUENCE detalle_devolucion_id_seq INCREMENT BY 50;
+
+-- Alinear cada secuencia con el MAX(id) actual por si hubo inserciones manuales fuera de la secuencia (nunca retrocede)
+SELECT setval('usuarios_id_seq', GREATEST((SELECT COALESCE(MAX(id), 0) FROM usuarios), (SELECT last_value FROM usuarios_id_seq), 1));
+SELECT setval('clientes_id_seq', GREATEST((SELECT COALESCE(MAX(id), 0) FROM clientes), (SELECT last_value FROM clientes_id_seq), 1));
+SELECT setval('productos_id_seq', GREATEST((SELECT COALESCE(MAX(id), 0) FROM productos), (SELECT last_value FROM productos_id_seq), 1));
+SELECT setval('containers_id_seq', GREATEST((SELECT COALESCE(MAX(id), 0) FROM containers), (SELECT last_value FROM containers_id_seq), 1));
+SELECT setval('pedidos_id_seq', GREATEST((SELECT COALESCE(MAX(id), 0) FROM pedidos), (SELECT last_value FROM pedidos_id_seq), 1));
+SELECT setval('historial_estados_id_seq', GREATEST((SELECT COALESCE(MAX(id), 0) FROM historial_estados), (SELECT last_value FROM historial_estados_id_seq), 1));
+SELECT setval('inventario_id_seq', GREATEST((SELECT COALESCE(MAX(id), 0) FROM inventario), (SELECT last_value FROM inventario_id_seq), 1));
+SELECT setval('facturas_id_seq', GREATEST((SELECT COALESCE(MAX(id), 0) FROM facturas), (SELECT last_value FROM facturas_id_seq), 1));
+SELECT setval('detalle_factura_id_seq', GREATEST((SELECT COALESCE(MAX(id), 0) FROM detalle_factura), (SELECT last_value FROM detalle_factura_id_seq), 1));
+SELECT setval('pagos_id_seq', GREATEST((SELECT COALESCE(MAX(id), 0) FROM pagos), (SELECT last_value FROM pagos_id_seq), 1));
+SELECT setval('proveedores_id_seq', GREATEST((SELECT COALESCE(MAX(id), 0) FROM proveedores), (SELECT last_value FROM proveedores_id_seq), 1));
+SELECT setval('facturas_proveedor_id_seq', GREATEST((SELECT COALESCE(MAX(id), 0) FROM facturas_proveedor), (SELECT last_value FROM facturas_proveedor_id_seq), 1));
+SELECT setval('detalle_pedido_id_seq', GREATEST((SELECT COALESCE(MAX(id), 0) FROM detalle_pedido), (SELECT last_value FROM detalle_pedido_id_seq), 1));
+SELECT setval('devoluciones_venta_id_seq', GREATEST((SELECT COALESCE(MAX(id), 0) FROM devoluciones_venta), (SELECT last_value FROM devoluciones_venta_id_seq), 1));
+SELECT setval('detalle_devolucion_id_seq', GREATEST((SELECT COALESCE(MAX(id), 0) FROM detalle_devolucion), (SELECT last_value FROM detalle_devolucion_id_seq), 1));
@@ -0,0 +1,15 @@
+-- Migración V17: Índices para paginación de facturas
+-- El listado de facturas y el historial por cliente se paginan por keyset sobre (fecha_emision, id)
+
+-- 1. Historial por cliente ordenado por fecha de emisión
+CREATE INDEX IF NOT EXISTS idx_factura_cliente_fecha_id
+ON facturas(cliente_id, fecha_emision DESC, id DESC);
+
+-- 2. Listado por estado ordenado por fecha de emisión
+CREATE INDEX IF NOT EXISTS idx_factura_estado_fecha_id
+ON facturas(estado, fecha_emision DESC, id DESC);
+
+-- 3. Listado general de facturas activas
+CREATE INDEX IF NOT EXISTS idx_factura_fecha_id_activas
+ON facturas(fecha_emision DESC, id DESC)
+WHERE is_active = true;
@@ -0,0 +1,31 @@
+-- Migración V18: Cola (outbox) de envíos asíncronos a SIFEN
+-- La solicitud HTTP solo inserta una fila PENDIENTE; los workers la reclaman con FOR UPDATE SKIP LOCKED,
+-- envían el documento fuera de toda transacción y registran el resultado con reintentos y backoff.
+
+CREATE TABLE sifen_envios (
+    id BIGSERIAL PRIMARY KEY,
+    factura_id BIGINT NOT NULL,
+    estado VARCHAR(20) NOT NULL DEFAULT 'PENDIENTE', -- PENDIENTE, EN_PROCESO, COMPLETADO, FALLIDO
+    intentos INTEGER NOT NULL DEFAULT 0,
+    proximo_intento TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    bloqueado_hasta TIMESTAMP, -- Bloqueo del worker; vencido = se puede reclamar otra vez
+    codigo_respuesta VARCHAR(10),
+    ultimo_error VARCHAR(1000),
+    fecha_creacion TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    fecha_finalizacion TIMESTAMP,
+
+    CONSTRAINT fk_sifen_envio_factura FOREIGN KEY (factura_id) REFERENCES facturas(id) ON DELETE CASCADE
+);
+
+-- Misma estrategia de IDs que el resto de las tablas (optimizador pooled, ver V16)
+ALTER SEQUENCE sifen_envios_id_seq INCREMENT BY 50;
+
+CREATE INDEX idx_sifen_envio_factura ON sifen_envios(factura_id);
+
+-- Solo las filas activas participan del sondeo de los workers
+CREATE INDEX idx_sifen_envio_estado_proximo ON sifen_envios(estado, proximo_intento)
+    WHERE estado IN ('PENDIENTE', 'EN_PROCESO');
+
+-- Un único envío activo por factura (evita doble envío por solicitudes concurrentes)
+CREATE UNIQUE INDEX uk_sifen_envio_factura_activo ON sifen_envios(factura_id)
+    WHERE estado IN ('PENDIENTE', 'EN_PROCESO');
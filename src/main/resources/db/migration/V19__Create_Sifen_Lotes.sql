@@ -0,0 +1,38 @@
+-- Migración V19: Conciliación de lotes asíncronos SIFEN
+-- Cada lote enviado se registra con su próxima consulta; SifenLotePoller lo consulta con backoff exponencial
+-- y aplica el resultado de todos sus documentos de una vez. La factura guarda el número de lote en su propia columna.
+
+ALTER TABLE facturas ADD COLUMN numero_lote_sifen VARCHAR(50);
+
+CREATE INDEX idx_factura_lote_sifen ON facturas(numero_lote_sifen);
+
+-- Facturas sin resultado: conteo, antigüedad máxima y consulta individual por CDC
+CREATE INDEX idx_factura_enviada_sifen ON facturas(fecha_envio_sifen)
+    WHERE estado = 'ENVIADA_SIFEN';
+
+CREATE TABLE sifen_lotes (
+    id BIGSERIAL PRIMARY KEY,
+    numero_lote VARCHAR(50) NOT NULL,
+    estado VARCHAR(20) NOT NULL DEFAULT 'PENDIENTE', -- PENDIENTE, CONCLUIDO, VENCIDO
+    cantidad_documentos INTEGER NOT NULL,
+    consultas INTEGER NOT NULL DEFAULT 0,
+    proxima_consulta TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    codigo_respuesta VARCHAR(10),
+    ultimo_mensaje VARCHAR(1000),
+    fecha_envio TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    fecha_conclusion TIMESTAMP,
+
+    CONSTRAINT uk_sifen_lote_numero UNIQUE (numero_lote)
+);
+
+-- Misma estrategia de IDs que el resto de las tablas (optimizador pooled, ver V16)
+ALTER SEQUENCE sifen_lotes_id_seq INCREMENT BY 50;
+
+-- Solo los lotes en consulta participan del sondeo
+CREATE INDEX idx_sifen_lote_estado_proxima ON sifen_lotes(estado, proxima_consulta)
+    WHERE estado = 'PENDIENTE';
+
+-- Lotes enviados antes de esta versión: el número quedó en observaciones ("Lote: N")
+UPDATE facturas
+SET numero_lote_sifen = substring(observaciones FROM 'Lote: ([^ |]+)')
+WHERE observaciones LIKE '%Lote: %' AND numero_lote_sifen IS NULL;
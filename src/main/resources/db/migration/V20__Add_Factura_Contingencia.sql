@@ -0,0 +1,9 @@
+-- Migración V20: Emisión en contingencia SIFEN
+-- Con SIFEN caído (circuito abierto) o la contingencia forzada, el DE se emite con iTipEmi = 2 y se entrega
+-- de inmediato; la fila de sifen_envios lo conserva hasta que el servicio se recupere.
+
+ALTER TABLE facturas ADD COLUMN emitida_contingencia BOOLEAN NOT NULL DEFAULT FALSE;
+
+-- Facturas emitidas en contingencia aún sin transmitir
+CREATE INDEX idx_factura_contingencia_pendiente ON facturas(estado)
+    WHERE emitida_contingencia = TRUE;
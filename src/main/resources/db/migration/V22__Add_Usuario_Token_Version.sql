@@ -0,0 +1,5 @@
+-- Migración V22: Versión de tokens por usuario
+-- El JWT lleva roles y la versión del usuario; el filtro arma la autenticación desde el token sin leer usuarios.
+-- Desactivar, bloquear, cambiar roles o contraseña incrementa la versión e invalida los tokens emitidos antes.
+
+ALTER TABLE usuarios ADD COLUMN token_version BIGINT NOT NULL DEFAULT 0;
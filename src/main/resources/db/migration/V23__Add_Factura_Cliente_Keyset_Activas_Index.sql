@@ -0,0 +1,7 @@
+-- Migración V23: Keyset por cliente solo sobre facturas activas
+-- El cursor por cliente ahora excluye facturas dadas de baja, igual que el cursor general (índice 3 de V17).
+-- idx_factura_cliente_fecha_id se mantiene para el historial paginado por cliente, que incluye las inactivas.
+
+CREATE INDEX IF NOT EXISTS idx_factura_cliente_fecha_id_activas
+ON facturas(cliente_id, fecha_emision DESC, id DESC)
+WHERE is_active = true;
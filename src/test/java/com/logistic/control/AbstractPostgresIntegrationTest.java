@@ -0,0 +1,35 @@
+package com.logistic.control;
+
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+/**
+ * Base de los tests de integración contra PostgreSQL real (Testcontainers).
+ * El contenedor se comparte entre clases y el esquema lo crea Flyway como en producción.
+ * Sin Docker disponible los tests se omiten en lugar de fallar.
+ */
+@SpringBootTest(properties = {
+        "jwt.secret=dGVzdC1zZWNyZXQtZGUtMzItYnl0ZXMtcGFyYS1obWFjLXNoYTI1Ng==",
+        "encryption.secret-key=clave-de-pruebas-aes-256",
+        "sifen.certificate-password=test",
+        "sifen.outbox.enabled=false",
+        "sifen.poller.enabled=false",
+        "jasper.precarga="
+})
+@Testcontainers(disabledWithoutDocker = true)
+public abstract class AbstractPostgresIntegrationTest {
+
+    static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) {
+        // Se arranca al crear el primer contexto (no al cargar la clase) para respetar disabledWithoutDocker
+        POSTGRES.start();
+        registry.add("spring.datasource.url", POSTGRES::getJdbcUrl);
+        registry.add("spring.datasource.username", POSTGRES::getUsername);
+        registry.add("spring.datasource.password", POSTGRES::getPassword);
+    }
+}
@@ -0,0 +1,81 @@
+package com.logistic.control.repository;
+
+import com.logistic.control.AbstractPostgresIntegrationTest;
+import com.logistic.control.entity.Cliente;
+import com.logistic.control.entity.DetalleFactura;
+import com.logistic.control.entity.Factura;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Con ids de secuencia pooled los inserts de una factura con muchos items viajan en batches JDBC
+ * (hibernate.jdbc.batch_size = 20) en lugar de un INSERT por fila
+ */
+@TestPropertySource(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class DetalleFacturaBatchInsertTest extends AbstractPostgresIntegrationTest {
+
+    private static final int ITEMS = 100;
+    private static final int BATCH_SIZE = 20;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void losItemsDeUnaFacturaSeInsertanEnBatches() {
+        Long clienteId = jdbcTemplate.queryForObject("SELECT MIN(id) FROM clientes", Long.class);
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        Long facturaId = new TransactionTemplate(transactionManager).execute(status -> {
+            Factura factura = Factura.builder()
+                    .fechaEmision(LocalDateTime.now())
+                    .cliente(entityManager.getReference(Cliente.class, clienteId))
+                    .subtotal(0.0)
+                    .total(0.0)
+                    .build();
+            for (int i = 1; i <= ITEMS; i++) {
+                factura.addDetalle(DetalleFactura.builder()
+                        .descripcion("Item " + i)
+                        .cantidad(1)
+                        .precioUnitario(1_000.0)
+                        .total(1_000.0)
+                        .porcentajeIva(10)
+                        .build());
+            }
+
+            statistics.clear();
+            entityManager.persist(factura);
+            entityManager.flush();
+            return factura.getId();
+        });
+
+        assertThat(statistics.getEntityInsertCount()).isEqualTo(ITEMS + 1);
+        // 1 INSERT de factura + ITEMS / BATCH_SIZE batches de detalles + unos pocos nextval (incremento 50);
+        // con IDENTITY serían ITEMS + 1 sentencias
+        long maximoEsperado = 1 + ITEMS / BATCH_SIZE + (1 + ITEMS / 50 + 1);
+        assertThat(statistics.getPrepareStatementCount()).isLessThanOrEqualTo(maximoEsperado);
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM detalle_factura WHERE factura_id = ?", Integer.class, facturaId))
+                .isEqualTo(ITEMS);
+    }
+}
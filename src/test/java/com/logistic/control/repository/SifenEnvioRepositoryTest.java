@@ -0,0 +1,83 @@
+package com.logistic.control.repository;
+
+import com.logistic.control.AbstractPostgresIntegrationTest;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Reclamo de envíos con FOR UPDATE SKIP LOCKED: dos workers (o instancias) concurrentes
+ * nunca toman la misma fila y el segundo no espera al primero.
+ */
+class SifenEnvioRepositoryTest extends AbstractPostgresIntegrationTest {
+
+    @Autowired
+    private SifenEnvioRepository sifenEnvioRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void reclamosConcurrentesTomanFilasDistintas() throws Exception {
+        LocalDateTime ahora = LocalDateTime.now();
+        List<Long> creados = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            creados.add(crearEnvio(ahora.minusMinutes(1)));
+        }
+
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        CountDownLatch primeroBloqueo = new CountDownLatch(1);
+        CountDownLatch liberar = new CountDownLatch(1);
+
+        // El primer worker bloquea 4 filas y mantiene abierta la transacción
+        CompletableFuture<List<Long>> primero = CompletableFuture.supplyAsync(() ->
+                transactionTemplate.execute(status -> {
+                    List<Long> ids = sifenEnvioRepository.bloquearListos(ahora, 4);
+                    primeroBloqueo.countDown();
+                    try {
+                        liberar.await(30, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return ids;
+                }));
+        assertThat(primeroBloqueo.await(30, TimeUnit.SECONDS)).isTrue();
+
+        // El segundo debe saltar las filas bloqueadas sin esperar
+        List<Long> segundo = CompletableFuture.supplyAsync(() ->
+                        transactionTemplate.execute(status -> sifenEnvioRepository.bloquearListos(ahora, 10)))
+                .get(5, TimeUnit.SECONDS);
+        liberar.countDown();
+        List<Long> tomadosPrimero = primero.get(30, TimeUnit.SECONDS);
+
+        assertThat(tomadosPrimero).hasSize(4).doesNotContainAnyElementsOf(segundo);
+        List<Long> tomados = new ArrayList<>(tomadosPrimero);
+        tomados.addAll(segundo);
+        assertThat(tomados.stream().filter(creados::contains)).containsExactlyInAnyOrderElementsOf(creados);
+    }
+
+    private Long crearEnvio(LocalDateTime proximoIntento) {
+        Long clienteId = jdbcTemplate.queryForObject("SELECT MIN(id) FROM clientes", Long.class);
+        Long facturaId = jdbcTemplate.queryForObject(
+                "INSERT INTO facturas (cliente_id, subtotal, total, estado) VALUES (?, 0, 0, 'GENERADA') RETURNING id",
+                Long.class, clienteId);
+        return jdbcTemplate.queryForObject(
+                "INSERT INTO sifen_envios (factura_id, estado, intentos, proximo_intento, fecha_creacion) " +
+                "VALUES (?, 'PENDIENTE', 0, ?, ?) RETURNING id",
+                Long.class, facturaId, proximoIntento, proximoIntento);
+    }
+}
@@ -0,0 +1,191 @@
+package com.logistic.control.security;
+
+import com.logistic.control.entity.Usuario;
+import com.logistic.control.enums.Role;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.io.Encoders;
+import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.security.SignatureException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.security.SecureRandom;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Verificación única del JWT (JwtService.parse) y lectura de claims desde ParsedToken
+ */
+class JwtServiceTest {
+
+    private static final long UNA_HORA_MS = TimeUnit.HOURS.toMillis(1);
+
+    private String secreto;
+    private JwtService jwtService;
+
+    @BeforeEach
+    void configurar() {
+        secreto = secretoAleatorio();
+        jwtService = servicio(secreto, UNA_HORA_MS);
+    }
+
+    @Test
+    void elTokenDeUnUsuarioLlevaIdRolesYVersion() {
+        Usuario usuario = usuario(42L, 7L, Role.OPERADOR, Role.ADMIN);
+
+        ParsedToken token = jwtService.parse(jwtService.generateToken(usuario));
+
+        assertThat(token.getSubject()).isEqualTo("operador1");
+        assertThat(token.getUsuarioId()).isEqualTo(42L);
+        assertThat(token.getVersion()).isEqualTo(7L);
+        assertThat(token.getRoles()).containsExactlyInAnyOrder(Role.ADMIN, Role.OPERADOR);
+        assertThat(token.isExpired()).isFalse();
+        assertThat(token.getExpiration()).isAfter(new Date());
+        assertThat(jwtService.isTokenValid(token, usuario)).isTrue();
+    }
+
+    @Test
+    void unUserDetailsSinUsuarioNoLlevaClaimsPropios() {
+        ParsedToken token = jwtService.parse(jwtService.generateToken(
+                User.withUsername("externo").password("x").roles("ADMIN").build()));
+
+        assertThat(token.getSubject()).isEqualTo("externo");
+        assertThat(token.getUsuarioId()).isNull();
+        assertThat(token.getVersion()).isNull();
+        assertThat(token.getRoles()).isEmpty();
+    }
+
+    @Test
+    void losRolesQueYaNoExistenSeIgnoran() {
+        String jwt = Jwts.builder()
+                .subject("operador1")
+                .claim(JwtService.CLAIM_ROLES, List.of("FINANZAS", "ROL_ELIMINADO"))
+                .expiration(new Date(System.currentTimeMillis() + UNA_HORA_MS))
+                .signWith(Keys.hmacShaKeyFor(Decoders.BASE64.decode(secreto)))
+                .compact();
+
+        assertThat(jwtService.parse(jwt).getRoles()).containsExactly(Role.FINANZAS);
+    }
+
+    @Test
+    void otraVersionDeTokensInvalidaElToken() {
+        Usuario usuario = usuario(42L, 7L, Role.OPERADOR);
+        ParsedToken token = jwtService.parse(jwtService.generateToken(usuario));
+
+        usuario.setTokenVersion(8L);
+
+        assertThat(jwtService.isTokenValid(token, usuario)).isFalse();
+        assertThat(jwtService.isTokenValid(token, usuario(42L, 7L, Role.OPERADOR))).isTrue();
+    }
+
+    @Test
+    void otroUsuarioNoValidaElToken() {
+        ParsedToken token = jwtService.parse(jwtService.generateToken(usuario(42L, 7L, Role.OPERADOR)));
+
+        Usuario otro = usuario(43L, 7L, Role.OPERADOR);
+        otro.setUsername("operador2");
+
+        assertThat(jwtService.isTokenValid(token, otro)).isFalse();
+    }
+
+    @Test
+    void unTokenVencidoSeRechazaAlVerificar() {
+        JwtService vencido = servicio(secreto, -1_000);
+        String jwt = vencido.generateToken(usuario(42L, 0L, Role.CLIENTE));
+
+        assertThatThrownBy(() -> jwtService.parse(jwt)).isInstanceOf(ExpiredJwtException.class);
+        assertThatThrownBy(() -> jwtService.isTokenValid(jwt, usuario(42L, 0L, Role.CLIENTE)))
+                .isInstanceOf(ExpiredJwtException.class);
+    }
+
+    @Test
+    void unaFirmaConOtraClaveSeRechaza() {
+        String ajeno = servicio(secretoAleatorio(), UNA_HORA_MS).generateToken(usuario(42L, 0L, Role.ADMIN));
+
+        assertThatThrownBy(() -> jwtService.parse(ajeno)).isInstanceOf(SignatureException.class);
+    }
+
+    @Test
+    void unPayloadAlteradoSeRechaza() {
+        String[] partes = jwtService.generateToken(usuario(42L, 0L, Role.CLIENTE)).split("\\.");
+        String payload = Encoders.BASE64URL.encode(
+                "{\"sub\":\"operador1\",\"roles\":[\"ADMIN\"],\"uid\":42,\"ver\":0}".getBytes());
+
+        assertThatThrownBy(() -> jwtService.parse(partes[0] + "." + payload + "." + partes[2]))
+                .isInstanceOf(JwtException.class);
+    }
+
+    /**
+     * Validaciones por segundo: verificación única con clave y parser reutilizados frente al camino anterior
+     * (extractUsername + isTokenValid, cada uno decodificando la clave y armando el parser).
+     * Correr con -Dbenchmark=true.
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void benchmarkValidacion() {
+        Usuario usuario = usuario(42L, 7L, Role.OPERADOR);
+        String jwt = jwtService.generateToken(usuario);
+
+        Runnable anterior = () -> {
+            String username = Jwts.parser().verifyWith(Keys.hmacShaKeyFor(Decoders.BASE64.decode(secreto))).build()
+                    .parseSignedClaims(jwt).getPayload().getSubject();
+            Date expiracion = Jwts.parser().verifyWith(Keys.hmacShaKeyFor(Decoders.BASE64.decode(secreto))).build()
+                    .parseSignedClaims(jwt).getPayload().getExpiration();
+            assertThat(username.equals(usuario.getUsername()) && expiracion.after(new Date())).isTrue();
+        };
+        Runnable actual = () -> assertThat(jwtService.isTokenValid(jwtService.parse(jwt), usuario)).isTrue();
+
+        for (int ronda = 0; ronda < 3; ronda++) {
+            System.out.printf("JWT anterior: %,.0f validaciones/s; parse único: %,.0f validaciones/s%n",
+                    porSegundo(anterior), porSegundo(actual));
+        }
+    }
+
+    private static double porSegundo(Runnable validacion) {
+        long fin = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        long inicio = System.nanoTime();
+        long n = 0;
+        while (System.nanoTime() - fin < 0) {
+            validacion.run();
+            n++;
+        }
+        return n * 1e9 / (System.nanoTime() - inicio);
+    }
+
+    private static JwtService servicio(String secreto, long expiracionMs) {
+        JwtService servicio = new JwtService();
+        ReflectionTestUtils.setField(servicio, "secretKey", secreto);
+        ReflectionTestUtils.setField(servicio, "jwtExpiration", expiracionMs);
+        ReflectionTestUtils.setField(servicio, "refreshExpiration", expiracionMs);
+        servicio.inicializarClave();
+        return servicio;
+    }
+
+    private static Usuario usuario(Long id, Long version, Role... roles) {
+        Usuario usuario = Usuario.builder()
+                .username("operador1")
+                .password("x")
+                .roles(Set.of(roles))
+                .tokenVersion(version)
+                .build();
+        usuario.setId(id);
+        return usuario;
+    }
+
+    private static String secretoAleatorio() {
+        byte[] clave = new byte[32];
+        new SecureRandom().nextBytes(clave);
+        return Encoders.BASE64.encode(clave);
+    }
+}
@@ -0,0 +1,191 @@
+package com.logistic.control.security;
+
+import com.logistic.control.config.RateLimitConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Limitador GCRA bajo contención, rotación de generaciones e intentos de login con el tope
+ * rate-limit.max-claves lleno
+ */
+class RateLimitServiceTest {
+
+    private static final int MAX_CLAVES = 4;
+    private static final int MAX_ATTEMPTS = 5;
+
+    private static final int POR_MINUTO = 1;
+    private static final int RAFAGA = 10;
+    private static final int HILOS = 64;
+    private static final String RUTA = "/api/facturas";
+
+    private SimpleMeterRegistry meterRegistry;
+    private RateLimitService rateLimitService;
+
+    @BeforeEach
+    void configurar() {
+        RateLimitConfig config = new RateLimitConfig();
+        config.setMaxClaves(MAX_CLAVES);
+        config.setPorMinuto(POR_MINUTO);
+        config.setRafaga(RAFAGA);
+        meterRegistry = new SimpleMeterRegistry();
+        rateLimitService = new RateLimitService(config, meterRegistry);
+        rateLimitService.iniciar();
+    }
+
+    @Test
+    void consumirAdmiteLaRafagaYLuegoIndicaLaEspera() {
+        RateLimitService.Limite limite = RateLimitService.Limite.de(60, 3);
+        long intervalo = TimeUnit.SECONDS.toNanos(1);
+        assertThat(limite.intervaloNanos()).isEqualTo(intervalo);
+
+        AtomicLong estado = new AtomicLong(System.nanoTime());
+        for (int i = 0; i < 3; i++) {
+            assertThat(limite.consumir(estado)).isZero();
+        }
+
+        long espera = limite.consumir(estado);
+        assertThat(espera).isPositive().isLessThanOrEqualTo(intervalo);
+
+        // Un intervalo después vuelve a haber lugar para exactamente una solicitud
+        estado.addAndGet(-intervalo);
+        assertThat(limite.consumir(estado)).isZero();
+        assertThat(limite.consumir(estado)).isPositive();
+    }
+
+    @Test
+    void sinRafagaConfiguradaLaRafagaEsElLimitePorMinuto() {
+        RateLimitService.Limite limite = RateLimitService.Limite.de(5, null);
+        AtomicLong estado = new AtomicLong(System.nanoTime());
+
+        int admitidas = 0;
+        while (limite.consumir(estado) == 0) {
+            admitidas++;
+        }
+
+        assertThat(admitidas).isEqualTo(5);
+    }
+
+    @Test
+    void bajoContencionSeAdmiteExactamenteLaRafaga() throws Exception {
+        CountDownLatch largada = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(HILOS);
+        try {
+            List<Future<Integer>> resultados = new ArrayList<>();
+            for (int i = 0; i < HILOS; i++) {
+                resultados.add(executor.submit(() -> {
+                    largada.await();
+                    int admitidas = 0;
+                    for (int j = 0; j < 100; j++) {
+                        if (rateLimitService.intentarSolicitud(RUTA, null, "10.0.0.1") == 0) {
+                            admitidas++;
+                        }
+                    }
+                    return admitidas;
+                }));
+            }
+            largada.countDown();
+
+            int admitidas = 0;
+            for (Future<Integer> resultado : resultados) {
+                admitidas += resultado.get(30, TimeUnit.SECONDS);
+            }
+            // Con 1 por minuto no se repone nada durante la prueba: solo pasa la ráfaga
+            assertThat(admitidas).isEqualTo(RAFAGA);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void laGeneracionLlenaRotaYConservaElEstadoDeLosClientesActivos() {
+        // Tope por generación: MAX_CLAVES / 2 = 2
+        agotar("10.0.0.1");
+        rateLimitService.intentarSolicitud(RUTA, null, "10.0.0.2");
+        rateLimitService.intentarSolicitud(RUTA, null, "10.0.0.3");
+
+        // 10.0.0.1 pasó a la generación anterior, pero al volver se copia con su estado
+        assertThat(rateLimitService.intentarSolicitud(RUTA, null, "10.0.0.1")).isPositive();
+        assertThat(rateLimitService.getClavesActivas()).isLessThanOrEqualTo(MAX_CLAVES);
+
+        // Dos rotaciones sin usarla la descartan: vuelve con la ráfaga completa
+        rateLimitService.intentarSolicitud(RUTA, null, "10.0.0.4");
+        rateLimitService.intentarSolicitud(RUTA, null, "10.0.0.5");
+        rateLimitService.intentarSolicitud(RUTA, null, "10.0.0.6");
+
+        assertThat(rateLimitService.intentarSolicitud(RUTA, null, "10.0.0.1")).isZero();
+        assertThat(rateLimitService.getClavesActivas()).isLessThanOrEqualTo(MAX_CLAVES);
+        assertThat(meterRegistry.get("rate.limit.desalojos").functionCounter().count()).isPositive();
+    }
+
+    @Test
+    void unBloqueoVigenteSobreviveAUnBarridoDeClavesNuevas() {
+        bloquear("victima:10.0.0.1");
+
+        for (int i = 0; i < 1_000; i++) {
+            rateLimitService.recordFailedLogin("atacante" + i + ":10.0.0.2");
+        }
+
+        assertThat(rateLimitService.isBlocked("victima:10.0.0.1")).isTrue();
+        assertThat(rateLimitService.getClavesLogin()).isLessThanOrEqualTo(MAX_CLAVES);
+        // Las claves sin bloquear sí se desalojan para dejar lugar
+        assertThat(meterRegistry.get("rate.limit.desalojos").functionCounter().count()).isPositive();
+    }
+
+    @Test
+    void conElTopeLlenoDeBloqueosLasClavesNuevasNoSeRegistran() {
+        for (int i = 0; i < MAX_CLAVES; i++) {
+            bloquear("usuario" + i + ":10.0.0.1");
+        }
+
+        for (int i = 0; i < 100; i++) {
+            rateLimitService.recordFailedLogin("nuevo:10.0.0." + i);
+        }
+
+        for (int i = 0; i < MAX_CLAVES; i++) {
+            assertThat(rateLimitService.isBlocked("usuario" + i + ":10.0.0.1")).isTrue();
+        }
+        assertThat(rateLimitService.getClavesLogin()).isEqualTo(MAX_CLAVES);
+        assertThat(meterRegistry.get("rate.limit.login.sin.registrar").functionCounter().count()).isEqualTo(100.0);
+    }
+
+    @Test
+    void unLoginExitosoDejaLugarParaClavesNuevas() {
+        for (int i = 0; i < MAX_CLAVES; i++) {
+            bloquear("usuario" + i + ":10.0.0.1");
+        }
+        rateLimitService.recordFailedLogin("nuevo:10.0.0.9");
+        assertThat(rateLimitService.getClavesLogin()).isEqualTo(MAX_CLAVES);
+
+        rateLimitService.recordSuccessfulLogin("usuario0:10.0.0.1");
+        rateLimitService.recordFailedLogin("nuevo:10.0.0.9");
+
+        assertThat(rateLimitService.getClavesLogin()).isEqualTo(MAX_CLAVES);
+        assertThat(rateLimitService.isBlocked("usuario1:10.0.0.1")).isTrue();
+    }
+
+    private void agotar(String ip) {
+        for (int i = 0; i < RAFAGA; i++) {
+            assertThat(rateLimitService.intentarSolicitud(RUTA, null, ip)).isZero();
+        }
+        assertThat(rateLimitService.intentarSolicitud(RUTA, null, ip)).isPositive();
+    }
+
+    private void bloquear(String clave) {
+        for (int i = 0; i < MAX_ATTEMPTS; i++) {
+            rateLimitService.recordFailedLogin(clave);
+        }
+        assertThat(rateLimitService.isBlocked(clave)).isTrue();
+    }
+}
@@ -0,0 +1,178 @@
+package com.logistic.control.service;
+
+import com.logistic.control.config.SifenConfig;
+import com.logistic.control.support.CertificadosPrueba;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsExchange;
+import com.sun.net.httpserver.HttpsParameters;
+import com.sun.net.httpserver.HttpsServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Transporte SIFEN contra un servidor HTTPS local que exige certificado de cliente (mTLS).
+ */
+class HttpClientSifenTransportTest {
+
+    private static final char[] PASSWORD = "test".toCharArray();
+    private static final String CUERPO = "<env:Envelope xmlns:env=\"http://www.w3.org/2003/05/soap-envelope\"/>";
+
+    private KeyStore servidor;
+    private KeyStore cliente;
+    private HttpsServer server;
+    private ExecutorService executor;
+    private String url;
+    private SifenConfig sifenConfig;
+    private HttpClientSifenTransport transport;
+
+    private final List<Integer> puertosCliente = new CopyOnWriteArrayList<>();
+    private final List<String> certificadosCliente = new CopyOnWriteArrayList<>();
+    private final CountDownLatch liberarLentas = new CountDownLatch(1);
+    private final Semaphore lentasRecibidas = new Semaphore(0);
+
+    @BeforeEach
+    void iniciarServidor() throws Exception {
+        servidor = CertificadosPrueba.generar("localhost", PASSWORD);
+        cliente = CertificadosPrueba.generar("Emisor de prueba", PASSWORD);
+
+        server = HttpsServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        SSLContext contextoServidor = sslContext(servidor, cliente);
+        server.setHttpsConfigurator(new HttpsConfigurator(contextoServidor) {
+            @Override
+            public void configure(HttpsParameters params) {
+                SSLParameters parametros = contextoServidor.getDefaultSSLParameters();
+                parametros.setNeedClientAuth(true);
+                params.setSSLParameters(parametros);
+            }
+        });
+        server.createContext("/de/ws", exchange -> {
+            HttpsExchange https = (HttpsExchange) exchange;
+            puertosCliente.add(exchange.getRemoteAddress().getPort());
+            certificadosCliente.add(((X509Certificate) https.getSSLSession().getPeerCertificates()[0])
+                    .getSubjectX500Principal().getName());
+            exchange.getRequestBody().readAllBytes();
+
+            if ("lenta".equals(exchange.getRequestHeaders().getFirst("SOAPAction"))) {
+                lentasRecibidas.release();
+                try {
+                    liberarLentas.await(30, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            responder(exchange.getResponseBody(), exchange);
+        });
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.start();
+        url = "https://localhost:" + server.getAddress().getPort() + "/de/ws";
+
+        sifenConfig = new SifenConfig();
+        sifenConfig.setConnectTimeout(1);
+        sifenConfig.setReadTimeout(30);
+        sifenConfig.setMaxConcurrenciaPorEndpoint(2);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        transport = new HttpClientSifenTransport(sifenConfig, meterRegistry,
+                new SifenCircuitBreaker(sifenConfig, meterRegistry));
+    }
+
+    @AfterEach
+    void detenerServidor() {
+        liberarLentas.countDown();
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    @Test
+    void presentaCertificadoDeClienteYReutilizaLaConexion() throws Exception {
+        SSLContext contexto = sslContext(cliente, servidor);
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(transport.enviar(contexto, url, "<sobre/>", "recibe")).isEqualTo(CUERPO);
+        }
+
+        assertThat(certificadosCliente).hasSize(5).allMatch("CN=Emisor de prueba"::equals);
+        // Keep-alive: las cinco solicitudes viajan por la misma conexión TLS
+        assertThat(puertosCliente).hasSize(5).containsOnly(puertosCliente.get(0));
+    }
+
+    @Test
+    void sinCertificadoDeClienteElServidorRechazaLaConexion() throws Exception {
+        SSLContext sinCertificado = SSLContext.getInstance("TLS");
+        sinCertificado.init(null, trustManagers(servidor), null);
+
+        assertThatThrownBy(() -> transport.enviar(sinCertificado, url, "<sobre/>", "recibe"))
+                .isInstanceOf(IOException.class);
+        assertThat(certificadosCliente).isEmpty();
+    }
+
+    @Test
+    void limitaLasSolicitudesSimultaneasPorEndpoint() throws Exception {
+        SSLContext contexto = sslContext(cliente, servidor);
+
+        // Dos solicitudes ocupan el límite del endpoint "lenta"
+        List<Future<String>> lentas = List.of(
+                executor.submit(() -> transport.enviar(contexto, url, "<sobre/>", "lenta")),
+                executor.submit(() -> transport.enviar(contexto, url, "<sobre/>", "lenta")));
+        assertThat(lentasRecibidas.tryAcquire(2, 10, TimeUnit.SECONDS)).isTrue();
+
+        // La tercera espera connect-timeout y se rechaza sin llegar al servidor
+        assertThatThrownBy(() -> transport.enviar(contexto, url, "<sobre/>", "lenta"))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("lenta");
+        assertThat(lentasRecibidas.availablePermits()).isZero();
+
+        // Otro endpoint tiene su propio límite
+        assertThat(transport.enviar(contexto, url, "<sobre/>", "consulta")).isEqualTo(CUERPO);
+
+        liberarLentas.countDown();
+        for (Future<String> lenta : lentas) {
+            assertThat(lenta.get(10, TimeUnit.SECONDS)).isEqualTo(CUERPO);
+        }
+        assertThat(transport.enviar(contexto, url, "<sobre/>", "lenta")).isEqualTo(CUERPO);
+    }
+
+    private static void responder(OutputStream salida, com.sun.net.httpserver.HttpExchange exchange) throws IOException {
+        byte[] cuerpo = CUERPO.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/soap+xml; charset=utf-8");
+        exchange.sendResponseHeaders(200, cuerpo.length);
+        try (salida) {
+            salida.write(cuerpo);
+        }
+    }
+
+    /**
+     * SSLContext con la clave de "propio" que confía solo en el certificado de "remoto"
+     */
+    private static SSLContext sslContext(KeyStore propio, KeyStore remoto) throws Exception {
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        kmf.init(propio, PASSWORD);
+        SSLContext contexto = SSLContext.getInstance("TLS");
+        contexto.init(kmf.getKeyManagers(), trustManagers(remoto), null);
+        return contexto;
+    }
+
+    private static javax.net.ssl.TrustManager[] trustManagers(KeyStore remoto) throws Exception {
+        TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        tmf.init(CertificadosPrueba.confianza(remoto));
+        return tmf.getTrustManagers();
+    }
+}
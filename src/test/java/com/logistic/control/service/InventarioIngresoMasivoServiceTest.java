@@ -0,0 +1,172 @@
+package com.logistic.control.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.logistic.control.dto.response.IngresoMasivoResponse;
+import com.logistic.control.entity.Cliente;
+import com.logistic.control.entity.Inventario;
+import com.logistic.control.entity.Producto;
+import com.logistic.control.repository.ClienteRepository;
+import com.logistic.control.repository.InventarioRepository;
+import com.logistic.control.repository.ProductoRepository;
+import com.logistic.control.security.InputSanitizer;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Ingreso masivo: bloques de 500 filas con el contexto de persistencia liberado entre bloques,
+ * tope de errores reportados y registros CSV con comillas que abarcan varias líneas
+ */
+class InventarioIngresoMasivoServiceTest {
+
+    private static final String ENCABEZADO = "clienteId,productoId,cantidad,lote,observaciones\n";
+
+    private InventarioRepository inventarioRepository;
+    private ClienteRepository clienteRepository;
+    private ProductoRepository productoRepository;
+    private EntityManager entityManager;
+    private InventarioIngresoMasivoService service;
+
+    @BeforeEach
+    void configurar() {
+        inventarioRepository = mock(InventarioRepository.class);
+        clienteRepository = mock(ClienteRepository.class);
+        productoRepository = mock(ProductoRepository.class);
+        entityManager = mock(EntityManager.class);
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+
+        Cliente cliente = Cliente.builder().build();
+        cliente.setId(1L);
+        Producto producto = Producto.builder().build();
+        producto.setId(2L);
+        when(clienteRepository.findAllById(anyIterable())).thenReturn(List.of(cliente));
+        when(productoRepository.findAllById(anyIterable())).thenReturn(List.of(producto));
+        when(inventarioRepository.saveAll(anyIterable())).thenAnswer(invocation -> invocation.getArgument(0));
+        // El escape HTML se prueba aparte; acá interesa el texto tal como sale del parser
+        InputSanitizer inputSanitizer = mock(InputSanitizer.class);
+        when(inputSanitizer.sanitize(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        service = new InventarioIngresoMasivoService(mock(InventarioService.class), inventarioRepository,
+                clienteRepository, productoRepository, mock(InventarioLoteIndex.class), inputSanitizer,
+                new ObjectMapper().registerModule(new JavaTimeModule()), entityManager, transactionManager);
+    }
+
+    @Test
+    void procesaEnBloquesDe500YLiberaElContextoEntreBloques() {
+        StringBuilder csv = new StringBuilder(ENCABEZADO);
+        for (int i = 1; i <= 1_200; i++) {
+            csv.append("1,2,").append(i).append(",L-").append(i).append(",\n");
+        }
+
+        IngresoMasivoResponse resultado = procesar(csv.toString(), InventarioIngresoMasivoService.Formato.CSV);
+
+        assertThat(resultado.getTotalFilas()).isEqualTo(1_200);
+        assertThat(resultado.getFilasCreadas()).isEqualTo(1_200);
+        assertThat(resultado.getFilasConError()).isZero();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Inventario>> bloques = ArgumentCaptor.forClass(List.class);
+        verify(inventarioRepository, times(3)).saveAll(bloques.capture());
+        assertThat(bloques.getAllValues()).extracting(List::size).containsExactly(500, 500, 200);
+        // Clientes y productos se resuelven una vez por bloque, no por fila
+        verify(clienteRepository, times(3)).findAllById(anyIterable());
+        verify(productoRepository, times(3)).findAllById(anyIterable());
+
+        // Cada bloque se guarda y luego se libera el contexto antes del siguiente
+        InOrder orden = inOrder(inventarioRepository, entityManager);
+        for (int i = 0; i < 3; i++) {
+            orden.verify(inventarioRepository).saveAll(anyIterable());
+            orden.verify(entityManager).clear();
+        }
+    }
+
+    @Test
+    void losErroresReportadosSeLimitanPeroElTotalSeCuenta() {
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 1; i <= 1_500; i++) {
+            ndjson.append("{\"clienteId\":99,\"productoId\":2,\"cantidad\":").append(i).append("}\n");
+        }
+
+        IngresoMasivoResponse resultado = procesar(ndjson.toString(), InventarioIngresoMasivoService.Formato.NDJSON);
+
+        assertThat(resultado.getTotalFilas()).isEqualTo(1_500);
+        assertThat(resultado.getFilasCreadas()).isZero();
+        assertThat(resultado.getFilasConError()).isEqualTo(1_500);
+        assertThat(resultado.getErrores()).hasSize(1_000);
+        assertThat(resultado.getErrores().getFirst().getFila()).isEqualTo(1);
+        assertThat(resultado.getErrores().getLast().getFila()).isEqualTo(1_000);
+        assertThat(resultado.getErrores().getFirst().getMensaje()).isEqualTo("Cliente no encontrado con id: 99");
+    }
+
+    @Test
+    void unCampoEntreComillasPuedeTenerComasYSaltosDeLinea() {
+        String csv = ENCABEZADO
+                + "1,2,10,\"L-1, caja \"\"A\"\"\",\"Pallet dañado\n"
+                + "revisar al descargar\"\n"
+                + "1,2,20,L-2,\n";
+
+        IngresoMasivoResponse resultado = procesar(csv, InventarioIngresoMasivoService.Formato.CSV);
+
+        assertThat(resultado.getTotalFilas()).isEqualTo(2);
+        assertThat(resultado.getFilasCreadas()).isEqualTo(2);
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Inventario>> bloque = ArgumentCaptor.forClass(List.class);
+        verify(inventarioRepository).saveAll(bloque.capture());
+        Inventario primero = bloque.getValue().getFirst();
+        assertThat(primero.getCantidad()).isEqualTo(10);
+        assertThat(primero.getLote()).isEqualTo("L-1, caja \"A\"");
+        assertThat(primero.getObservaciones()).isEqualTo("Pallet dañado\nrevisar al descargar");
+        assertThat(bloque.getValue().get(1).getLote()).isEqualTo("L-2");
+    }
+
+    @Test
+    void unasComillasSinCerrarSonUnErrorDeFila() {
+        String csv = ENCABEZADO
+                + "1,2,10,L-1,\n"
+                + "1,2,20,L-2,\"sin cerrar\n"
+                + "1,2,30,L-3,\n";
+
+        IngresoMasivoResponse resultado = procesar(csv, InventarioIngresoMasivoService.Formato.CSV);
+
+        // El registro abierto en la línea 3 consume el resto del archivo
+        assertThat(resultado.getTotalFilas()).isEqualTo(2);
+        assertThat(resultado.getFilasCreadas()).isEqualTo(1);
+        assertThat(resultado.getErrores()).singleElement().satisfies(error -> {
+            assertThat(error.getFila()).isEqualTo(3);
+            assertThat(error.getMensaje()).contains("Comillas sin cerrar");
+        });
+    }
+
+    @Test
+    void lasLineasEnBlancoNoSonFilas() {
+        IngresoMasivoResponse resultado = procesar(ENCABEZADO + "\n\n", InventarioIngresoMasivoService.Formato.CSV);
+
+        assertThat(resultado.getTotalFilas()).isZero();
+        verify(inventarioRepository, never()).saveAll(anyIterable());
+    }
+
+    private IngresoMasivoResponse procesar(String contenido, InventarioIngresoMasivoService.Formato formato) {
+        return service.procesar(new ByteArrayInputStream(contenido.getBytes(StandardCharsets.UTF_8)), formato);
+    }
+}
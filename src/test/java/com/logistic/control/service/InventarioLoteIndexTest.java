@@ -0,0 +1,184 @@
+package com.logistic.control.service;
+
+import com.logistic.control.entity.Inventario;
+import com.logistic.control.entity.Producto;
+import com.logistic.control.enums.EstadoInventario;
+import com.logistic.control.repository.InventarioRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Índice de lotes: orden FIFO y stock total mantenidos en cada escritura, vencimiento por TTL
+ * y cambios aplicados recién al confirmar la transacción
+ */
+class InventarioLoteIndexTest {
+
+    private static final long PRODUCTO_ID = 7L;
+    private static final LocalDateTime ENTRADA = LocalDateTime.of(2025, 3, 1, 8, 0);
+
+    private InventarioRepository inventarioRepository;
+    private InventarioLoteIndex loteIndex;
+    private List<Object[]> filas;
+
+    @BeforeEach
+    void configurar() {
+        inventarioRepository = mock(InventarioRepository.class);
+        filas = new ArrayList<>();
+        filas.add(fila(10L, ENTRADA, 5, EstadoInventario.DISPONIBLE));
+        filas.add(fila(11L, ENTRADA.plusDays(1), 20, EstadoInventario.DISPONIBLE));
+        filas.add(fila(12L, ENTRADA.plusDays(2), 30, EstadoInventario.EN_DEPOSITO));
+        filas.add(fila(13L, null, 40, EstadoInventario.DISPONIBLE));
+        when(inventarioRepository.findLotesByProductoId(PRODUCTO_ID)).thenAnswer(invocation -> List.copyOf(filas));
+
+        loteIndex = new InventarioLoteIndex(inventarioRepository);
+        ReflectionTestUtils.setField(loteIndex, "ttlSegundos", 60L);
+    }
+
+    @AfterEach
+    void limpiarTransaccion() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void cargaElLoteMasAntiguoConStockYElStockTotal() {
+        assertThat(loteIndex.obtenerLoteFIFO(PRODUCTO_ID)).isEqualTo(10L);
+        assertThat(loteIndex.obtenerStockTotal(PRODUCTO_ID)).isEqualTo(95);
+    }
+
+    @Test
+    void lasEscriturasMantienenFifoYStock() {
+        loteIndex.obtenerLoteFIFO(PRODUCTO_ID);
+
+        // Sin cantidad deja de ser FIFO
+        loteIndex.registrar(lote(10L, ENTRADA, 0, EstadoInventario.DISPONIBLE));
+        assertThat(loteIndex.obtenerLoteFIFO(PRODUCTO_ID)).isEqualTo(11L);
+        assertThat(loteIndex.obtenerStockTotal(PRODUCTO_ID)).isEqualTo(90);
+
+        // Un cambio de fecha de entrada lo reubica en el orden
+        loteIndex.registrar(lote(13L, ENTRADA.minusDays(1), 40, EstadoInventario.DISPONIBLE));
+        assertThat(loteIndex.obtenerLoteFIFO(PRODUCTO_ID)).isEqualTo(13L);
+        assertThat(loteIndex.obtenerStockTotal(PRODUCTO_ID)).isEqualTo(90);
+
+        // Un estado fuera de stock descuenta lo que aportaba
+        loteIndex.registrar(lote(13L, ENTRADA.minusDays(1), 40, EstadoInventario.DANIADO));
+        assertThat(loteIndex.obtenerLoteFIFO(PRODUCTO_ID)).isEqualTo(11L);
+        assertThat(loteIndex.obtenerStockTotal(PRODUCTO_ID)).isEqualTo(50);
+
+        // Lote nuevo con la misma fecha: desempata el id
+        loteIndex.registrar(lote(9L, ENTRADA.plusDays(1), 1, EstadoInventario.DISPONIBLE));
+        assertThat(loteIndex.obtenerLoteFIFO(PRODUCTO_ID)).isEqualTo(9L);
+        assertThat(loteIndex.obtenerStockTotal(PRODUCTO_ID)).isEqualTo(51);
+
+        loteIndex.eliminar(lote(9L, ENTRADA.plusDays(1), 1, EstadoInventario.DISPONIBLE));
+        loteIndex.eliminar(lote(11L, ENTRADA.plusDays(1), 20, EstadoInventario.DISPONIBLE));
+        assertThat(loteIndex.obtenerLoteFIFO(PRODUCTO_ID)).isNull();
+        assertThat(loteIndex.obtenerStockTotal(PRODUCTO_ID)).isEqualTo(30);
+
+        // Todo desde la carga inicial, sin volver a consultar
+        verify(inventarioRepository, times(1)).findLotesByProductoId(PRODUCTO_ID);
+    }
+
+    @Test
+    void alVencerElTtlSeRecargaDeLaBase() throws Exception {
+        ReflectionTestUtils.setField(loteIndex, "ttlSegundos", 1L);
+        assertThat(loteIndex.obtenerStockTotal(PRODUCTO_ID)).isEqualTo(95);
+
+        // Cambio hecho por otra instancia: no se ve hasta que vence la entrada
+        filas.add(fila(14L, ENTRADA.minusDays(5), 100, EstadoInventario.DISPONIBLE));
+        assertThat(loteIndex.obtenerStockTotal(PRODUCTO_ID)).isEqualTo(95);
+        assertThat(loteIndex.obtenerLoteFIFO(PRODUCTO_ID)).isEqualTo(10L);
+
+        Thread.sleep(1_100);
+
+        assertThat(loteIndex.obtenerStockTotal(PRODUCTO_ID)).isEqualTo(195);
+        assertThat(loteIndex.obtenerLoteFIFO(PRODUCTO_ID)).isEqualTo(14L);
+        verify(inventarioRepository, times(2)).findLotesByProductoId(PRODUCTO_ID);
+    }
+
+    @Test
+    void losCambiosSeAplicanRecienAlConfirmar() {
+        loteIndex.obtenerLoteFIFO(PRODUCTO_ID);
+        TransactionSynchronizationManager.initSynchronization();
+
+        loteIndex.registrar(lote(10L, ENTRADA, 0, EstadoInventario.DESPACHADO));
+        assertThat(loteIndex.obtenerLoteFIFO(PRODUCTO_ID)).isEqualTo(10L);
+        assertThat(loteIndex.obtenerStockTotal(PRODUCTO_ID)).isEqualTo(95);
+
+        confirmar();
+
+        assertThat(loteIndex.obtenerLoteFIFO(PRODUCTO_ID)).isEqualTo(11L);
+        assertThat(loteIndex.obtenerStockTotal(PRODUCTO_ID)).isEqualTo(90);
+    }
+
+    @Test
+    void unRollbackNoCambiaElIndice() {
+        loteIndex.obtenerLoteFIFO(PRODUCTO_ID);
+        TransactionSynchronizationManager.initSynchronization();
+
+        loteIndex.eliminar(lote(10L, ENTRADA, 5, EstadoInventario.DISPONIBLE));
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+        }
+        TransactionSynchronizationManager.clearSynchronization();
+
+        assertThat(loteIndex.obtenerLoteFIFO(PRODUCTO_ID)).isEqualTo(10L);
+        assertThat(loteIndex.obtenerStockTotal(PRODUCTO_ID)).isEqualTo(95);
+    }
+
+    @Test
+    void laInvalidacionConfirmadaFuerzaUnaRecarga() {
+        loteIndex.obtenerLoteFIFO(PRODUCTO_ID);
+        filas.removeFirst();
+        TransactionSynchronizationManager.initSynchronization();
+
+        loteIndex.invalidar(PRODUCTO_ID);
+        assertThat(loteIndex.obtenerLoteFIFO(PRODUCTO_ID)).isEqualTo(10L);
+
+        confirmar();
+
+        assertThat(loteIndex.obtenerLoteFIFO(PRODUCTO_ID)).isEqualTo(11L);
+        assertThat(loteIndex.obtenerStockTotal(PRODUCTO_ID)).isEqualTo(90);
+        verify(inventarioRepository, times(2)).findLotesByProductoId(PRODUCTO_ID);
+    }
+
+    private static void confirmar() {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        for (TransactionSynchronization synchronization : synchronizations) {
+            synchronization.afterCommit();
+        }
+    }
+
+    private static Object[] fila(Long id, LocalDateTime fechaEntrada, Integer disponible, EstadoInventario estado) {
+        return new Object[]{id, fechaEntrada, disponible, estado};
+    }
+
+    private static Inventario lote(Long id, LocalDateTime fechaEntrada, int disponible, EstadoInventario estado) {
+        Producto producto = Producto.builder().build();
+        producto.setId(PRODUCTO_ID);
+        Inventario inventario = Inventario.builder()
+                .producto(producto)
+                .fechaEntrada(fechaEntrada)
+                .cantidadDisponible(disponible)
+                .estado(estado)
+                .build();
+        inventario.setId(id);
+        return inventario;
+    }
+}
@@ -0,0 +1,103 @@
+package com.logistic.control.service;
+
+import com.logistic.control.AbstractPostgresIntegrationTest;
+import com.logistic.control.exception.StockInsuficienteException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Cientos de reservas simultáneas sobre un mismo lote: el UPDATE condicional y el CHECK de V15
+ * deben impedir la sobreventa aunque todas compitan por la misma fila.
+ */
+class InventarioReservaServiceConcurrencyTest extends AbstractPostgresIntegrationTest {
+
+    private static final int CANTIDAD_INICIAL = 1000;
+    private static final int RESERVAS = 400;
+    private static final int POR_RESERVA = 3;
+    private static final int HILOS = 32;
+
+    @Autowired
+    private InventarioReservaService inventarioReservaService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Long loteId;
+
+    @BeforeEach
+    void crearLote() {
+        Long clienteId = jdbcTemplate.queryForObject("SELECT MIN(id) FROM clientes", Long.class);
+        Long productoId = jdbcTemplate.queryForObject("SELECT MIN(id) FROM productos", Long.class);
+        loteId = jdbcTemplate.queryForObject(
+                "INSERT INTO inventario (cliente_id, producto_id, cantidad, cantidad_reservada, cantidad_disponible, " +
+                "estado, fecha_entrada) VALUES (?, ?, ?, 0, ?, 'DISPONIBLE', CURRENT_TIMESTAMP) RETURNING id",
+                Long.class, clienteId, productoId, CANTIDAD_INICIAL, CANTIDAD_INICIAL);
+    }
+
+    @Test
+    void reservasConcurrentesNoSobrevenden() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(HILOS);
+        CountDownLatch largada = new CountDownLatch(1);
+        AtomicInteger exitosas = new AtomicInteger();
+        AtomicInteger sinStock = new AtomicInteger();
+        List<Future<?>> tareas = new ArrayList<>();
+
+        // Muestrea la fila mientras compiten las reservas para detectar un disponible negativo transitorio
+        AtomicBoolean corriendo = new AtomicBoolean(true);
+        AtomicInteger minimoDisponible = new AtomicInteger(Integer.MAX_VALUE);
+        Thread monitor = new Thread(() -> {
+            while (corriendo.get()) {
+                Integer disponible = jdbcTemplate.queryForObject(
+                        "SELECT cantidad_disponible FROM inventario WHERE id = ?", Integer.class, loteId);
+                minimoDisponible.accumulateAndGet(disponible, Math::min);
+            }
+        });
+        monitor.start();
+
+        try {
+            for (int i = 0; i < RESERVAS; i++) {
+                tareas.add(executor.submit(() -> {
+                    largada.await();
+                    try {
+                        inventarioReservaService.reservar(loteId, POR_RESERVA);
+                        exitosas.incrementAndGet();
+                    } catch (StockInsuficienteException e) {
+                        sinStock.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+            largada.countDown();
+            for (Future<?> tarea : tareas) {
+                // Cualquier otra excepción (incluida una violación del CHECK) hace fallar el test
+                tarea.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            corriendo.set(false);
+            monitor.join();
+            executor.shutdownNow();
+        }
+
+        Map<String, Object> lote = jdbcTemplate.queryForMap(
+                "SELECT cantidad, cantidad_reservada, cantidad_disponible FROM inventario WHERE id = ?", loteId);
+
+        assertThat(exitosas.get() + sinStock.get()).isEqualTo(RESERVAS);
+        assertThat(exitosas.get() * POR_RESERVA).isLessThanOrEqualTo(CANTIDAD_INICIAL);
+        assertThat(exitosas.get()).isEqualTo(CANTIDAD_INICIAL / POR_RESERVA);
+        assertThat(lote.get("cantidad_reservada")).isEqualTo(exitosas.get() * POR_RESERVA);
+        assertThat((Integer) lote.get("cantidad_disponible")).isGreaterThanOrEqualTo(0);
+        assertThat(minimoDisponible.get()).isGreaterThanOrEqualTo(0);
+        assertThat(lote.get("cantidad")).isEqualTo(CANTIDAD_INICIAL);
+    }
+}
@@ -0,0 +1,71 @@
+package com.logistic.control.service;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.sf.jasperreports.engine.JasperCompileManager;
+import net.sf.jasperreports.engine.JasperReport;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Las plantillas .jrxml compilan, y la caché evita recompilarlas en cada reporte
+ */
+class ReportServiceTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private ReportService reportService;
+
+    @BeforeEach
+    void configurar() {
+        meterRegistry = new SimpleMeterRegistry();
+        reportService = new ReportService(mock(QRCodeService.class), meterRegistry);
+        ReflectionTestUtils.setField(reportService, "umbralVirtualizador", 500);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"factura", "pedido", "contenedor", "inventario"})
+    void laPlantillaCompila(String reportName) throws Exception {
+        try (InputStream jrxml = new ClassPathResource("templates/reports/" + reportName + ".jrxml").getInputStream()) {
+            JasperReport plantilla = JasperCompileManager.compileReport(jrxml);
+            assertThat(plantilla.getName()).isNotBlank();
+        }
+    }
+
+    @Test
+    void elSegundoReporteUsaLaPlantillaEnCache() throws Exception {
+        long frio = generar("inventario");
+        long enCache = generar("inventario");
+
+        Timer compilacion = meterRegistry.get("reportes.compilacion").tag("reporte", "inventario").timer();
+        assertThat(compilacion.count()).isEqualTo(1);
+        assertThat(meterRegistry.get("reportes.generacion").tag("reporte", "inventario").timer().count())
+                .isEqualTo(2);
+        // El primero incluye la compilación del .jrxml
+        assertThat(enCache).isLessThan(frio);
+        System.out.printf("Reporte inventario: en frío %d ms (compilación %.0f ms), con caché %d ms%n",
+                TimeUnit.NANOSECONDS.toMillis(frio), compilacion.totalTime(TimeUnit.MILLISECONDS),
+                TimeUnit.NANOSECONDS.toMillis(enCache));
+    }
+
+    private long generar(String reportName) throws Exception {
+        ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+        long inicio = System.nanoTime();
+        reportService.generatePdfReport(reportName, null, List.of(), pdf);
+        long duracion = System.nanoTime() - inicio;
+        assertThat(pdf.toString(StandardCharsets.ISO_8859_1)).startsWith("%PDF");
+        return duracion;
+    }
+}
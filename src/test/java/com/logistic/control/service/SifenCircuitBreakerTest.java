@@ -0,0 +1,157 @@
+package com.logistic.control.service;
+
+import com.logistic.control.config.SifenConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Máquina de estados del circuito hacia SIFEN: CERRADO → ABIERTO → SEMIABIERTO (una prueba) → CERRADO/ABIERTO
+ */
+class SifenCircuitBreakerTest {
+
+    private static final int FALLOS_PARA_ABRIR = 3;
+
+    private SifenConfig sifenConfig;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void configurar() {
+        sifenConfig = new SifenConfig();
+        sifenConfig.getContingencia().setFallosParaAbrir(FALLOS_PARA_ABRIR);
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void seAbreTrasLosFallosConsecutivosConfigurados() {
+        SifenCircuitBreaker breaker = circuito(60);
+
+        for (int i = 1; i < FALLOS_PARA_ABRIR; i++) {
+            assertThat(breaker.permitirSolicitud()).isTrue();
+            breaker.registrarFallo();
+            assertThat(breaker.getEstado()).isEqualTo(SifenCircuitBreaker.Estado.CERRADO);
+        }
+
+        assertThat(breaker.permitirSolicitud()).isTrue();
+        breaker.registrarFallo();
+
+        assertThat(breaker.getEstado()).isEqualTo(SifenCircuitBreaker.Estado.ABIERTO);
+        assertThat(breaker.isCerrado()).isFalse();
+        assertThat(breaker.permitirSolicitud()).isFalse();
+        // Mientras no venza apertura-segundos no hay prueba posible
+        assertThat(breaker.admitePrueba()).isFalse();
+        assertThat(meterRegistry.get("sifen.circuito.abierto").gauge().value()).isEqualTo(1.0);
+    }
+
+    @Test
+    void unaRespuestaReiniciaElConteoDeFallos() {
+        SifenCircuitBreaker breaker = circuito(60);
+
+        for (int i = 1; i < FALLOS_PARA_ABRIR; i++) {
+            breaker.registrarFallo();
+        }
+        breaker.registrarExito();
+        for (int i = 1; i < FALLOS_PARA_ABRIR; i++) {
+            breaker.registrarFallo();
+        }
+
+        assertThat(breaker.getEstado()).isEqualTo(SifenCircuitBreaker.Estado.CERRADO);
+        assertThat(meterRegistry.get("sifen.circuito.abierto").gauge().value()).isZero();
+    }
+
+    @Test
+    void semiabiertoDejaPasarUnaSolaPruebaEntreHilosConcurrentes() throws Exception {
+        SifenCircuitBreaker breaker = abierto(circuito(0));
+        assertThat(breaker.admitePrueba()).isTrue();
+
+        int hilos = 64;
+        CountDownLatch largada = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(hilos);
+        try {
+            List<Future<Boolean>> intentos = new ArrayList<>(hilos);
+            for (int i = 0; i < hilos; i++) {
+                intentos.add(executor.submit(() -> {
+                    largada.await();
+                    return breaker.permitirSolicitud();
+                }));
+            }
+            largada.countDown();
+
+            int admitidas = 0;
+            for (Future<Boolean> intento : intentos) {
+                admitidas += intento.get() ? 1 : 0;
+            }
+            assertThat(admitidas).isEqualTo(1);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(breaker.getEstado()).isEqualTo(SifenCircuitBreaker.Estado.SEMIABIERTO);
+        assertThat(breaker.admitePrueba()).isFalse();
+    }
+
+    @Test
+    void pruebaExitosaCierraElCircuito() {
+        SifenCircuitBreaker breaker = abierto(circuito(0));
+
+        assertThat(breaker.permitirSolicitud()).isTrue();
+        breaker.registrarExito();
+
+        assertThat(breaker.getEstado()).isEqualTo(SifenCircuitBreaker.Estado.CERRADO);
+        assertThat(breaker.permitirSolicitud()).isTrue();
+        assertThat(breaker.permitirSolicitud()).isTrue();
+    }
+
+    @Test
+    void pruebaFallidaVuelveAAbrirConUnSoloFallo() {
+        SifenCircuitBreaker breaker = abierto(circuito(60));
+        // Simula que venció la apertura forzando el paso a semiabierto con apertura cero
+        sifenConfig.getContingencia().setAperturaSegundos(0L);
+        assertThat(breaker.permitirSolicitud()).isTrue();
+        sifenConfig.getContingencia().setAperturaSegundos(60L);
+
+        breaker.registrarFallo();
+
+        assertThat(breaker.getEstado()).isEqualTo(SifenCircuitBreaker.Estado.ABIERTO);
+        assertThat(breaker.permitirSolicitud()).isFalse();
+        assertThat(breaker.admitePrueba()).isFalse();
+    }
+
+    @Test
+    void liberarDevuelveLaPruebaSinCambiarDeEstado() {
+        SifenCircuitBreaker breaker = abierto(circuito(0));
+
+        assertThat(breaker.permitirSolicitud()).isTrue();
+        assertThat(breaker.permitirSolicitud()).isFalse();
+
+        // La solicitud de prueba no llegó a enviarse (por ejemplo, límite por endpoint)
+        breaker.liberar();
+
+        assertThat(breaker.getEstado()).isEqualTo(SifenCircuitBreaker.Estado.SEMIABIERTO);
+        assertThat(breaker.permitirSolicitud()).isTrue();
+    }
+
+    private SifenCircuitBreaker circuito(long aperturaSegundos) {
+        sifenConfig.getContingencia().setAperturaSegundos(aperturaSegundos);
+        SifenCircuitBreaker breaker = new SifenCircuitBreaker(sifenConfig, meterRegistry);
+        breaker.registrarMetricas();
+        return breaker;
+    }
+
+    private static SifenCircuitBreaker abierto(SifenCircuitBreaker breaker) {
+        for (int i = 0; i < FALLOS_PARA_ABRIR; i++) {
+            breaker.registrarFallo();
+        }
+        assertThat(breaker.getEstado()).isEqualTo(SifenCircuitBreaker.Estado.ABIERTO);
+        return breaker;
+    }
+}
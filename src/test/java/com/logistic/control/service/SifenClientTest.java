@@ -0,0 +1,75 @@
+package com.logistic.control.service;
+
+import com.logistic.control.config.SifenConfig;
+import com.logistic.control.support.CertificadosPrueba;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.net.ssl.SSLContext;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Rotación del certificado .p12: el mTLS debe pasar a usar el certificado nuevo sin reiniciar.
+ */
+class SifenClientTest {
+
+    private static final char[] PASSWORD = "test".toCharArray();
+
+    @TempDir
+    Path directorio;
+
+    private Path certificado;
+    private SifenCertificado sifenCertificado;
+    private SifenClient sifenClient;
+    private final List<SSLContext> contextos = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void configurar() throws Exception {
+        certificado = CertificadosPrueba.escribir(CertificadosPrueba.generar("Emisor A", PASSWORD),
+                directorio.resolve("sifen.p12"), PASSWORD);
+
+        SifenConfig sifenConfig = new SifenConfig();
+        sifenConfig.setCertificatePath(certificado.toString());
+        sifenConfig.setCertificatePassword("test");
+        sifenConfig.setCertificadoVerificacionSegundos(0);
+
+        sifenCertificado = new SifenCertificado(sifenConfig);
+        sifenClient = new SifenClient(sifenConfig, (sslContext, url, sobre, accion) -> {
+            contextos.add(sslContext);
+            throw new IllegalStateException("sin servidor");
+        }, sifenCertificado);
+    }
+
+    @Test
+    void reutilizaElSslContextMientrasElCertificadoNoCambia() {
+        sifenClient.enviarDocumento("<rDE/>");
+        sifenClient.enviarDocumento("<rDE/>");
+
+        assertThat(contextos).hasSize(2);
+        assertThat(contextos.get(1)).isSameAs(contextos.get(0));
+    }
+
+    @Test
+    void reconstruyeElSslContextAlRotarElCertificado() throws Exception {
+        sifenClient.enviarDocumento("<rDE/>");
+        FileTime anterior = Files.getLastModifiedTime(certificado);
+
+        CertificadosPrueba.escribir(CertificadosPrueba.generar("Emisor B", PASSWORD), certificado, PASSWORD);
+        // Garantiza una fecha distinta aunque el sistema de archivos tenga resolución gruesa
+        Files.setLastModifiedTime(certificado, FileTime.fromMillis(anterior.toMillis() + 2000));
+
+        sifenClient.enviarDocumento("<rDE/>");
+
+        assertThat(contextos).hasSize(2);
+        assertThat(contextos.get(1)).isNotSameAs(contextos.get(0));
+        assertThat(sifenCertificado.obtener().certificate().getSubjectX500Principal().getName())
+                .isEqualTo("CN=Emisor B");
+    }
+}
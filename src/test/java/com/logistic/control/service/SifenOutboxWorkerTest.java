@@ -0,0 +1,156 @@
+package com.logistic.control.service;
+
+import com.logistic.control.AbstractPostgresIntegrationTest;
+import com.logistic.control.dto.response.SifenResponse;
+import com.logistic.control.entity.Factura;
+import com.logistic.control.support.CertificadosPrueba;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.net.http.HttpTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Pipeline de la cola de envíos contra un SIFEN simulado: el transporte SOAP se reemplaza por un stub
+ * y la generación/firma del DE por un mock, el resto (reclamo, SifenClient, parser, reintentos) es real.
+ */
+@DirtiesContext // Detiene el worker al terminar, para que no reclame filas de otros tests
+class SifenOutboxWorkerTest extends AbstractPostgresIntegrationTest {
+
+    private static final int MAX_REINTENTOS = 2;
+    private static final long BACKOFF_SEGUNDOS = 1;
+
+    private static final String RESPUESTA_APROBADA =
+            "<env:Envelope xmlns:env=\"http://www.w3.org/2003/05/soap-envelope\"><env:Body>" +
+            "<ns2:rRetEnviDe xmlns:ns2=\"http://ekuatia.set.gov.py/sifen/xsd\"><ns2:rProtDe>" +
+            "<ns2:Id>01800000001001001000000122025010112345678901</ns2:Id>" +
+            "<ns2:dEstRes>Aprobado</ns2:dEstRes><ns2:dProtAut>123456</ns2:dProtAut>" +
+            "<ns2:gResProc><ns2:dCodRes>0100</ns2:dCodRes><ns2:dMsgRes>Aprobado</ns2:dMsgRes></ns2:gResProc>" +
+            "</ns2:rProtDe></ns2:rRetEnviDe></env:Body></env:Envelope>";
+
+    @MockitoBean
+    private SifenTransport sifenTransport;
+
+    @MockitoBean
+    private SifenService sifenService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @DynamicPropertySource
+    static void sifen(DynamicPropertyRegistry registry) throws Exception {
+        char[] password = "test".toCharArray();
+        Path certificado = CertificadosPrueba.escribir(CertificadosPrueba.generar("Emisor de prueba", password),
+                Files.createTempFile("sifen-", ".p12"), password);
+        registry.add("sifen.certificate-path", certificado::toString);
+        registry.add("sifen.max-reintentos", () -> MAX_REINTENTOS);
+        registry.add("sifen.outbox.enabled", () -> true);
+        registry.add("sifen.outbox.intervalo-ms", () -> 100);
+        registry.add("sifen.outbox.backoff-segundos", () -> BACKOFF_SEGUNDOS);
+        registry.add("sifen.outbox.max-envios-por-minuto", () -> 6000);
+    }
+
+    @BeforeEach
+    void documentoFirmado() throws Exception {
+        // El DE "firmado" identifica la factura para que el stub sepa qué envío recibe
+        doAnswer(invocacion -> {
+            Factura factura = invocacion.getArgument(0);
+            factura.setXmlDeFirmado("<rDE><factura>" + factura.getId() + "</factura></rDE>");
+            return null;
+        }).when(sifenService).prepararDocumento(any(Factura.class));
+    }
+
+    @Test
+    void envioAprobadoSeCompletaEnElPrimerIntento() throws Exception {
+        when(sifenTransport.enviar(any(), anyString(), anyString(), anyString())).thenReturn(RESPUESTA_APROBADA);
+
+        Long envioId = crearEnvio();
+        esperarHasta(Duration.ofSeconds(15), () -> "COMPLETADO".equals(estado(envioId)));
+
+        Map<String, Object> envio = envio(envioId);
+        assertThat(envio.get("intentos")).isEqualTo(1);
+        assertThat(envio.get("bloqueado_hasta")).isNull();
+        assertThat(envio.get("fecha_finalizacion")).isNotNull();
+        verify(sifenService).procesarRespuestaSifen(any(Factura.class), argThat(SifenResponse::isAprobado));
+    }
+
+    @Test
+    void sinRespuestaReintentaConBackoffYTerminaFallido() throws Exception {
+        Long envioId = crearEnvio();
+        Long facturaId = jdbcTemplate.queryForObject(
+                "SELECT factura_id FROM sifen_envios WHERE id = ?", Long.class, envioId);
+        List<Long> llamadas = new CopyOnWriteArrayList<>();
+        when(sifenTransport.enviar(any(), anyString(), contains("<factura>" + facturaId + "</factura>"), anyString()))
+                .thenAnswer(invocacion -> {
+                    llamadas.add(System.nanoTime());
+                    throw new HttpTimeoutException("request timed out");
+                });
+
+        esperarHasta(Duration.ofSeconds(30), () -> "FALLIDO".equals(estado(envioId)));
+
+        int maxIntentos = 1 + MAX_REINTENTOS;
+        Map<String, Object> envio = envio(envioId);
+        assertThat(envio.get("intentos")).isEqualTo(maxIntentos);
+        assertThat((String) envio.get("ultimo_error")).contains("request timed out");
+        assertThat(llamadas).hasSize(maxIntentos);
+
+        // Backoff exponencial: base, 2x base (con margen por la granularidad del despachador)
+        for (int intento = 1; intento < maxIntentos; intento++) {
+            long esperaMs = Duration.ofNanos(llamadas.get(intento) - llamadas.get(intento - 1)).toMillis();
+            assertThat(esperaMs).isGreaterThanOrEqualTo((BACKOFF_SEGUNDOS << (intento - 1)) * 1000 - 100);
+        }
+
+        // Solo el intento final se registra en la factura
+        verify(sifenService, times(1)).procesarRespuestaSifen(any(Factura.class),
+                argThat(SifenResponse::isErrorComunicacion));
+    }
+
+    private Long crearEnvio() {
+        Long clienteId = jdbcTemplate.queryForObject("SELECT MIN(id) FROM clientes", Long.class);
+        Long facturaId = jdbcTemplate.queryForObject(
+                "INSERT INTO facturas (cliente_id, subtotal, total, estado) VALUES (?, 0, 0, 'GENERADA') RETURNING id",
+                Long.class, clienteId);
+        return jdbcTemplate.queryForObject(
+                "INSERT INTO sifen_envios (factura_id, estado, intentos, proximo_intento, fecha_creacion) " +
+                "VALUES (?, 'PENDIENTE', 0, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP) RETURNING id",
+                Long.class, facturaId);
+    }
+
+    private String estado(Long envioId) {
+        return jdbcTemplate.queryForObject("SELECT estado FROM sifen_envios WHERE id = ?", String.class, envioId);
+    }
+
+    private Map<String, Object> envio(Long envioId) {
+        return jdbcTemplate.queryForMap("SELECT * FROM sifen_envios WHERE id = ?", envioId);
+    }
+
+    private static void esperarHasta(Duration limite, BooleanSupplier condicion) throws InterruptedException {
+        long fin = System.nanoTime() + limite.toNanos();
+        while (!condicion.getAsBoolean()) {
+            assertThat(System.nanoTime() - fin).as("tiempo de espera agotado").isNegative();
+            Thread.sleep(50);
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.logistic.control.service;
+
+import com.logistic.control.dto.response.SifenLoteResponse;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import javax.xml.stream.XMLStreamException;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Respuestas SOAP de SIFEN (envío de un DE, consulta por CDC y consulta de lote) con distintos prefijos
+ */
+class SifenRespuestaParserTest {
+
+    private static final String CDC_1 = "01800123451001001000000112025031412345678901";
+    private static final String CDC_2 = "01800123451001001000000122025031412345678902";
+    private static final String CDC_3 = "01800123451001001000000132025031412345678903";
+
+    @ParameterizedTest
+    @ValueSource(strings = {"ns2:", "sifen:", ""})
+    void respuestaDeUnDocumento(String prefijo) throws Exception {
+        String xml = soap(prefijo, """
+                <{p}rRetEnviDe>
+                  <{p}rProtDe>
+                    <{p}id>%s</{p}id>
+                    <{p}dFecProc>2025-03-14T10:31:05-03:00</{p}dFecProc>
+                    <{p}dEstRes>Aprobado</{p}dEstRes>
+                    <{p}dProtAut>1234567890</{p}dProtAut>
+                    <{p}gResProc>
+                      <{p}dCodRes>0260</{p}dCodRes>
+                      <{p}dMsgRes>Autorización del DE satisfactoria</{p}dMsgRes>
+                    </{p}gResProc>
+                  </{p}rProtDe>
+                </{p}rRetEnviDe>
+                """.formatted(CDC_1));
+
+        SifenRespuestaParser.Resultado resultado = SifenRespuestaParser.parsear(xml);
+
+        assertThat(resultado.valor("dCodRes")).isEqualTo("0260");
+        assertThat(resultado.valor("dMsgRes")).isEqualTo("Autorización del DE satisfactoria");
+        assertThat(resultado.valor("dEstRes")).isEqualTo("Aprobado");
+        assertThat(resultado.valor("dProtAut")).isEqualTo("1234567890");
+        assertThat(resultado.fechaProcesamiento()).isEqualTo(LocalDateTime.of(2025, 3, 14, 10, 31, 5));
+        assertThat(resultado.documentos()).isEmpty();
+    }
+
+    @Test
+    void unDocumentoRechazadoConservaElPrimerCodigo() throws Exception {
+        String xml = soap("ns2:", """
+                <{p}rRetEnviDe>
+                  <{p}rProtDe>
+                    <{p}dEstRes>Rechazado</{p}dEstRes>
+                    <{p}gResProc>
+                      <{p}dCodRes>1000</{p}dCodRes>
+                      <{p}dMsgRes>CDC no corresponde con las informaciones del XML</{p}dMsgRes>
+                    </{p}gResProc>
+                    <{p}gResProc>
+                      <{p}dCodRes>1001</{p}dCodRes>
+                      <{p}dMsgRes>CDC duplicado</{p}dMsgRes>
+                    </{p}gResProc>
+                  </{p}rProtDe>
+                </{p}rRetEnviDe>
+                """);
+
+        SifenRespuestaParser.Resultado resultado = SifenRespuestaParser.parsear(xml);
+
+        assertThat(resultado.valor("dCodRes")).isEqualTo("1000");
+        assertThat(resultado.valor("dMsgRes")).isEqualTo("CDC no corresponde con las informaciones del XML");
+        assertThat(resultado.valor("dProtAut")).isNull();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"ns2:", ""})
+    void consultaPorCdc(String prefijo) throws Exception {
+        // El DE consultado viene anidado con su propio namespace por defecto
+        String xml = soap(prefijo, """
+                <{p}rEnviConsDeResponse>
+                  <{p}dFecProc>2025-03-15T08:00:00-03:00</{p}dFecProc>
+                  <{p}dCodRes>0422</{p}dCodRes>
+                  <{p}dMsgRes>CDC encontrado</{p}dMsgRes>
+                  <{p}xContenDE>
+                    <rContDe xmlns="http://ekuatia.set.gov.py/sifen/xsd">
+                      <rDE>
+                        <DE Id="%s">
+                          <gEmis><dRucEm>8001234</dRucEm><dNomEmi>Logística &amp; Control S.A.</dNomEmi></gEmis>
+                          <gDatRec><dRucRec>4567890</dRucRec><dNomRec>Ñandutí &lt;Importaciones&gt;</dNomRec></gDatRec>
+                        </DE>
+                      </rDE>
+                      <dProtAut>9876543210</dProtAut>
+                    </rContDe>
+                  </{p}xContenDE>
+                </{p}rEnviConsDeResponse>
+                """.formatted(CDC_1));
+
+        SifenRespuestaParser.Resultado resultado = SifenRespuestaParser.parsear(xml);
+
+        assertThat(resultado.valor("dCodRes")).isEqualTo("0422");
+        assertThat(resultado.valor("dMsgRes")).isEqualTo("CDC encontrado");
+        assertThat(resultado.valor("dRucEm")).isEqualTo("8001234");
+        assertThat(resultado.valor("dNomEmi")).isEqualTo("Logística & Control S.A.");
+        assertThat(resultado.valor("dNomRec")).isEqualTo("Ñandutí <Importaciones>");
+        assertThat(resultado.valor("dProtAut")).isEqualTo("9876543210");
+        assertThat(resultado.fechaProcesamiento()).isEqualTo(LocalDateTime.of(2025, 3, 15, 8, 0));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"ns2:", "sifen:", ""})
+    void consultaDeLoteConVariosDocumentos(String prefijo) throws Exception {
+        String xml = soap(prefijo, """
+                <{p}rResEnviConsLoteDe>
+                  <{p}dFecProc>2025-03-14T11:00:00-03:00</{p}dFecProc>
+                  <{p}dCodResLot>0362</{p}dCodResLot>
+                  <{p}dMsgResLot>Procesamiento de lote concluido</{p}dMsgResLot>
+                  <{p}gResProcLote>
+                    <{p}id>%s</{p}id>
+                    <{p}dEstRes>Aprobado</{p}dEstRes>
+                    <{p}dProtAut>111</{p}dProtAut>
+                    <{p}gResProc>
+                      <{p}dCodRes>0260</{p}dCodRes>
+                      <{p}dMsgRes>Autorización del DE satisfactoria</{p}dMsgRes>
+                    </{p}gResProc>
+                  </{p}gResProcLote>
+                  <{p}gResProcLote>
+                    <{p}id>%s</{p}id>
+                    <{p}dEstRes>Rechazado</{p}dEstRes>
+                    <{p}gResProc>
+                      <{p}dCodRes>1306</{p}dCodRes>
+                      <{p}dMsgRes>RUC del receptor inexistente</{p}dMsgRes>
+                    </{p}gResProc>
+                    <{p}gResProc>
+                      <{p}dCodRes>1313</{p}dCodRes>
+                      <{p}dMsgRes>Nombre del receptor no coincide</{p}dMsgRes>
+                    </{p}gResProc>
+                  </{p}gResProcLote>
+                  <{p}gResProcLote>
+                    <{p}id>%s</{p}id>
+                    <{p}dEstRes>Aprobado con observación</{p}dEstRes>
+                    <{p}gResProc>
+                      <{p}dCodRes>0261</{p}dCodRes>
+                      <{p}dMsgRes>Aprobado con observación</{p}dMsgRes>
+                    </{p}gResProc>
+                  </{p}gResProcLote>
+                </{p}rResEnviConsLoteDe>
+                """.formatted(CDC_1, CDC_2, CDC_3));
+
+        SifenRespuestaParser.Resultado resultado = SifenRespuestaParser.parsear(xml);
+
+        assertThat(resultado.valor("dCodResLot")).isEqualTo("0362");
+        assertThat(resultado.valor("dMsgResLot")).isEqualTo("Procesamiento de lote concluido");
+        // Los campos de cada documento no se mezclan con los de la respuesta
+        assertThat(resultado.valor("dCodRes")).isNull();
+        assertThat(resultado.valor("dEstRes")).isNull();
+
+        List<SifenLoteResponse.DocumentoLoteResult> documentos = resultado.documentos();
+        assertThat(documentos).hasSize(3);
+
+        assertThat(documentos.get(0).getCdc()).isEqualTo(CDC_1);
+        assertThat(documentos.get(0).getCodigoEstado()).isEqualTo("0260");
+        assertThat(documentos.get(0).getAprobado()).isTrue();
+
+        assertThat(documentos.get(1).getCdc()).isEqualTo(CDC_2);
+        assertThat(documentos.get(1).getEstado()).isEqualTo("Rechazado");
+        assertThat(documentos.get(1).getCodigoEstado()).isEqualTo("1306");
+        assertThat(documentos.get(1).getMensajeError())
+                .isEqualTo("RUC del receptor inexistente; Nombre del receptor no coincide");
+        assertThat(documentos.get(1).getAprobado()).isFalse();
+
+        assertThat(documentos.get(2).getCdc()).isEqualTo(CDC_3);
+        assertThat(documentos.get(2).getAprobado()).isTrue();
+    }
+
+    @Test
+    void loteEnProcesamientoSinDocumentos() throws Exception {
+        String xml = soap("ns2:", """
+                <{p}rResEnviConsLoteDe>
+                  <{p}dFecProc>2025-03-14T10:40:00</{p}dFecProc>
+                  <{p}dCodResLot>0361</{p}dCodResLot>
+                  <{p}dMsgResLot>Lote en procesamiento</{p}dMsgResLot>
+                </{p}rResEnviConsLoteDe>
+                """);
+
+        SifenRespuestaParser.Resultado resultado = SifenRespuestaParser.parsear(xml);
+
+        assertThat(resultado.valor("dCodResLot", "dCodRes")).isEqualTo("0361");
+        assertThat(resultado.documentos()).isEmpty();
+        assertThat(resultado.fechaProcesamiento()).isEqualTo(LocalDateTime.of(2025, 3, 14, 10, 40));
+    }
+
+    @Test
+    void fechaDeProcesamientoInvalidaOAusente() throws Exception {
+        assertThat(SifenRespuestaParser.parsear(soap("", "<r><dFecProc>14/03/2025</dFecProc></r>"))
+                .fechaProcesamiento()).isNull();
+        assertThat(SifenRespuestaParser.parsear(soap("", "<r><dFecProc>2025-13-45T99:00:00</dFecProc></r>"))
+                .fechaProcesamiento()).isNull();
+        assertThat(SifenRespuestaParser.parsear(soap("", "<r/>")).fechaProcesamiento()).isNull();
+    }
+
+    @Test
+    void noResuelveEntidadesExternas() {
+        String xml = """
+                <?xml version="1.0"?>
+                <!DOCTYPE r [<!ENTITY xxe SYSTEM "file:///etc/passwd">]>
+                <r><dMsgRes>&xxe;</dMsgRes></r>
+                """;
+
+        assertThatThrownBy(() -> SifenRespuestaParser.parsear(xml)).isInstanceOf(XMLStreamException.class);
+    }
+
+    /**
+     * Envolver el cuerpo en un sobre SOAP; {p} se reemplaza por el prefijo del namespace SIFEN
+     */
+    private static String soap(String prefijo, String cuerpo) {
+        String declaracion = prefijo.isEmpty()
+                ? "xmlns=\"http://ekuatia.set.gov.py/sifen/xsd\""
+                : "xmlns:" + prefijo.substring(0, prefijo.length() - 1) + "=\"http://ekuatia.set.gov.py/sifen/xsd\"";
+        return """
+                <?xml version="1.0" encoding="UTF-8"?>
+                <env:Envelope xmlns:env="http://www.w3.org/2003/05/soap-envelope">
+                  <env:Header/>
+                  <env:Body %s>
+                %s
+                  </env:Body>
+                </env:Envelope>
+                """.formatted(declaracion, cuerpo.replace("{p}", prefijo)).strip();
+    }
+}
@@ -0,0 +1,127 @@
+package com.logistic.control.service;
+
+import com.logistic.control.config.SifenConfig;
+import com.logistic.control.entity.Factura;
+import com.logistic.control.enums.EstadoFactura;
+import com.logistic.control.repository.FacturaRepository;
+import com.logistic.control.repository.SifenEnvioRepository;
+import com.logistic.control.repository.SifenLoteRepository;
+import com.logistic.control.support.CertificadosPrueba;
+import com.logistic.control.support.FacturasPrueba;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Preparación del DE: CDC estable entre reintentos y emisión en contingencia (iTipEmi = 2)
+ */
+class SifenServiceTest {
+
+    /** Posición del tipo de emisión en el CDC: RUC(8) + DV(1) + Est(3) + Punto(3) + Tipo(2) + Número(7) + Fecha(8) */
+    private static final int POSICION_TIPO_EMISION = 32;
+
+    @TempDir
+    static Path directorio;
+
+    private static Path certificado;
+
+    private SifenXmlSigner xmlSigner;
+    private SifenService sifenService;
+
+    @BeforeAll
+    static void generarCertificado() throws Exception {
+        char[] password = "test".toCharArray();
+        certificado = CertificadosPrueba.escribir(CertificadosPrueba.generar("Emisor de prueba", password),
+                directorio.resolve("sifen.p12"), password);
+    }
+
+    @BeforeEach
+    void configurar() {
+        SifenConfig sifenConfig = FacturasPrueba.sifenConfig(certificado);
+
+        QrCodeService qrCodeService = mock(QrCodeService.class);
+        when(qrCodeService.generarQrBase64(anyString(), anyInt(), anyInt())).thenReturn("cXI=");
+
+        xmlSigner = new SifenXmlSigner(new SifenCertificado(sifenConfig));
+        SifenXmlGenerator xmlGenerator = new SifenXmlGenerator(sifenConfig);
+        sifenService = new SifenService(mock(FacturaRepository.class), xmlGenerator, xmlSigner,
+                mock(SifenClient.class), qrCodeService, mock(SifenLoteBuilder.class),
+                mock(SifenLoteRepository.class), mock(SifenEnvioRepository.class), sifenConfig,
+                new SifenCircuitBreaker(sifenConfig, new SimpleMeterRegistry()),
+                mock(PlatformTransactionManager.class));
+    }
+
+    @Test
+    void losReintentosConservanElCdcDelPrimerIntento() throws Exception {
+        Factura factura = FacturasPrueba.factura(7, 3);
+
+        sifenService.prepararDocumento(factura);
+        String cdc = factura.getCdc();
+        sifenService.prepararDocumento(factura);
+        sifenService.prepararDocumento(factura);
+
+        assertThat(factura.getCdc()).isEqualTo(cdc);
+        assertThat(factura.getXmlDeFirmado()).contains("Id=\"" + cdc + "\"");
+        assertThat(factura.getEstado()).isEqualTo(EstadoFactura.EN_PROCESO);
+        assertThat(xmlSigner.validarFirma(factura.getXmlDeFirmado())).isTrue();
+    }
+
+    @Test
+    void cambiarUnDatoQueCodificaElCdcGeneraUnoNuevo() throws Exception {
+        Factura factura = FacturasPrueba.factura(7, 3);
+        sifenService.prepararDocumento(factura);
+        String cdc = factura.getCdc();
+
+        factura.setNumeroFactura("001-001-0000008");
+        sifenService.prepararDocumento(factura);
+
+        assertThat(factura.getCdc()).isNotEqualTo(cdc).contains("0000008");
+    }
+
+    @Test
+    void emisionEnContingenciaUsaTipoDeEmisionDosYEntregaElKude() throws Exception {
+        Factura factura = FacturasPrueba.factura(9, 2);
+
+        sifenService.emitirEnContingencia(factura);
+
+        String cdc = factura.getCdc();
+        assertThat(cdc.charAt(POSICION_TIPO_EMISION)).isEqualTo('2');
+        assertThat(factura.getEmitidaContingencia()).isTrue();
+        assertThat(factura.getEstado()).isEqualTo(EstadoFactura.EN_PROCESO);
+        assertThat(factura.getXmlDe())
+                .contains("<iTipEmi>2</iTipEmi>")
+                .contains("<dDesTipEmi>Contingencia</dDesTipEmi>");
+        assertThat(xmlSigner.validarFirma(factura.getXmlDeFirmado())).isTrue();
+        // El KuDE se entrega en el momento, con el CDC de contingencia
+        assertThat(factura.getUrlKude()).contains("Id=" + cdc);
+        assertThat(factura.getQrCode()).isEqualTo("cXI=");
+    }
+
+    @Test
+    void pasarAContingenciaCambiaElCdcYLuegoSeConserva() throws Exception {
+        Factura factura = FacturasPrueba.factura(11, 1);
+        sifenService.prepararDocumento(factura);
+        String normal = factura.getCdc();
+        assertThat(normal.charAt(POSICION_TIPO_EMISION)).isEqualTo('1');
+
+        sifenService.emitirEnContingencia(factura);
+        String contingencia = factura.getCdc();
+        assertThat(contingencia).isNotEqualTo(normal);
+        assertThat(contingencia.charAt(POSICION_TIPO_EMISION)).isEqualTo('2');
+
+        // La cola retransmite el documento de contingencia con el mismo CDC que figura en el KuDE
+        sifenService.prepararDocumento(factura);
+        assertThat(factura.getCdc()).isEqualTo(contingencia);
+    }
+}
@@ -0,0 +1,307 @@
+package com.logistic.control.service;
+
+import com.logistic.control.config.SifenConfig;
+import com.logistic.control.entity.Cliente;
+import com.logistic.control.entity.DetalleFactura;
+import com.logistic.control.entity.Factura;
+import com.logistic.control.support.CertificadosPrueba;
+import com.logistic.control.support.FacturasPrueba;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.w3c.dom.Document;
+import org.xmlunit.builder.DiffBuilder;
+import org.xmlunit.diff.Diff;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * El DE armado como DOM equivale al XML que antes se concatenaba como texto, y su firma es la misma
+ * que la del texto serializado
+ */
+class SifenXmlGeneratorTest {
+
+    private static final Pattern SIGNATURE_VALUE = Pattern.compile("<(?:\\w+:)?SignatureValue>([^<]+)<");
+
+    @TempDir
+    static Path directorio;
+
+    private static Path certificado;
+
+    private SifenConfig sifenConfig;
+    private SifenXmlGenerator xmlGenerator;
+    private SifenXmlSigner xmlSigner;
+
+    @BeforeAll
+    static void generarCertificado() throws Exception {
+        char[] password = "test".toCharArray();
+        certificado = CertificadosPrueba.escribir(CertificadosPrueba.generar("Emisor de prueba", password),
+                directorio.resolve("sifen.p12"), password);
+    }
+
+    @BeforeEach
+    void configurar() {
+        sifenConfig = FacturasPrueba.sifenConfig(certificado);
+        xmlGenerator = new SifenXmlGenerator(sifenConfig);
+        xmlSigner = new SifenXmlSigner(new SifenCertificado(sifenConfig));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 50})
+    void elDocumentoEquivaleAlXmlDeTextoAnterior(int items) throws Exception {
+        Factura factura = FacturasPrueba.factura(11, items);
+
+        String xmlDom = xmlSigner.firmarDocumento(xmlGenerator.generarDocumentoFactura(factura)).xmlSinFirmar();
+        String xmlTexto = XmlAnterior.generar(factura, sifenConfig, factura.getCdc());
+
+        Diff diff = DiffBuilder.compare(xmlTexto).withTest(xmlDom)
+                .ignoreWhitespace()
+                .checkForIdentical()
+                .build();
+        assertThat(diff.hasDifferences()).as(diff.toString()).isFalse();
+        // Los caracteres especiales de la razón social y las descripciones quedan escapados
+        assertThat(xmlDom).contains("Ñandutí &lt;Importaciones&gt; &amp; Cía");
+    }
+
+    @Test
+    void laFirmaDelDocumentoEsLaMismaQueLaDelXmlSerializado() throws Exception {
+        Document documento = xmlGenerator.generarDocumentoFactura(FacturasPrueba.factura(12, 5));
+
+        SifenXmlSigner.DocumentoFirmado firmado = xmlSigner.firmarDocumento(documento);
+        String firmadoDesdeTexto = xmlSigner.firmarXml(firmado.xmlSinFirmar());
+
+        assertThat(xmlSigner.validarFirma(firmado.xmlFirmado())).isTrue();
+        assertThat(xmlSigner.validarFirma(firmadoDesdeTexto)).isTrue();
+        // RSA-SHA256 (PKCS#1 v1.5) es determinístico: misma firma implica mismo contenido canonicalizado
+        assertThat(signatureValue(firmado.xmlFirmado())).isEqualTo(signatureValue(firmadoDesdeTexto));
+    }
+
+    /**
+     * Documentos por segundo (generar + firmar) con 1, 50 y 500 items: concatenación de texto + firmarXml
+     * frente a DOM + firmarDocumento. Correr con -Dbenchmark=true.
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void benchmarkGeneracionYFirma() {
+        for (int items : new int[]{1, 50, 500}) {
+            Factura factura = FacturasPrueba.factura(13, items);
+            xmlGenerator.generarDocumentoFactura(factura);
+            String cdc = factura.getCdc();
+
+            Supplier<String> texto = () -> xmlSigner.firmarXml(XmlAnterior.generar(factura, sifenConfig, cdc));
+            Supplier<String> dom = () -> xmlSigner.firmarDocumento(xmlGenerator.generarDocumentoFactura(factura)).xmlFirmado();
+
+            for (int ronda = 0; ronda < 3; ronda++) {
+                System.out.printf("DE con %d items: texto %,.1f docs/s; DOM %,.1f docs/s%n",
+                        items, porSegundo(texto), porSegundo(dom));
+            }
+        }
+    }
+
+    private static double porSegundo(Supplier<String> generacion) {
+        long fin = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        long inicio = System.nanoTime();
+        long n = 0;
+        while (System.nanoTime() - fin < 0) {
+            assertThat(generacion.get()).isNotEmpty();
+            n++;
+        }
+        return n * 1e9 / (System.nanoTime() - inicio);
+    }
+
+    private static String signatureValue(String xmlFirmado) {
+        Matcher matcher = SIGNATURE_VALUE.matcher(xmlFirmado);
+        assertThat(matcher.find()).isTrue();
+        return matcher.group(1).replaceAll("\\s", "");
+    }
+
+    /**
+     * Generación por concatenación de texto previa al DOM (emisión normal), como referencia
+     */
+    private static final class XmlAnterior {
+
+        private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+        private static final DateTimeFormatter DATETIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+
+        static String generar(Factura factura, SifenConfig config, String cdc) {
+            StringBuilder xml = new StringBuilder();
+            xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            xml.append("<rDE xmlns=\"http://ekuatia.set.gov.py/sifen/xsd\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\">\n");
+            xml.append("  <DE Id=\"").append(cdc).append("\">\n");
+
+            xml.append("<gOpeDE>");
+            campo(xml, "iTipEmi", 1);
+            campo(xml, "dDesTipEmi", "Normal");
+            campo(xml, "dCodSeg", cdc.substring(34, 43));
+            campo(xml, "dInfoEmi", "Información adicional");
+            campo(xml, "dInfoFisc", "Información fiscal");
+            xml.append("</gOpeDE><gTimb>");
+            campo(xml, "iTiDE", 1);
+            campo(xml, "dDesTiDE", "Factura Electrónica");
+            campo(xml, "dNumTim", factura.getTimbrado());
+            campo(xml, "dEst", factura.getEstablecimiento());
+            campo(xml, "dPunExp", factura.getPuntoExpedicion());
+            campo(xml, "dNumDoc", factura.getNumeroFactura().split("-")[2]);
+            campo(xml, "dFeIniT", LocalDateTime.now().format(DATE_FORMATTER));
+            xml.append("</gTimb><gDatGralOpe>");
+            campo(xml, "dFeEmiDE", factura.getFechaEmision().format(DATETIME_FORMATTER));
+            xml.append("</gDatGralOpe>");
+
+            xml.append("<gEmis>");
+            campo(xml, "dRucEm", config.getRucEmisor());
+            campo(xml, "dDVEmi", calcularDV(config.getRucEmisor()));
+            campo(xml, "iTipCont", 1);
+            campo(xml, "cTipReg", 8);
+            campo(xml, "dNomEmi", escaparXml(config.getRazonSocialEmisor()));
+            if (config.getNombreFantasia() != null) {
+                campo(xml, "dNomFanEmi", escaparXml(config.getNombreFantasia()));
+            }
+            campo(xml, "dDirEmi", escaparXml(config.getDireccion()));
+            campo(xml, "dNumCas", 0);
+            campo(xml, "dCompDir1", "Barrio");
+            campo(xml, "dCompDir2", "Complemento");
+            campo(xml, "cDepEmi", config.getDepartamento());
+            campo(xml, "dDesDepEmi", config.getCiudad());
+            campo(xml, "cCiuEmi", 1);
+            campo(xml, "dDesCiuEmi", config.getCiudad());
+            campo(xml, "dTelEmi", config.getTelefono());
+            campo(xml, "dEmailE", config.getEmail());
+            xml.append("</gEmis>");
+
+            Cliente cliente = factura.getCliente();
+            xml.append("<gDatRec>");
+            campo(xml, "iNatRec", 1);
+            campo(xml, "iTiOpe", 1);
+            campo(xml, "cPaisRec", "PRY");
+            campo(xml, "dDesPaisRe", "Paraguay");
+            campo(xml, "iTiContRec", 1);
+            if (cliente.getRuc() != null && !cliente.getRuc().isEmpty()) {
+                campo(xml, "dRucRec", cliente.getRuc());
+                campo(xml, "dDVRec", calcularDV(cliente.getRuc()));
+            }
+            campo(xml, "dNomRec", escaparXml(cliente.getRazonSocial()));
+            if (cliente.getDireccion() != null) {
+                campo(xml, "dDirRec", escaparXml(cliente.getDireccion()));
+            }
+            if (cliente.getTelefono() != null) {
+                campo(xml, "dTelRec", cliente.getTelefono());
+            }
+            if (cliente.getEmail() != null) {
+                campo(xml, "dEmailRec", cliente.getEmail());
+            }
+            xml.append("</gDatRec>");
+
+            xml.append("<gDtipDE><gCamFE>");
+            campo(xml, "iIndPres", 1);
+            campo(xml, "dDesIndPres", "Presencial");
+            campo(xml, "dFecEmNR", "");
+            xml.append("<gCompPub>");
+            campo(xml, "dModCont", 1);
+            campo(xml, "dEntCont", "");
+            campo(xml, "dAnoCont", "");
+            campo(xml, "dSecCont", "");
+            campo(xml, "dFeCodCont", "");
+            xml.append("</gCompPub></gCamFE></gDtipDE>");
+
+            double base5 = base(factura, 5);
+            double base10 = base(factura, 10);
+            xml.append("<gTotSub>");
+            campo(xml, "dSubExe", 0);
+            campo(xml, "dSubExo", 0);
+            campo(xml, "dSub5", base5);
+            campo(xml, "dSub10", base10);
+            campo(xml, "dTotOpe", factura.getSubtotal());
+            campo(xml, "dTotDesc", factura.getDescuento());
+            for (String cero : new String[]{"dTotDescGlotem", "dTotAntItem", "dTotAnt", "dPorcDescTotal",
+                    "dDescTotal", "dAnticipo", "dRedon", "dComi"}) {
+                campo(xml, cero, 0);
+            }
+            campo(xml, "dTotGralOpe", factura.getTotal());
+            campo(xml, "dIVA5", factura.getIva5());
+            campo(xml, "dIVA10", factura.getIva10());
+            campo(xml, "dLiqTotIVA5", factura.getIva5());
+            campo(xml, "dLiqTotIVA10", factura.getIva10());
+            campo(xml, "dTotIVA", factura.getTotalIva());
+            campo(xml, "dBaseGrav5", base5);
+            campo(xml, "dBaseGrav10", base10);
+            campo(xml, "dTBasGraIVA", factura.getSubtotal());
+            xml.append("</gTotSub>");
+
+            int itemNum = 1;
+            for (DetalleFactura detalle : factura.getDetalles()) {
+                int tasaIva = detalle.getPorcentajeIva() != null ? detalle.getPorcentajeIva() : 10;
+                xml.append("<gCamItem>");
+                campo(xml, "dNroItem", itemNum++);
+                campo(xml, "dDesProSer", escaparXml(detalle.getDescripcion()));
+                campo(xml, "dCantProSer", detalle.getCantidad());
+                campo(xml, "cUniMed", 77);
+                campo(xml, "dDesUniMed", "Unidad");
+                campo(xml, "dPUniProSer", detalle.getPrecioUnitario());
+                campo(xml, "dTiCamIt", 1);
+                campo(xml, "dTotBruOpeItem", detalle.getTotal());
+                xml.append("<gValorItem>");
+                campo(xml, "dTotOpeItem", detalle.getTotal());
+                xml.append("</gValorItem><gCamIVA>");
+                campo(xml, "iAfecIVA", 1);
+                campo(xml, "dDesAfecIVA", "Gravado IVA");
+                campo(xml, "dPropIVA", 100);
+                campo(xml, "dTasaIVA", tasaIva);
+                campo(xml, "dBasGravIVA", detalle.getTotal());
+                campo(xml, "dLiqIVAItem", detalle.getTotal() * tasaIva / 100);
+                xml.append("</gCamIVA></gCamItem>");
+            }
+
+            xml.append("<gPago>");
+            campo(xml, "iPagCont", 1);
+            campo(xml, "dDesPagCont", "Contado");
+            xml.append("<gPagCont><gPagCheq>");
+            campo(xml, "dMonEnt", factura.getTotal());
+            xml.append("</gPagCheq></gPagCont></gPago>");
+
+            xml.append("  </DE>\n");
+            xml.append("</rDE>");
+            return xml.toString();
+        }
+
+        private static void campo(StringBuilder xml, String nombre, Object valor) {
+            xml.append("<").append(nombre).append(">").append(valor).append("</").append(nombre).append(">\n");
+        }
+
+        private static double base(Factura factura, int tasa) {
+            return factura.getDetalles().stream()
+                    .filter(d -> d.getPorcentajeIva() != null && d.getPorcentajeIva() == tasa)
+                    .mapToDouble(DetalleFactura::getTotal)
+                    .sum();
+        }
+
+        private static int calcularDV(String numero) {
+            int suma = 0;
+            for (int i = 0; i < numero.length(); i++) {
+                suma += Character.getNumericValue(numero.charAt(i)) * (2 + i % 6);
+            }
+            int dv = 11 - suma % 11;
+            return dv == 11 ? 0 : dv == 10 ? 1 : dv;
+        }
+
+        private static String escaparXml(String texto) {
+            if (texto == null) return "";
+            return texto.replace("&", "&amp;")
+                    .replace("<", "&lt;")
+                    .replace(">", "&gt;")
+                    .replace("\"", "&quot;")
+                    .replace("'", "&apos;");
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.logistic.control.service;
+
+import com.logistic.control.config.SifenConfig;
+import com.logistic.control.entity.Factura;
+import com.logistic.control.support.CertificadosPrueba;
+import com.logistic.control.support.FacturasPrueba;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import org.w3c.dom.Document;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Firma concurrente con las herramientas XML reutilizadas entre hilos (pool de SifenXmlSigner)
+ */
+class SifenXmlSignerTest {
+
+    private static final int HILOS = 16;
+    private static final int DOCUMENTOS_POR_HILO = 8;
+
+    @TempDir
+    static Path directorio;
+
+    private static Path certificado;
+
+    private SifenXmlGenerator xmlGenerator;
+    private SifenXmlSigner xmlSigner;
+
+    @BeforeAll
+    static void generarCertificado() throws Exception {
+        char[] password = "test".toCharArray();
+        certificado = CertificadosPrueba.escribir(CertificadosPrueba.generar("Emisor de prueba", password),
+                directorio.resolve("sifen.p12"), password);
+    }
+
+    @BeforeEach
+    void configurar() {
+        SifenConfig sifenConfig = FacturasPrueba.sifenConfig(certificado);
+        xmlGenerator = new SifenXmlGenerator(sifenConfig);
+        xmlSigner = new SifenXmlSigner(new SifenCertificado(sifenConfig));
+    }
+
+    @Test
+    void lasFirmasConcurrentesSonValidasYCorrespondenASuDocumento() throws Exception {
+        CountDownLatch largada = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(HILOS);
+        try {
+            List<Future<List<String[]>>> resultados = new ArrayList<>();
+            for (int h = 0; h < HILOS; h++) {
+                int hilo = h;
+                resultados.add(executor.submit(() -> {
+                    largada.await();
+                    List<String[]> firmados = new ArrayList<>();
+                    for (int i = 0; i < DOCUMENTOS_POR_HILO; i++) {
+                        Factura factura = FacturasPrueba.factura(hilo * 100L + i + 1, 1 + i % 4);
+                        Document documento = xmlGenerator.generarDocumentoFactura(factura);
+                        // Alternar ambas entradas, que comparten el mismo pool de herramientas
+                        String xmlFirmado = i % 2 == 0
+                                ? xmlSigner.firmarDocumento(documento).xmlFirmado()
+                                : xmlSigner.firmarXml(xmlSigner.firmarDocumento(
+                                        xmlGenerator.generarDocumentoFactura(factura)).xmlSinFirmar());
+                        firmados.add(new String[]{factura.getCdc(), xmlFirmado});
+                    }
+                    return firmados;
+                }));
+            }
+            largada.countDown();
+
+            int total = 0;
+            for (Future<List<String[]>> resultado : resultados) {
+                for (String[] firmado : resultado.get(60, TimeUnit.SECONDS)) {
+                    assertThat(firmado[1]).contains("Id=\"" + firmado[0] + "\"")
+                            .contains("URI=\"#" + firmado[0] + "\"");
+                    assertThat(xmlSigner.validarFirma(firmado[1])).isTrue();
+                    total++;
+                }
+            }
+            assertThat(total).isEqualTo(HILOS * DOCUMENTOS_POR_HILO);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void unDocumentoAlteradoNoValida() {
+        String xmlFirmado = xmlSigner.firmarDocumento(
+                xmlGenerator.generarDocumentoFactura(FacturasPrueba.factura(1, 2))).xmlFirmado();
+
+        assertThat(xmlSigner.validarFirma(xmlFirmado)).isTrue();
+        assertThat(xmlSigner.validarFirma(xmlFirmado.replace("Contado", "Crédito"))).isFalse();
+    }
+
+    /**
+     * Firmas por segundo con 1 hilo y con un hilo por procesador, sobre DE de 5 items ya generados.
+     * Correr con -Dbenchmark=true.
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void benchmarkFirmasPorSegundo() throws Exception {
+        int procesadores = Runtime.getRuntime().availableProcessors();
+        for (int ronda = 0; ronda < 3; ronda++) {
+            System.out.printf("Firmas: 1 hilo %,.0f/s; %d hilos %,.0f/s%n",
+                    firmasPorSegundo(1), procesadores, firmasPorSegundo(procesadores));
+        }
+    }
+
+    private double firmasPorSegundo(int hilos) throws Exception {
+        Factura factura = FacturasPrueba.factura(1, 5);
+        xmlGenerator.generarDocumentoFactura(factura);
+        SifenXmlGenerator.DatosFactura datos = SifenXmlGenerator.DatosFactura.de(factura);
+
+        AtomicLong firmas = new AtomicLong();
+        long fin = System.nanoTime() + TimeUnit.SECONDS.toNanos(3);
+        ExecutorService executor = Executors.newFixedThreadPool(hilos);
+        try {
+            long inicio = System.nanoTime();
+            List<Future<?>> tareas = new ArrayList<>();
+            for (int h = 0; h < hilos; h++) {
+                tareas.add(executor.submit(() -> {
+                    while (System.nanoTime() - fin < 0) {
+                        Document documento = xmlGenerator.generarDocumento(datos).documento();
+                        xmlSigner.firmarDocumento(documento);
+                        firmas.incrementAndGet();
+                    }
+                }));
+            }
+            for (Future<?> tarea : tareas) {
+                tarea.get();
+            }
+            return firmas.get() * 1e9 / (System.nanoTime() - inicio);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
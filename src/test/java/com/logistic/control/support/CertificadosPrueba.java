@@ -0,0 +1,81 @@
+package com.logistic.control.support;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+
+/**
+ * Certificados autofirmados para tests (mTLS y firma de documentos SIFEN).
+ * Incluyen localhost y 127.0.0.1 como nombres alternativos para pasar la verificación de host.
+ */
+public final class CertificadosPrueba {
+
+    public static final String ALIAS = "sifen";
+
+    private CertificadosPrueba() {
+    }
+
+    /**
+     * Keystore PKCS#12 con una clave RSA y su certificado autofirmado
+     */
+    public static KeyStore generar(String nombreComun, char[] password) throws Exception {
+        KeyPairGenerator generador = KeyPairGenerator.getInstance("RSA");
+        generador.initialize(2048);
+        KeyPair claves = generador.generateKeyPair();
+
+        X500Name sujeto = new X500Name("CN=" + nombreComun);
+        Instant ahora = Instant.now();
+        JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(sujeto,
+                BigInteger.valueOf(ahora.toEpochMilli()),
+                Date.from(ahora.minus(Duration.ofMinutes(1))),
+                Date.from(ahora.plus(Duration.ofDays(1))),
+                sujeto, claves.getPublic());
+        builder.addExtension(Extension.subjectAlternativeName, false, new GeneralNames(new GeneralName[]{
+                new GeneralName(GeneralName.dNSName, "localhost"),
+                new GeneralName(GeneralName.iPAddress, "127.0.0.1")
+        }));
+        X509Certificate certificado = new JcaX509CertificateConverter()
+                .getCertificate(builder.build(new JcaContentSignerBuilder("SHA256withRSA").build(claves.getPrivate())));
+
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        keyStore.load(null, null);
+        keyStore.setKeyEntry(ALIAS, claves.getPrivate(), password, new X509Certificate[]{certificado});
+        return keyStore;
+    }
+
+    /**
+     * Guardar el keystore como archivo .p12
+     */
+    public static Path escribir(KeyStore keyStore, Path archivo, char[] password) throws Exception {
+        try (OutputStream salida = Files.newOutputStream(archivo)) {
+            keyStore.store(salida, password);
+        }
+        return archivo;
+    }
+
+    /**
+     * Truststore que confía únicamente en el certificado del keystore dado
+     */
+    public static KeyStore confianza(KeyStore keyStore) throws Exception {
+        KeyStore truststore = KeyStore.getInstance("PKCS12");
+        truststore.load(null, null);
+        truststore.setCertificateEntry(ALIAS, keyStore.getCertificate(ALIAS));
+        return truststore;
+    }
+}
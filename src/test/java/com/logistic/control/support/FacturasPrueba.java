@@ -0,0 +1,89 @@
+package com.logistic.control.support;
+
+import com.logistic.control.config.SifenConfig;
+import com.logistic.control.entity.Cliente;
+import com.logistic.control.entity.DetalleFactura;
+import com.logistic.control.entity.Factura;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Facturas y configuración SIFEN de ejemplo para los tests de generación y firma del DE
+ */
+public final class FacturasPrueba {
+
+    private FacturasPrueba() {
+    }
+
+    /**
+     * Configuración del emisor que firma con el .p12 indicado (contraseña "test")
+     */
+    public static SifenConfig sifenConfig(Path certificado) {
+        SifenConfig sifenConfig = new SifenConfig();
+        sifenConfig.setRucEmisor("8001234-5");
+        sifenConfig.setRazonSocialEmisor("Logística & Control S.A.");
+        sifenConfig.setTimbrado("12345678");
+        sifenConfig.setDireccion("Av. Mcal. López 1234");
+        sifenConfig.setTelefono("021 123 456");
+        sifenConfig.setEmail("facturacion@logistic.com.py");
+        sifenConfig.setCertificatePath(certificado != null ? certificado.toString() : null);
+        sifenConfig.setCertificatePassword("test");
+        return sifenConfig;
+    }
+
+    /**
+     * Factura con los items indicados, alternando IVA 10% y 5%; la razón social del cliente
+     * lleva caracteres que deben escaparse en el XML
+     */
+    public static Factura factura(long id, int items) {
+        Cliente cliente = Cliente.builder()
+                .razonSocial("Ñandutí <Importaciones> & Cía")
+                .ruc("4567890-1")
+                .direccion("Ruta 2 km 20, Capiatá")
+                .email("compras@nanduti.com.py")
+                .build();
+        cliente.setId(1000 + id);
+
+        List<DetalleFactura> detalles = new ArrayList<>(items);
+        double base5 = 0;
+        double base10 = 0;
+        for (int i = 1; i <= items; i++) {
+            int iva = i % 2 == 0 ? 5 : 10;
+            double total = 15_000.0 * i;
+            detalles.add(DetalleFactura.builder()
+                    .descripcion("Flete contenedor 40' \"HC\" #" + i)
+                    .cantidad(i)
+                    .precioUnitario(15_000.0)
+                    .total(total)
+                    .porcentajeIva(iva)
+                    .build());
+            if (iva == 5) {
+                base5 += total;
+            } else {
+                base10 += total;
+            }
+        }
+
+        double iva5 = Math.round(base5 / 21);
+        double iva10 = Math.round(base10 / 11);
+        Factura factura = Factura.builder()
+                .numeroFactura(String.format("001-001-%07d", id))
+                .fechaEmision(LocalDateTime.of(2025, 3, 14, 10, 30, 0))
+                .cliente(cliente)
+                .establecimiento("001")
+                .puntoExpedicion("001")
+                .timbrado("12345678")
+                .subtotal(base5 + base10)
+                .iva5(iva5)
+                .iva10(iva10)
+                .totalIva(iva5 + iva10)
+                .total(base5 + base10)
+                .detalles(detalles)
+                .build();
+        factura.setId(id);
+        return factura;
+    }
+}